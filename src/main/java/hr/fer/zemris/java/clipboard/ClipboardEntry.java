@@ -0,0 +1,261 @@
+package hr.fer.zemris.java.clipboard;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+import javax.swing.text.Segment;
+
+import hr.fer.zemris.java.document.TextSource;
+
+/**
+ * Text held by a {@link ClipboardRing}.
+ * <p>
+ * A short text is copied. A longer one is not - it is either a range of an
+ * immutable snapshot of a document, sharing the memory of the document, or it
+ * is written to a temporary file and read back in chunks when it is needed.
+ * The text of an entry is materialized as a {@link String} only on request.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public final class ClipboardEntry implements TextSource {
+	/** Length of the longest text which is copied. */
+	public static final int COPY_LIMIT = 1 << 16;
+
+	/** Source of the text. */
+	private TextSource source;
+	/** Start of the text in the source. */
+	private int offset;
+	/** Length of the text. */
+	private int length;
+
+	/**
+	 * Constructs a new {@link ClipboardEntry}.
+	 *
+	 * @param source
+	 *            source of the text
+	 * @param offset
+	 *            start of the text in the source
+	 * @param length
+	 *            length of the text
+	 */
+	private ClipboardEntry(TextSource source, int offset, int length) {
+		this.source = source;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/**
+	 * Creates an entry holding the given string.
+	 *
+	 * @param text
+	 *            the string
+	 * @return the entry
+	 */
+	public static ClipboardEntry of(String text) {
+		char[] chars = text.toCharArray();
+		return new ClipboardEntry(new CharText(chars), 0, chars.length);
+	}
+
+	/**
+	 * Creates an entry of the given range of an immutable text. A short range
+	 * is copied, while a longer one references the text.
+	 *
+	 * @param text
+	 *            the text, must never change
+	 * @param offset
+	 *            start of the range
+	 * @param length
+	 *            length of the range
+	 * @return the entry
+	 */
+	public static ClipboardEntry of(TextSource text, int offset, int length) {
+		if (length <= COPY_LIMIT)
+			return copy(text, offset, length);
+		return new ClipboardEntry(text, offset, length);
+	}
+
+	/**
+	 * Creates an entry of the given range of a text which may become
+	 * unavailable, like a mapped file. A short range is copied, while a longer
+	 * one is written to a temporary file.
+	 *
+	 * @param text
+	 *            the text
+	 * @param offset
+	 *            start of the range
+	 * @param length
+	 *            length of the range
+	 * @param progress
+	 *            receives the progress, in percent
+	 * @param cancelled
+	 *            checked while writing, which stops once it returns
+	 *            <code>true</code>
+	 * @return the entry
+	 * @throws IOException
+	 *             if the temporary file can not be written
+	 * @throws CancellationException
+	 *             if the writing was cancelled
+	 */
+	public static ClipboardEntry spill(TextSource text, int offset, int length, IntConsumer progress,
+			BooleanSupplier cancelled) throws IOException {
+		if (length <= COPY_LIMIT)
+			return copy(text, offset, length);
+		return new ClipboardEntry(SpilledText.write(text, offset, length, progress, cancelled), 0, length);
+	}
+
+	/**
+	 * Creates an entry of a copy of the given range of a text.
+	 *
+	 * @param text
+	 *            the text
+	 * @param offset
+	 *            start of the range
+	 * @param length
+	 *            length of the range
+	 * @return the entry
+	 */
+	private static ClipboardEntry copy(TextSource text, int offset, int length) {
+		char[] chars = new char[length];
+		text.getChars(offset, length, chars, 0);
+		return new ClipboardEntry(new CharText(chars), 0, length);
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public void getText(int offset, int len, Segment txt) {
+		check(offset, len);
+		source.getText(this.offset + offset, len, txt);
+	}
+
+	@Override
+	public void getChars(int offset, int len, char[] dst, int dstOffset) {
+		check(offset, len);
+		source.getChars(this.offset + offset, len, dst, dstOffset);
+	}
+
+	/**
+	 * Checks that the given range is inside of the entry.
+	 *
+	 * @param offset
+	 *            start of the range
+	 * @param len
+	 *            length of the range
+	 * @throws IndexOutOfBoundsException
+	 *             if the range is outside of the entry
+	 */
+	private void check(int offset, int len) {
+		if (offset < 0 || len < 0 || offset + len > length)
+			throw new IndexOutOfBoundsException("Invalid range: " + offset + ", " + len + ".");
+	}
+
+	/**
+	 * Checks whether the entry holds the given text.
+	 *
+	 * @param text
+	 *            the text
+	 * @return <code>true</code> if the texts are equal
+	 */
+	public boolean contentEquals(String text) {
+		if (text.length() != length)
+			return false;
+		char[] chars = new char[Math.min(length, COPY_LIMIT)];
+		for (int done = 0; done < length; done += chars.length) {
+			int n = Math.min(chars.length, length - done);
+			getChars(done, n, chars, 0);
+			for (int i = 0; i < n; i++) {
+				if (chars[i] != text.charAt(done + i))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the beginning of the text, with the line breaks and tabs replaced
+	 * by spaces.
+	 *
+	 * @param max
+	 *            largest number of returned characters
+	 * @return beginning of the text
+	 */
+	public String preview(int max) {
+		char[] chars = new char[Math.min(max, length)];
+		getChars(0, chars.length, chars, 0);
+		for (int i = 0; i < chars.length; i++) {
+			if (chars[i] == '\n' || chars[i] == '\r' || chars[i] == '\t') {
+				chars[i] = ' ';
+			}
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Materializes the text of the entry.
+	 *
+	 * @return text of the entry
+	 */
+	@Override
+	public String toString() {
+		char[] chars = new char[length];
+		getChars(0, length, chars, 0);
+		return new String(chars);
+	}
+
+	/**
+	 * Releases the temporary file of the entry, if it has one. The entry must
+	 * not be read afterwards.
+	 */
+	void dispose() {
+		if (!(source instanceof SpilledText))
+			return;
+		try {
+			((SpilledText) source).close();
+		} catch (IOException ignorable) {
+		}
+	}
+
+	/**
+	 * Text of a character array.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private static class CharText implements TextSource {
+		/** Characters of the text. */
+		private char[] chars;
+
+		/**
+		 * Constructs a new {@link CharText}.
+		 *
+		 * @param chars
+		 *            characters of the text
+		 */
+		private CharText(char[] chars) {
+			this.chars = chars;
+		}
+
+		@Override
+		public int length() {
+			return chars.length;
+		}
+
+		@Override
+		public void getText(int offset, int len, Segment txt) {
+			txt.array = chars;
+			txt.offset = offset;
+			txt.count = len;
+		}
+
+		@Override
+		public void getChars(int offset, int len, char[] dst, int dstOffset) {
+			System.arraycopy(chars, offset, dst, dstOffset, len);
+		}
+	}
+}
@@ -0,0 +1,222 @@
+package hr.fer.zemris.java.clipboard;
+
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.ClipboardOwner;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Clipboard remembering the last few copied texts as {@link ClipboardEntry}s,
+ * the newest one first.
+ * <p>
+ * The newest entry is also exported to the system clipboard as a lazy
+ * {@link Transferable}, which materializes the text only when another
+ * application asks for it. Once another application takes over the system
+ * clipboard, its text becomes the newest entry when it is read. The ring is
+ * meant to be used from the event dispatch thread.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class ClipboardRing implements ClipboardOwner {
+	/** Largest number of entries. */
+	private int capacity;
+	/** System clipboard, <code>null</code> if it is not available. */
+	private Clipboard system;
+	/** Entries, the newest one first. */
+	private LinkedList<ClipboardEntry> entries = new LinkedList<>();
+	/** Contents of the system clipboard set by the ring, if it still owns it. */
+	private Transferable exported;
+
+	/**
+	 * Constructs a new {@link ClipboardRing}.
+	 *
+	 * @param capacity
+	 *            largest number of entries
+	 * @param system
+	 *            system clipboard, <code>null</code> if it is not available
+	 */
+	public ClipboardRing(int capacity, Clipboard system) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("The capacity must be positive.");
+		this.capacity = capacity;
+		this.system = system;
+	}
+
+	/**
+	 * Adds the given entry as the newest one and exports it to the system
+	 * clipboard. The oldest entry is dropped if the ring is full.
+	 *
+	 * @param entry
+	 *            the entry
+	 */
+	public void push(ClipboardEntry entry) {
+		add(entry);
+		export(entry);
+	}
+
+	/**
+	 * Gets the newest entry. If another application has set the system
+	 * clipboard since, its text is added as the newest entry first.
+	 *
+	 * @return the newest entry, <code>null</code> if there is none
+	 */
+	public ClipboardEntry current() {
+		String text = importedText();
+		if (text != null && !text.isEmpty() && (entries.isEmpty() || !entries.getFirst().contentEquals(text))) {
+			add(ClipboardEntry.of(text));
+		}
+		return entries.peekFirst();
+	}
+
+	/**
+	 * Gets the entries of the ring.
+	 *
+	 * @return unmodifiable list of the entries, the newest one first
+	 */
+	public List<ClipboardEntry> getEntries() {
+		return Collections.unmodifiableList(new ArrayList<>(entries));
+	}
+
+	/**
+	 * Makes the given entry the newest one and exports it to the system
+	 * clipboard.
+	 *
+	 * @param entry
+	 *            an entry of the ring
+	 */
+	public void select(ClipboardEntry entry) {
+		if (entries.remove(entry)) {
+			push(entry);
+		}
+	}
+
+	/**
+	 * Drops all the entries and releases their temporary files. Called when
+	 * the ring is not used anymore.
+	 */
+	public void clear() {
+		for (ClipboardEntry entry : entries) {
+			entry.dispose();
+		}
+		entries.clear();
+	}
+
+	@Override
+	public void lostOwnership(Clipboard clipboard, Transferable contents) {
+		// the system clipboard may pass a wrapper of the exported contents, and
+		// setting new contents of the same owner never notifies it
+		exported = null;
+	}
+
+	/**
+	 * Adds the given entry as the newest one, without exporting it.
+	 *
+	 * @param entry
+	 *            the entry
+	 */
+	private void add(ClipboardEntry entry) {
+		entries.addFirst(entry);
+		while (entries.size() > capacity) {
+			entries.removeLast().dispose();
+		}
+	}
+
+	/**
+	 * Exports the given entry to the system clipboard.
+	 *
+	 * @param entry
+	 *            the entry
+	 */
+	private void export(ClipboardEntry entry) {
+		Transferable contents = new EntryTransferable(entry);
+		if (setSystemContents(contents)) {
+			exported = contents;
+		}
+	}
+
+	/**
+	 * Sets the contents of the system clipboard.
+	 *
+	 * @param contents
+	 *            the contents
+	 * @return <code>true</code> if the contents were set
+	 */
+	private boolean setSystemContents(Transferable contents) {
+		if (system == null)
+			return false;
+		try {
+			system.setContents(contents, this);
+			return true;
+		} catch (IllegalStateException ex) {
+			// the clipboard is being used by another application
+			return false;
+		}
+	}
+
+	/**
+	 * Reads the text another application has set to the system clipboard.
+	 *
+	 * @return the text, <code>null</code> if the ring owns the system
+	 *         clipboard or it does not hold any text
+	 */
+	private String importedText() {
+		if (system == null || exported != null)
+			return null;
+		try {
+			if (!system.isDataFlavorAvailable(DataFlavor.stringFlavor))
+				return null;
+			return (String) system.getData(DataFlavor.stringFlavor);
+		} catch (IllegalStateException | UnsupportedFlavorException | IOException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Transferable text of an entry, materialized when it is requested.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private static class EntryTransferable implements Transferable {
+		/** The entry. */
+		private ClipboardEntry entry;
+
+		/**
+		 * Constructs a new {@link EntryTransferable}.
+		 *
+		 * @param entry
+		 *            the entry
+		 */
+		private EntryTransferable(ClipboardEntry entry) {
+			this.entry = entry;
+		}
+
+		@Override
+		public DataFlavor[] getTransferDataFlavors() {
+			return new DataFlavor[] { DataFlavor.stringFlavor };
+		}
+
+		@Override
+		public boolean isDataFlavorSupported(DataFlavor flavor) {
+			return DataFlavor.stringFlavor.equals(flavor);
+		}
+
+		@Override
+		public Object getTransferData(DataFlavor flavor) throws UnsupportedFlavorException, IOException {
+			if (!isDataFlavorSupported(flavor))
+				throw new UnsupportedFlavorException(flavor);
+			try {
+				return entry.toString();
+			} catch (RuntimeException ex) {
+				throw new IOException("The clipboard text can not be read.", ex);
+			}
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package hr.fer.zemris.java.clipboard;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+import javax.swing.text.Segment;
+
+import hr.fer.zemris.java.document.TextSource;
+
+/**
+ * Text written to a temporary file, two bytes per character, so any range of
+ * it can be read with a single positional read. The file is deleted once the
+ * text is closed.
+ *
+ * @author Mirna Baksa
+ *
+ */
+final class SpilledText implements TextSource, Closeable {
+	/** Number of characters written or read at once. */
+	private static final int CHUNK_SIZE = 1 << 14;
+
+	/** Channel of the temporary file. */
+	private FileChannel channel;
+	/** Number of characters in the file. */
+	private int length;
+
+	/**
+	 * Constructs a new {@link SpilledText}.
+	 *
+	 * @param channel
+	 *            channel of the written file
+	 * @param length
+	 *            number of characters in the file
+	 */
+	private SpilledText(FileChannel channel, int length) {
+		this.channel = channel;
+		this.length = length;
+	}
+
+	/**
+	 * Writes the given range of a text to a new temporary file.
+	 *
+	 * @param text
+	 *            the text
+	 * @param offset
+	 *            start of the range
+	 * @param length
+	 *            length of the range
+	 * @param progress
+	 *            receives the progress, in percent
+	 * @param cancelled
+	 *            checked while writing, which stops once it returns
+	 *            <code>true</code>
+	 * @return the written text
+	 * @throws IOException
+	 *             if the file can not be written
+	 * @throws CancellationException
+	 *             if the writing was cancelled
+	 */
+	static SpilledText write(TextSource text, int offset, int length, IntConsumer progress,
+			BooleanSupplier cancelled) throws IOException {
+		Path path = Files.createTempFile("jnotepad-clip", ".tmp");
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.DELETE_ON_CLOSE);
+		try {
+			char[] chars = new char[CHUNK_SIZE];
+			ByteBuffer bytes = ByteBuffer.allocate(2 * CHUNK_SIZE);
+			for (int done = 0; done < length;) {
+				if (cancelled.getAsBoolean())
+					throw new CancellationException();
+
+				int n = Math.min(CHUNK_SIZE, length - done);
+				text.getChars(offset + done, n, chars, 0);
+				bytes.clear();
+				bytes.asCharBuffer().put(chars, 0, n);
+				bytes.limit(2 * n);
+				while (bytes.hasRemaining()) {
+					channel.write(bytes);
+				}
+				done += n;
+				progress.accept((int) ((long) done * 100 / length));
+			}
+			return new SpilledText(channel, length);
+		} catch (IOException | RuntimeException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public void getText(int offset, int len, Segment txt) {
+		if (txt.isPartialReturn()) {
+			len = Math.min(len, CHUNK_SIZE);
+		}
+		char[] chars = new char[len];
+		getChars(offset, len, chars, 0);
+		txt.array = chars;
+		txt.offset = 0;
+		txt.count = len;
+	}
+
+	@Override
+	public void getChars(int offset, int len, char[] dst, int dstOffset) {
+		if (offset < 0 || len < 0 || offset + len > length)
+			throw new IndexOutOfBoundsException("Invalid range: " + offset + ", " + len + ".");
+
+		ByteBuffer bytes = ByteBuffer.allocate(2 * Math.min(len, CHUNK_SIZE));
+		try {
+			for (int done = 0; done < len;) {
+				int n = Math.min(CHUNK_SIZE, len - done);
+				bytes.clear();
+				bytes.limit(2 * n);
+				long position = 2L * (offset + done);
+				while (bytes.hasRemaining()) {
+					if (channel.read(bytes, position + bytes.position()) < 0)
+						throw new IOException("The clipboard file was truncated.");
+				}
+				bytes.flip();
+				bytes.asCharBuffer().get(dst, dstOffset + done, n);
+				done += n;
+			}
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
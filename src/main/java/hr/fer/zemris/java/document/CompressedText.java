@@ -0,0 +1,547 @@
+package hr.fer.zemris.java.document;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.swing.text.Segment;
+
+/**
+ * Text compressed by a {@link Deflater} and stored outside of the heap.
+ * <p>
+ * The compressed bytes are written to direct buffers, each twice as large as
+ * the one before it, up to {@link #MAX_BLOCK} bytes. The direct buffers of
+ * all the compressed texts share a limit, and once a text would exceed it,
+ * the bytes written so far and all the following ones are moved to a
+ * temporary file instead. The file is deleted once the text is closed.
+ * <p>
+ * The text is compressed from an immutable {@link TextSource}, so it can be
+ * compressed on any thread. A compressed text can be decompressed any number
+ * of times and from several threads at once, until it is closed. A text
+ * {@link #share() shared} with another thread is decompressed on that thread
+ * when it is first read, and keeps the compressed bytes until then even if
+ * the text is closed in the meantime. The compressed bytes can also be
+ * written to a stream and read back without decompressing them.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public final class CompressedText implements Closeable {
+	/** Number of characters compressed at once. */
+	private static final int CHUNK_SIZE = 1 << 14;
+	/** Size of the first direct buffer in bytes. */
+	private static final int FIRST_BLOCK = 1 << 14;
+	/** Largest size of a direct buffer in bytes. */
+	private static final int MAX_BLOCK = 1 << 20;
+	/** Number of bytes held by the direct buffers of all the texts. */
+	private static final AtomicLong OFF_HEAP_USED = new AtomicLong();
+
+	/** Number of characters of the text. */
+	private int length;
+	/** Number of compressed bytes. */
+	private long size;
+	/** Direct buffers with the compressed bytes, if not in a file. */
+	private List<ByteBuffer> blocks = new ArrayList<>();
+	/** Number of bytes held by the direct buffers of the text. */
+	private long reserved;
+	/** Channel of the temporary file, <code>null</code> if none. */
+	private FileChannel file;
+	/** Number of the shared texts which were not read or closed yet. */
+	private int shares;
+	/** <code>true</code> once the text was closed by its owner. */
+	private boolean closed;
+
+	/**
+	 * Constructs a new {@link CompressedText}.
+	 *
+	 * @param length
+	 *            number of characters of the text
+	 */
+	private CompressedText(int length) {
+		this.length = length;
+	}
+
+	/**
+	 * Compresses the given text.
+	 *
+	 * @param text
+	 *            the text, must not change during the compression
+	 * @param offHeapLimit
+	 *            number of bytes the direct buffers of all the texts may
+	 *            hold, the text is written to a temporary file beyond it
+	 * @param cancelled
+	 *            checked while compressing, which stops once it returns
+	 *            <code>true</code>
+	 * @return the compressed text
+	 * @throws IOException
+	 *             if the temporary file can not be written
+	 * @throws CancellationException
+	 *             if the compression was cancelled
+	 */
+	public static CompressedText compress(TextSource text, long offHeapLimit, BooleanSupplier cancelled)
+			throws IOException {
+		CompressedText compressed = new CompressedText(text.length());
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			char[] chars = new char[CHUNK_SIZE];
+			byte[] input = new byte[2 * CHUNK_SIZE];
+			byte[] output = new byte[2 * CHUNK_SIZE];
+			for (int done = 0, n; done < compressed.length; done += n) {
+				if (cancelled.getAsBoolean())
+					throw new CancellationException();
+
+				n = Math.min(CHUNK_SIZE, compressed.length - done);
+				text.getChars(done, n, chars, 0);
+				for (int i = 0; i < n; i++) {
+					input[2 * i] = (byte) chars[i];
+					input[2 * i + 1] = (byte) (chars[i] >>> 8);
+				}
+				deflater.setInput(input, 0, 2 * n);
+				while (!deflater.needsInput()) {
+					compressed.write(output, deflater.deflate(output), offHeapLimit);
+				}
+			}
+			deflater.finish();
+			while (!deflater.finished()) {
+				compressed.write(output, deflater.deflate(output), offHeapLimit);
+			}
+			return compressed;
+		} catch (IOException | RuntimeException ex) {
+			compressed.close();
+			throw ex;
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Reads a text compressed by this class from a stream, as written by
+	 * {@link #writeTo(OutputStream)}.
+	 *
+	 * @param in
+	 *            the stream
+	 * @param length
+	 *            number of characters of the text
+	 * @param size
+	 *            number of compressed bytes
+	 * @param offHeapLimit
+	 *            number of bytes the direct buffers of all the texts may
+	 *            hold, the text is written to a temporary file beyond it
+	 * @return the compressed text
+	 * @throws IOException
+	 *             if the stream can not be read or ends too soon
+	 */
+	public static CompressedText read(InputStream in, int length, long size, long offHeapLimit) throws IOException {
+		CompressedText compressed = new CompressedText(length);
+		try {
+			byte[] bytes = new byte[2 * CHUNK_SIZE];
+			for (long remaining = size; remaining > 0;) {
+				int n = in.read(bytes, 0, (int) Math.min(bytes.length, remaining));
+				if (n < 0)
+					throw new IOException("The compressed text is incomplete.");
+				compressed.write(bytes, n, offHeapLimit);
+				remaining -= n;
+			}
+			return compressed;
+		} catch (IOException | RuntimeException ex) {
+			compressed.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Writes the compressed bytes to a stream.
+	 *
+	 * @param out
+	 *            the stream
+	 * @throws IOException
+	 *             if the stream can not be written, or the text can not be
+	 *             read or was closed
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		byte[] bytes = new byte[2 * CHUNK_SIZE];
+		for (long position = 0; position < size;) {
+			int n = read(bytes, position);
+			if (n <= 0)
+				throw new IOException("The compressed text is incomplete.");
+			out.write(bytes, 0, n);
+			position += n;
+		}
+	}
+
+	/**
+	 * Gets the number of bytes held by the direct buffers of all the
+	 * compressed texts.
+	 *
+	 * @return number of bytes
+	 */
+	public static long getOffHeapUsed() {
+		return OFF_HEAP_USED.get();
+	}
+
+	/**
+	 * Gets the number of characters of the text.
+	 *
+	 * @return number of characters
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Gets the number of compressed bytes.
+	 *
+	 * @return number of bytes
+	 */
+	public long getCompressedSize() {
+		return size;
+	}
+
+	/**
+	 * Checks if the compressed bytes were written to a temporary file.
+	 *
+	 * @return <code>true</code> if the text is stored in a file,
+	 *         <code>false</code> if it is stored in direct buffers
+	 */
+	public boolean isSpilled() {
+		return file != null;
+	}
+
+	/**
+	 * Decompresses the text to the heap.
+	 *
+	 * @return the text
+	 * @throws IOException
+	 *             if the text can not be read or was closed
+	 */
+	public TextSource decompress() throws IOException {
+		char[] chars = new char[length];
+		Inflater inflater = new Inflater();
+		try {
+			byte[] input = new byte[2 * CHUNK_SIZE];
+			byte[] output = new byte[2 * CHUNK_SIZE];
+			long read = 0;
+			int written = 0;
+			int low = -1;
+			while (!inflater.finished()) {
+				if (inflater.needsInput()) {
+					int n = read(input, read);
+					if (n <= 0)
+						throw new IOException("The compressed text is incomplete.");
+					read += n;
+					inflater.setInput(input, 0, n);
+				}
+				int n = inflater.inflate(output);
+				for (int i = 0; i < n; i++) {
+					if (low < 0) {
+						low = output[i] & 0xFF;
+					} else {
+						chars[written++] = (char) (low | (output[i] & 0xFF) << 8);
+						low = -1;
+					}
+				}
+			}
+		} catch (DataFormatException ex) {
+			throw new IOException(ex);
+		} finally {
+			inflater.end();
+		}
+		return new CharText(chars);
+	}
+
+	/**
+	 * Shares the text with a reader on another thread. The returned text is
+	 * decompressed on the thread which first reads it, and is also
+	 * {@link Closeable} - it should be closed by a reader which might not read
+	 * it, so the compressed bytes can be released.
+	 *
+	 * @return the shared text
+	 * @throws IOException
+	 *             if the text was closed
+	 */
+	public synchronized TextSource share() throws IOException {
+		if (closed)
+			throw new IOException("The compressed text was closed.");
+		shares++;
+		return new SharedText();
+	}
+
+	/**
+	 * Reads the compressed bytes from the given position.
+	 *
+	 * @param dst
+	 *            receives the bytes
+	 * @param position
+	 *            position of the first byte
+	 * @return number of read bytes, <code>-1</code> if there are no more bytes
+	 * @throws IOException
+	 *             if the bytes can not be read
+	 */
+	private int read(byte[] dst, long position) throws IOException {
+		if (position >= size)
+			return -1;
+		FileChannel channel = file;
+		if (channel != null) {
+			ByteBuffer buffer = ByteBuffer.wrap(dst, 0, (int) Math.min(dst.length, size - position));
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, position + buffer.position()) < 0)
+					break;
+			}
+			return buffer.position();
+		}
+
+		long skipped = 0;
+		for (ByteBuffer block : blocks) {
+			int used = block.position();
+			if (position >= skipped + used) {
+				skipped += used;
+				continue;
+			}
+			// the buffer is shared by the readers
+			ByteBuffer view = block.duplicate();
+			view.limit(used).position((int) (position - skipped));
+			int n = Math.min(view.remaining(), dst.length);
+			view.get(dst, 0, n);
+			return n;
+		}
+		throw new IOException("The compressed text was closed.");
+	}
+
+	/**
+	 * Writes compressed bytes to the direct buffers, or to the temporary file
+	 * once the limit of the direct buffers is reached.
+	 *
+	 * @param bytes
+	 *            the bytes
+	 * @param count
+	 *            number of the bytes
+	 * @param offHeapLimit
+	 *            number of bytes the direct buffers of all the texts may hold
+	 * @throws IOException
+	 *             if the temporary file can not be written
+	 */
+	private void write(byte[] bytes, int count, long offHeapLimit) throws IOException {
+		int pos = 0;
+		while (pos < count) {
+			if (file != null) {
+				ByteBuffer buffer = ByteBuffer.wrap(bytes, pos, count - pos);
+				while (buffer.hasRemaining()) {
+					file.write(buffer);
+				}
+				size += count - pos;
+				return;
+			}
+
+			ByteBuffer block = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+			if (block == null || !block.hasRemaining()) {
+				int capacity = block == null ? FIRST_BLOCK : Math.min(MAX_BLOCK, 2 * block.capacity());
+				if (OFF_HEAP_USED.addAndGet(capacity) > offHeapLimit) {
+					OFF_HEAP_USED.addAndGet(-capacity);
+					spill();
+					continue;
+				}
+				reserved += capacity;
+				block = ByteBuffer.allocateDirect(capacity);
+				blocks.add(block);
+			}
+
+			int n = Math.min(block.remaining(), count - pos);
+			block.put(bytes, pos, n);
+			pos += n;
+			size += n;
+		}
+	}
+
+	/**
+	 * Moves the compressed bytes from the direct buffers to a new temporary
+	 * file.
+	 *
+	 * @throws IOException
+	 *             if the file can not be written
+	 */
+	private void spill() throws IOException {
+		Path path = Files.createTempFile("jnotepad-tab", ".tmp");
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.DELETE_ON_CLOSE);
+		try {
+			for (ByteBuffer block : blocks) {
+				ByteBuffer view = block.duplicate();
+				view.flip();
+				while (view.hasRemaining()) {
+					channel.write(view);
+				}
+			}
+		} catch (IOException ex) {
+			channel.close();
+			throw ex;
+		}
+		file = channel;
+		release();
+	}
+
+	/**
+	 * Releases the direct buffers of the text.
+	 */
+	private void release() {
+		blocks = new ArrayList<>();
+		OFF_HEAP_USED.addAndGet(-reserved);
+		reserved = 0;
+	}
+
+	/**
+	 * Releases the stored bytes and deletes the temporary file, if there is
+	 * one. The text can not be decompressed afterwards. The bytes of a text
+	 * shared with other threads are released once the last of the shared
+	 * texts is read or closed.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		if (shares == 0) {
+			free();
+		}
+	}
+
+	/**
+	 * Releases a shared text, and the stored bytes if it was the last shared
+	 * text of a closed text.
+	 *
+	 * @throws IOException
+	 *             if the temporary file can not be deleted
+	 */
+	private synchronized void unshare() throws IOException {
+		if (--shares == 0 && closed) {
+			free();
+		}
+	}
+
+	/**
+	 * Releases the stored bytes and deletes the temporary file, if there is
+	 * one.
+	 *
+	 * @throws IOException
+	 *             if the file can not be deleted
+	 */
+	private void free() throws IOException {
+		release();
+		if (file != null) {
+			file.close();
+		}
+	}
+
+	/**
+	 * Text shared with a reader on another thread, decompressed when it is
+	 * first read.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private class SharedText implements TextSource, Closeable {
+		/** Decompressed text, <code>null</code> until the text is read. */
+		private TextSource text;
+		/** <code>true</code> once the compressed text is no longer needed. */
+		private boolean done;
+
+		/**
+		 * Gets the decompressed text, decompressing it if it was not read
+		 * yet.
+		 *
+		 * @return the decompressed text
+		 * @throws UncheckedIOException
+		 *             if the text can not be decompressed
+		 */
+		private synchronized TextSource text() {
+			if (text != null)
+				return text;
+			if (done)
+				throw new IllegalStateException("The shared text was closed.");
+			try {
+				text = decompress();
+				close();
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+			return text;
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public void getText(int offset, int len, Segment txt) {
+			text().getText(offset, len, txt);
+		}
+
+		@Override
+		public void getChars(int offset, int len, char[] dst, int dstOffset) {
+			text().getChars(offset, len, dst, dstOffset);
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			if (done)
+				return;
+			done = true;
+			unshare();
+		}
+	}
+
+	/**
+	 * Decompressed text.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private static class CharText implements TextSource {
+		/** Characters of the text. */
+		private char[] chars;
+
+		/**
+		 * Constructs a new {@link CharText}.
+		 *
+		 * @param chars
+		 *            characters of the text
+		 */
+		private CharText(char[] chars) {
+			this.chars = chars;
+		}
+
+		@Override
+		public int length() {
+			return chars.length;
+		}
+
+		@Override
+		public void getText(int offset, int len, Segment txt) {
+			if (offset < 0 || len < 0 || offset + len > chars.length)
+				throw new IndexOutOfBoundsException("Invalid range: " + offset + ", " + len + ".");
+			txt.array = chars;
+			txt.offset = offset;
+			txt.count = len;
+		}
+
+		@Override
+		public void getChars(int offset, int len, char[] dst, int dstOffset) {
+			System.arraycopy(chars, offset, dst, dstOffset, len);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package hr.fer.zemris.java.document;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * Undoable edit of an {@link EditorDocument}, reported to the undoable edit
+ * listeners of the document. The edit wraps the edit of the document and adds
+ * its estimated size, which lets an undo history keep its size bounded. The
+ * size counts the records of the edit, not the text it references, which
+ * stays in the content of the document.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public final class DocumentEdit implements UndoableEdit {
+	/** Wrapped edit. */
+	private UndoableEdit edit;
+	/** Estimated size of the edit, in bytes. */
+	private long footprint;
+
+	/**
+	 * Constructs a new {@link DocumentEdit}.
+	 *
+	 * @param edit
+	 *            wrapped edit
+	 * @param footprint
+	 *            estimated size of the edit, in bytes
+	 */
+	DocumentEdit(UndoableEdit edit, long footprint) {
+		this.edit = edit;
+		this.footprint = footprint;
+	}
+
+	/**
+	 * Gets the estimated size of the edit, without the text it references.
+	 *
+	 * @return estimated size, in bytes
+	 */
+	public long getFootprint() {
+		return footprint;
+	}
+
+	/**
+	 * Gets the event describing the edit.
+	 *
+	 * @return the event, <code>null</code> if the edit is a compound edit
+	 */
+	public DocumentEvent getEvent() {
+		return edit instanceof DocumentEvent ? (DocumentEvent) edit : null;
+	}
+
+	@Override
+	public void undo() throws CannotUndoException {
+		edit.undo();
+	}
+
+	@Override
+	public boolean canUndo() {
+		return edit.canUndo();
+	}
+
+	@Override
+	public void redo() throws CannotRedoException {
+		edit.redo();
+	}
+
+	@Override
+	public boolean canRedo() {
+		return edit.canRedo();
+	}
+
+	@Override
+	public void die() {
+		edit.die();
+	}
+
+	@Override
+	public boolean addEdit(UndoableEdit anEdit) {
+		return false;
+	}
+
+	@Override
+	public boolean replaceEdit(UndoableEdit anEdit) {
+		return false;
+	}
+
+	@Override
+	public boolean isSignificant() {
+		return edit.isSignificant();
+	}
+
+	@Override
+	public String getPresentationName() {
+		return edit.getPresentationName();
+	}
+
+	@Override
+	public String getUndoPresentationName() {
+		return edit.getUndoPresentationName();
+	}
+
+	@Override
+	public String getRedoPresentationName() {
+		return edit.getRedoPresentationName();
+	}
+}
@@ -0,0 +1,335 @@
+package hr.fer.zemris.java.document;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * Statistics of a document - the number of characters, non-blank characters,
+ * lines, words and paragraphs.
+ * <p>
+ * A word is a maximal sequence of non-blank characters, and a paragraph is a
+ * maximal sequence of lines containing non-blank characters. The counts are
+ * updated from each insertion and removal, by reading only the edited text and
+ * its surroundings up to the closest non-blank character or the second line
+ * feed, so reading the counts takes constant time and an edit never causes
+ * the whole document to be read.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class DocumentStatistics {
+	/** Number of characters read from the document at once. */
+	private static final int WINDOW = 64;
+
+	/** Measured document. */
+	private Document document;
+	/** Line index of the document. */
+	private ILineIndex lines;
+	/** Number of non-blank characters. */
+	private int nonBlank;
+	/** Number of words. */
+	private int words;
+	/** Number of paragraphs. */
+	private int paragraphs;
+	/** Buffer used when reading the document forwards. */
+	private Segment segment = new Segment();
+	/** Buffer used when reading the document backwards. */
+	private Segment window = new Segment();
+
+	/**
+	 * Constructs a new {@link DocumentStatistics} of an empty document.
+	 *
+	 * @param document
+	 *            measured document
+	 * @param lines
+	 *            line index of the document
+	 */
+	DocumentStatistics(Document document, ILineIndex lines) {
+		this.document = document;
+		this.lines = lines;
+		segment.setPartialReturn(true);
+	}
+
+	/**
+	 * Gets the number of characters.
+	 *
+	 * @return number of characters
+	 */
+	public int getCharacters() {
+		return document.getLength();
+	}
+
+	/**
+	 * Gets the number of non-blank characters.
+	 *
+	 * @return number of non-blank characters
+	 */
+	public int getNonBlankCharacters() {
+		return nonBlank;
+	}
+
+	/**
+	 * Gets the number of lines. An empty document has no lines.
+	 *
+	 * @return number of lines
+	 */
+	public int getLines() {
+		return document.getLength() == 0 ? 0 : lines.getLineCount();
+	}
+
+	/**
+	 * Gets the number of words.
+	 *
+	 * @return number of words
+	 */
+	public int getWords() {
+		return words;
+	}
+
+	/**
+	 * Gets the number of paragraphs.
+	 *
+	 * @return number of paragraphs
+	 */
+	public int getParagraphs() {
+		return paragraphs;
+	}
+
+	/**
+	 * Updates the statistics after an insertion or before a removal, while the
+	 * edited text is in the document.
+	 *
+	 * @param offset
+	 *            offset of the edit
+	 * @param length
+	 *            number of inserted or removed characters
+	 * @param insertion
+	 *            <code>true</code> if the text was inserted, <code>false</code>
+	 *            if it is being removed
+	 * @return edit reverting the update
+	 */
+	UndoableEdit update(int offset, int length, boolean insertion) {
+		int[] delta;
+		try {
+			delta = measure(offset, length);
+		} catch (BadLocationException ex) {
+			throw new IllegalStateException(ex);
+		}
+		int sign = insertion ? 1 : -1;
+		apply(delta, sign);
+		return new StatisticsEdit(delta, sign);
+	}
+
+	/**
+	 * Adds the given change to the counts.
+	 *
+	 * @param delta
+	 *            change of the non-blank character, word and paragraph counts
+	 * @param sign
+	 *            <code>1</code> to add the change, <code>-1</code> to subtract
+	 *            it
+	 */
+	private void apply(int[] delta, int sign) {
+		nonBlank += sign * delta[0];
+		words += sign * delta[1];
+		paragraphs += sign * delta[2];
+	}
+
+	/**
+	 * Measures how much the given range of the text contributes to the counts,
+	 * including the change of the contributions of the text following it.
+	 *
+	 * @param offset
+	 *            start of the range
+	 * @param length
+	 *            length of the range
+	 * @return contributions to the non-blank character, word and paragraph
+	 *         counts
+	 * @throws BadLocationException
+	 *             if the range is not in the document
+	 */
+	private int[] measure(int offset, int length) throws BadLocationException {
+		Counter before = stateAt(offset);
+		Counter with = before.copy();
+
+		int end = offset + length;
+		for (int pos = offset; pos < end; pos += segment.count) {
+			document.getText(pos, end - pos, segment);
+			for (int i = 0; i < segment.count; i++) {
+				with.accept(segment.array[segment.offset + i]);
+			}
+		}
+
+		// the following text is counted with and without the range until the
+		// states of both counters become equivalent
+		Counter without = before.copy();
+		int docLength = document.getLength();
+		int newlines = 0;
+		following: for (int pos = end; pos < docLength; pos += segment.count) {
+			document.getText(pos, docLength - pos, segment);
+			for (int i = 0; i < segment.count; i++) {
+				char c = segment.array[segment.offset + i];
+				with.accept(c);
+				without.accept(c);
+				if (!Character.isWhitespace(c) || (c == '\n' && ++newlines == 2))
+					break following;
+			}
+		}
+
+		return new int[] { with.nonBlank - without.nonBlank, with.words - without.words,
+				with.paragraphs - without.paragraphs };
+	}
+
+	/**
+	 * Creates a counter in the state the text before the given offset leaves
+	 * it in. The text is read backwards up to the closest non-blank character
+	 * or the second line feed.
+	 *
+	 * @param offset
+	 *            the offset
+	 * @return counter with no counted characters
+	 * @throws BadLocationException
+	 *             if the offset is not in the document
+	 */
+	private Counter stateAt(int offset) throws BadLocationException {
+		Counter counter = new Counter();
+		int newlines = 0;
+		boolean first = true;
+
+		for (int pos = offset; pos > 0 && newlines < 2;) {
+			int from = Math.max(0, pos - WINDOW);
+			document.getText(from, pos - from, window);
+			for (int i = window.count - 1; i >= 0 && newlines < 2; i--) {
+				char c = window.array[window.offset + i];
+				if (first) {
+					counter.afterBlank = Character.isWhitespace(c);
+					first = false;
+				}
+				if (!Character.isWhitespace(c)) {
+					counter.started = true;
+					counter.newlines = newlines;
+					return counter;
+				}
+				if (c == '\n') {
+					newlines++;
+				}
+			}
+			pos = from;
+		}
+
+		counter.newlines = newlines;
+		// after two line feeds the next non-blank character starts a paragraph
+		counter.started = newlines == 2;
+		return counter;
+	}
+
+	/**
+	 * Counts characters, words and paragraphs of a text read one character
+	 * at a time.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private static final class Counter {
+		/** <code>true</code> if the previous character is blank or missing. */
+		private boolean afterBlank = true;
+		/** Line feeds since the previous non-blank character, at most two. */
+		private int newlines;
+		/** <code>true</code> if a non-blank character was read before. */
+		private boolean started;
+		/** Number of counted non-blank characters. */
+		private int nonBlank;
+		/** Number of counted words. */
+		private int words;
+		/** Number of counted paragraphs. */
+		private int paragraphs;
+
+		/**
+		 * Counts the given character.
+		 *
+		 * @param c
+		 *            the character
+		 */
+		private void accept(char c) {
+			if (Character.isWhitespace(c)) {
+				afterBlank = true;
+				if (c == '\n' && newlines < 2) {
+					newlines++;
+				}
+				return;
+			}
+
+			nonBlank++;
+			if (afterBlank) {
+				words++;
+			}
+			// a blank line separates two paragraphs
+			if (!started || newlines == 2) {
+				paragraphs++;
+			}
+			afterBlank = false;
+			newlines = 0;
+			started = true;
+		}
+
+		/**
+		 * Copies the state of the counter, without the counts.
+		 *
+		 * @return new counter in the same state
+		 */
+		private Counter copy() {
+			Counter copy = new Counter();
+			copy.afterBlank = afterBlank;
+			copy.newlines = newlines;
+			copy.started = started;
+			return copy;
+		}
+	}
+
+	/**
+	 * Change of the statistics, undone and redone together with the edit of
+	 * the document which caused it.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private class StatisticsEdit extends AbstractUndoableEdit {
+		/** Default serialization version. */
+		private static final long serialVersionUID = 1L;
+
+		/** Change of the counts. */
+		private int[] delta;
+		/** Sign with which the change was applied. */
+		private int sign;
+
+		/**
+		 * Constructs a new {@link StatisticsEdit}.
+		 *
+		 * @param delta
+		 *            change of the counts
+		 * @param sign
+		 *            sign with which the change was applied
+		 */
+		private StatisticsEdit(int[] delta, int sign) {
+			this.delta = delta;
+			this.sign = sign;
+		}
+
+		@Override
+		public void undo() throws CannotUndoException {
+			super.undo();
+			apply(delta, -sign);
+		}
+
+		@Override
+		public void redo() throws CannotRedoException {
+			super.redo();
+			apply(delta, sign);
+		}
+	}
+}
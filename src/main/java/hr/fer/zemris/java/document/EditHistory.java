@@ -0,0 +1,246 @@
+package hr.fer.zemris.java.document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoManager;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * Undo history of a document with a bounded size.
+ * <p>
+ * Consecutive typing is merged into a single entry - characters typed one
+ * after another, or deleted one after another with the backspace or delete
+ * key, are undone together, unless the pause between them was longer than
+ * {@link #COALESCE_MILLIS} or a line feed was typed. The history estimates
+ * the size of its entries from the {@link DocumentEdit}s of an
+ * {@link EditorDocument}. Once the estimate exceeds the capacity of the
+ * history, the oldest entries are dropped. The newest entry is always kept.
+ * <p>
+ * The size counts the records kept for undo, not the text they reference.
+ * Inserted and removed text is referenced in the buffers of the piece table
+ * instead of being copied, and those buffers are held by the document itself,
+ * so dropping an entry does not release its text. The capacity therefore
+ * bounds the undo records, not the memory of the document.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class EditHistory extends UndoManager {
+	/** Default serialization version. */
+	private static final long serialVersionUID = 1L;
+	/** Longest pause between typed characters merged into one entry. */
+	public static final long COALESCE_MILLIS = 1000;
+	/** Estimated size of an edit which is not a {@link DocumentEdit}. */
+	private static final long DEFAULT_FOOTPRINT = 256;
+	/** Largest number of entries, the capacity normally limits them first. */
+	private static final int ENTRY_LIMIT = 100_000;
+
+	/** Largest estimated size of the entries, in bytes. */
+	private long capacity;
+	/** Estimated size of the entries, in bytes. */
+	private long footprint;
+
+	/**
+	 * Constructs a new {@link EditHistory}.
+	 *
+	 * @param capacity
+	 *            largest estimated size of the entries, in bytes
+	 */
+	public EditHistory(long capacity) {
+		this.capacity = capacity;
+		setLimit(ENTRY_LIMIT);
+	}
+
+	/**
+	 * Gets the estimated size of the entries of the history, without the text
+	 * they reference.
+	 *
+	 * @return estimated size, in bytes
+	 */
+	public synchronized long getFootprint() {
+		return footprint;
+	}
+
+	/**
+	 * Gets the largest estimated size of the entries of the history.
+	 *
+	 * @return capacity of the history, in bytes
+	 */
+	public long getCapacity() {
+		return capacity;
+	}
+
+	@Override
+	public synchronized boolean addEdit(UndoableEdit anEdit) {
+		Entry entry = new Entry(anEdit);
+		boolean added = super.addEdit(entry);
+		footprint += entry.footprint;
+
+		// the edits which could be redone were dropped when adding the entry
+		while (footprint > capacity && edits.size() > 1) {
+			trimEdits(0, 0);
+		}
+		return added;
+	}
+
+	@Override
+	public synchronized void undo() throws CannotUndoException {
+		super.undo();
+		closeLast();
+	}
+
+	@Override
+	public synchronized void redo() throws CannotRedoException {
+		super.redo();
+		closeLast();
+	}
+
+	@Override
+	public synchronized void discardAllEdits() {
+		super.discardAllEdits();
+		footprint = 0;
+	}
+
+	@Override
+	protected void trimEdits(int from, int to) {
+		for (int i = from; i <= to; i++) {
+			footprint -= ((Entry) edits.get(i)).footprint;
+		}
+		super.trimEdits(from, to);
+	}
+
+	/**
+	 * Stops the entry which will be undone next from receiving typing, so the
+	 * typing after an undo or redo starts a new entry.
+	 */
+	private void closeLast() {
+		UndoableEdit last = editToBeUndone();
+		if (last != null) {
+			((Entry) last).open = false;
+		}
+	}
+
+	/**
+	 * Entry of the history, holding one or more edits undone together.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private static class Entry extends AbstractUndoableEdit {
+		/** Default serialization version. */
+		private static final long serialVersionUID = 1L;
+		/** Kind of an entry which is not typing. */
+		private static final int OTHER = 0;
+		/** Kind of an entry of typed characters. */
+		private static final int TYPING = 1;
+		/** Kind of an entry of deleted characters. */
+		private static final int DELETING = 2;
+
+		/** Edits of the entry, in the order they were made. */
+		private List<UndoableEdit> edits = new ArrayList<>(1);
+		/** Estimated size of the edits. */
+		private long footprint;
+		/** Kind of the entry. */
+		private int kind = OTHER;
+		/** Offset of the last edit. */
+		private int offset;
+		/** Offset following the last typed character. */
+		private int end;
+		/** Time of the last edit, in milliseconds. */
+		private long time = System.currentTimeMillis();
+		/** <code>true</code> if typing can be merged into the entry. */
+		private boolean open = true;
+
+		/**
+		 * Constructs a new {@link Entry} of the given edit.
+		 *
+		 * @param edit
+		 *            the edit
+		 */
+		private Entry(UndoableEdit edit) {
+			edits.add(edit);
+			footprint = DEFAULT_FOOTPRINT;
+			if (!(edit instanceof DocumentEdit))
+				return;
+
+			DocumentEdit documentEdit = (DocumentEdit) edit;
+			footprint = documentEdit.getFootprint();
+			DocumentEvent event = documentEdit.getEvent();
+			if (event == null || event.getLength() != 1)
+				return;
+
+			offset = event.getOffset();
+			end = offset + 1;
+			if (event.getType() == DocumentEvent.EventType.REMOVE) {
+				kind = DELETING;
+			} else if (event.getType() == DocumentEvent.EventType.INSERT) {
+				kind = TYPING;
+				try {
+					// a new line ends the typed entry
+					open = !event.getDocument().getText(offset, 1).equals("\n");
+				} catch (BadLocationException ex) {
+					open = false;
+				}
+			}
+		}
+
+		@Override
+		public boolean addEdit(UndoableEdit anEdit) {
+			if (!open || kind == OTHER || !(anEdit instanceof Entry))
+				return false;
+
+			Entry next = (Entry) anEdit;
+			if (next.kind != kind || next.time - time > COALESCE_MILLIS)
+				return false;
+			// typing continues after the last character, while deleting
+			// continues before it with backspace or at it with delete
+			boolean continues = kind == TYPING ? next.offset == end
+					: next.offset == offset - 1 || next.offset == offset;
+			if (!continues)
+				return false;
+
+			edits.addAll(next.edits);
+			footprint += next.footprint;
+			offset = next.offset;
+			end = next.end;
+			time = next.time;
+			open = next.open;
+			return true;
+		}
+
+		@Override
+		public void undo() throws CannotUndoException {
+			super.undo();
+			for (int i = edits.size() - 1; i >= 0; i--) {
+				edits.get(i).undo();
+			}
+		}
+
+		@Override
+		public void redo() throws CannotRedoException {
+			super.redo();
+			for (UndoableEdit edit : edits) {
+				edit.redo();
+			}
+		}
+
+		@Override
+		public void die() {
+			for (UndoableEdit edit : edits) {
+				edit.die();
+			}
+			super.die();
+		}
+
+		@Override
+		public String getPresentationName() {
+			return edits.get(0).getPresentationName();
+		}
+	}
+}
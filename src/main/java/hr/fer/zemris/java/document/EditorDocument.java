@@ -0,0 +1,372 @@
+package hr.fer.zemris.java.document;
+
+import java.util.Arrays;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.CompoundEdit;
+
+/**
+ * Plain text document edited in the notepad. The text is stored in a
+ * {@link PieceTableContent}, so an immutable snapshot of the text can be taken
+ * at any moment without copying it.
+ * <p>
+ * Besides the line elements of the {@link PlainDocument}, the document keeps
+ * an index of its line starts in a primitive array. The index is updated
+ * before the listeners of the document are notified and is undone together
+ * with the edits of the document. The {@link DocumentStatistics} are kept up
+ * to date in the same way. Several edits can be grouped into a compound edit,
+ * which is undone and redone as a whole. The undoable edits are reported as
+ * {@link DocumentEdit}s, which estimate the size of their records.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class EditorDocument extends PlainDocument {
+	/** Default serialization version. */
+	private static final long serialVersionUID = 1L;
+	/** Estimated size of the event and the fixed edits of an edit. */
+	private static final int EDIT_BYTES = 320;
+	/** Estimated size of a piece of a piece table. */
+	private static final int PIECE_BYTES = 48;
+	/** Estimated size of a line element with its positions. */
+	private static final int ELEMENT_BYTES = 112;
+
+	/** Index of the line starts. */
+	private transient LineIndex lines = new LineIndex();
+	/** Statistics of the document. */
+	private transient DocumentStatistics statistics;
+	/** Buffer used when reading inserted text. */
+	private transient Segment inserted = new Segment();
+	/** Edit collecting the edits of a compound edit, <code>null</code> if none. */
+	private transient CompoundEdit compound;
+	/** Number of started and not yet ended compound edits. */
+	private transient int compoundDepth;
+	/** <code>true</code> if the current compound edit collected any edits. */
+	private transient boolean compoundChanged;
+	/** Estimated size of the edits of the current compound edit. */
+	private transient long compoundFootprint;
+	/** Estimated size of the edit being made. */
+	private transient long editFootprint;
+
+	/**
+	 * Constructs a new empty {@link EditorDocument}.
+	 */
+	public EditorDocument() {
+		this(null);
+	}
+
+	/**
+	 * Constructs a new {@link EditorDocument} initially containing the given
+	 * text. The text is not copied, the content of the document is built
+	 * over it.
+	 *
+	 * @param text
+	 *            initial text, can be <code>null</code>
+	 */
+	public EditorDocument(TextSource text) {
+		super(new PieceTableContent(text));
+		inserted.setPartialReturn(true);
+		statistics = new DocumentStatistics(this, lines);
+		if (text == null || text.length() == 0)
+			return;
+
+		// the text is indexed as if it was just inserted into the content
+		writeLock();
+		try {
+			DefaultDocumentEvent initial = new DefaultDocumentEvent(0, text.length(), DocumentEvent.EventType.INSERT);
+			insertUpdate(initial, null);
+			initial.end();
+		} finally {
+			editFootprint = 0;
+			writeUnlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The single line of the root spans the whole initial text, so the text
+	 * can be indexed as a single insertion.
+	 */
+	@Override
+	protected AbstractElement createDefaultRoot() {
+		BranchElement map = (BranchElement) createBranchElement(null, null);
+		map.replace(0, 0, new Element[] { createLeafElement(map, null, 0, getLength() + 1) });
+		return map;
+	}
+
+	/**
+	 * Gets an immutable snapshot of the current text. Must be called while the
+	 * document can not be modified, usually on the event dispatch thread,
+	 * while the returned snapshot can be read from any thread.
+	 *
+	 * @return snapshot of the text
+	 */
+	public TextSource snapshot() {
+		return content().snapshot();
+	}
+
+	/**
+	 * Copies the text of the document into a new buffer, so the text removed
+	 * from the document is no longer held by its content. The text, the lines
+	 * and the positions of the document are not changed.
+	 */
+	public void compact() {
+		writeLock();
+		try {
+			content().compact();
+		} finally {
+			writeUnlock();
+		}
+	}
+
+	/**
+	 * Gets the index of the line starts of the document. The index must be
+	 * read under the same rules as the document itself.
+	 *
+	 * @return index of the line starts
+	 */
+	public ILineIndex getLineIndex() {
+		return lines;
+	}
+
+	/**
+	 * Gets the statistics of the document, updated with each edit of the
+	 * document.
+	 *
+	 * @return statistics of the document
+	 */
+	public DocumentStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Starts a compound edit. The undoable edits of the document are
+	 * collected until the matching call of {@link #endCompoundEdit()}, and
+	 * then reported to the undoable edit listeners as a single edit. Compound
+	 * edits may be nested, in which case the outermost one collects all the
+	 * edits.
+	 */
+	public void beginCompoundEdit() {
+		if (compoundDepth++ == 0) {
+			compound = new CompoundEdit();
+			compoundChanged = false;
+			compoundFootprint = 0;
+		}
+	}
+
+	/**
+	 * Ends a compound edit started by {@link #beginCompoundEdit()}. Ending the
+	 * outermost compound edit reports the collected edits, if there are any.
+	 */
+	public void endCompoundEdit() {
+		if (compoundDepth == 0)
+			throw new IllegalStateException("No compound edit was started.");
+		if (--compoundDepth > 0)
+			return;
+
+		CompoundEdit edit = compound;
+		compound = null;
+		edit.end();
+		if (compoundChanged) {
+			super.fireUndoableEditUpdate(new UndoableEditEvent(this, new DocumentEdit(edit, compoundFootprint)));
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * A replacement which both removes and inserts text is a compound edit.
+	 */
+	@Override
+	public void replace(int offset, int length, String text, AttributeSet attrs) throws BadLocationException {
+		if (length == 0 || text == null || text.isEmpty()) {
+			super.replace(offset, length, text, attrs);
+			return;
+		}
+
+		beginCompoundEdit();
+		try {
+			super.replace(offset, length, text, attrs);
+		} finally {
+			endCompoundEdit();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The edits are reported as {@link DocumentEdit}s with their estimated
+	 * size.
+	 */
+	@Override
+	protected void fireUndoableEditUpdate(UndoableEditEvent e) {
+		long footprint = editFootprint;
+		editFootprint = 0;
+		if (compound == null) {
+			super.fireUndoableEditUpdate(new UndoableEditEvent(this, new DocumentEdit(e.getEdit(), footprint)));
+			return;
+		}
+		compound.addEdit(e.getEdit());
+		compoundChanged = true;
+		compoundFootprint += footprint;
+	}
+
+	@Override
+	protected void insertUpdate(DefaultDocumentEvent chng, AttributeSet attr) {
+		super.insertUpdate(chng, attr);
+
+		int offset = chng.getOffset();
+		int length = chng.getLength();
+		int[] starts = new int[8];
+		int count = 0;
+		try {
+			for (int pos = 0; pos < length; pos += inserted.count) {
+				getText(offset + pos, length - pos, inserted);
+				for (int i = 0; i < inserted.count; i++) {
+					if (inserted.array[inserted.offset + i] != '\n')
+						continue;
+					if (count == starts.length) {
+						starts = Arrays.copyOf(starts, count * 2);
+					}
+					starts[count++] = pos + i + 1;
+				}
+			}
+		} catch (BadLocationException ex) {
+			throw new IllegalStateException(ex);
+		}
+
+		starts = Arrays.copyOf(starts, count);
+		lines.insert(offset, length, starts);
+		chng.addEdit(new LineEdit(offset, length, starts, true));
+		chng.addEdit(statistics.update(offset, length, true));
+
+		// the content was already edited
+		editFootprint = footprint(chng, starts.length) + (long) PIECE_BYTES * content().getLastEditPieces();
+	}
+
+	@Override
+	protected void removeUpdate(DefaultDocumentEvent chng) {
+		super.removeUpdate(chng);
+
+		int offset = chng.getOffset();
+		int length = chng.getLength();
+		// the removed text is still in the document
+		chng.addEdit(statistics.update(offset, length, false));
+		int[] starts = lines.remove(offset, length);
+		chng.addEdit(new LineEdit(offset, length, starts, false));
+		editFootprint = footprint(chng, starts.length);
+	}
+
+	@Override
+	protected void postRemoveUpdate(DefaultDocumentEvent chng) {
+		super.postRemoveUpdate(chng);
+		// the removed pieces are known once the content is edited
+		editFootprint += (long) PIECE_BYTES * content().getLastEditPieces();
+	}
+
+	/**
+	 * Estimates the size of the undoable edit of the given event, without the
+	 * edit of the content.
+	 *
+	 * @param chng
+	 *            the event
+	 * @param lineStarts
+	 *            number of the inserted or removed line starts
+	 * @return estimated size, in bytes
+	 */
+	private long footprint(DefaultDocumentEvent chng, int lineStarts) {
+		long elements = 0;
+		DocumentEvent.ElementChange change = chng.getChange(getDefaultRootElement());
+		if (change != null) {
+			elements = change.getChildrenAdded().length + change.getChildrenRemoved().length;
+		}
+		return EDIT_BYTES + ELEMENT_BYTES * elements + 4L * lineStarts;
+	}
+
+	/**
+	 * Gets the content of the document.
+	 *
+	 * @return the content
+	 */
+	private PieceTableContent content() {
+		return (PieceTableContent) getContent();
+	}
+
+	/**
+	 * Change of the line index, undone and redone together with the edit of
+	 * the document which caused it.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private class LineEdit extends AbstractUndoableEdit {
+		/** Default serialization version. */
+		private static final long serialVersionUID = 1L;
+
+		/** Offset of the edit. */
+		private int offset;
+		/** Number of inserted or removed characters. */
+		private int length;
+		/** Starts of the inserted or removed lines, relative to the offset. */
+		private int[] starts;
+		/** <code>true</code> if the text was inserted, otherwise removed. */
+		private boolean insertion;
+
+		/**
+		 * Constructs a new {@link LineEdit}.
+		 *
+		 * @param offset
+		 *            offset of the edit
+		 * @param length
+		 *            number of inserted or removed characters
+		 * @param starts
+		 *            starts of the inserted or removed lines
+		 * @param insertion
+		 *            <code>true</code> if the text was inserted,
+		 *            <code>false</code> if it was removed
+		 */
+		private LineEdit(int offset, int length, int[] starts, boolean insertion) {
+			this.offset = offset;
+			this.length = length;
+			this.starts = starts;
+			this.insertion = insertion;
+		}
+
+		@Override
+		public void undo() throws CannotUndoException {
+			super.undo();
+			apply(!insertion);
+		}
+
+		@Override
+		public void redo() throws CannotRedoException {
+			super.redo();
+			apply(insertion);
+		}
+
+		/**
+		 * Inserts or removes the lines of the edit.
+		 *
+		 * @param insert
+		 *            <code>true</code> to insert the lines, <code>false</code>
+		 *            to remove them
+		 */
+		private void apply(boolean insert) {
+			if (insert) {
+				lines.insert(offset, length, starts);
+			} else {
+				lines.remove(offset, length);
+			}
+		}
+	}
+}
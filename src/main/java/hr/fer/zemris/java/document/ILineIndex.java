@@ -0,0 +1,41 @@
+package hr.fer.zemris.java.document;
+
+/**
+ * Index of the line starts of a text, translating between character offsets
+ * and line numbers without reading the text.
+ * <p>
+ * Lines are separated by line feeds, so a text always has at least one line
+ * and a text ending with a line feed ends with an empty line.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public interface ILineIndex {
+
+	/**
+	 * Gets the number of lines in the text.
+	 *
+	 * @return number of lines, at least one
+	 */
+	public int getLineCount();
+
+	/**
+	 * Gets the number of the line containing the given offset. Offsets outside
+	 * of the text belong to the closest line.
+	 *
+	 * @param offset
+	 *            character offset
+	 * @return line number, starting from zero
+	 */
+	public int getLineOfOffset(int offset);
+
+	/**
+	 * Gets the offset of the first character of the given line. Lines outside
+	 * of the text are clamped to the closest line.
+	 *
+	 * @param line
+	 *            line number, starting from zero
+	 * @return offset of the line start
+	 */
+	public int getLineStartOffset(int line);
+}
@@ -0,0 +1,176 @@
+package hr.fer.zemris.java.document;
+
+import java.util.Arrays;
+
+/**
+ * Line starts of an edited text, kept in a gap buffer of primitive offsets.
+ * <p>
+ * The line starts before the gap store their offsets directly, while the line
+ * starts after the gap store their offsets relative to a shared shift. An edit
+ * moves the gap to the edited line, changes the shift and fills or empties the
+ * gap, so its cost depends only on the number of lines inserted or removed and
+ * the distance from the previous edit. Translating between offsets and lines
+ * is a binary search over the buffer.
+ *
+ * @author Mirna Baksa
+ *
+ */
+final class LineIndex implements ILineIndex {
+	/** Initial capacity of the buffer. */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/** Line starts, split by the gap. */
+	private int[] starts = new int[INITIAL_CAPACITY];
+	/** Index of the first free slot of the gap. */
+	private int gapStart;
+	/** Index of the first line start after the gap. */
+	private int gapEnd = INITIAL_CAPACITY;
+	/** Shift of the line starts after the gap. */
+	private int shift;
+
+	/**
+	 * Constructs a new {@link LineIndex} of an empty text.
+	 */
+	LineIndex() {
+		starts[gapStart++] = 0;
+	}
+
+	@Override
+	public int getLineCount() {
+		return gapStart + starts.length - gapEnd;
+	}
+
+	@Override
+	public int getLineOfOffset(int offset) {
+		// the last line starting at or before the offset
+		return countStartsUpTo(offset) - 1;
+	}
+
+	@Override
+	public int getLineStartOffset(int line) {
+		if (line <= 0)
+			return 0;
+		return get(Math.min(line, getLineCount() - 1));
+	}
+
+	/**
+	 * Updates the index after an insertion.
+	 *
+	 * @param offset
+	 *            offset of the insertion
+	 * @param length
+	 *            number of inserted characters
+	 * @param lineStarts
+	 *            starts of the inserted lines, relative to the offset of the
+	 *            insertion and in ascending order
+	 */
+	void insert(int offset, int length, int[] lineStarts) {
+		// lines starting at the offset keep their start
+		moveGap(countStartsUpTo(offset));
+		shift += length;
+		ensureGap(lineStarts.length);
+		for (int start : lineStarts) {
+			starts[gapStart++] = offset + start;
+		}
+	}
+
+	/**
+	 * Updates the index after a removal. The lines whose preceding line feeds
+	 * were removed are removed from the index.
+	 *
+	 * @param offset
+	 *            offset of the removal
+	 * @param length
+	 *            number of removed characters
+	 * @return starts of the removed lines, relative to the offset of the
+	 *         removal
+	 */
+	int[] remove(int offset, int length) {
+		moveGap(countStartsUpTo(offset));
+		int count = countStartsUpTo(offset + length) - gapStart;
+
+		int[] removed = new int[count];
+		for (int i = 0; i < count; i++) {
+			removed[i] = starts[gapEnd + i] + shift - offset;
+		}
+		gapEnd += count;
+		shift -= length;
+		return removed;
+	}
+
+	/**
+	 * Gets the start of the given line.
+	 *
+	 * @param line
+	 *            line number
+	 * @return offset of the line start
+	 */
+	private int get(int line) {
+		return line < gapStart ? starts[line] : starts[line + gapEnd - gapStart] + shift;
+	}
+
+	/**
+	 * Counts the lines starting at or before the given offset.
+	 *
+	 * @param offset
+	 *            the offset
+	 * @return number of the lines
+	 */
+	private int countStartsUpTo(int offset) {
+		int low = 1;
+		int high = getLineCount();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (get(mid) <= offset) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Moves the gap so that it follows the given number of lines.
+	 *
+	 * @param index
+	 *            number of lines before the gap
+	 */
+	private void moveGap(int index) {
+		if (index < gapStart) {
+			int n = gapStart - index;
+			System.arraycopy(starts, index, starts, gapEnd - n, n);
+			gapStart -= n;
+			gapEnd -= n;
+			for (int i = gapEnd; i < gapEnd + n; i++) {
+				starts[i] -= shift;
+			}
+		} else if (index > gapStart) {
+			int n = index - gapStart;
+			System.arraycopy(starts, gapEnd, starts, gapStart, n);
+			for (int i = gapStart; i < index; i++) {
+				starts[i] += shift;
+			}
+			gapStart += n;
+			gapEnd += n;
+		}
+	}
+
+	/**
+	 * Makes sure the gap can receive the given number of line starts.
+	 *
+	 * @param count
+	 *            number of line starts
+	 */
+	private void ensureGap(int count) {
+		if (gapEnd - gapStart >= count)
+			return;
+
+		int after = starts.length - gapEnd;
+		int capacity = Math.max(starts.length * 2, gapStart + count + after);
+		int[] grown = Arrays.copyOf(starts, capacity);
+		System.arraycopy(starts, gapEnd, grown, capacity - after, after);
+		starts = grown;
+		gapEnd = capacity - after;
+	}
+}
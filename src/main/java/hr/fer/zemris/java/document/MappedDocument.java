@@ -0,0 +1,310 @@
+package hr.fer.zemris.java.document;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * Read-only {@link Document} showing a {@link MappedTextFile}.
+ * <p>
+ * The document does not hold any text nor any line elements - line elements
+ * are created on request using the block index of the mapped file, and the
+ * text is decoded only for the requested ranges. Any attempt to modify the
+ * document results with a {@link BadLocationException}, the document only
+ * grows while the file is being indexed.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class MappedDocument extends AbstractDocument implements Closeable {
+	/** Default serialization version. */
+	private static final long serialVersionUID = 1L;
+	/** Largest number of characters returned by a single partial read. */
+	private static final int PARTIAL_LIMIT = 1 << 14;
+
+	/** Mapped file. */
+	private transient MappedTextFile file;
+	/** Root element, its children are the lines of the file. */
+	private transient Element root;
+
+	/**
+	 * Constructs a new {@link MappedDocument}.
+	 *
+	 * @param file
+	 *            mapped file to show
+	 */
+	public MappedDocument(MappedTextFile file) {
+		super(new MappedContent(file));
+		this.file = file;
+		this.root = new RootElement();
+	}
+
+	/**
+	 * Gets the mapped file shown in the document.
+	 *
+	 * @return mapped file
+	 */
+	public MappedTextFile getFile() {
+		return file;
+	}
+
+	/**
+	 * Shows the part of the mapped file indexed so far. The grown text is
+	 * reported to the listeners as an insertion at the end of the document.
+	 * Must be called on the event dispatch thread.
+	 */
+	public void update() {
+		writeLock();
+		try {
+			int oldLength = getLength();
+			if (!file.update())
+				return;
+			DefaultDocumentEvent e = new DefaultDocumentEvent(oldLength, getLength() - oldLength,
+					DocumentEvent.EventType.INSERT);
+			e.end();
+			fireInsertUpdate(e);
+		} finally {
+			writeUnlock();
+		}
+	}
+
+	@Override
+	public Element getDefaultRootElement() {
+		return root;
+	}
+
+	@Override
+	public Element getParagraphElement(int pos) {
+		return root.getElement(root.getElementIndex(pos));
+	}
+
+	@Override
+	public void insertString(int offs, String str, AttributeSet a) throws BadLocationException {
+		throw new BadLocationException("The document is read-only.", offs);
+	}
+
+	@Override
+	public void remove(int offs, int len) throws BadLocationException {
+		throw new BadLocationException("The document is read-only.", offs);
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+	/**
+	 * Element containing all lines of the document.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private class RootElement implements Element {
+
+		@Override
+		public Document getDocument() {
+			return MappedDocument.this;
+		}
+
+		@Override
+		public Element getParentElement() {
+			return null;
+		}
+
+		@Override
+		public String getName() {
+			return AbstractDocument.SectionElementName;
+		}
+
+		@Override
+		public AttributeSet getAttributes() {
+			return SimpleAttributeSet.EMPTY;
+		}
+
+		@Override
+		public int getStartOffset() {
+			return 0;
+		}
+
+		@Override
+		public int getEndOffset() {
+			return file.length() + 1;
+		}
+
+		@Override
+		public int getElementIndex(int offset) {
+			return file.getLineOfOffset(offset);
+		}
+
+		@Override
+		public int getElementCount() {
+			return file.getLineCount();
+		}
+
+		@Override
+		public Element getElement(int index) {
+			if (index < 0 || index >= file.getLineCount())
+				return null;
+			return new LineElement(index);
+		}
+
+		@Override
+		public boolean isLeaf() {
+			return false;
+		}
+	}
+
+	/**
+	 * Element representing a single line. Includes the line terminator.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private class LineElement implements Element {
+		/** Start offset of the line. */
+		private int start;
+		/** End offset of the line. */
+		private int end;
+
+		/**
+		 * Constructs a new {@link LineElement}.
+		 *
+		 * @param line
+		 *            line number
+		 */
+		private LineElement(int line) {
+			this.start = file.getLineStartOffset(line);
+			this.end = line + 1 < file.getLineCount() ? file.getLineStartOffset(line + 1) : file.length() + 1;
+		}
+
+		@Override
+		public Document getDocument() {
+			return MappedDocument.this;
+		}
+
+		@Override
+		public Element getParentElement() {
+			return root;
+		}
+
+		@Override
+		public String getName() {
+			return AbstractDocument.ParagraphElementName;
+		}
+
+		@Override
+		public AttributeSet getAttributes() {
+			return SimpleAttributeSet.EMPTY;
+		}
+
+		@Override
+		public int getStartOffset() {
+			return start;
+		}
+
+		@Override
+		public int getEndOffset() {
+			return end;
+		}
+
+		@Override
+		public int getElementIndex(int offset) {
+			return -1;
+		}
+
+		@Override
+		public int getElementCount() {
+			return 0;
+		}
+
+		@Override
+		public Element getElement(int index) {
+			return null;
+		}
+
+		@Override
+		public boolean isLeaf() {
+			return true;
+		}
+	}
+
+	/**
+	 * Immutable content backed by a mapped file. As in every Swing content, an
+	 * implied line feed follows the text.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private static class MappedContent implements AbstractDocument.Content {
+		/** Mapped file. */
+		private MappedTextFile file;
+
+		/**
+		 * Constructs a new {@link MappedContent}.
+		 *
+		 * @param file
+		 *            mapped file
+		 */
+		private MappedContent(MappedTextFile file) {
+			this.file = file;
+		}
+
+		@Override
+		public Position createPosition(int offset) throws BadLocationException {
+			if (offset < 0 || offset > length())
+				throw new BadLocationException("Invalid position.", offset);
+			return () -> offset;
+		}
+
+		@Override
+		public int length() {
+			return file.length() + 1;
+		}
+
+		@Override
+		public UndoableEdit insertString(int where, String str) throws BadLocationException {
+			throw new BadLocationException("The content is read-only.", where);
+		}
+
+		@Override
+		public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+			throw new BadLocationException("The content is read-only.", where);
+		}
+
+		@Override
+		public String getString(int where, int len) throws BadLocationException {
+			Segment s = new Segment();
+			getChars(where, len, s);
+			return s.toString();
+		}
+
+		@Override
+		public void getChars(int where, int len, Segment txt) throws BadLocationException {
+			if (where < 0 || len < 0 || where + len > length())
+				throw new BadLocationException("Invalid range.", where);
+			if (txt.isPartialReturn()) {
+				len = Math.min(len, PARTIAL_LIMIT);
+			}
+
+			char[] chars = new char[len];
+			int fromFile = Math.min(len, file.length() - where);
+			file.getChars(where, fromFile, chars, 0);
+			if (fromFile < len) {
+				chars[len - 1] = '\n';
+			}
+			txt.array = chars;
+			txt.offset = 0;
+			txt.count = len;
+		}
+	}
+}
@@ -0,0 +1,655 @@
+package hr.fer.zemris.java.document;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import javax.swing.text.Segment;
+
+/**
+ * Read-only view of an UTF-8 encoded text file mapped into memory.
+ * <p>
+ * The file is mapped in fixed-size windows using {@link FileChannel#map}, so
+ * its contents never reside on the heap. A pass over the mapped bytes builds
+ * a sparse block index which stores the character offset and the line number
+ * at the start of every block. The text itself is decoded only on demand,
+ * starting from the nearest indexed block.
+ * <p>
+ * Only the beginning of the file is indexed when it is opened, so opening
+ * takes the same time for any size of the file. The rest is indexed in
+ * chunks by {@link MappedTextFile#indexNext()} on a background thread, while
+ * the text, the line count and the length seen by the readers grow only when
+ * {@link MappedTextFile#update()} is called, so a document showing the file
+ * can fire the matching events.
+ * <p>
+ * Character offsets follow the Swing document model: every <code>"\r\n"</code>
+ * line terminator is seen as a single <code>'\n'</code> and code points
+ * outside of the basic multilingual plane take two characters. Malformed
+ * sequences are decoded as <code>U+FFFD</code>.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class MappedTextFile implements TextSource, ILineIndex, Closeable {
+	/** Binary logarithm of the size of a mapped window. */
+	private static final int WINDOW_SHIFT = 26;
+	/** Size of a mapped window in bytes. */
+	private static final long WINDOW_SIZE = 1L << WINDOW_SHIFT;
+	/** Size of an index block in bytes. */
+	private static final int BLOCK_SIZE = 1 << 16;
+	/** Number of bytes indexed when the file is opened. */
+	private static final long FIRST_INDEX = 1L << 20;
+	/** Number of bytes indexed by a single call of the background indexing. */
+	private static final long INDEX_CHUNK = 1L << 24;
+	/** Largest number of characters returned by a single partial read. */
+	private static final int PARTIAL_LIMIT = 1 << 14;
+	/** Character used in place of malformed input. */
+	private static final char REPLACEMENT = '\uFFFD';
+
+	/** Path of the mapped file. */
+	private Path path;
+	/** Channel of the mapped file. */
+	private FileChannel channel;
+	/** Size of the file in bytes. */
+	private long size;
+	/** Mapped windows, each created when first accessed. */
+	private MappedByteBuffer[] windows;
+	/** Byte position of each index block. */
+	private long[] blockBytes;
+	/** Character offset of each index block. */
+	private int[] blockChars;
+	/** Number of line feeds preceding each index block. */
+	private int[] blockLines;
+	/** Number of indexed blocks. */
+	private int blocks;
+	/** Byte position up to which the file is indexed. */
+	private long scanned;
+	/** Number of characters in the indexed bytes. */
+	private long scannedChars;
+	/** Number of line feeds in the indexed bytes. */
+	private int scannedLines;
+	/** Byte position of the start of the last indexed line. */
+	private long lineStart;
+	/** Length of the longest terminated line in the indexed bytes. */
+	private long longestTerminated;
+	/** Indexed part of the file published by the indexing thread. */
+	private volatile Extent indexed;
+	/** Indexed part of the file seen by the readers. */
+	private volatile Extent extent;
+	/** Last position reached while decoding, speeds up sequential access. */
+	private volatile Cursor cursor;
+
+	/**
+	 * Constructs a new {@link MappedTextFile}. Use
+	 * {@link MappedTextFile#open(Path)} to create an indexed instance.
+	 *
+	 * @param path
+	 *            path of the file
+	 * @param channel
+	 *            opened channel of the file
+	 * @throws IOException
+	 *             if the size of the file can not be read
+	 */
+	private MappedTextFile(Path path, FileChannel channel) throws IOException {
+		this.path = path;
+		this.channel = channel;
+		this.size = channel.size();
+		this.windows = new MappedByteBuffer[(int) ((size + WINDOW_SIZE - 1) >>> WINDOW_SHIFT)];
+
+		int capacity = (int) (size / BLOCK_SIZE) + 1;
+		this.blockBytes = new long[capacity];
+		this.blockChars = new int[capacity];
+		this.blockLines = new int[capacity];
+		this.indexed = new Extent(1, 0, 0, 1, 0);
+		this.extent = indexed;
+	}
+
+	/**
+	 * Maps the file at the given path and indexes its beginning. The readers
+	 * see the indexed beginning right away.
+	 *
+	 * @param path
+	 *            path of the file
+	 * @return mapped file
+	 * @throws IOException
+	 *             if the file can not be read
+	 */
+	public static MappedTextFile open(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			MappedTextFile file = new MappedTextFile(path, channel);
+			file.index(FIRST_INDEX);
+			file.update();
+			return file;
+		} catch (IOException | RuntimeException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Indexes the next chunk of the file. The new part of the index is
+	 * published, but not seen by the readers until
+	 * {@link MappedTextFile#update()} is called. The file should be indexed by
+	 * a single thread.
+	 *
+	 * @return <code>true</code> if the whole file is indexed
+	 * @throws IOException
+	 *             if the text is longer than the largest supported document
+	 */
+	public boolean indexNext() throws IOException {
+		index(INDEX_CHUNK);
+		return isIndexed();
+	}
+
+	/**
+	 * Checks if the whole file is indexed, even if the readers do not see the
+	 * whole index yet.
+	 *
+	 * @return <code>true</code> if the whole file is indexed
+	 */
+	public boolean isIndexed() {
+		return indexed.bytes == size;
+	}
+
+	/**
+	 * Gets the number of indexed bytes, even if the readers do not see the
+	 * whole index yet.
+	 *
+	 * @return number of indexed bytes
+	 */
+	public long getIndexedSize() {
+		return indexed.bytes;
+	}
+
+	/**
+	 * Lets the readers see the part of the file indexed so far.
+	 *
+	 * @return <code>true</code> if the readers see more text than before
+	 */
+	public boolean update() {
+		boolean grown = extent != indexed;
+		extent = indexed;
+		return grown;
+	}
+
+	/**
+	 * Extends the block index over the given number of bytes. No bytes are
+	 * decoded. The entries of the index are written before the new
+	 * {@link Extent} is published, so the readers never see an incomplete
+	 * block.
+	 *
+	 * @param bytes
+	 *            number of bytes to index
+	 * @throws IOException
+	 *             if the text is longer than the largest supported document
+	 */
+	private void index(long bytes) throws IOException {
+		long end = Math.min(size, scanned + bytes);
+		long chars = scannedChars;
+		int lines = scannedLines;
+		for (int w = (int) (scanned >>> WINDOW_SHIFT); w < windows.length && (long) w << WINDOW_SHIFT < end; w++) {
+			MappedByteBuffer window = map(w);
+			long base = (long) w << WINDOW_SHIFT;
+			int first = (int) (Math.max(scanned, base) - base);
+			int last = (int) (Math.min(end, base + window.limit()) - base);
+			for (int i = first; i < last; i++) {
+				long pos = base + i;
+				if ((pos & (BLOCK_SIZE - 1)) == 0) {
+					blockBytes[blocks] = pos;
+					blockChars[blocks] = (int) chars;
+					blockLines[blocks] = lines;
+					blocks++;
+				}
+
+				byte b = window.get(i);
+				if ((b & 0xC0) == 0x80) {
+					continue;
+				} else if (b == '\n') {
+					lines++;
+					longestTerminated = Math.max(longestTerminated, pos - lineStart);
+					lineStart = pos + 1;
+				} else if (b == '\r' && pos + 1 < size && byteAt(pos + 1) == '\n') {
+					continue;
+				} else if ((b & 0xF8) == 0xF0) {
+					chars++;
+				}
+				chars++;
+			}
+		}
+		if (chars >= Integer.MAX_VALUE) {
+			throw new IOException(path + " is too large to be shown.");
+		}
+
+		scanned = end;
+		scannedChars = chars;
+		scannedLines = lines;
+		long longest = Math.max(longestTerminated, end - lineStart);
+		indexed = new Extent(Math.max(1, blocks), end, (int) chars, lines + 1, longest);
+	}
+
+	/**
+	 * Returns the number of characters the byte at the given position decodes
+	 * to: zero for continuation bytes and for carriage returns followed by a
+	 * line feed, two for the leading byte of a four byte sequence and one
+	 * otherwise.
+	 *
+	 * @param b
+	 *            the byte
+	 * @param pos
+	 *            position of the byte
+	 * @return number of characters
+	 */
+	private int charsOf(byte b, long pos) {
+		if ((b & 0xC0) == 0x80)
+			return 0;
+		if (b == '\r' && pos + 1 < size && byteAt(pos + 1) == '\n')
+			return 0;
+		if ((b & 0xF8) == 0xF0)
+			return 2;
+		return 1;
+	}
+
+	/**
+	 * Gets the byte at the given position, mapping its window if needed.
+	 *
+	 * @param pos
+	 *            position of the byte
+	 * @return byte at the position
+	 */
+	private byte byteAt(long pos) {
+		int index = (int) (pos >>> WINDOW_SHIFT);
+		MappedByteBuffer window = windows[index];
+		if (window == null) {
+			window = map(index);
+		}
+		return window.get((int) (pos & (WINDOW_SIZE - 1)));
+	}
+
+	/**
+	 * Maps the window with the given index.
+	 *
+	 * @param index
+	 *            index of the window
+	 * @return mapped window
+	 */
+	private synchronized MappedByteBuffer map(int index) {
+		if (windows[index] != null)
+			return windows[index];
+		long start = (long) index << WINDOW_SHIFT;
+		try {
+			windows[index] = channel.map(MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, size - start));
+		} catch (IOException ex) {
+			throw new IllegalStateException("Unable to map " + path + ".", ex);
+		}
+		return windows[index];
+	}
+
+	/**
+	 * Finds the decoding position closest to, but not after the given
+	 * character offset.
+	 *
+	 * @param offset
+	 *            character offset
+	 * @return starting cursor
+	 */
+	private Cursor cursorFor(int offset) {
+		int block = Arrays.binarySearch(blockChars, 0, extent.blocks, offset);
+		if (block < 0) {
+			block = -block - 2;
+		}
+		// several blocks may start at the same offset inside a long sequence
+		while (block > 0 && blockChars[block - 1] == offset) {
+			block--;
+		}
+		Cursor start = new Cursor(blockBytes[block], blockChars[block], blockLines[block]);
+
+		Cursor last = cursor;
+		if (last != null && last.chars <= offset && last.chars >= start.chars) {
+			return last;
+		}
+		return skipContinuations(start);
+	}
+
+	/**
+	 * Finds the decoding position closest to, but not after the start of the
+	 * given line.
+	 *
+	 * @param line
+	 *            line number
+	 * @return starting cursor
+	 */
+	private Cursor cursorForLine(int line) {
+		int block = Arrays.binarySearch(blockLines, 0, extent.blocks, line);
+		if (block < 0) {
+			block = -block - 2;
+		} else {
+			// the line starts somewhere in the previous block
+			while (block > 0 && blockLines[block] == line) {
+				block--;
+			}
+		}
+		Cursor start = new Cursor(blockBytes[block], blockChars[block], blockLines[block]);
+
+		Cursor last = cursor;
+		// a cursor on the line itself may already be past its start
+		if (last != null && last.line < line && last.bytes >= start.bytes) {
+			return last;
+		}
+		return skipContinuations(start);
+	}
+
+	/**
+	 * Moves the cursor over continuation bytes of a sequence which started in
+	 * the previous block.
+	 *
+	 * @param c
+	 *            cursor at a block start
+	 * @return cursor at the first leading byte
+	 */
+	private Cursor skipContinuations(Cursor c) {
+		long pos = c.bytes;
+		while (pos < size && (byteAt(pos) & 0xC0) == 0x80) {
+			pos++;
+		}
+		return new Cursor(pos, c.chars, c.line);
+	}
+
+	/**
+	 * Advances the given cursor to the given character offset.
+	 *
+	 * @param c
+	 *            starting cursor
+	 * @param offset
+	 *            target character offset
+	 * @return cursor at the offset; if the offset points to the second half of
+	 *         a surrogate pair, the cursor points to the start of the pair
+	 */
+	private Cursor advanceTo(Cursor c, int offset) {
+		long pos = c.bytes;
+		int chars = c.chars;
+		int line = c.line;
+		while (pos < size) {
+			byte b = byteAt(pos);
+			int n = charsOf(b, pos);
+			if (chars + n > offset)
+				break;
+			chars += n;
+			if (b == '\n')
+				line++;
+			pos++;
+		}
+		return new Cursor(pos, chars, line);
+	}
+
+	@Override
+	public int length() {
+		return extent.length;
+	}
+
+	/**
+	 * Gets the size of the file in bytes.
+	 *
+	 * @return size of the file
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Gets the path of the mapped file.
+	 *
+	 * @return path of the file
+	 */
+	public Path getPath() {
+		return path;
+	}
+
+	@Override
+	public int getLineCount() {
+		return extent.lineCount;
+	}
+
+	/**
+	 * Gets the length of the longest line in bytes. The value is an upper
+	 * bound of the length of the longest line in characters. A line which is
+	 * not indexed to its end counts only with its indexed bytes.
+	 *
+	 * @return length of the longest line
+	 */
+	public long getLongestLine() {
+		return extent.longestLine;
+	}
+
+	@Override
+	public int getLineOfOffset(int offset) {
+		Extent e = extent;
+		if (offset <= 0)
+			return 0;
+		if (offset >= e.length)
+			return e.lineCount - 1;
+
+		Cursor c = advanceTo(cursorFor(offset), offset);
+		cursor = c;
+		return c.line;
+	}
+
+	@Override
+	public int getLineStartOffset(int line) {
+		Extent e = extent;
+		if (line <= 0)
+			return 0;
+		if (line >= e.lineCount) {
+			line = e.lineCount - 1;
+		}
+
+		Cursor c = cursorForLine(line);
+		long pos = c.bytes;
+		int chars = c.chars;
+		int current = c.line;
+		while (current < line && pos < size) {
+			byte b = byteAt(pos);
+			chars += charsOf(b, pos);
+			if (b == '\n')
+				current++;
+			pos++;
+		}
+		cursor = new Cursor(pos, chars, current);
+		return chars;
+	}
+
+	@Override
+	public void getText(int offset, int len, Segment txt) {
+		if (txt.isPartialReturn()) {
+			len = Math.min(len, PARTIAL_LIMIT);
+		}
+		char[] chars = new char[len];
+		getChars(offset, len, chars, 0);
+		txt.array = chars;
+		txt.offset = 0;
+		txt.count = len;
+	}
+
+	/**
+	 * Decodes the given range of the text into the destination array.
+	 *
+	 * @param offset
+	 *            offset of the first character
+	 * @param len
+	 *            number of characters
+	 * @param dst
+	 *            destination array
+	 * @param dstOffset
+	 *            starting position in the destination array
+	 * @throws IndexOutOfBoundsException
+	 *             if the range is outside of the text
+	 */
+	@Override
+	public void getChars(int offset, int len, char[] dst, int dstOffset) {
+		if (offset < 0 || len < 0 || offset + len > extent.length) {
+			throw new IndexOutOfBoundsException("Invalid range: " + offset + ", " + len + ".");
+		}
+
+		Cursor c = advanceTo(cursorFor(offset), offset);
+		long pos = c.bytes;
+		int chars = c.chars;
+		int line = c.line;
+		int end = offset + len;
+		char[] pair = new char[2];
+		while (chars < end && pos < size) {
+			byte b = byteAt(pos);
+			int n = charsOf(b, pos);
+			if (n == 0) {
+				pos++;
+				continue;
+			}
+			int consumed = decode(pos, pair);
+			for (int i = 0; i < n; i++, chars++) {
+				if (chars >= offset && chars < end) {
+					dst[dstOffset + chars - offset] = pair[i];
+				}
+			}
+			if (b == '\n')
+				line++;
+			pos += consumed;
+		}
+		cursor = new Cursor(pos, chars, line);
+	}
+
+	/**
+	 * Decodes the sequence starting at the given position.
+	 *
+	 * @param pos
+	 *            position of a leading byte
+	 * @param out
+	 *            receives one or two decoded characters
+	 * @return number of consumed bytes
+	 */
+	private int decode(long pos, char[] out) {
+		int b = byteAt(pos) & 0xFF;
+		int needed;
+		int cp;
+		if (b < 0x80) {
+			out[0] = (char) b;
+			return 1;
+		} else if ((b & 0xE0) == 0xC0) {
+			needed = 1;
+			cp = b & 0x1F;
+		} else if ((b & 0xF0) == 0xE0) {
+			needed = 2;
+			cp = b & 0x0F;
+		} else if ((b & 0xF8) == 0xF0) {
+			needed = 3;
+			cp = b & 0x07;
+		} else {
+			out[0] = REPLACEMENT;
+			return 1;
+		}
+
+		int consumed = 1;
+		for (; consumed <= needed; consumed++) {
+			if (pos + consumed >= size)
+				break;
+			int next = byteAt(pos + consumed) & 0xFF;
+			if ((next & 0xC0) != 0x80)
+				break;
+			cp = (cp << 6) | (next & 0x3F);
+		}
+
+		boolean valid = consumed == needed + 1;
+		if (needed == 3) {
+			if (valid && cp >= 0x10000 && cp <= Character.MAX_CODE_POINT) {
+				out[0] = Character.highSurrogate(cp);
+				out[1] = Character.lowSurrogate(cp);
+			} else {
+				out[0] = REPLACEMENT;
+				out[1] = REPLACEMENT;
+			}
+		} else {
+			out[0] = valid ? (char) cp : REPLACEMENT;
+		}
+		return consumed;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Indexed part of the file.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private static class Extent {
+		/** Number of indexed blocks. */
+		private final int blocks;
+		/** Number of indexed bytes. */
+		private final long bytes;
+		/** Length of the indexed text in characters. */
+		private final int length;
+		/** Number of lines in the indexed text. */
+		private final int lineCount;
+		/** Length of the longest indexed line in bytes. */
+		private final long longestLine;
+
+		/**
+		 * Constructs a new {@link Extent}.
+		 *
+		 * @param blocks
+		 *            number of indexed blocks
+		 * @param bytes
+		 *            number of indexed bytes
+		 * @param length
+		 *            length of the indexed text in characters
+		 * @param lineCount
+		 *            number of lines in the indexed text
+		 * @param longestLine
+		 *            length of the longest indexed line in bytes
+		 */
+		private Extent(int blocks, long bytes, int length, int lineCount, long longestLine) {
+			this.blocks = blocks;
+			this.bytes = bytes;
+			this.length = length;
+			this.lineCount = lineCount;
+			this.longestLine = longestLine;
+		}
+	}
+
+	/**
+	 * Position in the file known both in bytes and in characters.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private static class Cursor {
+		/** Byte position. */
+		private final long bytes;
+		/** Character offset. */
+		private final int chars;
+		/** Line number. */
+		private final int line;
+
+		/**
+		 * Constructs a new {@link Cursor}.
+		 *
+		 * @param bytes
+		 *            byte position
+		 * @param chars
+		 *            character offset
+		 * @param line
+		 *            line number
+		 */
+		private Cursor(long bytes, int chars, int line) {
+			this.bytes = bytes;
+			this.chars = chars;
+			this.line = line;
+		}
+	}
+}
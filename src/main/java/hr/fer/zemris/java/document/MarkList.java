@@ -0,0 +1,312 @@
+package hr.fer.zemris.java.document;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.swing.text.Position;
+
+/**
+ * Positions created by a {@link PieceTableContent}, kept sorted by their
+ * offsets.
+ * <p>
+ * As in the {@link javax.swing.text.GapContent}, the marks are split by a
+ * movable gap. Marks before the gap store their offsets directly, while marks
+ * after the gap store their offsets relative to a shared shift. An edit moves
+ * the gap to its offset and changes only the shift, so the cost of an edit
+ * depends on the number of marks between two consecutive edits and not on the
+ * total number of marks.
+ * <p>
+ * The marks are weakly referenced and are dropped once the positions using
+ * them are no longer reachable.
+ *
+ * @author Mirna Baksa
+ *
+ */
+final class MarkList {
+	/** Added to the stored value of the marks after the gap. */
+	private static final long AFTER = 1L << 40;
+	/** Stored values from this one up belong to marks after the gap. */
+	private static final long AFTER_THRESHOLD = AFTER >> 1;
+
+	/** Marks sorted by their offsets. */
+	private List<Mark> marks = new ArrayList<>();
+	/** Index of the first mark after the gap. */
+	private int gapIndex;
+	/** Shift of the marks after the gap. */
+	private long shift;
+	/** Receives the marks whose positions are no longer reachable. */
+	private ReferenceQueue<MarkPosition> queue = new ReferenceQueue<>();
+	/** Number of marks which are no longer used. */
+	private int unused;
+
+	/**
+	 * Creates a position at the given offset. A mark already existing at the
+	 * offset is reused.
+	 *
+	 * @param offset
+	 *            offset of the position
+	 * @return position
+	 */
+	public synchronized Position createPosition(int offset) {
+		purge();
+
+		int index = lowerBound(offset);
+		if (index < marks.size() && offsetOf(marks.get(index)) == offset) {
+			MarkPosition existing = marks.get(index).get();
+			if (existing != null)
+				return existing;
+		}
+
+		MarkPosition position = new MarkPosition();
+		Mark mark = new Mark(position, queue);
+		position.mark = mark;
+		if (index <= gapIndex) {
+			mark.stored = offset;
+			gapIndex++;
+		} else {
+			mark.stored = offset - shift + AFTER;
+		}
+		marks.add(index, mark);
+		return position;
+	}
+
+	/**
+	 * Updates the marks after an insertion. Marks at the offset of the
+	 * insertion are moved to its end, except for the marks at the start of the
+	 * content.
+	 *
+	 * @param offset
+	 *            offset of the insertion
+	 * @param length
+	 *            number of inserted characters
+	 */
+	public synchronized void insertUpdate(int offset, int length) {
+		moveGap(offset == 0 ? 1 : offset);
+		shift += length;
+	}
+
+	/**
+	 * Updates the marks after a removal. Marks inside of the removed range are
+	 * moved to its start.
+	 *
+	 * @param offset
+	 *            offset of the removal
+	 * @param length
+	 *            number of removed characters
+	 */
+	public synchronized void removeUpdate(int offset, int length) {
+		moveGap(offset);
+		int end = offset + length;
+		shift -= length;
+		for (int i = gapIndex, n = marks.size(); i < n; i++) {
+			Mark mark = marks.get(i);
+			if (mark.stored - AFTER + shift + length >= end)
+				break;
+			mark.stored = offset - shift + AFTER;
+		}
+	}
+
+	/**
+	 * Records the offsets of the marks in the given range, including both of
+	 * its ends. Used to restore the marks when a removal is undone.
+	 *
+	 * @param offset
+	 *            start of the range
+	 * @param length
+	 *            length of the range
+	 * @return recorded marks, <code>null</code> if there are none
+	 */
+	public synchronized RecordedMarks record(int offset, int length) {
+		int from = lowerBound(offset);
+		int to = lowerBound(offset + length + 1);
+		if (from == to)
+			return null;
+
+		RecordedMarks recorded = new RecordedMarks(to - from);
+		for (int i = from; i < to; i++) {
+			Mark mark = marks.get(i);
+			recorded.marks[i - from] = mark;
+			recorded.offsets[i - from] = offsetOf(mark);
+		}
+		return recorded;
+	}
+
+	/**
+	 * Restores the recorded marks after the removed text was inserted back.
+	 * All of them are at the same offset at that moment.
+	 *
+	 * @param recorded
+	 *            marks recorded before the removal
+	 * @param current
+	 *            current offset of the recorded marks
+	 */
+	public synchronized void restore(RecordedMarks recorded, int current) {
+		int from = lowerBound(current);
+		int to = lowerBound(current + 1);
+
+		for (int i = 0; i < recorded.marks.length; i++) {
+			Mark mark = recorded.marks[i];
+			int offset = recorded.offsets[i];
+			mark.stored = mark.stored >= AFTER_THRESHOLD ? offset - shift + AFTER : offset;
+		}
+		// marks created at the same offset after the removal are mixed in
+		marks.subList(from, to).sort(Comparator.comparingInt(this::offsetOf));
+	}
+
+	/**
+	 * Gets the current offset of the given mark.
+	 *
+	 * @param mark
+	 *            the mark
+	 * @return offset of the mark
+	 */
+	private int offsetOf(Mark mark) {
+		return (int) (mark.stored >= AFTER_THRESHOLD ? mark.stored - AFTER + shift : mark.stored);
+	}
+
+	/**
+	 * Moves the gap so that the marks with offsets lower than the target are
+	 * before it and all other marks after it.
+	 *
+	 * @param target
+	 *            target offset
+	 */
+	private void moveGap(int target) {
+		while (gapIndex > 0) {
+			Mark mark = marks.get(gapIndex - 1);
+			int offset = offsetOf(mark);
+			if (offset < target)
+				break;
+			mark.stored = offset - shift + AFTER;
+			gapIndex--;
+		}
+		while (gapIndex < marks.size()) {
+			Mark mark = marks.get(gapIndex);
+			int offset = offsetOf(mark);
+			if (offset >= target)
+				break;
+			mark.stored = offset;
+			gapIndex++;
+		}
+	}
+
+	/**
+	 * Finds the index of the first mark with an offset which is not lower than
+	 * the given one.
+	 *
+	 * @param offset
+	 *            the offset
+	 * @return index of the mark, size of the list if there is none
+	 */
+	private int lowerBound(int offset) {
+		int low = 0;
+		int high = marks.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (offsetOf(marks.get(mid)) < offset) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Removes the unused marks once there are enough of them.
+	 */
+	private void purge() {
+		while (queue.poll() != null) {
+			unused++;
+		}
+		if (unused < 64 || unused < marks.size() / 4)
+			return;
+
+		List<Mark> alive = new ArrayList<>(marks.size() - unused);
+		int gap = 0;
+		for (int i = 0, n = marks.size(); i < n; i++) {
+			Mark mark = marks.get(i);
+			if (mark.get() == null)
+				continue;
+			alive.add(mark);
+			if (i < gapIndex)
+				gap++;
+		}
+		marks = alive;
+		gapIndex = gap;
+		unused = 0;
+	}
+
+	/**
+	 * Offsets of marks recorded before a removal.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	static final class RecordedMarks {
+		/** Recorded marks. */
+		private Mark[] marks;
+		/** Offsets of the recorded marks. */
+		private int[] offsets;
+
+		/**
+		 * Constructs a new {@link RecordedMarks}.
+		 *
+		 * @param count
+		 *            number of marks
+		 */
+		private RecordedMarks(int count) {
+			marks = new Mark[count];
+			offsets = new int[count];
+		}
+	}
+
+	/**
+	 * Mark tracking the offset of a position. Weakly references the position.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private static final class Mark extends WeakReference<MarkPosition> {
+		/** Offset or shifted offset of the mark, depending on its side. */
+		private long stored;
+
+		/**
+		 * Constructs a new {@link Mark}.
+		 *
+		 * @param position
+		 *            position using the mark
+		 * @param queue
+		 *            queue notified when the position is unreachable
+		 */
+		private Mark(MarkPosition position, ReferenceQueue<MarkPosition> queue) {
+			super(position, queue);
+		}
+	}
+
+	/**
+	 * Position returned to the users of the content.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private final class MarkPosition implements Position {
+		/** Mark of the position. */
+		private Mark mark;
+
+		@Override
+		public int getOffset() {
+			synchronized (MarkList.this) {
+				return offsetOf(mark);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return Integer.toString(getOffset());
+		}
+	}
+}
@@ -0,0 +1,712 @@
+package hr.fer.zemris.java.document;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * Piece table implementation of the {@link AbstractDocument.Content}.
+ * <p>
+ * The text is described by a sequence of pieces, each referencing a range of
+ * one of two buffers: the immutable original buffer (which can be a
+ * {@link MappedTextFile}) and an append-only add buffer receiving all inserted
+ * text. Neither of the buffers is ever modified, edits only change the
+ * sequence of pieces.
+ * <p>
+ * The pieces are kept in a persistent, randomly balanced tree ordered by their
+ * position in the text. Finding a position, inserting and removing take
+ * logarithmic time in the number of pieces and the cost of an insertion is
+ * otherwise proportional to the inserted text. Since the tree is never
+ * modified in place, removed text is remembered for undo as a reference to
+ * its pieces instead of a copy.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class PieceTableContent implements AbstractDocument.Content {
+	/** Immutable original text, <code>null</code> for an empty content. */
+	private TextSource original;
+	/** Append-only buffer receiving inserted text. */
+	private AddBuffer add = new AddBuffer();
+	/** Root of the piece tree. */
+	private volatile Piece root;
+	/** Positions created in the content. */
+	private MarkList marks = new MarkList();
+	/** Number of pieces referenced by the undoable edit of the last edit. */
+	private int lastEditPieces;
+
+	/**
+	 * Constructs a new empty {@link PieceTableContent}.
+	 */
+	public PieceTableContent() {
+		this(null);
+	}
+
+	/**
+	 * Constructs a new {@link PieceTableContent} initially containing the given
+	 * text. The text is not copied.
+	 *
+	 * @param original
+	 *            original text, can be <code>null</code>
+	 */
+	public PieceTableContent(TextSource original) {
+		this.original = original;
+		if (original != null && original.length() > 0) {
+			root = new Piece(original, 0, original.length(), null, null);
+		}
+		// the implied line feed ending every Swing content
+		int start = add.append("\n");
+		root = merge(root, new Piece(add, start, 1, null, null));
+	}
+
+	/**
+	 * Gets the original text of the content.
+	 *
+	 * @return original text, <code>null</code> if the content was created
+	 *         empty
+	 */
+	public TextSource getOriginal() {
+		return original;
+	}
+
+	/**
+	 * Gets the number of pieces describing the text.
+	 *
+	 * @return number of pieces
+	 */
+	public int getPieceCount() {
+		return count(root);
+	}
+
+	/**
+	 * Gets an immutable snapshot of the current text, without the implied line
+	 * feed ending the content. Taking a snapshot does not copy the text, and
+	 * the snapshot can be read from any thread while the content is being
+	 * edited.
+	 *
+	 * @return snapshot of the text
+	 */
+	public TextSource snapshot() {
+		return new Snapshot(root);
+	}
+
+	/**
+	 * Copies the current text into a new add buffer described by a single
+	 * piece. The removed text and the original text are no longer held by the
+	 * content, but the undoable edits made before keep referencing them until
+	 * the edits are discarded.
+	 */
+	public void compact() {
+		AddBuffer compacted = new AddBuffer();
+		Piece tree = root;
+		int length = size(tree);
+		Segment s = new Segment();
+		s.setPartialReturn(true);
+		for (int offset = 0; offset < length; offset += s.count) {
+			read(tree, offset, length - offset, s);
+			compacted.append(new String(s.array, s.offset, s.count));
+		}
+
+		original = null;
+		add = compacted;
+		root = new Piece(compacted, 0, length, null, null);
+	}
+
+	@Override
+	public Position createPosition(int offset) throws BadLocationException {
+		if (offset < 0 || offset > length())
+			throw new BadLocationException("Invalid position.", offset);
+		return marks.createPosition(offset);
+	}
+
+	@Override
+	public int length() {
+		return size(root);
+	}
+
+	@Override
+	public UndoableEdit insertString(int where, String str) throws BadLocationException {
+		if (where < 0 || where >= length())
+			throw new BadLocationException("Invalid insert position.", where);
+		if (str.isEmpty())
+			return null;
+
+		int addLength = add.length();
+		int start = add.append(str);
+		Piece[] parts = split(root, where);
+
+		Piece last = parts[0] == null ? null : last(parts[0]);
+		Piece inserted;
+		if (last != null && last.source == add && last.start + last.length == addLength) {
+			// typing continues the previous insertion, so its piece is extended
+			parts[0] = extendLast(parts[0], str.length());
+			inserted = new Piece(add, start, str.length(), null, null);
+		} else {
+			inserted = new Piece(add, start, str.length(), null, null);
+			parts[0] = merge(parts[0], inserted);
+		}
+		root = merge(parts[0], parts[1]);
+		marks.insertUpdate(where, str.length());
+
+		lastEditPieces = 1;
+		return new PieceEdit(where, inserted, true, null);
+	}
+
+	@Override
+	public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+		if (where < 0 || nitems < 0 || where + nitems >= length())
+			throw new BadLocationException("Invalid remove range.", where);
+		if (nitems == 0)
+			return null;
+
+		MarkList.RecordedMarks recorded = marks.record(where, nitems);
+		Piece removed = removePieces(where, nitems);
+		lastEditPieces = count(removed);
+		return new PieceEdit(where, removed, false, recorded);
+	}
+
+	/**
+	 * Gets the number of pieces referenced by the undoable edit returned by the
+	 * last insertion or removal. The edit references the removed text instead
+	 * of copying it, so its memory footprint depends only on the number of the
+	 * pieces.
+	 *
+	 * @return number of pieces
+	 */
+	int getLastEditPieces() {
+		return lastEditPieces;
+	}
+
+	/**
+	 * Removes the given range and returns its pieces.
+	 *
+	 * @param where
+	 *            start of the range
+	 * @param nitems
+	 *            length of the range
+	 * @return removed pieces
+	 */
+	private Piece removePieces(int where, int nitems) {
+		Piece[] head = split(root, where);
+		Piece[] tail = split(head[1], nitems);
+		root = merge(head[0], tail[1]);
+		marks.removeUpdate(where, nitems);
+		return tail[0];
+	}
+
+	/**
+	 * Inserts the given pieces at the given offset.
+	 *
+	 * @param where
+	 *            offset of the insertion
+	 * @param pieces
+	 *            pieces to insert
+	 */
+	private void insertPieces(int where, Piece pieces) {
+		Piece[] parts = split(root, where);
+		root = merge(merge(parts[0], pieces), parts[1]);
+		marks.insertUpdate(where, size(pieces));
+	}
+
+	@Override
+	public String getString(int where, int len) throws BadLocationException {
+		Segment s = new Segment();
+		getChars(where, len, s);
+		return new String(s.array, s.offset, s.count);
+	}
+
+	@Override
+	public void getChars(int where, int len, Segment txt) throws BadLocationException {
+		Piece tree = root;
+		if (where < 0 || len < 0 || where + len > size(tree))
+			throw new BadLocationException("Invalid range.", where);
+
+		read(tree, where, len, txt);
+	}
+
+	/**
+	 * Reads the given range of the text described by a tree. A range inside of
+	 * a single piece is read directly from its buffer, other ranges are copied
+	 * unless the segment allows a partial return.
+	 *
+	 * @param tree
+	 *            root of the tree
+	 * @param where
+	 *            start of the range
+	 * @param len
+	 *            length of the range
+	 * @param txt
+	 *            segment receiving the characters
+	 */
+	private static void read(Piece tree, int where, int len, Segment txt) {
+		Piece piece = tree;
+		int pos = where;
+		while (piece != null) {
+			int leftSize = size(piece.left);
+			if (pos < leftSize) {
+				piece = piece.left;
+			} else if (pos < leftSize + piece.length) {
+				pos -= leftSize;
+				break;
+			} else {
+				pos -= leftSize + piece.length;
+				piece = piece.right;
+			}
+		}
+		if (piece != null && (txt.isPartialReturn() || pos + len <= piece.length)) {
+			piece.source.getText(piece.start + pos, Math.min(len, piece.length - pos), txt);
+			return;
+		}
+
+		char[] chars = new char[len];
+		copy(tree, where, len, chars, 0);
+		txt.array = chars;
+		txt.offset = 0;
+		txt.count = len;
+	}
+
+	/**
+	 * Copies the given range of the text described by a tree.
+	 *
+	 * @param t
+	 *            root of the tree
+	 * @param where
+	 *            start of the range, relative to the tree
+	 * @param len
+	 *            length of the range
+	 * @param dst
+	 *            destination array
+	 * @param dstOffset
+	 *            starting position in the destination array
+	 */
+	private static void copy(Piece t, int where, int len, char[] dst, int dstOffset) {
+		while (t != null && len > 0) {
+			int leftSize = size(t.left);
+			if (where < leftSize) {
+				int n = Math.min(len, leftSize - where);
+				copy(t.left, where, n, dst, dstOffset);
+				where += n;
+				dstOffset += n;
+				len -= n;
+			}
+			if (len > 0 && where < leftSize + t.length) {
+				int from = where - leftSize;
+				int n = Math.min(len, t.length - from);
+				t.source.getChars(t.start + from, n, dst, dstOffset);
+				where += n;
+				dstOffset += n;
+				len -= n;
+			}
+			where -= leftSize + t.length;
+			t = t.right;
+		}
+	}
+
+	/**
+	 * Gets the total length of the pieces in a tree.
+	 *
+	 * @param t
+	 *            root of the tree
+	 * @return length of the text described by the tree
+	 */
+	private static int size(Piece t) {
+		return t == null ? 0 : t.size;
+	}
+
+	/**
+	 * Gets the number of pieces in a tree.
+	 *
+	 * @param t
+	 *            root of the tree
+	 * @return number of pieces
+	 */
+	private static int count(Piece t) {
+		return t == null ? 0 : t.count;
+	}
+
+	/**
+	 * Gets the last piece of a tree.
+	 *
+	 * @param t
+	 *            root of a non-empty tree
+	 * @return last piece
+	 */
+	private static Piece last(Piece t) {
+		while (t.right != null) {
+			t = t.right;
+		}
+		return t;
+	}
+
+	/**
+	 * Extends the last piece of a tree.
+	 *
+	 * @param t
+	 *            root of a non-empty tree
+	 * @param n
+	 *            number of characters to add to the last piece
+	 * @return root of the new tree
+	 */
+	private static Piece extendLast(Piece t, int n) {
+		if (t.right == null) {
+			return new Piece(t.source, t.start, t.length + n, t.priority, t.left, null);
+		}
+		return t.with(t.left, extendLast(t.right, n));
+	}
+
+	/**
+	 * Joins two trees.
+	 *
+	 * @param a
+	 *            tree describing the first part of the text
+	 * @param b
+	 *            tree describing the second part of the text
+	 * @return root of the joined tree
+	 */
+	private static Piece merge(Piece a, Piece b) {
+		if (a == null)
+			return b;
+		if (b == null)
+			return a;
+		if (a.priority > b.priority) {
+			return a.with(a.left, merge(a.right, b));
+		}
+		return b.with(merge(a, b.left), b.right);
+	}
+
+	/**
+	 * Splits a tree at the given offset. A piece containing the offset is split
+	 * in two.
+	 *
+	 * @param t
+	 *            root of the tree
+	 * @param pos
+	 *            offset of the split
+	 * @return trees describing the text before and after the offset
+	 */
+	private static Piece[] split(Piece t, int pos) {
+		if (t == null)
+			return new Piece[2];
+
+		int leftSize = size(t.left);
+		if (pos <= leftSize) {
+			Piece[] parts = split(t.left, pos);
+			parts[1] = t.with(parts[1], t.right);
+			return parts;
+		}
+		if (pos >= leftSize + t.length) {
+			Piece[] parts = split(t.right, pos - leftSize - t.length);
+			parts[0] = t.with(t.left, parts[0]);
+			return parts;
+		}
+
+		int k = pos - leftSize;
+		Piece head = new Piece(t.source, t.start, k, t.priority, t.left, null);
+		Piece tail = new Piece(t.source, t.start + k, t.length - k, null, null);
+		return new Piece[] { head, merge(tail, t.right) };
+	}
+
+	/**
+	 * Immutable text described by a piece tree.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private static final class Snapshot implements TextSource {
+		/** Root of the tree. */
+		private final Piece tree;
+		/** Length of the text, without the implied line feed. */
+		private final int length;
+
+		/**
+		 * Constructs a new {@link Snapshot}.
+		 *
+		 * @param tree
+		 *            root of the tree describing the whole content
+		 */
+		private Snapshot(Piece tree) {
+			this.tree = tree;
+			this.length = size(tree) - 1;
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public void getText(int offset, int len, Segment txt) {
+			if (offset < 0 || len < 0 || offset + len > length)
+				throw new IndexOutOfBoundsException("Invalid range: " + offset + ", " + len + ".");
+			read(tree, offset, len, txt);
+		}
+
+		@Override
+		public void getChars(int offset, int len, char[] dst, int dstOffset) {
+			if (offset < 0 || len < 0 || offset + len > length)
+				throw new IndexOutOfBoundsException("Invalid range: " + offset + ", " + len + ".");
+			copy(tree, offset, len, dst, dstOffset);
+		}
+	}
+
+	/**
+	 * Immutable node of the piece tree, describing a range of a buffer.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private static final class Piece {
+		/** Buffer of the piece. */
+		private final TextSource source;
+		/** Start of the piece in its buffer. */
+		private final int start;
+		/** Length of the piece. */
+		private final int length;
+		/** Priority of the node, keeps the tree balanced. */
+		private final int priority;
+		/** Pieces preceding this one. */
+		private final Piece left;
+		/** Pieces following this one. */
+		private final Piece right;
+		/** Total length of the pieces in this subtree. */
+		private final int size;
+		/** Number of pieces in this subtree. */
+		private final int count;
+
+		/**
+		 * Constructs a new {@link Piece} with a random priority.
+		 *
+		 * @param source
+		 *            buffer of the piece
+		 * @param start
+		 *            start of the piece in the buffer
+		 * @param length
+		 *            length of the piece
+		 * @param left
+		 *            preceding pieces
+		 * @param right
+		 *            following pieces
+		 */
+		private Piece(TextSource source, int start, int length, Piece left, Piece right) {
+			this(source, start, length, ThreadLocalRandom.current().nextInt(), left, right);
+		}
+
+		/**
+		 * Constructs a new {@link Piece}.
+		 *
+		 * @param source
+		 *            buffer of the piece
+		 * @param start
+		 *            start of the piece in the buffer
+		 * @param length
+		 *            length of the piece
+		 * @param priority
+		 *            priority of the node
+		 * @param left
+		 *            preceding pieces
+		 * @param right
+		 *            following pieces
+		 */
+		private Piece(TextSource source, int start, int length, int priority, Piece left, Piece right) {
+			this.source = source;
+			this.start = start;
+			this.length = length;
+			this.priority = priority;
+			this.left = left;
+			this.right = right;
+			this.size = size(left) + length + size(right);
+			this.count = count(left) + 1 + count(right);
+		}
+
+		/**
+		 * Creates a copy of this node with different children.
+		 *
+		 * @param left
+		 *            preceding pieces
+		 * @param right
+		 *            following pieces
+		 * @return copy of the node
+		 */
+		private Piece with(Piece left, Piece right) {
+			return new Piece(source, start, length, priority, left, right);
+		}
+	}
+
+	/**
+	 * Undoable insertion or removal of pieces.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private class PieceEdit extends AbstractUndoableEdit {
+		/** Default serialization version. */
+		private static final long serialVersionUID = 1L;
+		/** Offset of the edit. */
+		private int offset;
+		/** Inserted or removed pieces. */
+		private transient Piece pieces;
+		/** Marks if the pieces were inserted or removed. */
+		private boolean insertion;
+		/** Marks inside of the removed range. */
+		private transient MarkList.RecordedMarks recorded;
+
+		/**
+		 * Constructs a new {@link PieceEdit}.
+		 *
+		 * @param offset
+		 *            offset of the edit
+		 * @param pieces
+		 *            inserted or removed pieces
+		 * @param insertion
+		 *            <code>true</code> if the pieces were inserted,
+		 *            <code>false</code> if removed
+		 * @param recorded
+		 *            marks inside of the removed range
+		 */
+		private PieceEdit(int offset, Piece pieces, boolean insertion, MarkList.RecordedMarks recorded) {
+			this.offset = offset;
+			this.pieces = pieces;
+			this.insertion = insertion;
+			this.recorded = recorded;
+		}
+
+		@Override
+		public void undo() throws CannotUndoException {
+			super.undo();
+			if (insertion) {
+				removeEdited();
+			} else {
+				insertEdited();
+			}
+		}
+
+		@Override
+		public void redo() throws CannotRedoException {
+			super.redo();
+			if (insertion) {
+				insertEdited();
+			} else {
+				removeEdited();
+			}
+		}
+
+		/**
+		 * Removes the edited pieces, recording the marks inside of them.
+		 */
+		private void removeEdited() {
+			int length = size(pieces);
+			recorded = marks.record(offset, length);
+			pieces = removePieces(offset, length);
+		}
+
+		/**
+		 * Inserts the edited pieces, restoring the marks inside of them.
+		 */
+		private void insertEdited() {
+			int length = size(pieces);
+			insertPieces(offset, pieces);
+			if (recorded != null) {
+				marks.restore(recorded, offset == 0 ? 0 : offset + length);
+				recorded = null;
+			}
+		}
+	}
+
+	/**
+	 * Append-only buffer storing the text in fixed-size chunks, so appending
+	 * never copies already stored text.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private static final class AddBuffer implements TextSource {
+		/** Binary logarithm of the chunk size. */
+		private static final int CHUNK_SHIFT = 16;
+		/** Size of a chunk. */
+		private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+		/** Chunks of the buffer. */
+		private volatile char[][] chunks = new char[4][];
+		/** Number of stored characters. */
+		private volatile int length;
+
+		/**
+		 * Appends the given text to the buffer.
+		 *
+		 * @param str
+		 *            text to append
+		 * @return offset of the appended text in the buffer
+		 */
+		private int append(String str) {
+			int start = length;
+			int end = start;
+			char[][] current = chunks;
+			for (int from = 0, n = str.length(); from < n;) {
+				int index = end >>> CHUNK_SHIFT;
+				if (index >= current.length) {
+					char[][] grown = new char[current.length * 2][];
+					System.arraycopy(current, 0, grown, 0, current.length);
+					current = grown;
+				}
+				if (current[index] == null) {
+					current[index] = new char[CHUNK_SIZE];
+				}
+				int within = end & (CHUNK_SIZE - 1);
+				int count = Math.min(n - from, CHUNK_SIZE - within);
+				str.getChars(from, from + count, current[index], within);
+				from += count;
+				end += count;
+			}
+			chunks = current;
+			length = end;
+			return start;
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public void getText(int offset, int len, Segment txt) {
+			if (offset < 0 || len < 0 || offset + len > length)
+				throw new IndexOutOfBoundsException("Invalid range: " + offset + ", " + len + ".");
+
+			char[][] current = chunks;
+			int within = offset & (CHUNK_SIZE - 1);
+			char[] chunk = current[offset >>> CHUNK_SHIFT];
+			if (within + len <= CHUNK_SIZE || txt.isPartialReturn()) {
+				txt.array = chunk;
+				txt.offset = within;
+				txt.count = Math.min(len, CHUNK_SIZE - within);
+				return;
+			}
+
+			char[] chars = new char[len];
+			getChars(offset, len, chars, 0);
+			txt.array = chars;
+			txt.offset = 0;
+			txt.count = len;
+		}
+
+		@Override
+		public void getChars(int offset, int len, char[] dst, int dstOffset) {
+			char[][] current = chunks;
+			while (len > 0) {
+				int within = offset & (CHUNK_SIZE - 1);
+				int n = Math.min(len, CHUNK_SIZE - within);
+				System.arraycopy(current[offset >>> CHUNK_SHIFT], within, dst, dstOffset, n);
+				offset += n;
+				dstOffset += n;
+				len -= n;
+			}
+		}
+	}
+}
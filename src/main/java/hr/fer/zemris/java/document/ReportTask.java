@@ -0,0 +1,343 @@
+package hr.fer.zemris.java.document;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+import javax.swing.text.Segment;
+
+/**
+ * Fork-join task measuring a range of a text for a {@link TextReport}.
+ * <p>
+ * Ranges longer than {@link ReportTask#LEAF_SIZE} are split in two halves
+ * measured in parallel. Each range is measured on its own, as if it was the
+ * whole text, and the unfinished lines, words and paragraphs at its ends are
+ * kept aside, so that the results of two neighbouring ranges can be joined
+ * into the result of their union.
+ *
+ * @author Mirna Baksa
+ *
+ */
+final class ReportTask extends RecursiveTask<ReportTask.Part> {
+	/** Default serialization version. */
+	private static final long serialVersionUID = 1L;
+	/** Largest number of characters measured by a single task. */
+	static final int LEAF_SIZE = 1 << 20;
+
+	/** Measured text. */
+	private final TextSource text;
+	/** Start of the measured range. */
+	private final int offset;
+	/** Length of the measured range. */
+	private final int length;
+	/** Number of characters measured by all tasks. */
+	private final AtomicLong done;
+	/** Receives the number of measured characters. */
+	private final LongConsumer progress;
+	/** Checks if the measuring was cancelled. */
+	private final BooleanSupplier cancelled;
+
+	/**
+	 * Constructs a new {@link ReportTask}.
+	 *
+	 * @param text
+	 *            measured text
+	 * @param offset
+	 *            start of the measured range
+	 * @param length
+	 *            length of the measured range
+	 * @param done
+	 *            number of characters measured by all tasks
+	 * @param progress
+	 *            receives the number of measured characters
+	 * @param cancelled
+	 *            checks if the measuring was cancelled
+	 */
+	ReportTask(TextSource text, int offset, int length, AtomicLong done, LongConsumer progress,
+			BooleanSupplier cancelled) {
+		this.text = text;
+		this.offset = offset;
+		this.length = length;
+		this.done = done;
+		this.progress = progress;
+		this.cancelled = cancelled;
+	}
+
+	@Override
+	protected Part compute() {
+		if (cancelled.getAsBoolean())
+			throw new CancellationException();
+
+		if (length > LEAF_SIZE) {
+			int half = length / 2;
+			ReportTask left = new ReportTask(text, offset, half, done, progress, cancelled);
+			ReportTask right = new ReportTask(text, offset + half, length - half, done, progress, cancelled);
+			left.fork();
+			Part second = right.compute();
+			return left.join().append(second);
+		}
+
+		Part part = new Part();
+		Segment segment = new Segment();
+		segment.setPartialReturn(true);
+		for (int pos = offset, end = offset + length; pos < end; pos += segment.count) {
+			text.getText(pos, end - pos, segment);
+			for (int i = segment.offset, n = segment.offset + segment.count; i < n; i++) {
+				part.accept(segment.array[i]);
+			}
+		}
+		part.finish();
+
+		progress.accept(done.addAndGet(length));
+		return part;
+	}
+
+	/**
+	 * Result of measuring a range of the text.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	static final class Part {
+		/** Number of buckets of the line length histogram. */
+		static final int BUCKETS = 33;
+
+		/** Number of characters. */
+		int length;
+		/** Number of non-blank characters. */
+		int nonBlank;
+		/** Number of words, a word at the start of the range included. */
+		int words;
+		/** <code>true</code> if the range starts with a non-blank character. */
+		boolean startsInWord;
+		/** <code>true</code> if the range ends with a non-blank character. */
+		boolean endsInWord;
+
+		/** <code>true</code> if the range has any non-blank characters. */
+		boolean hasText;
+		/** Line feeds before the first non-blank character, at most two. */
+		int leadingNewlines;
+		/** Line feeds after the last non-blank character, at most two. */
+		int trailingNewlines;
+		/** Paragraphs started after the first non-blank character. */
+		int innerParagraphs;
+
+		/** Number of line feeds. */
+		int newlines;
+		/** Length of the text before the first line feed. */
+		int firstLine;
+		/** Length of the text after the last line feed. */
+		int lastLine;
+		/** Length of the longest line between the first and last line feed. */
+		int longestLine;
+		/** Histogram of the lengths of the lines between the line feeds. */
+		int[] histogram = new int[BUCKETS];
+
+		/** Frequencies of the terms inside of the range. */
+		Map<String, Integer> terms = new HashMap<>();
+		/** Term touching the start of the range. */
+		String leadingTerm = "";
+		/** Term touching the end of the range. */
+		String trailingTerm = "";
+		/** <code>true</code> if the whole range is a part of a single term. */
+		boolean wholeTerm = true;
+
+		/** Term being read. */
+		private StringBuilder term = new StringBuilder();
+		/** Length of the range before the line being read. */
+		private int lengthBeforeLine;
+
+		/**
+		 * Measures the next character of the range.
+		 *
+		 * @param c
+		 *            the character
+		 */
+		void accept(char c) {
+			boolean first = length == 0;
+			length++;
+
+			if (Character.isLetterOrDigit(c)) {
+				term.append(Character.toLowerCase(c));
+			} else {
+				endTerm();
+			}
+
+			if (c == '\n') {
+				endLine();
+			}
+
+			if (Character.isWhitespace(c)) {
+				if (c == '\n' && (hasText ? trailingNewlines : leadingNewlines) < 2) {
+					if (hasText) {
+						trailingNewlines++;
+					} else {
+						leadingNewlines++;
+					}
+				}
+				endsInWord = false;
+				return;
+			}
+
+			nonBlank++;
+			if (first) {
+				startsInWord = true;
+			}
+			if (!endsInWord) {
+				words++;
+			}
+			endsInWord = true;
+
+			if (hasText && trailingNewlines == 2) {
+				innerParagraphs++;
+			}
+			hasText = true;
+			trailingNewlines = 0;
+		}
+
+		/**
+		 * Finishes the measuring of the range.
+		 */
+		void finish() {
+			if (wholeTerm) {
+				leadingTerm = term.toString();
+			} else {
+				trailingTerm = term.toString();
+			}
+			if (newlines == 0) {
+				firstLine = length;
+			}
+			lastLine = length - lengthBeforeLine;
+			if (!hasText) {
+				trailingNewlines = leadingNewlines;
+			}
+			term = null;
+		}
+
+		/**
+		 * Ends the term being read, if any.
+		 */
+		private void endTerm() {
+			if (wholeTerm) {
+				leadingTerm = term.toString();
+				wholeTerm = false;
+			} else if (term.length() > 0) {
+				terms.merge(term.toString(), 1, Integer::sum);
+			}
+			term.setLength(0);
+		}
+
+		/**
+		 * Ends the line being read. The line feed is already counted in the
+		 * length of the range.
+		 */
+		private void endLine() {
+			int lineLength = length - 1 - (newlines == 0 ? 0 : lengthBeforeLine);
+			if (newlines == 0) {
+				firstLine = lineLength;
+			} else {
+				addLine(lineLength);
+			}
+			newlines++;
+			lengthBeforeLine = length;
+		}
+
+		/**
+		 * Counts a complete line.
+		 *
+		 * @param lineLength
+		 *            length of the line without its line feed
+		 */
+		void addLine(int lineLength) {
+			histogram[32 - Integer.numberOfLeadingZeros(lineLength)]++;
+			longestLine = Math.max(longestLine, lineLength);
+		}
+
+		/**
+		 * Joins the result of the range following this one to this result.
+		 *
+		 * @param next
+		 *            result of the following range
+		 * @return joined result
+		 */
+		Part append(Part next) {
+			// words
+			words += next.words - (endsInWord && next.startsInWord ? 1 : 0);
+			startsInWord = length == 0 ? next.startsInWord : startsInWord;
+			endsInWord = next.length == 0 ? endsInWord : next.endsInWord;
+			nonBlank += next.nonBlank;
+
+			// paragraphs
+			if (!hasText) {
+				leadingNewlines = Math.min(2, leadingNewlines + next.leadingNewlines);
+				trailingNewlines = next.hasText ? next.trailingNewlines : leadingNewlines;
+				innerParagraphs = next.innerParagraphs;
+				hasText = next.hasText;
+			} else if (!next.hasText) {
+				trailingNewlines = Math.min(2, trailingNewlines + next.leadingNewlines);
+			} else {
+				if (Math.min(2, trailingNewlines + next.leadingNewlines) == 2) {
+					innerParagraphs++;
+				}
+				innerParagraphs += next.innerParagraphs;
+				trailingNewlines = next.trailingNewlines;
+			}
+
+			// lines
+			if (newlines == 0 && next.newlines == 0) {
+				firstLine += next.firstLine;
+				lastLine = firstLine;
+			} else if (newlines == 0) {
+				firstLine += next.firstLine;
+				lastLine = next.lastLine;
+			} else if (next.newlines == 0) {
+				lastLine += next.firstLine;
+			} else {
+				addLine(lastLine + next.firstLine);
+				lastLine = next.lastLine;
+			}
+			newlines += next.newlines;
+			longestLine = Math.max(longestLine, next.longestLine);
+			for (int i = 0; i < BUCKETS; i++) {
+				histogram[i] += next.histogram[i];
+			}
+
+			// terms
+			Map<String, Integer> smaller = terms.size() < next.terms.size() ? terms : next.terms;
+			Map<String, Integer> larger = smaller == terms ? next.terms : terms;
+			smaller.forEach((t, n) -> larger.merge(t, n, Integer::sum));
+			terms = larger;
+			if (wholeTerm && next.wholeTerm) {
+				leadingTerm += next.leadingTerm;
+			} else if (wholeTerm) {
+				leadingTerm += next.leadingTerm;
+				trailingTerm = next.trailingTerm;
+				wholeTerm = false;
+			} else if (next.wholeTerm) {
+				trailingTerm += next.leadingTerm;
+			} else {
+				addTerm(trailingTerm + next.leadingTerm);
+				trailingTerm = next.trailingTerm;
+			}
+
+			length += next.length;
+			return this;
+		}
+
+		/**
+		 * Counts a complete term.
+		 *
+		 * @param t
+		 *            the term, ignored if empty
+		 */
+		void addTerm(String t) {
+			if (!t.isEmpty()) {
+				terms.merge(t, 1, Integer::sum);
+			}
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package hr.fer.zemris.java.document;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+/**
+ * Report on a text - the statistics of the text together with the length of
+ * its longest line, a histogram of the line lengths and the most frequent
+ * words.
+ * <p>
+ * The report is created by {@link TextReport#create}, which measures ranges of
+ * the text in parallel on a {@link ForkJoinPool} and joins their results, so
+ * the time needed to create a report of a large text decreases with the number
+ * of available processors. The word frequencies count sequences of letters and
+ * digits, ignoring their case.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class TextReport {
+	/** Compares words by their frequency, then alphabetically. */
+	private static final Comparator<Map.Entry<String, Integer>> BY_FREQUENCY = Comparator
+			.comparing(Map.Entry<String, Integer>::getValue).reversed()
+			.thenComparing(Map.Entry::getKey);
+
+	/** Number of characters. */
+	private int characters;
+	/** Number of non-blank characters. */
+	private int nonBlank;
+	/** Number of lines. */
+	private int lines;
+	/** Number of words. */
+	private int words;
+	/** Number of paragraphs. */
+	private int paragraphs;
+	/** Length of the longest line. */
+	private int longestLine;
+	/** Number of lines in each length bucket. */
+	private int[] histogram;
+	/** Most frequent words, the most frequent first. */
+	private List<Map.Entry<String, Integer>> topWords;
+
+	/**
+	 * Constructs a new {@link TextReport} from the joined result of all ranges
+	 * of the text.
+	 *
+	 * @param part
+	 *            result of the whole text
+	 * @param topCount
+	 *            number of the most frequent words to keep
+	 */
+	private TextReport(ReportTask.Part part, int topCount) {
+		// the first and the last line are not complete in any range
+		if (part.length > 0) {
+			part.addLine(part.firstLine);
+		}
+		if (part.newlines > 0) {
+			part.addLine(part.lastLine);
+		}
+		part.addTerm(part.leadingTerm);
+		if (!part.wholeTerm) {
+			part.addTerm(part.trailingTerm);
+		}
+
+		characters = part.length;
+		nonBlank = part.nonBlank;
+		lines = part.length == 0 ? 0 : part.newlines + 1;
+		words = part.words;
+		paragraphs = part.hasText ? part.innerParagraphs + 1 : 0;
+		longestLine = part.longestLine;
+		histogram = part.histogram;
+
+		PriorityQueue<Map.Entry<String, Integer>> top = new PriorityQueue<>(BY_FREQUENCY.reversed());
+		for (Map.Entry<String, Integer> entry : part.terms.entrySet()) {
+			top.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+			if (top.size() > topCount) {
+				top.poll();
+			}
+		}
+		topWords = new ArrayList<>(top);
+		topWords.sort(BY_FREQUENCY);
+		topWords = Collections.unmodifiableList(topWords);
+	}
+
+	/**
+	 * Creates the report on the given text.
+	 *
+	 * @param text
+	 *            the text, must not change while the report is being created
+	 * @param topCount
+	 *            number of the most frequent words to report
+	 * @param pool
+	 *            pool measuring the ranges of the text
+	 * @param progress
+	 *            receives the number of measured characters, called from the
+	 *            threads of the pool
+	 * @param cancelled
+	 *            checked by the measuring tasks, which stop once it returns
+	 *            <code>true</code>
+	 * @return report on the text
+	 * @throws java.util.concurrent.CancellationException
+	 *             if the creation was cancelled
+	 */
+	public static TextReport create(TextSource text, int topCount, ForkJoinPool pool, LongConsumer progress,
+			BooleanSupplier cancelled) {
+		ReportTask task = new ReportTask(text, 0, text.length(), new AtomicLong(), progress, cancelled);
+		return new TextReport(pool.invoke(task), topCount);
+	}
+
+	/**
+	 * Gets the number of characters.
+	 *
+	 * @return number of characters
+	 */
+	public int getCharacters() {
+		return characters;
+	}
+
+	/**
+	 * Gets the number of non-blank characters.
+	 *
+	 * @return number of non-blank characters
+	 */
+	public int getNonBlankCharacters() {
+		return nonBlank;
+	}
+
+	/**
+	 * Gets the number of lines. An empty text has no lines.
+	 *
+	 * @return number of lines
+	 */
+	public int getLines() {
+		return lines;
+	}
+
+	/**
+	 * Gets the number of words, sequences of non-blank characters.
+	 *
+	 * @return number of words
+	 */
+	public int getWords() {
+		return words;
+	}
+
+	/**
+	 * Gets the number of paragraphs, sequences of lines with non-blank
+	 * characters.
+	 *
+	 * @return number of paragraphs
+	 */
+	public int getParagraphs() {
+		return paragraphs;
+	}
+
+	/**
+	 * Gets the length of the longest line, without its line feed.
+	 *
+	 * @return length of the longest line
+	 */
+	public int getLongestLine() {
+		return longestLine;
+	}
+
+	/**
+	 * Gets the histogram of the line lengths. Bucket <code>0</code> counts the
+	 * empty lines and bucket <code>k</code> the lines with lengths from
+	 * <code>2<sup>k-1</sup></code> to <code>2<sup>k</sup> - 1</code>.
+	 *
+	 * @return number of lines in each bucket
+	 */
+	public int[] getLineHistogram() {
+		return histogram.clone();
+	}
+
+	/**
+	 * Gets the most frequent words, written in lower case.
+	 *
+	 * @return words with their frequencies, the most frequent first
+	 */
+	public List<Map.Entry<String, Integer>> getTopWords() {
+		return topWords;
+	}
+}
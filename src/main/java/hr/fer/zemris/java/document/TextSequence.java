@@ -0,0 +1,135 @@
+package hr.fer.zemris.java.document;
+
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * {@link CharSequence} view of a range of a {@link TextSource}, which lets a
+ * regular expression be matched against a text without copying it.
+ * <p>
+ * The characters are read through a window of {@link #WINDOW_SIZE}
+ * characters, which is moved once a character outside of it is requested. The
+ * window keeps a part of the text before the requested character, since
+ * matching mostly moves forward but sometimes looks back. The sequence checks
+ * whether it was cancelled every {@link #CHECK_INTERVAL} reads, so even a
+ * match which never leaves the window can be stopped.
+ * <p>
+ * A sequence is not thread safe, each thread needs its own.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public final class TextSequence implements CharSequence {
+	/** Number of characters in the window. */
+	private static final int WINDOW_SIZE = 1 << 14;
+	/** Number of characters kept in the window before a requested one. */
+	private static final int WINDOW_BEHIND = WINDOW_SIZE / 4;
+	/** Number of reads between two checks of the cancellation, minus one. */
+	private static final int CHECK_INTERVAL = (1 << 16) - 1;
+
+	/** The text. */
+	private TextSource text;
+	/** Start of the range in the text. */
+	private int start;
+	/** Length of the range. */
+	private int length;
+	/** Checked while reading, the reading stops once it returns true. */
+	private BooleanSupplier cancelled;
+	/** Characters of the window, allocated when first needed. */
+	private char[] window;
+	/** Offset of the window in the text. */
+	private int windowStart;
+	/** Number of characters in the window. */
+	private int windowLength;
+	/** Number of reads since the cancellation was last checked. */
+	private int reads;
+
+	/**
+	 * Constructs a new {@link TextSequence} of the whole text.
+	 *
+	 * @param text
+	 *            the text, must not change while the sequence is used
+	 * @param cancelled
+	 *            checked while reading, which stops once it returns
+	 *            <code>true</code>
+	 */
+	public TextSequence(TextSource text, BooleanSupplier cancelled) {
+		this(text, 0, text.length(), cancelled);
+	}
+
+	/**
+	 * Constructs a new {@link TextSequence} of a range of the text.
+	 *
+	 * @param text
+	 *            the text, must not change while the sequence is used
+	 * @param start
+	 *            start of the range
+	 * @param length
+	 *            length of the range
+	 * @param cancelled
+	 *            checked while reading, which stops once it returns
+	 *            <code>true</code>
+	 */
+	private TextSequence(TextSource text, int start, int length, BooleanSupplier cancelled) {
+		this.text = text;
+		this.start = start;
+		this.length = length;
+		this.cancelled = cancelled;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @throws CancellationException
+	 *             if the reading was cancelled
+	 */
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length)
+			throw new IndexOutOfBoundsException("Invalid index: " + index + ".");
+		if ((++reads & CHECK_INTERVAL) == 0 && cancelled.getAsBoolean())
+			throw new CancellationException();
+
+		int offset = start + index;
+		int i = offset - windowStart;
+		if (window == null || i < 0 || i >= windowLength) {
+			fill(offset);
+			i = offset - windowStart;
+		}
+		return window[i];
+	}
+
+	/**
+	 * Moves the window over the given offset of the text.
+	 *
+	 * @param offset
+	 *            offset of the text
+	 */
+	private void fill(int offset) {
+		if (window == null) {
+			window = new char[Math.min(WINDOW_SIZE, length)];
+		}
+		windowStart = Math.max(start, offset - WINDOW_BEHIND);
+		windowLength = Math.min(window.length, start + length - windowStart);
+		text.getChars(windowStart, windowLength, window, 0);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || end > length || start > end)
+			throw new IndexOutOfBoundsException("Invalid range: " + start + ", " + end + ".");
+		return new TextSequence(text, this.start + start, end - start, cancelled);
+	}
+
+	@Override
+	public String toString() {
+		char[] chars = new char[length];
+		text.getChars(start, length, chars, 0);
+		return new String(chars);
+	}
+}
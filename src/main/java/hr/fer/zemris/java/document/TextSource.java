@@ -0,0 +1,63 @@
+package hr.fer.zemris.java.document;
+
+import javax.swing.text.Segment;
+
+/**
+ * Immutable sequence of characters which can be read in ranges. The ranges
+ * are returned through a {@link Segment}, following the contract of
+ * {@link javax.swing.text.AbstractDocument.Content#getChars(int, int, Segment)}
+ * - the returned array must not be modified, and if the segment allows a
+ * partial return, fewer characters than requested may be returned.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public interface TextSource {
+
+	/**
+	 * Gets the number of characters in the source.
+	 *
+	 * @return number of characters
+	 */
+	public int length();
+
+	/**
+	 * Gets the given range of characters.
+	 *
+	 * @param offset
+	 *            offset of the first character
+	 * @param length
+	 *            number of characters
+	 * @param txt
+	 *            segment receiving the characters
+	 * @throws IndexOutOfBoundsException
+	 *             if the range is outside of the source
+	 */
+	public void getText(int offset, int length, Segment txt);
+
+	/**
+	 * Copies the given range of characters to the destination array.
+	 *
+	 * @param offset
+	 *            offset of the first character
+	 * @param length
+	 *            number of characters
+	 * @param dst
+	 *            destination array
+	 * @param dstOffset
+	 *            starting position in the destination array
+	 * @throws IndexOutOfBoundsException
+	 *             if the range is outside of the source
+	 */
+	public default void getChars(int offset, int length, char[] dst, int dstOffset) {
+		Segment s = new Segment();
+		s.setPartialReturn(true);
+		while (length > 0) {
+			getText(offset, length, s);
+			System.arraycopy(s.array, s.offset, dst, dstOffset, s.count);
+			offset += s.count;
+			dstOffset += s.count;
+			length -= s.count;
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package hr.fer.zemris.java.hw10jnotepadapp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import javax.swing.SwingWorker;
+import javax.swing.text.Segment;
+
+import hr.fer.zemris.java.document.TextSource;
+import hr.fer.zemris.java.tools.AtomicFiles;
+
+/**
+ * Saves the text of a document to a file on a background thread.
+ * <p>
+ * The text is not copied - a snapshot of the document taken by
+ * {@link JFileTab#snapshot()} is read in segments, which are encoded to UTF-8
+ * through a single fixed-size buffer. The bytes are written to a temporary
+ * file in the directory of the target file, which is forced to the disk and
+ * then moved over the target file by {@link AtomicFiles}, so the target file
+ * either keeps its old contents or gets the new contents as a whole, and
+ * keeps its permissions.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class DocumentSaver extends SwingWorker<Void, Void> {
+	/** Size of the encoding buffer in bytes. */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** Path of the saved file. */
+	private Path filePath;
+	/** Text to save. */
+	private TextSource text;
+	/** Encodes the text. */
+	private CharsetEncoder encoder;
+	/** Buffer receiving the encoded bytes. */
+	private ByteBuffer out;
+	/** Channel writing to the temporary file. */
+	private FileChannel channel;
+
+	/**
+	 * Constructs a new {@link DocumentSaver}.
+	 *
+	 * @param text
+	 *            text to save, must not change while it is being saved
+	 * @param filePath
+	 *            path of the file to save to
+	 */
+	public DocumentSaver(TextSource text, Path filePath) {
+		this.filePath = filePath;
+		this.text = text;
+	}
+
+	/**
+	 * Gets the path of the saved file.
+	 *
+	 * @return path of the file
+	 */
+	public Path getFilePath() {
+		return filePath;
+	}
+
+	@Override
+	protected Void doInBackground() throws Exception {
+		Path target = AtomicFiles.target(filePath);
+		Path temp = AtomicFiles.createTempFile(target);
+
+		boolean moved = false;
+		try {
+			try (FileChannel opened = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				channel = opened;
+				write();
+				if (isCancelled())
+					return null;
+				channel.force(true);
+			}
+
+			AtomicFiles.replace(temp, target);
+			moved = true;
+		} finally {
+			channel = null;
+			if (!moved) {
+				Files.deleteIfExists(temp);
+			}
+		}
+		return null;
+	}
+
+	@Override
+	protected void done() {
+		// the shared text of a hibernated tab is released
+		if (text instanceof Closeable) {
+			JFileTab.closeQuietly((Closeable) text);
+		}
+	}
+
+	/**
+	 * Encodes the text and writes it to the channel. A surrogate pair split
+	 * between two segments is carried over to the next segment.
+	 *
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	private void write() throws IOException {
+		encoder = StandardCharsets.UTF_8.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		CharBuffer carry = CharBuffer.allocate(2);
+
+		Segment segment = new Segment();
+		segment.setPartialReturn(true);
+		int length = text.length();
+		int offset = 0;
+
+		while (offset < length && !isCancelled()) {
+			text.getText(offset, length - offset, segment);
+			offset += segment.count;
+			CharBuffer in = CharBuffer.wrap(segment.array, segment.offset, segment.count);
+
+			while (carry.position() > 0 && in.hasRemaining()) {
+				carry.put(in.get());
+				carry.flip();
+				encode(carry, false);
+				carry.compact();
+			}
+			encode(in, false);
+			carry.put(in);
+
+			setProgress((int) ((long) offset * 100 / length));
+		}
+
+		carry.flip();
+		encode(carry, true);
+		while (encoder.flush(out).isOverflow()) {
+			drain();
+		}
+		drain();
+	}
+
+	/**
+	 * Encodes the given characters, writing the buffer to the channel whenever
+	 * it is full.
+	 *
+	 * @param in
+	 *            characters to encode
+	 * @param endOfInput
+	 *            <code>true</code> if there are no more characters
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	private void encode(CharBuffer in, boolean endOfInput) throws IOException {
+		while (true) {
+			CoderResult result = encoder.encode(in, out, endOfInput);
+			if (result.isUnderflow())
+				return;
+			if (result.isOverflow()) {
+				drain();
+			} else {
+				result.throwException();
+			}
+		}
+	}
+
+	/**
+	 * Writes the encoded bytes to the channel and clears the buffer.
+	 *
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	private void drain() throws IOException {
+		out.flip();
+		while (out.hasRemaining()) {
+			channel.write(out);
+		}
+		out.clear();
+	}
+
+}
@@ -0,0 +1,316 @@
+package hr.fer.zemris.java.hw10jnotepadapp;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+import javax.swing.SwingWorker;
+import javax.swing.SwingWorker.StateValue;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+
+import hr.fer.zemris.java.document.EditorDocument;
+
+/**
+ * Follows a growing file shown in a {@link JFileTab}, such as a log, and
+ * appends the text written to it to the document of the tab.
+ * <p>
+ * The file is checked periodically. The bytes written since the last check
+ * are read from the remembered position in the background, at most
+ * {@link #READ_LIMIT} bytes at a time, so the tab is updated at a limited
+ * rate even while the file grows quickly. The bytes are decoded as UTF-8 and
+ * a character split between two reads is completed by the next one. The
+ * caret is kept at the end of the document if it was there.
+ * <p>
+ * A file replaced by another one with the same path, as when a log is
+ * rotated, is noticed by the key of the file, and a file which became
+ * shorter than the read position by its size. The rest of a rotated file is
+ * read before the new file is followed from its beginning, while a truncated
+ * file is followed from its beginning right away.
+ * <p>
+ * The follower is configured by the system properties:
+ * <ul>
+ * <li><code>jnotepad.follow.interval</code> - milliseconds between two
+ * checks of the file, 250 by default</li>
+ * <li><code>jnotepad.follow.lines</code> - largest number of lines kept in
+ * the document, the oldest lines are removed once there are more, 0 (no
+ * limit) by default. The removed text stays in the content of the document
+ * until more text was removed than kept, when the content is compacted.</li>
+ * </ul>
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class FileFollower {
+	/** System property with the milliseconds between two checks. */
+	private static final String INTERVAL_PROPERTY = "jnotepad.follow.interval";
+	/** Default number of milliseconds between two checks. */
+	private static final long DEFAULT_INTERVAL = 250;
+	/** System property with the largest number of lines. */
+	private static final String LINES_PROPERTY = "jnotepad.follow.lines";
+	/** Largest number of bytes read at once. */
+	private static final int READ_LIMIT = 1 << 20;
+	/** Size of the buffer of the read bytes. */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** The tab. */
+	private JFileTab tab;
+	/** Path of the followed file. */
+	private Path filePath;
+	/** Largest number of lines kept in the document, 0 if not limited. */
+	private int maxLines = Integer.getInteger(LINES_PROPERTY, 0);
+	/** Channel of the followed file. */
+	private FileChannel channel;
+	/** Key of the file of the channel, <code>null</code> if not supported. */
+	private Object fileKey;
+	/** Position of the next read in the file. */
+	private long position;
+	/** Decodes the read bytes. */
+	private CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+	/** Read bytes which were not yet decoded. */
+	private ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+	/** Decoded characters. */
+	private CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+	/** Checks the file periodically. */
+	private UIScheduler.Task checkTask;
+	/** Running read, <code>null</code> if none. */
+	private Read read;
+	/** Number of characters removed since the content was compacted. */
+	private long removed;
+
+	/**
+	 * Constructs a new {@link FileFollower} of the file shown in the given tab.
+	 * The file is followed from its current end.
+	 *
+	 * @param tab
+	 *            the tab
+	 * @throws IOException
+	 *             if the file can not be opened
+	 */
+	public FileFollower(JFileTab tab) throws IOException {
+		this.tab = tab;
+		filePath = tab.getFilePath();
+		open();
+		position = channel.size();
+	}
+
+	/**
+	 * Starts checking the file periodically.
+	 *
+	 * @param scheduler
+	 *            runs the checks
+	 */
+	public void start(UIScheduler scheduler) {
+		checkTask = scheduler.repeat(this::check, Long.getLong(INTERVAL_PROPERTY, DEFAULT_INTERVAL), 0);
+	}
+
+	/**
+	 * Stops following the file and closes it.
+	 */
+	public void stop() {
+		if (checkTask != null) {
+			checkTask.cancel();
+		}
+		if (read != null) {
+			// the channel is closed once the read is finished
+			read.cancel(false);
+			return;
+		}
+		close();
+	}
+
+	/**
+	 * Starts reading the new bytes of the file, unless the previous read is
+	 * still running.
+	 */
+	private void check() {
+		if (read != null)
+			return;
+
+		Read started = new Read();
+		read = started;
+		started.addPropertyChangeListener(new PropertyChangeListener() {
+			@Override
+			public void propertyChange(PropertyChangeEvent evt) {
+				if ("state".equals(evt.getPropertyName()) && evt.getNewValue() == StateValue.DONE) {
+					readDone(started);
+				}
+			}
+		});
+		started.execute();
+	}
+
+	/**
+	 * Appends the text of a finished read to the document and removes the
+	 * oldest lines above the limit.
+	 *
+	 * @param finished
+	 *            the finished read
+	 */
+	private void readDone(Read finished) {
+		read = null;
+		if (finished.isCancelled()) {
+			close();
+			return;
+		}
+
+		String text;
+		try {
+			text = finished.get();
+		} catch (Exception ex) {
+			// the file is missing while it is being rotated, checked again
+			return;
+		}
+		if (text.isEmpty())
+			return;
+
+		Document doc = tab.getDocument();
+		boolean atEnd = tab.getCaretPosition() == doc.getLength();
+		try {
+			doc.insertString(doc.getLength(), text, null);
+			// the empty line after the last line feed is not counted
+			int lines = tab.getLineCount() - (text.endsWith("\n") ? 1 : 0);
+			if (maxLines > 0 && lines > maxLines) {
+				int length = tab.getLineStartOffset(lines - maxLines);
+				doc.remove(0, length);
+				removed += length;
+			}
+			// compacting once the removed text outweighs the kept text bounds the memory
+			if (removed > doc.getLength() && doc instanceof EditorDocument) {
+				((EditorDocument) doc).compact();
+				removed = 0;
+			}
+		} catch (BadLocationException ignorable) {
+		}
+		if (atEnd) {
+			tab.setCaretPosition(doc.getLength());
+		}
+		// the length changes even if the caret is not moved
+		tab.updateStatusBar();
+	}
+
+	/**
+	 * Opens the followed file.
+	 *
+	 * @throws IOException
+	 *             if the file can not be opened
+	 */
+	private void open() throws IOException {
+		channel = FileChannel.open(filePath, StandardOpenOption.READ);
+		fileKey = Files.readAttributes(filePath, BasicFileAttributes.class).fileKey();
+	}
+
+	/**
+	 * Closes the followed file.
+	 */
+	private void close() {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException ignorable) {
+			}
+			channel = null;
+		}
+	}
+
+	/**
+	 * Reads the bytes of the channel from the read position and decodes them.
+	 *
+	 * @param text
+	 *            receives the decoded text
+	 * @param limit
+	 *            largest number of bytes to read
+	 * @return number of the read bytes
+	 * @throws IOException
+	 *             if reading fails
+	 */
+	private int readAvailable(StringBuilder text, int limit) throws IOException {
+		int total = 0;
+		while (total < limit) {
+			bytes.limit(Math.min(bytes.capacity(), bytes.position() + limit - total));
+			int n = channel.read(bytes, position);
+			if (n <= 0)
+				break;
+			position += n;
+			total += n;
+			decode(text, false);
+		}
+		return total;
+	}
+
+	/**
+	 * Decodes the read bytes. Bytes of an incomplete character are kept for
+	 * the next read, unless there are no more bytes.
+	 *
+	 * @param text
+	 *            receives the decoded text
+	 * @param endOfInput
+	 *            <code>true</code> if no more bytes follow
+	 */
+	private void decode(StringBuilder text, boolean endOfInput) {
+		bytes.flip();
+		while (true) {
+			boolean overflow = decoder.decode(bytes, chars, endOfInput).isOverflow();
+			if (endOfInput && !overflow) {
+				overflow = decoder.flush(chars).isOverflow();
+			}
+			chars.flip();
+			text.append(chars);
+			chars.clear();
+			if (!overflow)
+				break;
+		}
+		bytes.compact();
+		if (endOfInput) {
+			decoder.reset();
+		}
+	}
+
+	/**
+	 * Reads the new bytes of the followed file in the background. A rotated
+	 * file is read to its end before the new file is opened.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private class Read extends SwingWorker<String, Void> {
+
+		@Override
+		protected String doInBackground() throws Exception {
+			StringBuilder text = new StringBuilder();
+			BasicFileAttributes attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+			Object key = attributes.fileKey();
+
+			int limit = READ_LIMIT;
+			if (key != null && fileKey != null && !Objects.equals(key, fileKey)) {
+				limit -= readAvailable(text, limit);
+				decode(text, true);
+				close();
+				open();
+				position = 0;
+				if (isCancelled()) {
+					close();
+				}
+			} else if (attributes.size() < position) {
+				decode(text, true);
+				position = 0;
+			}
+			if (!isCancelled() && channel != null) {
+				readAvailable(text, limit);
+			}
+			return text.toString();
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package hr.fer.zemris.java.hw10jnotepadapp;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import javax.swing.SwingWorker;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+
+import hr.fer.zemris.java.document.MappedDocument;
+import hr.fer.zemris.java.document.MappedTextFile;
+
+/**
+ * Loads a file into a {@link JFileTab} on a background thread.
+ * <p>
+ * The file is read and decoded in chunks which are published to the document
+ * of the tab in batches, so the beginning of the file is shown right away
+ * while the rest is still being read. The first chunks are small and each
+ * following chunk is twice as large, up to the maximal chunk size.
+ * <p>
+ * Files of at least {@link FileLoader#VIEWER_THRESHOLD} bytes are not read -
+ * they are mapped instead and the tab is switched to the viewer mode as soon
+ * as the beginning of the file is indexed. The rest of the file is indexed in
+ * the background and shown each time the progress of the loader changes. The
+ * mapped file is the result of the loader, and is closed by the loader if the
+ * loading fails or is cancelled.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class FileLoader extends SwingWorker<MappedTextFile, String> {
+	/** Size in bytes from which files are opened in the read-only viewer mode. */
+	public static final long VIEWER_THRESHOLD = 64L * 1024 * 1024;
+	/** Size of the first chunk in characters. */
+	private static final int FIRST_CHUNK = 1 << 13;
+	/** Maximal size of a chunk in characters. */
+	private static final int MAX_CHUNK = 1 << 18;
+
+	/** Path of the loaded file. */
+	private Path filePath;
+	/** Tab receiving the text. */
+	private JFileTab tab;
+	/** <code>true</code> while a chunk is being appended to the document. */
+	private boolean appending;
+	/** Mapped file, <code>null</code> if the file is read. */
+	private volatile MappedTextFile mapped;
+
+	/**
+	 * Constructs a new {@link FileLoader}.
+	 *
+	 * @param filePath
+	 *            path of the file to load
+	 * @param tab
+	 *            tab receiving the text
+	 */
+	public FileLoader(Path filePath, JFileTab tab) {
+		this.filePath = filePath;
+		this.tab = tab;
+
+		addPropertyChangeListener(new PropertyChangeListener() {
+			@Override
+			public void propertyChange(PropertyChangeEvent evt) {
+				if ("progress".equals(evt.getPropertyName())) {
+					showIndexed();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Gets the path of the loaded file.
+	 *
+	 * @return path of the file
+	 */
+	public Path getFilePath() {
+		return filePath;
+	}
+
+	/**
+	 * Checks if a loaded chunk is being appended to the document. The chunks
+	 * are appended on the event dispatch thread, so the last chunks can be
+	 * appended after the loader is done.
+	 *
+	 * @return <code>true</code> while a chunk is being appended
+	 */
+	public boolean isAppending() {
+		return appending;
+	}
+
+	@Override
+	protected MappedTextFile doInBackground() throws Exception {
+		if (!Files.isReadable(filePath)) {
+			throw new IOException(filePath + " can not be read.");
+		}
+
+		long size = Files.size(filePath);
+		if (size >= VIEWER_THRESHOLD) {
+			MappedTextFile file = MappedTextFile.open(filePath);
+			mapped = file;
+			do {
+				if (isCancelled()) {
+					file.close();
+					return null;
+				}
+				// the first change of the progress shows the file
+				setProgress((int) Math.max(1, file.getIndexedSize() * 100 / size));
+			} while (!file.indexNext());
+			return file;
+		}
+
+		try (Reader reader = new InputStreamReader(Files.newInputStream(filePath), StandardCharsets.UTF_8)) {
+			char[] buffer = new char[MAX_CHUNK];
+			int chunk = FIRST_CHUNK;
+			long read = 0;
+
+			while (!isCancelled()) {
+				int n = reader.read(buffer, 0, chunk);
+				if (n < 0)
+					break;
+
+				publish(new String(buffer, 0, n));
+				read += n;
+				if (size > 0) {
+					setProgress((int) Math.min(100, read * 100 / size));
+				}
+				chunk = Math.min(MAX_CHUNK, chunk * 2);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Shows the part of the mapped file indexed so far in the tab. The tab is
+	 * switched to the viewer mode when called for the first time. Does nothing
+	 * if the file is read or the loader was cancelled.
+	 */
+	void showIndexed() {
+		MappedTextFile file = mapped;
+		if (file == null || isCancelled())
+			return;
+
+		Document doc = tab.getDocument();
+		if (doc instanceof MappedDocument && ((MappedDocument) doc).getFile() == file) {
+			((MappedDocument) doc).update();
+		} else {
+			tab.setDocument(new MappedDocument(file));
+		}
+	}
+
+	@Override
+	protected void done() {
+		MappedTextFile file = mapped;
+		if (file == null)
+			return;
+		try {
+			get();
+		} catch (Exception ex) {
+			JFileTab.closeQuietly(file);
+		}
+	}
+
+	@Override
+	protected void process(List<String> chunks) {
+		if (isCancelled())
+			return;
+
+		StringBuilder batch = new StringBuilder();
+		for (String chunk : chunks) {
+			batch.append(chunk);
+		}
+
+		Document doc = tab.getDocument();
+		appending = true;
+		try {
+			doc.insertString(doc.getLength(), batch.toString(), null);
+		} catch (BadLocationException ignorable) {
+		} finally {
+			appending = false;
+		}
+	}
+
+}
@@ -0,0 +1,671 @@
+package hr.fer.zemris.java.hw10jnotepadapp;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.SwingWorker.StateValue;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+
+import hr.fer.zemris.java.document.EditorDocument;
+import hr.fer.zemris.java.document.MappedDocument;
+import hr.fer.zemris.java.document.TextSource;
+import hr.fer.zemris.java.localization.ILocalizationProvider;
+import hr.fer.zemris.java.tools.TextDiff;
+
+/**
+ * Notices when the files shown in the tabs of the {@link JNotepadPP} app are
+ * changed by other programs.
+ * <p>
+ * A single {@link WatchService} thread watches the directories of all of the
+ * open files, each directory once, and passes the changed files to the event
+ * dispatch thread. The changes are collected for a short while, so a file
+ * written in many steps is checked only once, and a changed file is then
+ * compared with the time of its last modification and its size, as they were
+ * when the tab last loaded or saved it.
+ * <p>
+ * A tab without unsaved changes is reloaded in the background. Its document
+ * is compared with the new contents of the file by a {@link TextDiff}, and
+ * only the changed regions are replaced, so the caret and the view stay where
+ * they were. The user is asked whether a tab with unsaved changes should be
+ * reloaded or keep its changes. A removed file marks its tab as edited.
+ * Hibernated tabs and tabs not yet loaded are checked once they are selected,
+ * while followed tabs are not checked, since a {@link FileFollower} already
+ * appends the changes of their files.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class FileWatcher {
+	/** Delay between the last change of a file and its check in milliseconds. */
+	private static final long DEBOUNCE_DELAY = 250;
+	/** Longest delay of the check of a file which keeps changing. */
+	private static final long MAX_DELAY = 1000;
+
+	/** Notepad app. */
+	private JNotepadPP app;
+	/** Localization provider. */
+	private ILocalizationProvider provider;
+	/** Watches the directories, <code>null</code> if watching is not supported. */
+	private WatchService service;
+	/** Keys of the watched directories. */
+	private Map<Path, WatchKey> keys = new HashMap<>();
+	/** Number of the watched files in each of the watched directories. */
+	private Map<Path, Integer> directoryFiles = new HashMap<>();
+	/** State of the files of the watched tabs. */
+	private Map<JFileTab, WatchedFile> watched = new HashMap<>();
+	/** Watched tabs by their files. */
+	private Map<Path, List<JFileTab>> tabsByFile = new HashMap<>();
+	/** Changed files which were not yet checked. */
+	private Set<Path> pending = new HashSet<>();
+	/** Time the oldest of the pending files was changed. */
+	private long pendingSince;
+	/** Checks the pending files, <code>null</code> if not scheduled. */
+	private UIScheduler.Task checkTask;
+	/** Running reloads by their tabs. */
+	private Map<JFileTab, Reload> reloads = new HashMap<>();
+	/** <code>true</code> while the user is asked about a conflict. */
+	private boolean prompting;
+
+	/**
+	 * Constructs a new {@link FileWatcher} and starts watching.
+	 *
+	 * @param provider
+	 *            localization provider
+	 * @param app
+	 *            notepad app
+	 */
+	public FileWatcher(ILocalizationProvider provider, JNotepadPP app) {
+		this.provider = provider;
+		this.app = app;
+		try {
+			service = FileSystems.getDefault().newWatchService();
+		} catch (IOException | UnsupportedOperationException ex) {
+			// the files are still checked whenever their tabs are selected
+			return;
+		}
+
+		Thread thread = new Thread(this::watch, "jnotepad-watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Waits for the changes of the watched directories and passes them to the
+	 * event dispatch thread, until the watch service is closed.
+	 */
+	private void watch() {
+		while (true) {
+			WatchKey key;
+			try {
+				key = service.take();
+			} catch (InterruptedException | ClosedWatchServiceException ex) {
+				return;
+			}
+
+			Path directory = (Path) key.watchable();
+			List<Path> changed = new ArrayList<>();
+			boolean overflow = false;
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+					overflow = true;
+				} else {
+					changed.add(directory.resolve((Path) event.context()));
+				}
+			}
+			boolean valid = key.reset();
+
+			boolean lost = overflow;
+			SwingUtilities.invokeLater(() -> directoryChanged(directory, changed, lost, valid));
+		}
+	}
+
+	/**
+	 * Collects the changed files of a watched directory and schedules their
+	 * check.
+	 *
+	 * @param directory
+	 *            the directory
+	 * @param changed
+	 *            changed files of the directory
+	 * @param overflow
+	 *            <code>true</code> if some of the changes were lost
+	 * @param valid
+	 *            <code>false</code> if the directory is not watched anymore
+	 */
+	private void directoryChanged(Path directory, List<Path> changed, boolean overflow, boolean valid) {
+		if (!valid) {
+			keys.remove(directory);
+		}
+		if (overflow || !valid) {
+			for (Path file : tabsByFile.keySet()) {
+				if (directory.equals(file.getParent())) {
+					addPending(file);
+				}
+			}
+		}
+		for (Path file : changed) {
+			if (tabsByFile.containsKey(file)) {
+				addPending(file);
+			}
+		}
+		scheduleCheck();
+	}
+
+	/**
+	 * Starts watching the file of the given tab, remembering its current
+	 * state. Called whenever the tab starts loading or is saved to a file.
+	 *
+	 * @param tab
+	 *            the tab
+	 */
+	public void register(JFileTab tab) {
+		unregister(tab);
+		if (tab.getFilePath() == null)
+			return;
+
+		Path file = tab.getFilePath().toAbsolutePath().normalize();
+		WatchedFile state = new WatchedFile(file);
+		state.read();
+		watched.put(tab, state);
+		tabsByFile.computeIfAbsent(file, f -> new ArrayList<>(1)).add(tab);
+
+		Path directory = file.getParent();
+		if (directory != null && directoryFiles.merge(directory, 1, Integer::sum) == 1) {
+			watchDirectory(directory);
+		}
+	}
+
+	/**
+	 * Stops watching the file of the given tab. Called when the tab is closed.
+	 *
+	 * @param tab
+	 *            the tab
+	 */
+	public void unregister(JFileTab tab) {
+		WatchedFile state = watched.remove(tab);
+		Reload reload = reloads.remove(tab);
+		if (reload != null) {
+			reload.cancel(true);
+		}
+		if (state == null)
+			return;
+
+		List<JFileTab> tabs = tabsByFile.get(state.file);
+		tabs.remove(tab);
+		if (tabs.isEmpty()) {
+			tabsByFile.remove(state.file);
+		}
+
+		Path directory = state.file.getParent();
+		if (directory != null && directoryFiles.merge(directory, -1, Integer::sum) == 0) {
+			directoryFiles.remove(directory);
+			WatchKey key = keys.remove(directory);
+			if (key != null) {
+				key.cancel();
+			}
+		}
+	}
+
+	/**
+	 * Checks the file of the given tab soon. Called when the tab is selected,
+	 * so a tab which could not be checked before is checked once it is shown.
+	 *
+	 * @param tab
+	 *            the tab
+	 */
+	public void verify(JFileTab tab) {
+		WatchedFile state = watched.get(tab);
+		if (state != null) {
+			addPending(state.file);
+			scheduleCheck();
+		}
+	}
+
+	/**
+	 * Checks whether the file of the given tab was changed by another program
+	 * since the tab last loaded or saved it.
+	 *
+	 * @param tab
+	 *            the tab
+	 * @return <code>true</code> if the file was changed and still exists
+	 */
+	public boolean isChangedOnDisk(JFileTab tab) {
+		WatchedFile state = watched.get(tab);
+		if (state == null)
+			return false;
+		WatchedFile current = new WatchedFile(state.file);
+		current.read();
+		return current.exists() && !current.isSameState(state);
+	}
+
+	/**
+	 * Stops watching. Called when the app is closed.
+	 */
+	public void dispose() {
+		for (Reload reload : reloads.values()) {
+			reload.cancel(true);
+		}
+		reloads.clear();
+		if (checkTask != null) {
+			checkTask.cancel();
+		}
+		if (service != null) {
+			try {
+				service.close();
+			} catch (IOException ignorable) {
+			}
+		}
+	}
+
+	/**
+	 * Starts watching a directory, unless it is already watched.
+	 *
+	 * @param directory
+	 *            the directory
+	 */
+	private void watchDirectory(Path directory) {
+		if (service == null || keys.containsKey(directory))
+			return;
+		try {
+			keys.put(directory, directory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY));
+		} catch (IOException ignorable) {
+			// the directory is watched again once a file in it is checked
+		}
+	}
+
+	/**
+	 * Adds a changed file to the files checked next.
+	 *
+	 * @param file
+	 *            the file
+	 */
+	private void addPending(Path file) {
+		if (pending.isEmpty()) {
+			pendingSince = System.currentTimeMillis();
+		}
+		pending.add(file);
+	}
+
+	/**
+	 * Schedules the check of the pending files. A scheduled check is
+	 * postponed by each change, but not for longer than {@link #MAX_DELAY}.
+	 */
+	private void scheduleCheck() {
+		if (pending.isEmpty() || prompting)
+			return;
+		if (checkTask != null && checkTask.isPending()) {
+			if (System.currentTimeMillis() - pendingSince >= MAX_DELAY)
+				return;
+			checkTask.cancel();
+		}
+		checkTask = app.getScheduler().schedule(this::check, DEBOUNCE_DELAY);
+	}
+
+	/**
+	 * Checks the pending files. The files of the tabs which are busy are
+	 * checked again later.
+	 */
+	private void check() {
+		checkTask = null;
+		if (prompting)
+			return;
+
+		Set<Path> files = pending;
+		pending = new HashSet<>();
+		for (Path file : files) {
+			List<JFileTab> tabs = tabsByFile.get(file);
+			if (tabs == null)
+				continue;
+			for (JFileTab tab : new ArrayList<>(tabs)) {
+				if (!check(tab)) {
+					addPending(file);
+				}
+			}
+		}
+		scheduleCheck();
+	}
+
+	/**
+	 * Checks the file of the given tab and reloads it or asks the user about
+	 * the conflict if it was changed.
+	 *
+	 * @param tab
+	 *            the tab
+	 * @return <code>false</code> if the tab is busy and must be checked again
+	 *         later, <code>true</code> otherwise
+	 */
+	private boolean check(JFileTab tab) {
+		WatchedFile state = watched.get(tab);
+		if (state == null)
+			return true;
+		if (tab.isLoading() || tab.isSaving() || reloads.containsKey(tab) || prompting)
+			return false;
+		// checked once the tab is selected or no longer followed
+		if (tab.isHibernated() || tab.isDeferred() || tab.isFollowing())
+			return true;
+
+		Path directory = state.file.getParent();
+		if (directory != null) {
+			watchDirectory(directory);
+		}
+		WatchedFile current = new WatchedFile(state.file);
+		current.read();
+		if (current.isSameState(state))
+			return true;
+
+		if (!current.exists()) {
+			// the document is not saved anywhere anymore
+			state.setState(current);
+			tab.setEdited(true);
+			setIcon(tab, true);
+			return true;
+		}
+		if (!tab.isEdited()) {
+			reload(tab, state);
+			return true;
+		}
+
+		int option;
+		prompting = true;
+		try {
+			option = JOptionPane.showConfirmDialog(app, state.file + "\n" + provider.getString("changed_on_disk"),
+					provider.getString("file_changed"), JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+		} finally {
+			prompting = false;
+		}
+		// the tab could have been closed while the user was asked
+		if (watched.get(tab) == state) {
+			if (option == JOptionPane.YES_OPTION) {
+				reload(tab, state);
+			} else {
+				// the next save overwrites the changes of the other program
+				state.setState(current);
+			}
+		}
+		scheduleCheck();
+		return true;
+	}
+
+	/**
+	 * Reloads the file of the given tab. A viewer, or a file which became too
+	 * large to be edited, is loaded again as a whole, while the changes of any
+	 * other file are applied to the document in place.
+	 *
+	 * @param tab
+	 *            the tab
+	 * @param state
+	 *            remembered state of the file of the tab
+	 */
+	private void reload(JFileTab tab, WatchedFile state) {
+		if (tab.isViewer() || sizeOf(state.file) >= FileLoader.VIEWER_THRESHOLD) {
+			Document old = tab.getDocument();
+			tab.setDocument(new EditorDocument());
+			if (old instanceof MappedDocument) {
+				JFileTab.closeQuietly((MappedDocument) old);
+			}
+			tab.setEdited(false);
+			setIcon(tab, false);
+			app.load(tab);
+			return;
+		}
+
+		TextSource snapshot;
+		try {
+			snapshot = tab.snapshot();
+		} catch (BadLocationException ex) {
+			return;
+		}
+		Reload reload = new Reload(state.file, snapshot);
+		long changeCount = tab.getChangeCount();
+		reloads.put(tab, reload);
+		reload.addPropertyChangeListener(new PropertyChangeListener() {
+			@Override
+			public void propertyChange(PropertyChangeEvent evt) {
+				if ("state".equals(evt.getPropertyName()) && evt.getNewValue() == StateValue.DONE) {
+					reloadDone(tab, state, reload, changeCount);
+				}
+			}
+		});
+		reload.execute();
+	}
+
+	/**
+	 * Applies the changes found by a finished reload to the document of the
+	 * tab. If the tab was edited in the meantime or the file could not be
+	 * read, the file is checked again. The status bar is updated only if the
+	 * tab is selected.
+	 *
+	 * @param tab
+	 *            the tab
+	 * @param state
+	 *            remembered state of the file of the tab
+	 * @param reload
+	 *            the finished reload
+	 * @param changeCount
+	 *            number of the edits of the tab when the reload started
+	 */
+	private void reloadDone(JFileTab tab, WatchedFile state, Reload reload, long changeCount) {
+		if (reloads.get(tab) != reload)
+			return;
+		reloads.remove(tab);
+		if (watched.get(tab) != state || reload.isCancelled())
+			return;
+
+		List<TextDiff.Change> changes;
+		try {
+			changes = reload.get();
+		} catch (Exception ex) {
+			changes = null;
+		}
+		if (changes == null || tab.getChangeCount() != changeCount || tab.isHibernated()) {
+			addPending(state.file);
+			scheduleCheck();
+			return;
+		}
+
+		// the whole reload is undone at once
+		Document doc = tab.getDocument();
+		EditorDocument editorDoc = doc instanceof EditorDocument ? (EditorDocument) doc : null;
+		if (editorDoc != null) {
+			editorDoc.beginCompoundEdit();
+		}
+		try {
+			for (int i = changes.size() - 1; i >= 0; i--) {
+				TextDiff.Change change = changes.get(i);
+				if (change.getLength() > 0) {
+					doc.remove(change.getOffset(), change.getLength());
+				}
+				if (!change.getText().isEmpty()) {
+					doc.insertString(change.getOffset(), change.getText(), null);
+				}
+			}
+		} catch (BadLocationException ignorable) {
+		} finally {
+			if (editorDoc != null) {
+				editorDoc.endCompoundEdit();
+			}
+		}
+		state.setState(reload.getFileState());
+		tab.setEdited(false);
+		setIcon(tab, false);
+		// the caret does not move if the text changed only after it
+		tab.updateStatusBar();
+	}
+
+	/**
+	 * Sets the icon of the given tab.
+	 *
+	 * @param tab
+	 *            the tab
+	 * @param edited
+	 *            <code>true</code> if the tab has unsaved changes
+	 */
+	private void setIcon(JFileTab tab, boolean edited) {
+		int index = tab.getTabIndex();
+		if (index >= 0) {
+			app.getTabs().setIconAt(index, edited ? JNotepadPP.modifiedIcon : JNotepadPP.unmodifiedIcon);
+		}
+	}
+
+	/**
+	 * Gets the size of a file.
+	 *
+	 * @param file
+	 *            the file
+	 * @return size of the file in bytes, <code>-1</code> if it can not be read
+	 */
+	private static long sizeOf(Path file) {
+		try {
+			return Files.size(file);
+		} catch (IOException ex) {
+			return -1;
+		}
+	}
+
+	/**
+	 * State of a watched file.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private static final class WatchedFile {
+		/** Absolute path of the file. */
+		private Path file;
+		/** Time of the last modification in milliseconds, -1 if missing. */
+		private long modified = -1;
+		/** Size in bytes, -1 if missing. */
+		private long size = -1;
+
+		/**
+		 * Constructs a new {@link WatchedFile}.
+		 *
+		 * @param file
+		 *            absolute path of the file
+		 */
+		private WatchedFile(Path file) {
+			this.file = file;
+		}
+
+		/**
+		 * Reads the current state of the file.
+		 */
+		private void read() {
+			try {
+				BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+				modified = attributes.lastModifiedTime().toMillis();
+				size = attributes.size();
+			} catch (IOException ex) {
+				modified = -1;
+				size = -1;
+			}
+		}
+
+		/**
+		 * Checks whether the file exists.
+		 *
+		 * @return <code>true</code> if the file existed when it was read
+		 */
+		private boolean exists() {
+			return size >= 0;
+		}
+
+		/**
+		 * Checks whether the other state is the same as this one.
+		 *
+		 * @param other
+		 *            the other state
+		 * @return <code>true</code> if the times and the sizes are the same
+		 */
+		private boolean isSameState(WatchedFile other) {
+			return modified == other.modified && size == other.size;
+		}
+
+		/**
+		 * Copies the other state.
+		 *
+		 * @param other
+		 *            the other state
+		 */
+		private void setState(WatchedFile other) {
+			modified = other.modified;
+			size = other.size;
+		}
+	}
+
+	/**
+	 * Reads a changed file in the background and finds the changes which turn
+	 * the document of its tab into the new contents of the file.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private static final class Reload extends SwingWorker<List<TextDiff.Change>, Void> {
+		/** The file. */
+		private Path file;
+		/** Text of the document of the tab. */
+		private TextSource text;
+		/** State of the file before it was read. */
+		private WatchedFile state;
+
+		/**
+		 * Constructs a new {@link Reload}.
+		 *
+		 * @param file
+		 *            the changed file
+		 * @param text
+		 *            text of the document of the tab
+		 */
+		private Reload(Path file, TextSource text) {
+			this.file = file;
+			this.text = text;
+			state = new WatchedFile(file);
+		}
+
+		/**
+		 * Gets the state of the file before it was read.
+		 *
+		 * @return state of the file
+		 */
+		private WatchedFile getFileState() {
+			return state;
+		}
+
+		@Override
+		protected List<TextDiff.Change> doInBackground() throws Exception {
+			// a change during the reading is noticed by the next check
+			state.read();
+			CharBuffer decoded = StandardCharsets.UTF_8.decode(ByteBuffer.wrap(Files.readAllBytes(file)));
+			char[] changed = decoded.array().length == decoded.limit() ? decoded.array()
+					: Arrays.copyOf(decoded.array(), decoded.limit());
+
+			char[] old = new char[text.length()];
+			text.getChars(0, old.length, old, 0);
+			return TextDiff.diff(old, changed, this::isCancelled);
+		}
+	}
+}
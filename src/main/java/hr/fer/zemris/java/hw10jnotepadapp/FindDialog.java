@@ -0,0 +1,515 @@
+package hr.fer.zemris.java.hw10jnotepadapp;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.FlowLayout;
+import java.awt.GridLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTabbedPane;
+import javax.swing.JTextField;
+import javax.swing.SwingWorker;
+import javax.swing.SwingWorker.StateValue;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Document;
+import javax.swing.text.Highlighter;
+
+import hr.fer.zemris.java.document.EditorDocument;
+import hr.fer.zemris.java.document.TextSource;
+import hr.fer.zemris.java.localization.ILocalizationListener;
+import hr.fer.zemris.java.localization.ILocalizationProvider;
+import hr.fer.zemris.java.localization.LocalizableAction;
+import hr.fer.zemris.java.tools.TextSearcher;
+
+/**
+ * Find and replace dialog of the {@link JNotepadPP} app.
+ * <p>
+ * The current document is searched by a {@link TextSearcher} over its
+ * snapshot, on a background thread. Finding all the matches highlights them
+ * as they are found, up to {@link #MAX_HIGHLIGHTS} of them, while all of them
+ * are counted. Replacing all the matches is a single compound edit. A search
+ * is cancelled once the searched document is edited, since its results would
+ * not match the document anymore.
+ *
+ * @author Mirna Baksa
+ *
+ */
+@SuppressWarnings("serial")
+public class FindDialog extends JDialog {
+	/** Largest number of highlighted matches. */
+	private static final int MAX_HIGHLIGHTS = 10_000;
+	/** Painter of the highlighted matches. */
+	private static final Highlighter.HighlightPainter PAINTER = new DefaultHighlighter.DefaultHighlightPainter(
+			new Color(255, 230, 120));
+
+	/** Notepad app. */
+	private JNotepadPP app;
+	/** Localization provider. */
+	private ILocalizationProvider provider;
+	/** Field with the searched text. */
+	private JTextField findField = new JTextField(24);
+	/** Field with the replacement. */
+	private JTextField replaceField = new JTextField(24);
+	/** Marks the case of the characters matters. */
+	private JCheckBox matchCase;
+	/** Marks only whole words are matched. */
+	private JCheckBox wholeWord;
+	/** Shows the result of the last search. */
+	private JLabel status = new JLabel(" ");
+	/** Running search, <code>null</code> if none. */
+	private SwingWorker<?, ?> search;
+	/** Tab with the highlighted matches, <code>null</code> if none. */
+	private JFileTab highlighted;
+	/** Tags of the highlighted matches. */
+	private List<Object> highlights = new ArrayList<>();
+	/** Translates the dialog when the language changes. */
+	private ILocalizationListener localizationListener;
+
+	/**
+	 * Constructs a new {@link FindDialog}.
+	 *
+	 * @param app
+	 *            notepad app
+	 * @param provider
+	 *            localization provider
+	 */
+	public FindDialog(JNotepadPP app, ILocalizationProvider provider) {
+		super(app, provider.getString("find_replace"), false);
+		this.app = app;
+		this.provider = provider;
+
+		addComponentListener(new ComponentAdapter() {
+			@Override
+			public void componentHidden(ComponentEvent e) {
+				cancelSearch();
+				clearHighlights();
+			}
+		});
+
+		initGUI();
+		pack();
+		setLocationRelativeTo(app);
+	}
+
+	/**
+	 * Initializes the GUI of the dialog.
+	 */
+	private void initGUI() {
+		JLabel findLabel = new JLabel(provider.getString("find_what"));
+		JLabel replaceLabel = new JLabel(provider.getString("replace_with"));
+		localizationListener = new ILocalizationListener() {
+			@Override
+			public void localizationChanged() {
+				setTitle(provider.getString("find_replace"));
+				findLabel.setText(provider.getString("find_what"));
+				replaceLabel.setText(provider.getString("replace_with"));
+			}
+		};
+		provider.addLocalizationListener(localizationListener);
+
+		JPanel fields = new JPanel(new GridLayout(2, 2, 5, 5));
+		fields.add(findLabel);
+		fields.add(findField);
+		fields.add(replaceLabel);
+		fields.add(replaceField);
+
+		matchCase = new JCheckBox(new LocalizableAction("match_case", provider));
+		wholeWord = new JCheckBox(new LocalizableAction("whole_word", provider));
+		JPanel options = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		options.add(matchCase);
+		options.add(wholeWord);
+
+		JPanel form = new JPanel(new BorderLayout());
+		form.add(fields, BorderLayout.NORTH);
+		form.add(options, BorderLayout.CENTER);
+		form.add(status, BorderLayout.SOUTH);
+
+		JPanel buttons = new JPanel(new GridLayout(0, 1, 5, 5));
+		buttons.add(new JButton(new LocalizableAction("find_next", provider) {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				findNext();
+			}
+		}));
+		buttons.add(new JButton(new LocalizableAction("find_all", provider) {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				findAll();
+			}
+		}));
+		buttons.add(new JButton(new LocalizableAction("replace", provider) {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				replace();
+			}
+		}));
+		buttons.add(new JButton(new LocalizableAction("replace_all", provider) {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				replaceAll();
+			}
+		}));
+		buttons.add(new JButton(new LocalizableAction("close", provider) {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				setVisible(false);
+			}
+		}));
+
+		JPanel content = new JPanel(new BorderLayout(10, 10));
+		content.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+		content.add(form, BorderLayout.CENTER);
+		content.add(buttons, BorderLayout.EAST);
+		setContentPane(content);
+		getRootPane().setDefaultButton((JButton) buttons.getComponent(0));
+	}
+
+	/**
+	 * Shows the dialog. A short selection of the current document which is
+	 * not spread over several lines becomes the searched text.
+	 */
+	public void showDialog() {
+		JFileTab file = currentTab();
+		if (file != null) {
+			String selected = file.getSelectedText();
+			if (selected != null && !selected.isEmpty() && selected.length() <= 256 && selected.indexOf('\n') < 0) {
+				findField.setText(selected);
+			}
+		}
+		findField.selectAll();
+		setVisible(true);
+		findField.requestFocusInWindow();
+	}
+
+	/**
+	 * Selects the next match after the selection of the current document,
+	 * continuing from the start of the document when the end is reached.
+	 */
+	private void findNext() {
+		JFileTab file = currentTab();
+		TextSearcher searcher = searcher();
+		TextSource text = snapshot(file);
+		if (searcher == null || text == null)
+			return;
+
+		int from = Math.max(file.getCaret().getDot(), file.getCaret().getMark());
+		int length = text.length();
+		int m = searcher.getPatternLength();
+		start(file, new SwingWorker<Integer, Void>() {
+			@Override
+			protected Integer doInBackground() throws Exception {
+				int offset = searcher.find(text, from, length);
+				if (offset < 0) {
+					offset = searcher.find(text, 0, Math.min(length, from + m - 1));
+				}
+				return offset;
+			}
+
+			@Override
+			protected void done() {
+				Integer offset = result(this);
+				if (offset == null)
+					return;
+				if (offset < 0) {
+					status.setText(provider.getString("not_found"));
+					return;
+				}
+				status.setText(" ");
+				file.getCaret().setDot(offset);
+				file.getCaret().moveDot(offset + m);
+			}
+		});
+	}
+
+	/**
+	 * Highlights all the matches in the current document as they are found.
+	 */
+	private void findAll() {
+		JFileTab file = currentTab();
+		TextSearcher searcher = searcher();
+		TextSource text = snapshot(file);
+		if (searcher == null || text == null)
+			return;
+
+		clearHighlights();
+		highlighted = file;
+		int m = searcher.getPatternLength();
+		start(file, new SwingWorker<Integer, Integer>() {
+			@Override
+			protected Integer doInBackground() throws Exception {
+				return searcher.findAll(text, 0, text.length(), offset -> {
+					publish(offset);
+					return true;
+				}, this::isCancelled);
+			}
+
+			@Override
+			protected void process(List<Integer> chunks) {
+				if (isCancelled())
+					return;
+				for (Integer offset : chunks) {
+					if (highlights.size() == MAX_HIGHLIGHTS)
+						break;
+					try {
+						highlights.add(file.getHighlighter().addHighlight(offset, offset + m, PAINTER));
+					} catch (BadLocationException ignorable) {
+					}
+				}
+				status.setText(provider.getString("matches") + ": " + highlights.size() + "...");
+			}
+
+			@Override
+			protected void done() {
+				Integer count = result(this);
+				if (count != null) {
+					status.setText(provider.getString("matches") + ": " + count);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Replaces the selection of the current document if it is a match, and
+	 * selects the next match.
+	 */
+	private void replace() {
+		JFileTab file = currentTab();
+		TextSearcher searcher = searcher();
+		TextSource text = snapshot(file);
+		if (searcher == null || text == null || !file.isEditable())
+			return;
+
+		int dot = file.getCaret().getDot();
+		int mark = file.getCaret().getMark();
+		int offset = Math.min(dot, mark);
+		if (searcher.matchesAt(text, offset, Math.abs(dot - mark))) {
+			try {
+				((AbstractDocument) file.getDocument()).replace(offset, Math.abs(dot - mark), replaceField.getText(),
+						null);
+			} catch (BadLocationException ignorable) {
+			}
+		}
+		findNext();
+	}
+
+	/**
+	 * Replaces all the matches in the current document as a single compound
+	 * edit. The matches are found in the background and replaced from the
+	 * last one, so the offsets of the remaining ones stay valid. Nothing is
+	 * replaced if the document was edited since the search started.
+	 */
+	private void replaceAll() {
+		JFileTab file = currentTab();
+		TextSearcher searcher = searcher();
+		TextSource text = snapshot(file);
+		if (searcher == null || text == null || !file.isEditable())
+			return;
+
+		clearHighlights();
+		String replacement = replaceField.getText();
+		int m = searcher.getPatternLength();
+		Document searched = file.getDocument();
+		long changeCount = file.getChangeCount();
+		start(file, new SwingWorker<int[], Void>() {
+			@Override
+			protected int[] doInBackground() throws Exception {
+				int[][] offsets = { new int[64] };
+				int[] count = { 0 };
+				searcher.findAll(text, 0, text.length(), offset -> {
+					if (count[0] == offsets[0].length) {
+						offsets[0] = Arrays.copyOf(offsets[0], count[0] * 2);
+					}
+					offsets[0][count[0]++] = offset;
+					return true;
+				}, this::isCancelled);
+				return Arrays.copyOf(offsets[0], count[0]);
+			}
+
+			@Override
+			protected void done() {
+				int[] offsets = result(this);
+				if (offsets == null)
+					return;
+
+				// an edit made after the search ended is not noticed by its
+				// cancellation, but moves the found offsets
+				Document doc = file.getDocument();
+				if (doc != searched || file.getChangeCount() != changeCount) {
+					status.setText(" ");
+					return;
+				}
+
+				EditorDocument editorDoc = doc instanceof EditorDocument ? (EditorDocument) doc : null;
+				if (editorDoc != null) {
+					editorDoc.beginCompoundEdit();
+				}
+				try {
+					for (int i = offsets.length - 1; i >= 0; i--) {
+						((AbstractDocument) doc).replace(offsets[i], m, replacement, null);
+					}
+				} catch (BadLocationException ignorable) {
+				} finally {
+					if (editorDoc != null) {
+						editorDoc.endCompoundEdit();
+					}
+				}
+				status.setText(provider.getString("replaced") + ": " + offsets.length);
+			}
+		});
+	}
+
+	/**
+	 * Starts the given search of the document of the given tab, cancelling
+	 * the running one. The search is cancelled once the document is edited.
+	 *
+	 * @param file
+	 *            the searched tab
+	 * @param worker
+	 *            the search
+	 */
+	private void start(JFileTab file, SwingWorker<?, ?> worker) {
+		cancelSearch();
+		search = worker;
+
+		Document doc = file.getDocument();
+		DocumentListener listener = new DocumentListener() {
+			@Override
+			public void insertUpdate(DocumentEvent e) {
+				worker.cancel(false);
+			}
+
+			@Override
+			public void removeUpdate(DocumentEvent e) {
+				worker.cancel(false);
+			}
+
+			@Override
+			public void changedUpdate(DocumentEvent e) {
+			}
+		};
+		doc.addDocumentListener(listener);
+		worker.addPropertyChangeListener(new PropertyChangeListener() {
+			@Override
+			public void propertyChange(PropertyChangeEvent evt) {
+				if ("state".equals(evt.getPropertyName()) && evt.getNewValue() == StateValue.DONE) {
+					doc.removeDocumentListener(listener);
+				}
+			}
+		});
+
+		status.setText(provider.getString("searching"));
+		worker.execute();
+	}
+
+	/**
+	 * Gets the result of the given finished search.
+	 *
+	 * @param worker
+	 *            the search
+	 * @param <T>
+	 *            type of the result
+	 * @return result of the search, <code>null</code> if it was cancelled,
+	 *         replaced by another search or has failed
+	 */
+	private <T> T result(SwingWorker<T, ?> worker) {
+		if (search != worker)
+			return null;
+		search = null;
+		if (worker.isCancelled()) {
+			status.setText(" ");
+			return null;
+		}
+		try {
+			return worker.get();
+		} catch (InterruptedException | ExecutionException | CancellationException ex) {
+			status.setText(provider.getString("search_error"));
+			return null;
+		}
+	}
+
+	/**
+	 * Cancels the running search, if there is one.
+	 */
+	private void cancelSearch() {
+		if (search != null) {
+			SwingWorker<?, ?> cancelled = search;
+			search = null;
+			cancelled.cancel(false);
+		}
+	}
+
+	/**
+	 * Removes the highlighted matches.
+	 */
+	private void clearHighlights() {
+		if (highlighted != null) {
+			for (Object tag : highlights) {
+				highlighted.getHighlighter().removeHighlight(tag);
+			}
+		}
+		highlights.clear();
+		highlighted = null;
+	}
+
+	/**
+	 * Creates the searcher of the entered text.
+	 *
+	 * @return the searcher, <code>null</code> if no text is entered
+	 */
+	private TextSearcher searcher() {
+		String pattern = findField.getText();
+		if (pattern.isEmpty())
+			return null;
+		return new TextSearcher(pattern, matchCase.isSelected(), wholeWord.isSelected());
+	}
+
+	/**
+	 * Captures the text of the given tab.
+	 *
+	 * @param file
+	 *            the tab, may be <code>null</code>
+	 * @return text of the tab, <code>null</code> if it can not be captured
+	 */
+	private TextSource snapshot(JFileTab file) {
+		if (file == null || file.isLoading())
+			return null;
+		try {
+			return file.snapshot();
+		} catch (BadLocationException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the tab currently shown in the app.
+	 *
+	 * @return current tab, <code>null</code> if there is none
+	 */
+	private JFileTab currentTab() {
+		JTabbedPane tabs = app.getTabs();
+		if (tabs.getTabCount() == 0)
+			return null;
+		JScrollPane filePane = (JScrollPane) tabs.getComponentAt(tabs.getSelectedIndex());
+		return (JFileTab) filePane.getViewport().getView();
+	}
+}
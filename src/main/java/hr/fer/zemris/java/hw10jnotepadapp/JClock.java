@@ -1,44 +1,102 @@
 package hr.fer.zemris.java.hw10jnotepadapp;
 
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Insets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
-import javax.swing.JTextArea;
-import javax.swing.SwingUtilities;
+import javax.swing.JComponent;
+import javax.swing.UIManager;
 
 /**
  * Models a clock in the format of <code> "YYYY/MM/DD hh/mm/ss" </code> (e.g. 2015/05/15
- * 11:15:25). The clock is refreshed every second.
- * 
+ * 11:15:25). The clock is refreshed at the start of every second.
+ * <p>
+ * The clock paints its text by itself and its size never changes, so a
+ * refresh only repaints the clock instead of laying out the whole status bar
+ * again. It is not refreshed while the window of the app is minimized.
+ *
  * @author Mirna Baksa
  *
  */
-public class JClock extends JTextArea {
+public class JClock extends JComponent {
 	/** Default serialization version. */
 	private static final long serialVersionUID = 1L;
-	/** Time. */
-	private LocalDateTime time;
+	/** Format of the time. */
+	private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
+	/** Text as wide as the widest time, used for the size of the clock. */
+	private static final String WIDEST = "0000/00/00 00:00:00";
+	/** Milliseconds between two refreshes. */
+	private static final long PERIOD = 1000;
+
+	/** Currently shown time. */
+	private String text;
 
 	/**
 	 * Constructs a new {@link JClock}.
+	 *
+	 * @param scheduler
+	 *            refreshes the clock
 	 */
-	public JClock() {
-		DateTimeFormatter format = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
-
-		Thread clockWorker = new Thread(() -> {
-			while (true) {
-				SwingUtilities.invokeLater(() -> {
-					time = LocalDateTime.now();
-					setText(time.format(format).toString());
-				});
-				try {
-					Thread.sleep(1000);
-				} catch (InterruptedException ignorable) {
-				}
-			}
-		});
-
-		clockWorker.start();
+	public JClock(UIScheduler scheduler) {
+		updateUI();
+		refresh();
+		scheduler.repeat(this::refresh, PERIOD, UIScheduler.PAUSE_WHILE_MINIMIZED | UIScheduler.ALIGN_TO_CLOCK);
+	}
+
+	/**
+	 * Shows the current time, repainting the clock only if the shown text
+	 * changed.
+	 */
+	private void refresh() {
+		String now = LocalDateTime.now().format(FORMAT);
+		if (!now.equals(text)) {
+			text = now;
+			repaint();
+		}
+	}
+
+	@Override
+	public Dimension getPreferredSize() {
+		if (isPreferredSizeSet())
+			return super.getPreferredSize();
+
+		FontMetrics metrics = getFontMetrics(getFont());
+		Insets insets = getInsets();
+		int width = 0;
+		for (char c = '0'; c <= '9'; c++) {
+			width = Math.max(width, metrics.stringWidth(WIDEST.replace('0', c)));
+		}
+		return new Dimension(width + insets.left + insets.right,
+				metrics.getHeight() + insets.top + insets.bottom);
+	}
+
+	@Override
+	public Dimension getMinimumSize() {
+		return getPreferredSize();
 	}
 
+	@Override
+	public void updateUI() {
+		super.updateUI();
+		// the clock looks like the other information in the status bar
+		setFont(UIManager.getFont("TextArea.font"));
+		setForeground(UIManager.getColor("TextArea.foreground"));
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		super.paintComponent(g);
+		if (isOpaque()) {
+			g.setColor(getBackground());
+			g.fillRect(0, 0, getWidth(), getHeight());
+		}
+		g.setColor(getForeground());
+		g.setFont(getFont());
+		FontMetrics metrics = g.getFontMetrics();
+		Insets insets = getInsets();
+		g.drawString(text, insets.left, insets.top + metrics.getAscent());
+	}
 }
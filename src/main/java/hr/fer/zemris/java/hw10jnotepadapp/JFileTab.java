@@ -1,17 +1,62 @@
 package hr.fer.zemris.java.hw10jnotepadapp;
 
+import java.awt.Point;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.Closeable;
+import java.io.IOException;
 import java.nio.file.Path;
 
+import javax.swing.JScrollPane;
+import javax.swing.JViewport;
+import javax.swing.SwingWorker;
+import javax.swing.SwingWorker.StateValue;
 import javax.swing.JTabbedPane;
 import javax.swing.JTextArea;
 import javax.swing.event.CaretEvent;
 import javax.swing.event.CaretListener;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.event.UndoableEditListener;
+import javax.swing.plaf.basic.BasicTextAreaUI;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.Segment;
+import javax.swing.text.View;
+
+import hr.fer.zemris.java.document.CompressedText;
+import hr.fer.zemris.java.document.DocumentStatistics;
+import hr.fer.zemris.java.document.EditHistory;
+import hr.fer.zemris.java.document.EditorDocument;
+import hr.fer.zemris.java.document.ILineIndex;
+import hr.fer.zemris.java.document.MappedDocument;
+import hr.fer.zemris.java.document.PieceTableContent;
+import hr.fer.zemris.java.document.TextSource;
+import hr.fer.zemris.java.syntax.ILexer;
+import hr.fer.zemris.java.syntax.Lexers;
+import hr.fer.zemris.java.syntax.SyntaxView;
 
 /**
  * Models a file tab in the {@link JNotepadPP} app. Each file tab stores the
  * path of the file shown in the tab.
+ * <p>
+ * The text of a tab is stored in an {@link EditorDocument}, backed by a
+ * {@link PieceTableContent}. A tab showing a
+ * {@link MappedDocument} works in the read-only viewer mode -
+ * the text can not be edited and only the visible lines are read from the
+ * file.
+ * <p>
+ * Translations between offsets and lines use the {@link ILineIndex} of the
+ * document instead of its line elements.
+ * <p>
+ * An edited document is highlighted by the lexer registered in
+ * {@link Lexers} for the extension of the file, if there is one.
+ * <p>
+ * A tab which is not used for a while can be hibernated by the
+ * {@link TabHibernator}. Its document is replaced by an empty one and its
+ * text kept compressed until the tab is woken up.
  * 
  * @author Mirna Baksa
  *
@@ -19,12 +64,52 @@ import javax.swing.event.DocumentListener;
 public class JFileTab extends JTextArea {
 	/** Default serialization version. */
 	private static final long serialVersionUID = 1L;
+	/**
+	 * System property with the size available to the undo records of a tab,
+	 * in megabytes. The text referenced by the records is not counted.
+	 */
+	private static final String HISTORY_MEMORY_PROPERTY = "jnotepad.undo.memory";
+	/** Default size available to the undo records of a tab, in megabytes. */
+	private static final long DEFAULT_HISTORY_MEMORY = 16;
 	/** Path of the file shown in the tab. */
 	private Path filePath;
 	/** App in which the tab is shown. */
 	private JNotepadPP app;
 	/** Marks if the document has any unsaved changes. */
 	private boolean unsavedChanges;
+	/** Marks the document as changed. */
+	private DocumentListener changeListener;
+	/** Loader of the file shown in the tab, <code>null</code> if none. */
+	private FileLoader loader;
+	/** Saver of the document shown in the tab, <code>null</code> if none. */
+	private DocumentSaver saver;
+	/** Undo history of the document shown in the tab. */
+	private EditHistory history = new EditHistory(
+			Long.getLong(HISTORY_MEMORY_PROPERTY, DEFAULT_HISTORY_MEMORY) << 20);
+	/** Adds the edits of the document to the history. */
+	private UndoableEditListener historyListener;
+	/** Lexer of the file shown in the tab, <code>null</code> if none. */
+	private ILexer lexer;
+	/** Compressed text of a hibernated tab, <code>null</code> if not hibernated. */
+	private CompressedText hibernated;
+	/** Caret position of a hibernated tab. */
+	private int hibernatedDot;
+	/** Selection mark of a hibernated tab. */
+	private int hibernatedMark;
+	/** Position of the view of a hibernated tab, <code>null</code> if unknown. */
+	private Point hibernatedView;
+	/** Number of edits of the documents shown in the tab. */
+	private long changeCount;
+	/** <code>true</code> if the file of the tab is loaded once the tab is selected. */
+	private boolean deferred;
+	/** <code>true</code> if the restored selection is set once the file is loaded. */
+	private boolean selectionRestored;
+	/** Restored caret position, set once the file is loaded. */
+	private int restoredDot;
+	/** Restored selection mark, set once the file is loaded. */
+	private int restoredMark;
+	/** Follows the file of the tab, <code>null</code> if not followed. */
+	private FileFollower follower;
 
 	/**
 	 * Constructs a new {@link JFileTab}.
@@ -35,10 +120,27 @@ public class JFileTab extends JTextArea {
 	 *            reference to the app in which the tab is shown
 	 */
 	public JFileTab(Path filePath, JNotepadPP app) {
+		this(filePath, app, null);
+	}
+
+	/**
+	 * Constructs a new {@link JFileTab} showing the given document.
+	 * 
+	 * @param filePath
+	 *            path of the file shown in the tab
+	 * @param app
+	 *            reference to the app in which the tab is shown
+	 * @param document
+	 *            document to show, a blank document is created if
+	 *            <code>null</code>
+	 */
+	public JFileTab(Path filePath, JNotepadPP app, Document document) {
+		super(document, null, 0, 0);
 		this.filePath = filePath;
 		this.app = app;
+		setLexer(Lexers.forFile(filePath));
 
-		getDocument().addDocumentListener(new DocumentListener() {
+		changeListener = new DocumentListener() {
 
 			@Override
 			public void removeUpdate(DocumentEvent e) {
@@ -56,30 +158,555 @@ public class JFileTab extends JTextArea {
 			}
 
 			private void change() {
+				// the text of a followed file is not an edit
+				if (isLoading() || isFollowing())
+					return;
+
+				changeCount++;
 				unsavedChanges = true;
-				JTabbedPane tabs = app.getTabs();
-				if (tabs.getTabCount() == 0)
+				int index = getTabIndex();
+				if (index < 0)
 					return;
-				
 
-				tabs.setIconAt(tabs.getSelectedIndex(), JNotepadPP.modifiedIcon);
+				app.getTabs().setIconAt(index, JNotepadPP.modifiedIcon);
 			}
-		});
+		};
+		getDocument().addDocumentListener(changeListener);
+
+		historyListener = new UndoableEditListener() {
+			@Override
+			public void undoableEditHappened(UndoableEditEvent e) {
+				// the loaded text is not an edit
+				if (!isLoading() && !isFollowing()) {
+					history.addEdit(e.getEdit());
+				}
+			}
+		};
+		getDocument().addUndoableEditListener(historyListener);
 
 		addCaretListener(new CaretListener() {
 			@Override
 			public void caretUpdate(CaretEvent e) {
-				boolean enabled;
-				if(JFileTab.this.getSelectedText() != null) enabled = true;
-				else enabled = false;
-				JFileTab.this.app.setToolsEnabled(enabled);
-				
-				JFileTab.this.app.getStatusBar().updateStatusBar(JFileTab.this);
+				updateStatusBar();
 			}
 
 		});
 	}
 
+	@Override
+	protected Document createDefaultModel() {
+		return new EditorDocument();
+	}
+
+	@Override
+	public void setDocument(Document doc) {
+		Document old = getDocument();
+		if (changeListener != null) {
+			old.removeDocumentListener(changeListener);
+			doc.addDocumentListener(changeListener);
+		}
+		if (historyListener != null) {
+			old.removeUndoableEditListener(historyListener);
+			doc.addUndoableEditListener(historyListener);
+			history.discardAllEdits();
+		}
+
+		boolean wasViewer = isViewer();
+		super.setDocument(doc);
+		if (wasViewer != isViewer()) {
+			setEditable(!isViewer());
+			updateUI();
+		}
+	}
+
+	@Override
+	public void updateUI() {
+		if (isViewer()) {
+			setUI(new ViewerUI());
+		} else if (lexer != null) {
+			setUI(new SyntaxUI(lexer));
+		} else {
+			super.updateUI();
+		}
+	}
+
+	/**
+	 * Sets the lexer highlighting the document shown in the tab. A viewer is
+	 * never highlighted.
+	 * 
+	 * @param lexer
+	 *            lexer to set, <code>null</code> if the document is not
+	 *            highlighted
+	 */
+	private void setLexer(ILexer lexer) {
+		if (this.lexer == lexer)
+			return;
+		this.lexer = lexer;
+		if (!isViewer()) {
+			updateUI();
+		}
+	}
+
+	/**
+	 * Gets the undo history of the document shown in the tab.
+	 * 
+	 * @return undo history
+	 */
+	public EditHistory getHistory() {
+		return history;
+	}
+
+	/**
+	 * Checks if the tab works in the read-only viewer mode.
+	 * 
+	 * @return <code>true</code> if the tab shows a {@link MappedDocument},
+	 *         <code>false</code> otherwise
+	 */
+	public boolean isViewer() {
+		return getDocument() instanceof MappedDocument;
+	}
+
+	/**
+	 * Gets the index of the line starts of the document shown in the tab.
+	 * 
+	 * @return line index, <code>null</code> if the document has none
+	 */
+	public ILineIndex getLineIndex() {
+		Document doc = getDocument();
+		if (doc instanceof EditorDocument)
+			return ((EditorDocument) doc).getLineIndex();
+		if (doc instanceof MappedDocument)
+			return ((MappedDocument) doc).getFile();
+		return null;
+	}
+
+	/**
+	 * Gets the statistics of the document shown in the tab, kept up to date
+	 * with each edit of the document.
+	 * 
+	 * @return statistics of the document, <code>null</code> if the document
+	 *         is not edited in the tab
+	 */
+	public DocumentStatistics getStatistics() {
+		Document doc = getDocument();
+		return doc instanceof EditorDocument ? ((EditorDocument) doc).getStatistics() : null;
+	}
+
+	/**
+	 * Captures the current text of the document shown in the tab. Snapshots of
+	 * an {@link EditorDocument} and mapped files of a {@link MappedDocument}
+	 * are immutable and used directly, the text of other documents is copied.
+	 * The text of a hibernated tab is shared without waking the tab up, and is
+	 * decompressed by the thread which first reads it - such a text is also
+	 * {@link Closeable}, and should be closed if it might not be read. The
+	 * returned text can be read from any thread.
+	 * 
+	 * @return text of the document
+	 * @throws BadLocationException
+	 *             if the text of the document can not be read
+	 */
+	public TextSource snapshot() throws BadLocationException {
+		if (hibernated != null) {
+			try {
+				return hibernated.share();
+			} catch (IOException ex) {
+				BadLocationException failure = new BadLocationException(ex.getMessage(), 0);
+				failure.initCause(ex);
+				throw failure;
+			}
+		}
+
+		Document doc = getDocument();
+		if (doc instanceof EditorDocument)
+			return ((EditorDocument) doc).snapshot();
+		if (doc instanceof MappedDocument)
+			return ((MappedDocument) doc).getFile();
+
+		Segment copy = new Segment();
+		doc.getText(0, doc.getLength(), copy);
+		char[] chars = copy.array;
+		int start = copy.offset;
+		int length = copy.count;
+		return new TextSource() {
+			@Override
+			public int length() {
+				return length;
+			}
+
+			@Override
+			public void getText(int offset, int len, Segment txt) {
+				if (offset < 0 || len < 0 || offset + len > length)
+					throw new IndexOutOfBoundsException("Invalid range: " + offset + ", " + len + ".");
+				txt.array = chars;
+				txt.offset = start + offset;
+				txt.count = len;
+			}
+		};
+	}
+
+	@Override
+	public int getLineCount() {
+		ILineIndex index = getLineIndex();
+		return index == null ? super.getLineCount() : index.getLineCount();
+	}
+
+	@Override
+	public int getLineOfOffset(int offset) throws BadLocationException {
+		ILineIndex index = getLineIndex();
+		if (index == null)
+			return super.getLineOfOffset(offset);
+		if (offset < 0 || offset > getDocument().getLength())
+			throw new BadLocationException("Can't translate offset to line", offset);
+		return index.getLineOfOffset(offset);
+	}
+
+	@Override
+	public int getLineStartOffset(int line) throws BadLocationException {
+		ILineIndex index = getLineIndex();
+		if (index == null)
+			return super.getLineStartOffset(line);
+		if (line < 0 || line >= index.getLineCount())
+			throw new BadLocationException("No such line", line);
+		return index.getLineStartOffset(line);
+	}
+
+	@Override
+	public int getLineEndOffset(int line) throws BadLocationException {
+		ILineIndex index = getLineIndex();
+		if (index == null)
+			return super.getLineEndOffset(line);
+		int count = index.getLineCount();
+		if (line < 0 || line >= count)
+			throw new BadLocationException("No such line", line);
+		// the last line ends with the implied line feed
+		return line == count - 1 ? getDocument().getLength() + 1 : index.getLineStartOffset(line + 1);
+	}
+
+	/**
+	 * Gets the index of the tab in the tabbed pane of the app.
+	 * 
+	 * @return index of the tab, <code>-1</code> if the tab is not shown
+	 */
+	public int getTabIndex() {
+		JTabbedPane tabs = app.getTabs();
+		for (int i = 0, n = tabs.getTabCount(); i < n; i++) {
+			JScrollPane pane = (JScrollPane) tabs.getComponentAt(i);
+			if (pane.getViewport().getView() == this)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Updates the status bar with the tab if the tab is selected. The caret of
+	 * a tab in the background is moved by the text appended to a followed file
+	 * or by a reload, which must not switch the status bar to that tab.
+	 */
+	void updateStatusBar() {
+		int index = getTabIndex();
+		if (index >= 0 && index == app.getTabs().getSelectedIndex()) {
+			app.getStatusBar().updateStatusBar(this);
+		}
+	}
+
+	/**
+	 * Sets the loader of the file shown in the tab. The tab can not be edited
+	 * while the loader is running.
+	 * 
+	 * @param loader
+	 *            loader to set
+	 */
+	public void setLoader(FileLoader loader) {
+		this.loader = loader;
+		deferred = false;
+	}
+
+	/**
+	 * Gets the loader of the file shown in the tab.
+	 * 
+	 * @return loader, <code>null</code> if the tab was not loaded from a file
+	 */
+	public FileLoader getLoader() {
+		return loader;
+	}
+
+	/**
+	 * Checks if the file shown in the tab is still being loaded. The loaded
+	 * text may still be appended shortly after the loader is done.
+	 * 
+	 * @return <code>true</code> if the loader is running, <code>false</code>
+	 *         otherwise
+	 */
+	public boolean isLoading() {
+		return loader != null && (!loader.isDone() || loader.isAppending());
+	}
+
+	/**
+	 * Sets the saver of the document shown in the tab.
+	 * 
+	 * @param saver
+	 *            saver to set
+	 */
+	public void setSaver(DocumentSaver saver) {
+		this.saver = saver;
+	}
+
+	/**
+	 * Checks if the document shown in the tab is being saved.
+	 * 
+	 * @return <code>true</code> if the saver is running, <code>false</code>
+	 *         otherwise
+	 */
+	public boolean isSaving() {
+		return saver != null && !saver.isDone();
+	}
+
+	/**
+	 * Gets the task currently running in the background for the tab.
+	 * 
+	 * @return running loader or saver, <code>null</code> if there is none
+	 */
+	public SwingWorker<?, ?> getTask() {
+		if (isLoading())
+			return loader;
+		if (isSaving())
+			return saver;
+		return null;
+	}
+
+	/**
+	 * Releases the resources held by the tab. Called when the tab is closed. A
+	 * running save is finished before the mapped file of a viewer is closed.
+	 */
+	public void dispose() {
+		if (isLoading()) {
+			loader.cancel(true);
+		}
+		setFollower(null);
+		if (hibernated != null) {
+			closeQuietly(hibernated);
+			hibernated = null;
+		}
+		if (!isViewer())
+			return;
+
+		MappedDocument document = (MappedDocument) getDocument();
+		if (!isSaving()) {
+			closeQuietly(document);
+			return;
+		}
+		saver.addPropertyChangeListener(new PropertyChangeListener() {
+			@Override
+			public void propertyChange(PropertyChangeEvent evt) {
+				if ("state".equals(evt.getPropertyName()) && evt.getNewValue() == StateValue.DONE) {
+					closeQuietly(document);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Closes the given mapped document, mapped file or compressed text,
+	 * ignoring any errors.
+	 * 
+	 * @param closeable
+	 *            document, file or text to close
+	 */
+	static void closeQuietly(Closeable closeable) {
+		try {
+			closeable.close();
+		} catch (IOException ignorable) {
+		}
+	}
+
+	/**
+	 * Checks if the tab is hibernated.
+	 * 
+	 * @return <code>true</code> if the document of the tab is compressed,
+	 *         <code>false</code> otherwise
+	 */
+	public boolean isHibernated() {
+		return hibernated != null;
+	}
+
+	/**
+	 * Gets the compressed text of a hibernated tab.
+	 * 
+	 * @return compressed text, <code>null</code> if the tab is not hibernated
+	 */
+	CompressedText getHibernatedText() {
+		return hibernated;
+	}
+
+	/**
+	 * Hibernates the tab. The document is replaced by an empty one which can
+	 * not be edited, while the caret and the position of the view are kept
+	 * for the waking up. The undo history is discarded, since its edits
+	 * reference the text of the replaced document.
+	 * 
+	 * @param text
+	 *            compressed text of the document
+	 */
+	void hibernate(CompressedText text) {
+		hibernate(text, getCaret().getDot(), getCaret().getMark());
+		hibernatedView = getParent() instanceof JViewport ? ((JViewport) getParent()).getViewPosition() : null;
+	}
+
+	/**
+	 * Hibernates the tab with the given selection, which is set once the tab
+	 * is woken up. Used for the documents restored from a session.
+	 * 
+	 * @param text
+	 *            compressed text of the document
+	 * @param dot
+	 *            caret position
+	 * @param mark
+	 *            selection mark
+	 */
+	void hibernate(CompressedText text, int dot, int mark) {
+		hibernatedDot = dot;
+		hibernatedMark = mark;
+		hibernatedView = null;
+		hibernated = text;
+		setDocument(new EditorDocument());
+		setEditable(false);
+	}
+
+	/**
+	 * Wakes up a hibernated tab. The document is restored together with its
+	 * selection and the position of the view. Restoring the document does not
+	 * mark the tab as edited.
+	 * 
+	 * @throws IOException
+	 *             if the compressed text can not be read, in which case the
+	 *             tab stays hibernated
+	 */
+	void wake() throws IOException {
+		// the document is built over the decompressed text instead of a copy
+		EditorDocument document = new EditorDocument(hibernated.decompress());
+
+		closeQuietly(hibernated);
+		hibernated = null;
+		setDocument(document);
+		setEditable(true);
+
+		// the view must be laid out for the caret and the view position
+		if (getParent() instanceof JViewport) {
+			getParent().getParent().validate();
+		}
+		int length = document.getLength();
+		getCaret().setDot(Math.min(hibernatedMark, length));
+		getCaret().moveDot(Math.min(hibernatedDot, length));
+		if (hibernatedView != null && getParent() instanceof JViewport) {
+			((JViewport) getParent()).setViewPosition(hibernatedView);
+		}
+	}
+
+	/**
+	 * Defers the loading of the file of the tab until the tab is selected.
+	 * The given selection is set once the file is loaded.
+	 * 
+	 * @param dot
+	 *            caret position
+	 * @param mark
+	 *            selection mark
+	 */
+	void defer(int dot, int mark) {
+		deferred = true;
+		selectionRestored = true;
+		restoredDot = dot;
+		restoredMark = mark;
+		setEditable(false);
+	}
+
+	/**
+	 * Checks if the file of the tab was not loaded yet, because the tab was
+	 * not selected since it was restored.
+	 * 
+	 * @return <code>true</code> if the loading is deferred, <code>false</code>
+	 *         otherwise
+	 */
+	public boolean isDeferred() {
+		return deferred;
+	}
+
+	/**
+	 * Sets the selection restored from a session once the file of the tab is
+	 * loaded. Does nothing if there is no restored selection.
+	 */
+	void restoreSelection() {
+		if (!selectionRestored)
+			return;
+		selectionRestored = false;
+		int length = getDocument().getLength();
+		getCaret().setDot(Math.min(restoredMark, length));
+		getCaret().moveDot(Math.min(restoredDot, length));
+	}
+
+	/**
+	 * Gets the caret position to store in a session. The position of a tab
+	 * which is not loaded or is hibernated is the one it will be restored to.
+	 * 
+	 * @return caret position
+	 */
+	int getSessionDot() {
+		if (hibernated != null)
+			return hibernatedDot;
+		return selectionRestored ? restoredDot : getCaret().getDot();
+	}
+
+	/**
+	 * Gets the selection mark to store in a session.
+	 * 
+	 * @return selection mark
+	 * @see #getSessionDot()
+	 */
+	int getSessionMark() {
+		if (hibernated != null)
+			return hibernatedMark;
+		return selectionRestored ? restoredMark : getCaret().getMark();
+	}
+
+	/**
+	 * Gets the number of edits of the documents shown in the tab, which
+	 * changes whenever the text of the tab is edited.
+	 * 
+	 * @return number of edits
+	 */
+	long getChangeCount() {
+		return changeCount;
+	}
+
+	/**
+	 * Sets the follower of the file of the tab, stopping the previous one. The
+	 * tab can not be edited while its file is followed. The undo history is
+	 * discarded when following starts, since the appended and the removed
+	 * text is not recorded and would move the offsets of its edits.
+	 * 
+	 * @param follower
+	 *            follower to set, <code>null</code> to stop following
+	 */
+	void setFollower(FileFollower follower) {
+		if (this.follower != null) {
+			this.follower.stop();
+		}
+		this.follower = follower;
+		if (follower != null) {
+			history.discardAllEdits();
+		}
+		setEditable(follower == null && !isViewer());
+	}
+
+	/**
+	 * Checks if the file of the tab is followed.
+	 * 
+	 * @return <code>true</code> if the text written to the file is appended
+	 *         to the document
+	 */
+	public boolean isFollowing() {
+		return follower != null;
+	}
+
 	/**
 	 * Sets the file path of the tab.
 	 * 
@@ -88,6 +715,7 @@ public class JFileTab extends JTextArea {
 	 */
 	public void setFilePath(Path filePath) {
 		this.filePath = filePath;
+		setLexer(Lexers.forFile(filePath));
 	}
 
 	/**
@@ -128,9 +756,50 @@ public class JFileTab extends JTextArea {
 	 *         <code>false</code> otherwise.
 	 */
 	public boolean isSelected() {
-		if (this.getSelectedText() == null)
-			return false;
-		return true;
+		return getCaret().getDot() != getCaret().getMark();
+	}
+
+	/**
+	 * UI of a tab in the viewer mode. Shows the document using the
+	 * {@link MappedDocumentView}.
+	 * 
+	 * @author Mirna Baksa
+	 *
+	 */
+	private static class ViewerUI extends BasicTextAreaUI {
+		@Override
+		public View create(Element elem) {
+			return new MappedDocumentView(elem);
+		}
+	}
+
+	/**
+	 * UI of a highlighted tab. Shows the document using the
+	 * {@link SyntaxView}, unless the lines are wrapped.
+	 * 
+	 * @author Mirna Baksa
+	 *
+	 */
+	private static class SyntaxUI extends BasicTextAreaUI {
+		/** Lexer of the document. */
+		private ILexer lexer;
+
+		/**
+		 * Constructs a new {@link SyntaxUI}.
+		 * 
+		 * @param lexer
+		 *            lexer of the document
+		 */
+		public SyntaxUI(ILexer lexer) {
+			this.lexer = lexer;
+		}
+
+		@Override
+		public View create(Element elem) {
+			if (((JTextArea) getComponent()).getLineWrap())
+				return super.create(elem);
+			return new SyntaxView(elem, lexer);
+		}
 	}
 
 }
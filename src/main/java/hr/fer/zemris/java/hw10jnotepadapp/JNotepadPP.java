@@ -2,49 +2,93 @@ package hr.fer.zemris.java.hw10jnotepadapp;
 
 import java.awt.BorderLayout;
 import java.awt.Container;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.GridLayout;
+import java.awt.HeadlessException;
 import java.awt.Image;
+import java.awt.Toolkit;
+import java.awt.datatransfer.Clipboard;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.IOException;
+import java.net.URL;
 import java.nio.file.Path;
-import java.text.Collator;
-import java.util.ArrayList;
-import java.util.LinkedHashSet;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.Locale;
-import java.util.Scanner;
-import java.util.Set;
+import java.util.Map;
 import java.util.StringJoiner;
-import java.util.function.UnaryOperator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntUnaryOperator;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import javax.swing.Action;
+import javax.swing.ActionMap;
 import javax.swing.ImageIcon;
+import javax.swing.InputMap;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JComponent;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.JTextArea;
+import javax.swing.JTextField;
 import javax.swing.JTabbedPane;
 import javax.swing.JToolBar;
 import javax.swing.KeyStroke;
+import javax.swing.ListSelectionModel;
+import javax.swing.ProgressMonitor;
 import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.SwingWorker.StateValue;
 import javax.swing.WindowConstants;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import javax.swing.event.MenuEvent;
+import javax.swing.event.MenuListener;
+import javax.swing.text.AbstractDocument;
 import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultCaret;
+import javax.swing.text.DefaultEditorKit;
 import javax.swing.text.Document;
-
+import javax.swing.text.Segment;
+
+import hr.fer.zemris.java.clipboard.ClipboardEntry;
+import hr.fer.zemris.java.clipboard.ClipboardRing;
+import hr.fer.zemris.java.document.DocumentStatistics;
+import hr.fer.zemris.java.document.EditorDocument;
+import hr.fer.zemris.java.document.MappedTextFile;
+import hr.fer.zemris.java.document.TextReport;
+import hr.fer.zemris.java.document.TextSource;
 import hr.fer.zemris.java.localization.FormLocalizationProvider;
-import hr.fer.zemris.java.localization.ILocalizationListener;
 import hr.fer.zemris.java.localization.ILocalizationProvider;
 import hr.fer.zemris.java.localization.LocalizableAction;
 import hr.fer.zemris.java.localization.LocalizationProvider;
+import hr.fer.zemris.java.tools.CaseConverter;
+import hr.fer.zemris.java.tools.ExternalSorter;
+import hr.fer.zemris.java.tools.FileSearcher;
+import hr.fer.zemris.java.tools.LineSorter;
+import hr.fer.zemris.java.tools.LineUniquer;
 
 /**
  * A generic simple text editor app.
@@ -66,10 +110,26 @@ import hr.fer.zemris.java.localization.LocalizationProvider;
 public class JNotepadPP extends JFrame {
 	/** Application name. */
 	private final String APP_NAME = "JNotepad++";
+	/** Number of the most frequent words shown in a report. */
+	private static final int TOP_WORDS = 20;
+	/**
+	 * System property with the memory available to sorting a file on the
+	 * disk, in megabytes. A quarter of the maximum heap size is used if it is
+	 * not set.
+	 */
+	private static final String SORT_MEMORY_PROPERTY = "jnotepad.sort.memory";
+	/** Number of the texts remembered by the clipboard. */
+	private static final int CLIPBOARD_ENTRIES = 10;
+	/** Number of the characters of a pasted text inserted at once. */
+	private static final int PASTE_CHUNK = 1 << 16;
+	/** Number of the characters of a clipboard entry shown in its history. */
+	private static final int CLIPBOARD_PREVIEW = 80;
 	/** Icon marking the document has been modified (contents not saved). */
 	protected static ImageIcon modifiedIcon;
 	/** Icon marking the document is not modified (contents saved). */
-	private static ImageIcon unmodifiedIcon;
+	protected static ImageIcon unmodifiedIcon;
+	/** Width and height of the icons marking the documents. */
+	private static final int ICON_SIZE = 15;
 	/** Tabs panel. */
 	private JTabbedPane tabs;
 	/** Editor's status bar. */
@@ -77,11 +137,31 @@ public class JNotepadPP extends JFrame {
 	/** Tools menu. */
 	private JMenu tools;
 	/** Editor's clipboard. */
-	private String clipboard;
+	private ClipboardRing clipboard = new ClipboardRing(CLIPBOARD_ENTRIES, systemClipboard());
+	/** Matches of the search in all the open documents. */
+	private JSearchResults searchResults;
+	/** Directory of the last search in files. */
+	private Path searchDirectory;
+	/** Find and replace dialog, created when first shown. */
+	private FindDialog findDialog;
+	/** Hibernates the tabs which were not used for a while. */
+	private TabHibernator hibernator;
+	/** Saves and restores the open tabs. */
+	private Session session;
+	/** Notices the changes of the open files made by other programs. */
+	private FileWatcher watcher;
+	/** Runs the delayed and the periodic tasks of the app. */
+	private UIScheduler scheduler;
+	/** Whether the window was painted, which ends the startup. */
+	private boolean painted;
 	/** Localization provider. */
 	private FormLocalizationProvider provider = new FormLocalizationProvider(LocalizationProvider.getInstance(), this);
 	/** Current language of the app. */
 	private String currentLanguage;
+	/** Number of documents currently being saved. */
+	private int runningSaves;
+	/** Marks that the app is closed once the running saves are finished. */
+	private boolean exitRequested;
 
 	/**
 	 * Constructs a new {@link JNotepadPP}.
@@ -96,37 +176,56 @@ public class JNotepadPP extends JFrame {
 		this.addWindowListener(new WindowAdapter() {
 			@Override
 			public void windowClosing(WindowEvent e) {
-				if (checkAppClose())
-					dispose();
+				exit();
 			}
-		});
 
-		LocalizationProvider.getInstance().addLocalizationListener(new ILocalizationListener() {
 			@Override
-			public void localizationChanged() {
-				provider.fire();
+			public void windowClosed(WindowEvent e) {
+				session.dispose();
+				hibernator.dispose();
+				watcher.dispose();
+				scheduler.dispose();
+				clipboard.clear();
 			}
 		});
 
+		scheduler = new UIScheduler(this);
 		initIcons();
+		StartupProfile.mark("icons");
 		initGUI();
+		StartupProfile.mark("gui");
+
+		session = new Session(this);
+		session.restore();
+		StartupProfile.mark("session");
 	}
 
 	/**
 	 * Initializes the icons used to represent unmodified/modified documents.
-	 * Scales the images to the appropriate size.
+	 * The icons are loaded only once, from their images scaled in advance.
 	 */
-	private void initIcons() {
-		modifiedIcon = new ImageIcon("./src/main/resources/diskette-icon-16796.png");
-		unmodifiedIcon = new ImageIcon("./src/main/resources/diskette-icon-16492.png");
+	private static void initIcons() {
+		if (modifiedIcon == null) {
+			modifiedIcon = loadIcon("diskette-icon-16796");
+			unmodifiedIcon = loadIcon("diskette-icon-16492");
+		}
+	}
 
-		Image img = modifiedIcon.getImage();
-		Image scaled = img.getScaledInstance(15, 15, Image.SCALE_SMOOTH);
-		modifiedIcon = new ImageIcon(scaled);
+	/**
+	 * Loads an icon from the class path. The image scaled to the size of the
+	 * icon is used if it exists, otherwise the original image is scaled.
+	 *
+	 * @param name
+	 *            name of the image, without the size and the extension
+	 * @return the icon
+	 */
+	private static ImageIcon loadIcon(String name) {
+		URL scaled = JNotepadPP.class.getResource("/" + name + "-" + ICON_SIZE + ".png");
+		if (scaled != null)
+			return new ImageIcon(scaled);
 
-		img = unmodifiedIcon.getImage();
-		scaled = img.getScaledInstance(15, 15, Image.SCALE_SMOOTH);
-		unmodifiedIcon = new ImageIcon(scaled);
+		Image img = new ImageIcon(JNotepadPP.class.getResource("/" + name + ".png")).getImage();
+		return new ImageIcon(img.getScaledInstance(ICON_SIZE, ICON_SIZE, Image.SCALE_SMOOTH));
 	}
 
 	/**
@@ -146,9 +245,12 @@ public class JNotepadPP extends JFrame {
 				}
 				JScrollPane pane = (JScrollPane) tabs.getComponentAt(tabs.getSelectedIndex());
 				JFileTab file = (JFileTab) pane.getViewport().getView();
+				if (file.isDeferred()) {
+					load(file);
+				}
+				watcher.verify(file);
+				followAction.putValue(Action.SELECTED_KEY, file.isFollowing());
 				statusBar.updateStatusBar(file);
-				
-				setToolsEnabled(file.isSelected());
 
 				String filePath = file.getFilePath() == null ? provider.getString("new_file")
 						: file.getFilePath().toString();
@@ -159,7 +261,17 @@ public class JNotepadPP extends JFrame {
 			
 		});
 
-		cp.add(tabs, BorderLayout.CENTER);
+		// wakes up the selected tab before the other listeners see it
+		hibernator = new TabHibernator(provider, this);
+		tabs.addChangeListener(hibernator);
+		watcher = new FileWatcher(provider, this);
+
+		// the results take no space while they are hidden
+		searchResults = new JSearchResults(provider, this);
+		JSplitPane split = new JSplitPane(JSplitPane.VERTICAL_SPLIT, tabs, searchResults);
+		split.setResizeWeight(1);
+		split.setBorder(null);
+		cp.add(split, BorderLayout.CENTER);
 
 		statusBar = new JStatusBar(provider, this);
 		cp.add(statusBar, BorderLayout.PAGE_END);
@@ -210,6 +322,34 @@ public class JNotepadPP extends JFrame {
 		setUpAction(statisticalInfoAction, provider.getString("statistics"), KeyStroke.getKeyStroke("control I"),
 				KeyEvent.VK_I, "Shows statistical info about the document.");
 
+		setUpAction(reportAction, provider.getString("report"), KeyStroke.getKeyStroke("control shift R"),
+				KeyEvent.VK_R, "Shows a detailed report on the document.");
+
+		setUpAction(findAction, provider.getString("find_replace"), KeyStroke.getKeyStroke("control F"),
+				KeyEvent.VK_F, "Finds and replaces text in the document.");
+
+		setUpAction(findInTabsAction, provider.getString("find_in_tabs"), KeyStroke.getKeyStroke("control shift F"),
+				KeyEvent.VK_A, "Finds a regular expression in all the open documents.");
+
+		setUpAction(findInFilesAction, provider.getString("find_in_files"), KeyStroke.getKeyStroke("control shift H"),
+				KeyEvent.VK_I, "Finds a text in the files of a directory.");
+
+		setUpAction(goToAction, provider.getString("go_to"), KeyStroke.getKeyStroke("control G"), KeyEvent.VK_G,
+				"Moves the caret to the given offset.");
+
+		setUpAction(followAction, provider.getString("follow"), KeyStroke.getKeyStroke("control shift T"),
+				KeyEvent.VK_W, "Appends the text written to the file to the document.");
+		followAction.putValue(Action.SELECTED_KEY, false);
+
+		setUpAction(goToLineAction, provider.getString("go_to_line"), KeyStroke.getKeyStroke("control alt G"),
+				KeyEvent.VK_L, "Moves the caret to the start of the given line.");
+
+		setUpAction(undoAction, provider.getString("undo"), KeyStroke.getKeyStroke("control Z"), KeyEvent.VK_U,
+				"Undoes the last edit of the document.");
+
+		setUpAction(redoAction, provider.getString("redo"), KeyStroke.getKeyStroke("control Y"), KeyEvent.VK_R,
+				"Redoes the last undone edit of the document.");
+
 		setUpAction(copyAction, provider.getString("copy"), KeyStroke.getKeyStroke("control C"), KeyEvent.VK_C,
 				"Copies the text to clipboard..");
 
@@ -219,6 +359,9 @@ public class JNotepadPP extends JFrame {
 		setUpAction(pasteAction, provider.getString("paste"), KeyStroke.getKeyStroke("control V"), KeyEvent.VK_V,
 				"Pastes the text.");
 
+		setUpAction(clipboardHistoryAction, provider.getString("clipboard_history"),
+				KeyStroke.getKeyStroke("control shift V"), KeyEvent.VK_H, "Pastes a recently copied text.");
+
 		setUpAction(upperCaseAction, provider.getString("to_uppercase"), KeyStroke.getKeyStroke("control alt U"),
 				KeyEvent.VK_U, "Uppercases the selected text.");
 
@@ -234,6 +377,12 @@ public class JNotepadPP extends JFrame {
 		setUpAction(sortDescendingAction, provider.getString("sort_descending"),
 				KeyStroke.getKeyStroke("control alt D"), KeyEvent.VK_L, "Sorts the selected text in descending order.");
 
+		setUpAction(uniqueFileAction, provider.getString("unique_file"), KeyStroke.getKeyStroke("control alt Q"),
+				KeyEvent.VK_Q, "Removes the duplicate lines of a file on the disk.");
+
+		setUpAction(sortFileAction, provider.getString("sort_file"), KeyStroke.getKeyStroke("control alt F"),
+				KeyEvent.VK_F, "Sorts the lines of a file on the disk.");
+
 		setUpAction(uniqueAction, provider.getString("unique"), KeyStroke.getKeyStroke("control alt U"), KeyEvent.VK_I,
 				"Removes duplicate lines from the selected text.");
 
@@ -295,34 +444,106 @@ public class JNotepadPP extends JFrame {
 
 		JMenu editMenu = new JMenu(new LocalizableAction("edit", provider));
 		menuBar.add(editMenu);
+		editMenu.add(undoAction);
+		editMenu.add(redoAction);
+		editMenu.addSeparator();
 		editMenu.add(copyAction);
 		editMenu.add(cutAction);
 		editMenu.add(pasteAction);
+		editMenu.add(clipboardHistoryAction);
+		editMenu.addSeparator();
+		editMenu.add(findAction);
+		editMenu.add(findInTabsAction);
+		editMenu.add(findInFilesAction);
+		editMenu.add(goToAction);
+		editMenu.add(goToLineAction);
 		editMenu.addSeparator();
 		editMenu.add(statisticalInfoAction);
+		editMenu.add(reportAction);
 
+		// the rarely used menus are filled once they are first opened
 		JMenu languageMenu = new JMenu(new LocalizableAction("languages", provider));
 		menuBar.add(languageMenu);
-		languageMenu.add(new JMenuItem(english));
-		languageMenu.add(new JMenuItem(german));
-		languageMenu.add(new JMenuItem(spanish));
-		languageMenu.add(new JMenuItem(italian));
-		languageMenu.add(new JMenuItem(croatian));
+		fillLazily(languageMenu, () -> {
+			languageMenu.add(new JMenuItem(english));
+			languageMenu.add(new JMenuItem(german));
+			languageMenu.add(new JMenuItem(spanish));
+			languageMenu.add(new JMenuItem(italian));
+			languageMenu.add(new JMenuItem(croatian));
+		});
 
 		tools = new JMenu(new LocalizableAction("tools", provider));
 		menuBar.add(tools);
-		tools.add(upperCaseAction);
-		tools.add(lowerCaseAction);
-		tools.add(invertCaseAction);
-		JMenu sort = new JMenu(new LocalizableAction("sort", provider));
-		sort.add(sortAscendingAction);
-		sort.add(sortDescendingAction);
-		sort.add(uniqueAction);
-		tools.add(sort);
+		fillLazily(tools, () -> {
+			tools.add(upperCaseAction);
+			tools.add(lowerCaseAction);
+			tools.add(invertCaseAction);
+			JMenu sort = new JMenu(new LocalizableAction("sort", provider));
+			sort.add(sortAscendingAction);
+			sort.add(sortDescendingAction);
+			sort.add(uniqueAction);
+			sort.addSeparator();
+			sort.add(sortFileAction);
+			sort.add(uniqueFileAction);
+			tools.add(sort);
+			tools.addSeparator();
+			tools.add(new JCheckBoxMenuItem(followAction));
+		});
+
+		// the shortcuts of the lazy menus work before the menus are filled
+		bindAccelerators(english, german, spanish, italian, croatian, upperCaseAction, lowerCaseAction,
+				invertCaseAction, sortAscendingAction, sortDescendingAction, uniqueAction, sortFileAction,
+				uniqueFileAction, followAction);
 
 		setJMenuBar(menuBar);
 	}
 
+	/**
+	 * Fills a menu the first time it is selected.
+	 *
+	 * @param menu
+	 *            the menu
+	 * @param fill
+	 *            adds the items to the menu
+	 */
+	private static void fillLazily(JMenu menu, Runnable fill) {
+		menu.addMenuListener(new MenuListener() {
+			@Override
+			public void menuSelected(MenuEvent e) {
+				menu.removeMenuListener(this);
+				fill.run();
+			}
+
+			@Override
+			public void menuDeselected(MenuEvent e) {
+			}
+
+			@Override
+			public void menuCanceled(MenuEvent e) {
+			}
+		});
+	}
+
+	/**
+	 * Binds the accelerator keys of the actions in the whole window. Once a
+	 * key is bound, it is not bound again, so the first of the actions sharing
+	 * it is performed, as it would be from the menu.
+	 *
+	 * @param actions
+	 *            the actions
+	 */
+	private void bindAccelerators(Action... actions) {
+		InputMap inputMap = getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW);
+		ActionMap actionMap = getRootPane().getActionMap();
+		for (Action action : actions) {
+			KeyStroke stroke = (KeyStroke) action.getValue(Action.ACCELERATOR_KEY);
+			if (stroke == null || inputMap.get(stroke) != null)
+				continue;
+			inputMap.put(stroke, action);
+			actionMap.put(action, action);
+		}
+	}
+
 	/**
 	 * Changes the language of the app.
 	 * 
@@ -364,7 +585,7 @@ public class JNotepadPP extends JFrame {
 	/** Changes the language to Spanish. */
 	private LanguageChanger spanish = new LanguageChanger("es", "spanish", provider);
 	/** Changes the language to Croatian. */
-	private LanguageChanger croatian = new LanguageChanger("cro", "croatian", provider);
+	private LanguageChanger croatian = new LanguageChanger("hr", "croatian", provider);
 
 	/**
 	 * Creates the {@link JNotepadPP} app toolbars. Toolbar items are logically
@@ -380,6 +601,8 @@ public class JNotepadPP extends JFrame {
 		toolbar.add(new JButton(saveDocumentAction));
 		toolbar.add(new JButton(saveDocumentAsAction));
 		toolbar.addSeparator();
+		toolbar.add(new JButton(undoAction));
+		toolbar.add(new JButton(redoAction));
 		toolbar.addSeparator();
 		toolbar.add(new JButton(copyAction));
 		toolbar.add(new JButton(cutAction));
@@ -403,6 +626,7 @@ public class JNotepadPP extends JFrame {
 		@Override
 		public void actionPerformed(ActionEvent e) {
 			JFileTab newFile = new JFileTab(null, JNotepadPP.this);
+			installClipboardActions(newFile);
 			tabs.addTab(provider.getString(getKey()), new JScrollPane(newFile));
 			tabs.setIconAt(tabs.getTabCount() - 1, unmodifiedIcon);
 		}
@@ -424,33 +648,206 @@ public class JNotepadPP extends JFrame {
 				return;
 			}
 
-			Path filePath = fc.getSelectedFile().toPath();
+			openFile(fc.getSelectedFile().toPath());
+		}
+	};
 
-			if (!Files.isReadable(filePath)) {
-				JOptionPane.showMessageDialog(JNotepadPP.this, filePath + " " + provider.getString("reading_error"),
-						provider.getString("error"), JOptionPane.ERROR_MESSAGE);
-				return;
+	/**
+	 * Opens the file at the given path in a new tab.
+	 * <p>
+	 * The tab is shown right away and the file is loaded by a
+	 * {@link FileLoader} in the background. The tab can not be edited until
+	 * the loading is finished. If the loading is cancelled or fails, the tab is
+	 * closed.
+	 * 
+	 * @param filePath
+	 *            path of the file to open
+	 * @return tab showing the file
+	 */
+	private JFileTab openFile(Path filePath) {
+		JFileTab file = new JFileTab(filePath, JNotepadPP.this);
+		installClipboardActions(file);
+		tabs.add(filePath.getFileName().toString(), new JScrollPane(file));
+
+		int tabIndex = tabs.getTabCount() - 1;
+		tabs.setIconAt(tabIndex, unmodifiedIcon);
+		tabs.setToolTipTextAt(tabIndex, filePath.toString());
+		tabs.setSelectedComponent(tabs.getComponentAt(tabIndex));
+		load(file);
+
+		return file;
+	}
+
+	/**
+	 * Starts loading the file of the given tab by a {@link FileLoader} in the
+	 * background. The tab can not be edited until the loading is finished.
+	 * 
+	 * @param file
+	 *            tab showing the file
+	 * @return the started loader
+	 */
+	FileLoader load(JFileTab file) {
+		file.setEditable(false);
+		// appended chunks must not move the caret and scroll the view
+		((DefaultCaret) file.getCaret()).setUpdatePolicy(DefaultCaret.NEVER_UPDATE);
+
+		FileLoader loader = new FileLoader(file.getFilePath(), file);
+		file.setLoader(loader);
+		// the state of the file is remembered before it is read
+		watcher.register(file);
+		loader.addPropertyChangeListener(new PropertyChangeListener() {
+			@Override
+			public void propertyChange(PropertyChangeEvent evt) {
+				statusBar.updateProgress(file);
+				if (loader.getState() == StateValue.DONE && "state".equals(evt.getPropertyName())) {
+					loadingDone(file, loader);
+				}
 			}
+		});
+		loader.execute();
+		return loader;
+	}
 
-			String text = null;
-			try {
-				text = new String(Files.readAllBytes(filePath), StandardCharsets.UTF_8);
-			} catch (Exception ex) {
-				JOptionPane.showMessageDialog(JNotepadPP.this, filePath + " " + provider.getString("reading_error"),
-						provider.getString("error"), JOptionPane.ERROR_MESSAGE);
-				return;
+	/**
+	 * Adds a tab restored from a session. An unsaved document is restored as
+	 * a hibernated tab, while the file of a saved one is loaded once the tab
+	 * is selected.
+	 * 
+	 * @param index
+	 *            index of the tab
+	 * @param entry
+	 *            the restored tab
+	 */
+	void restoreTab(int index, Session.Entry entry) {
+		Path filePath = entry.getPath();
+		JFileTab file = new JFileTab(filePath, JNotepadPP.this);
+		installClipboardActions(file);
+		boolean edited = entry.isEdited() && entry.getText() != null;
+		if (entry.getText() != null) {
+			file.hibernate(entry.getText(), entry.getDot(), entry.getMark());
+			watcher.register(file);
+		} else if (filePath != null) {
+			file.defer(entry.getDot(), entry.getMark());
+		}
+		file.setEdited(edited);
+
+		String title = filePath == null ? provider.getString("new") : filePath.getFileName().toString();
+		tabs.insertTab(title, edited ? modifiedIcon : unmodifiedIcon, new JScrollPane(file),
+				filePath == null ? null : filePath.toString(), index);
+	}
+
+	/**
+	 * Shows the given location of a file. If the file is already open, its tab
+	 * is selected, otherwise the file is opened in a new tab. The location is
+	 * selected once the file is loaded.
+	 * 
+	 * @param filePath
+	 *            path of the file
+	 * @param line
+	 *            line of the location, starting from zero
+	 * @param column
+	 *            column of the location, starting from zero
+	 * @param length
+	 *            number of the selected characters
+	 */
+	void showFileLocation(Path filePath, int line, int column, int length) {
+		Path target = filePath.toAbsolutePath().normalize();
+		JFileTab file = null;
+		for (int i = 0, n = tabs.getTabCount(); i < n && file == null; i++) {
+			JFileTab tab = (JFileTab) ((JScrollPane) tabs.getComponentAt(i)).getViewport().getView();
+			if (tab.getFilePath() != null && tab.getFilePath().toAbsolutePath().normalize().equals(target)) {
+				file = tab;
+				tabs.setSelectedIndex(i);
 			}
+		}
+		if (file == null) {
+			file = openFile(filePath);
+		}
 
-			JFileTab file = new JFileTab(filePath, JNotepadPP.this);
-			file.setText(text);
-			tabs.add(filePath.getFileName().toString(), new JScrollPane(file));
+		JFileTab shown = file;
+		FileLoader loader = file.getLoader();
+		if (loader == null || loader.isDone()) {
+			selectLocation(shown, line, column, length);
+			return;
+		}
+		// registered after the listener finishing the loading
+		loader.addPropertyChangeListener(new PropertyChangeListener() {
+			@Override
+			public void propertyChange(PropertyChangeEvent evt) {
+				if ("state".equals(evt.getPropertyName()) && evt.getNewValue() == StateValue.DONE
+						&& shown.getTabIndex() >= 0) {
+					selectLocation(shown, line, column, length);
+				}
+			}
+		});
+	}
 
-			int tabIndex = tabs.getTabCount() - 1;
-			tabs.setIconAt(tabIndex, unmodifiedIcon);
-			tabs.setToolTipTextAt(tabIndex, filePath.toString());
-			tabs.setSelectedComponent(tabs.getComponentAt(tabIndex));
+	/**
+	 * Selects the given location of the document of the given tab. The
+	 * location is limited to the lines of the document.
+	 * 
+	 * @param file
+	 *            the tab
+	 * @param line
+	 *            line of the location, starting from zero
+	 * @param column
+	 *            column of the location, starting from zero
+	 * @param length
+	 *            number of the selected characters
+	 */
+	private void selectLocation(JFileTab file, int line, int column, int length) {
+		int documentLength = file.getDocument().getLength();
+		try {
+			int start = file.getLineStartOffset(Math.max(0, Math.min(line, file.getLineCount() - 1)));
+			int offset = Math.min(start + column, documentLength);
+			file.getCaret().setDot(offset);
+			file.getCaret().moveDot(Math.min(offset + length, documentLength));
+		} catch (BadLocationException ignorable) {
 		}
-	};
+		file.requestFocusInWindow();
+	}
+
+	/**
+	 * Finishes the loading of a file. If the file was mapped, the tab shows
+	 * the whole indexed file in the viewer mode. If the loading was cancelled
+	 * or has failed, the tab is closed.
+	 * 
+	 * @param file
+	 *            tab showing the file
+	 * @param loader
+	 *            finished loader
+	 */
+	private void loadingDone(JFileTab file, FileLoader loader) {
+		int index = file.getTabIndex();
+
+		try {
+			MappedTextFile mapped = loader.get();
+			if (index < 0) {
+				if (mapped != null)
+					mapped.close();
+				return;
+			}
+			if (mapped != null) {
+				loader.showIndexed();
+			} else {
+				file.setEditable(true);
+			}
+			((DefaultCaret) file.getCaret()).setUpdatePolicy(DefaultCaret.UPDATE_WHEN_ON_EDT);
+			file.restoreSelection();
+			statusBar.updateStatusBar(file);
+			return;
+		} catch (Exception ex) {
+			if (index >= 0 && !loader.isCancelled()) {
+				JOptionPane.showMessageDialog(JNotepadPP.this,
+						loader.getFilePath() + " " + provider.getString("reading_error"), provider.getString("error"),
+						JOptionPane.ERROR_MESSAGE);
+			}
+		}
+
+		if (index >= 0) {
+			tabs.remove(index);
+		}
+	}
 
 	/**
 	 * Saves the file currently in the editor. The file is saved to its current
@@ -469,30 +866,7 @@ public class JNotepadPP extends JFrame {
 
 			JScrollPane filePane = (JScrollPane) tabs.getComponentAt(tabs.getSelectedIndex());
 			JFileTab file = (JFileTab) filePane.getViewport().getView();
-			Path filePath = file.getFilePath();
-
-			// file created in the editor and not yet saved
-			if (filePath == null) {
-				saveDocumentAsAction.actionPerformed(e);
-				return;
-			}
-
-			try {
-				Files.write(filePath, file.getText().getBytes(StandardCharsets.UTF_8));
-			} catch (Exception ex) {
-				JOptionPane.showMessageDialog(JNotepadPP.this, provider.getString("save_unsuccess"),
-						provider.getString("error"), JOptionPane.ERROR_MESSAGE);
-
-				return;
-			}
-
-			JOptionPane.showMessageDialog(JNotepadPP.this, provider.getString("save_success"), "Info",
-					JOptionPane.INFORMATION_MESSAGE);
-
-			file.setEdited(false);
-			tabs.setIconAt(tabs.getSelectedIndex(), unmodifiedIcon);
-			tabs.setTitleAt(tabs.getSelectedIndex(), filePath.getFileName().toString());
-			tabs.setToolTipTextAt(tabs.getSelectedIndex(), filePath.toString());
+			saveFile(file, false, null);
 		}
 	};
 
@@ -513,46 +887,156 @@ public class JNotepadPP extends JFrame {
 
 			JScrollPane filePane = (JScrollPane) tabs.getComponentAt(tabs.getSelectedIndex());
 			JFileTab file = (JFileTab) filePane.getViewport().getView();
+			saveFile(file, true, null);
+		}
+	};
 
-			JFileChooser fc = new JFileChooser();
-			fc.setDialogTitle("Save file as");
+	/**
+	 * Starts saving the document of the given tab.
+	 * <p>
+	 * The document is saved by a {@link DocumentSaver} in the background, so
+	 * the tab can be edited while it is being saved. The tab is marked as
+	 * saved right away, and marked as edited again if the saving fails.
+	 * 
+	 * @param file
+	 *            tab showing the document
+	 * @param choosePath
+	 *            <code>true</code> if the user should choose the path even if
+	 *            the document already has one
+	 * @param onSaved
+	 *            run after the document was successfully saved, can be
+	 *            <code>null</code>
+	 * @return <code>true</code> if the saving was started, <code>false</code>
+	 *         otherwise
+	 */
+	private boolean saveFile(JFileTab file, boolean choosePath, Runnable onSaved) {
+		// partially loaded file must not overwrite the original
+		if (file.isLoading() || file.isSaving())
+			return false;
+
+		Path filePath = file.getFilePath();
+		// file created in the editor and not yet saved
+		if (choosePath || filePath == null) {
+			filePath = chooseSavePath();
+			if (filePath == null)
+				return false;
+		} else if (watcher.isChangedOnDisk(file)) {
+			int selected = JOptionPane.showConfirmDialog(JNotepadPP.this,
+					filePath + "\n" + provider.getString("changed_on_disk_save"), provider.getString("overwrite"),
+					JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+			if (selected != JOptionPane.YES_OPTION)
+				return false;
+		}
 
-			if (fc.showSaveDialog(JNotepadPP.this) != JFileChooser.APPROVE_OPTION) {
-				JOptionPane.showMessageDialog(JNotepadPP.this, provider.getString("save_cancel"),
-						provider.getString("warning"), JOptionPane.WARNING_MESSAGE);
-				return;
+		DocumentSaver saver;
+		try {
+			saver = new DocumentSaver(file.snapshot(), filePath);
+		} catch (BadLocationException ex) {
+			JOptionPane.showMessageDialog(JNotepadPP.this, provider.getString("save_unsuccess"),
+					provider.getString("error"), JOptionPane.ERROR_MESSAGE);
+			return false;
+		}
+
+		file.setSaver(saver);
+		file.setEdited(false);
+		runningSaves++;
+		saver.addPropertyChangeListener(new PropertyChangeListener() {
+			@Override
+			public void propertyChange(PropertyChangeEvent evt) {
+				statusBar.updateProgress(file);
+				if (saver.getState() == StateValue.DONE && "state".equals(evt.getPropertyName())) {
+					savingDone(file, saver, onSaved);
+				}
 			}
+		});
+		saver.execute();
+		statusBar.updateProgress(file);
+		return true;
+	}
+
+	/**
+	 * Asks the user for the path to save a document to. If the chosen file
+	 * already exists, the user is asked if it should be overwritten.
+	 * 
+	 * @return chosen path, <code>null</code> if the saving was cancelled
+	 */
+	private Path chooseSavePath() {
+		JFileChooser fc = new JFileChooser();
+		fc.setDialogTitle("Save file as");
+
+		if (fc.showSaveDialog(JNotepadPP.this) != JFileChooser.APPROVE_OPTION) {
+			JOptionPane.showMessageDialog(JNotepadPP.this, provider.getString("save_cancel"),
+					provider.getString("warning"), JOptionPane.WARNING_MESSAGE);
+			return null;
+		}
 
-			Path filePath = fc.getSelectedFile().toPath();
+		Path filePath = fc.getSelectedFile().toPath();
 
-			if (filePath.toFile().exists()) {
-				int selected = JOptionPane.showConfirmDialog(JNotepadPP.this, provider.getString("file_exists"),
-						provider.getString("overwrite"), JOptionPane.YES_NO_OPTION);
+		if (filePath.toFile().exists()) {
+			int selected = JOptionPane.showConfirmDialog(JNotepadPP.this, provider.getString("file_exists"),
+					provider.getString("overwrite"), JOptionPane.YES_NO_OPTION);
 
-				if (selected == JOptionPane.NO_OPTION)
-					return;
-			}
+			if (selected != JOptionPane.YES_OPTION)
+				return null;
+		}
+		return filePath;
+	}
 
-			try {
-				Files.write(filePath, file.getText().getBytes(StandardCharsets.UTF_8));
-			} catch (Exception ex) {
-				JOptionPane.showMessageDialog(JNotepadPP.this, provider.getString("save_unsucess"),
-						provider.getString("error"), JOptionPane.ERROR_MESSAGE);
-				return;
+	/**
+	 * Finishes the saving of a document. If the saving has failed, the user is
+	 * informed and the tab marked as edited, and a requested exit of the app
+	 * is cancelled.
+	 * 
+	 * @param file
+	 *            tab showing the document
+	 * @param saver
+	 *            finished saver
+	 * @param onSaved
+	 *            run if the document was successfully saved, can be
+	 *            <code>null</code>
+	 */
+	private void savingDone(JFileTab file, DocumentSaver saver, Runnable onSaved) {
+		runningSaves--;
+		int index = file.getTabIndex();
+
+		try {
+			saver.get();
+		} catch (Exception ex) {
+			exitRequested = false;
+			file.setEdited(true);
+			if (index >= 0) {
+				tabs.setIconAt(index, modifiedIcon);
 			}
+			JOptionPane.showMessageDialog(JNotepadPP.this, provider.getString("save_unsuccess"),
+					provider.getString("error"), JOptionPane.ERROR_MESSAGE);
+			return;
+		}
 
-			JOptionPane.showMessageDialog(JNotepadPP.this, provider.getString("save_success"), "Info",
-					JOptionPane.INFORMATION_MESSAGE);
+		Path filePath = saver.getFilePath();
+		file.setFilePath(filePath);
+		watcher.register(file);
+		if (index >= 0) {
+			// the tab could have been edited while it was being saved
+			if (!file.isEdited()) {
+				tabs.setIconAt(index, unmodifiedIcon);
+			}
+			tabs.setTitleAt(index, filePath.getFileName().toString());
+			tabs.setToolTipTextAt(index, filePath.toString());
+			if (index == tabs.getSelectedIndex()) {
+				JNotepadPP.this.setTitle(filePath + " - " + APP_NAME);
+			}
+		}
 
-			file.setFilePath(filePath);
-			file.setEdited(false);
-			tabs.setIconAt(tabs.getSelectedIndex(), unmodifiedIcon);
-			tabs.setTitleAt(tabs.getSelectedIndex(), filePath.getFileName().toString());
-			tabs.setToolTipTextAt(tabs.getSelectedIndex(), filePath.toString());
+		JOptionPane.showMessageDialog(JNotepadPP.this, provider.getString("save_success"), "Info",
+				JOptionPane.INFORMATION_MESSAGE);
 
-			JNotepadPP.this.setTitle(filePath + " - " + APP_NAME);
+		if (onSaved != null) {
+			onSaved.run();
 		}
-	};
+		if (exitRequested && runningSaves == 0) {
+			dispose();
+		}
+	}
 
 	/**
 	 * Closes the document currently in the editor. If the file was edited and
@@ -576,21 +1060,42 @@ public class JNotepadPP extends JFrame {
 
 				if (option == JOptionPane.CANCEL_OPTION)
 					return;
-				if (option == JOptionPane.YES_OPTION)
-					saveDocumentAction.actionPerformed(null);
+				// the tab is closed once the document is saved
+				if (option == JOptionPane.YES_OPTION) {
+					saveFile(file, false, () -> closeFile(file));
+					return;
+				}
 			}
 
-			tabs.remove(tabs.getSelectedIndex());
+			closeFile(file);
 		}
 
 	};
 
+	/**
+	 * Closes the given tab and releases its resources.
+	 * 
+	 * @param file
+	 *            tab to close
+	 */
+	private void closeFile(JFileTab file) {
+		watcher.unregister(file);
+		file.dispose();
+		int index = file.getTabIndex();
+		if (index >= 0) {
+			tabs.remove(index);
+		}
+	}
+
 	/**
 	 * Provides statistical info on the current document.
 	 * <p>
 	 * The info will show: 1. the number of characters found in the document 2.
 	 * the number of non - blank characters found in the document 3. the number
-	 * of lines the document contains
+	 * of lines the document contains 4. the number of words 5. the number of
+	 * paragraphs. The numbers are taken from the {@link DocumentStatistics} of
+	 * the document, so the text is not read. A viewed document has no
+	 * statistics, so the report on the document is created instead.
 	 * 
 	 */
 	private Action statisticalInfoAction = new LocalizableAction("statistics", provider) {
@@ -602,31 +1107,111 @@ public class JNotepadPP extends JFrame {
 			JScrollPane filePane = (JScrollPane) tabs.getComponentAt(tabs.getSelectedIndex());
 			JFileTab file = (JFileTab) filePane.getViewport().getView();
 
-			char[] textCharacters = file.getText().toCharArray();
-			int blankChars = 0, lines = 1;
-
-			for (char c : textCharacters) {
-				if (Character.isWhitespace(c))
-					blankChars++;
-				if (String.valueOf(c) == System.getProperty("line.separator"))
-					lines++;
+			DocumentStatistics statistics = file.getStatistics();
+			if (statistics == null) {
+				createReport(file);
+				return;
 			}
 
-			// empty document
-			if (textCharacters.length == 0)
-				lines = 0;
-
 			StringJoiner message = new StringJoiner(" ");
-			message.add(provider.getString("stat_message") + ":").add(String.valueOf(textCharacters.length))
-					.add(provider.getString("chars") + ",").add(String.valueOf(textCharacters.length - blankChars))
-					.add(provider.getString("blankchars") + ",").add(String.valueOf(lines))
-					.add(provider.getString("lines") + ".");
+			message.add(provider.getString("stat_message") + ":").add(String.valueOf(statistics.getCharacters()))
+					.add(provider.getString("chars") + ",").add(String.valueOf(statistics.getNonBlankCharacters()))
+					.add(provider.getString("blankchars") + ",").add(String.valueOf(statistics.getLines()))
+					.add(provider.getString("lines") + ",").add(String.valueOf(statistics.getWords()))
+					.add(provider.getString("words") + ",").add(String.valueOf(statistics.getParagraphs()))
+					.add(provider.getString("paragraphs") + ".");
 
 			JOptionPane.showMessageDialog(JNotepadPP.this, message, "Info", JOptionPane.INFORMATION_MESSAGE);
 		}
 
 	};
 
+	/**
+	 * Shows a report on the current document - its statistics, the length of
+	 * its longest line, a histogram of its line lengths and its most frequent
+	 * words.
+	 */
+	private Action reportAction = new LocalizableAction("report", provider) {
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			if (tabs.getTabCount() == 0)
+				return;
+
+			JScrollPane filePane = (JScrollPane) tabs.getComponentAt(tabs.getSelectedIndex());
+			createReport((JFileTab) filePane.getViewport().getView());
+		}
+	};
+
+	/**
+	 * Creates the report on the document of the given tab on a background
+	 * thread and shows it once it is created. The ranges of the document are
+	 * measured in parallel on the common fork-join pool, while a progress
+	 * monitor lets the user cancel the report.
+	 * 
+	 * @param file
+	 *            tab with the document
+	 */
+	private void createReport(JFileTab file) {
+		TextSource text;
+		try {
+			text = file.snapshot();
+		} catch (BadLocationException ex) {
+			JOptionPane.showMessageDialog(JNotepadPP.this, provider.getString("report_error"),
+					provider.getString("error"), JOptionPane.ERROR_MESSAGE);
+			return;
+		}
+
+		int length = text.length();
+		runWithProgress(provider.getString("report_progress"), null, "report_error",
+				(progress, cancelled) -> TextReport.create(text, TOP_WORDS, ForkJoinPool.commonPool(),
+						done -> progress.accept((int) (done * 100 / Math.max(1, length))), cancelled),
+				report -> showReport(file, report));
+	}
+
+	/**
+	 * Shows the given report on the document of the given tab.
+	 * 
+	 * @param file
+	 *            tab with the document
+	 * @param report
+	 *            the report
+	 */
+	private void showReport(JFileTab file, TextReport report) {
+		StringBuilder sb = new StringBuilder();
+		StringJoiner stats = new StringJoiner(" ");
+		stats.add(provider.getString("stat_message") + ":").add(String.valueOf(report.getCharacters()))
+				.add(provider.getString("chars") + ",").add(String.valueOf(report.getNonBlankCharacters()))
+				.add(provider.getString("blankchars") + ",").add(String.valueOf(report.getLines()))
+				.add(provider.getString("lines") + ",").add(String.valueOf(report.getWords()))
+				.add(provider.getString("words") + ",").add(String.valueOf(report.getParagraphs()))
+				.add(provider.getString("paragraphs") + ".");
+		sb.append(stats).append("\n\n");
+		sb.append(provider.getString("longest_line")).append(": ").append(report.getLongestLine()).append("\n\n");
+
+		sb.append(provider.getString("line_lengths")).append(":\n");
+		int[] histogram = report.getLineHistogram();
+		for (int k = 0; k < histogram.length; k++) {
+			if (histogram[k] == 0)
+				continue;
+			long low = k == 0 ? 0 : 1L << (k - 1);
+			long high = k == 0 ? 0 : (1L << k) - 1;
+			String range = low == high ? String.valueOf(low) : low + " - " + high;
+			sb.append(String.format("  %-24s %d%n", range, histogram[k]));
+		}
+
+		sb.append('\n').append(provider.getString("top_words")).append(":\n");
+		for (Map.Entry<String, Integer> entry : report.getTopWords()) {
+			sb.append(String.format("  %-24s %d%n", entry.getKey(), entry.getValue()));
+		}
+
+		JTextArea area = new JTextArea(sb.toString(), 20, 50);
+		area.setEditable(false);
+		area.setFont(new Font(Font.MONOSPACED, Font.PLAIN, area.getFont().getSize()));
+		JOptionPane.showMessageDialog(JNotepadPP.this, new JScrollPane(area),
+				provider.getString("report") + " - " + tabs.getTitleAt(file.getTabIndex()),
+				JOptionPane.INFORMATION_MESSAGE);
+	}
+
 	/**
 	 * Exits the app.
 	 * <p>
@@ -636,8 +1221,264 @@ public class JNotepadPP extends JFrame {
 	private Action exitAction = new LocalizableAction("exit", provider) {
 		@Override
 		public void actionPerformed(ActionEvent e) {
-			if (checkAppClose())
-				JNotepadPP.this.dispose();
+			exit();
+		}
+	};
+
+	/**
+	 * Moves the caret of the current document to the offset given by the user.
+	 * Offsets outside of the document are moved to the closest valid offset.
+	 */
+	private Action goToAction = new LocalizableAction("go_to", provider) {
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			if (tabs.getTabCount() == 0)
+				return;
+
+			JScrollPane filePane = (JScrollPane) tabs.getComponentAt(tabs.getSelectedIndex());
+			JFileTab file = (JFileTab) filePane.getViewport().getView();
+
+			String input = JOptionPane.showInputDialog(JNotepadPP.this, provider.getString("go_to_offset"),
+					provider.getString("go_to"), JOptionPane.QUESTION_MESSAGE);
+			if (input == null)
+				return;
+
+			int offset;
+			try {
+				offset = Integer.parseInt(input.trim());
+			} catch (NumberFormatException ex) {
+				JOptionPane.showMessageDialog(JNotepadPP.this, provider.getString("invalid_number"),
+						provider.getString("error"), JOptionPane.ERROR_MESSAGE);
+				return;
+			}
+
+			offset = Math.max(0, Math.min(offset, file.getDocument().getLength()));
+			file.setCaretPosition(offset);
+			file.requestFocusInWindow();
+		}
+	};
+
+	/**
+	 * Starts or stops following the file of the current document. The text
+	 * written to a followed file is appended to the document by a
+	 * {@link FileFollower}. Only a saved document of a file which is not
+	 * shown in the viewer mode can be followed.
+	 */
+	private Action followAction = new LocalizableAction("follow", provider) {
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			if (tabs.getTabCount() == 0)
+				return;
+
+			JScrollPane filePane = (JScrollPane) tabs.getComponentAt(tabs.getSelectedIndex());
+			JFileTab file = (JFileTab) filePane.getViewport().getView();
+			if (file.isFollowing()) {
+				file.setFollower(null);
+				// the document may differ from the file by the removed lines
+				watcher.register(file);
+			} else if (file.getFilePath() == null || file.isEdited() || file.isViewer() || file.getTask() != null) {
+				JOptionPane.showMessageDialog(JNotepadPP.this, provider.getString("follow_unavailable"),
+						provider.getString("warning"), JOptionPane.WARNING_MESSAGE);
+			} else {
+				try {
+					FileFollower follower = new FileFollower(file);
+					file.setFollower(follower);
+					follower.start(scheduler);
+					file.setCaretPosition(file.getDocument().getLength());
+				} catch (IOException ex) {
+					JOptionPane.showMessageDialog(JNotepadPP.this,
+							file.getFilePath() + " " + provider.getString("reading_error"),
+							provider.getString("error"), JOptionPane.ERROR_MESSAGE);
+				}
+			}
+			putValue(SELECTED_KEY, file.isFollowing());
+		}
+	};
+
+	/**
+	 * Moves the caret of the current document to the start of the line given
+	 * by the user. Lines are numbered from one, and lines outside of the
+	 * document are moved to the closest line.
+	 */
+	private Action goToLineAction = new LocalizableAction("go_to_line", provider) {
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			if (tabs.getTabCount() == 0)
+				return;
+
+			JScrollPane filePane = (JScrollPane) tabs.getComponentAt(tabs.getSelectedIndex());
+			JFileTab file = (JFileTab) filePane.getViewport().getView();
+			int lineCount = file.getLineCount();
+
+			String input = JOptionPane.showInputDialog(JNotepadPP.this,
+					provider.getString("go_to_line_number") + " (1 - " + lineCount + "):",
+					provider.getString("go_to_line"), JOptionPane.QUESTION_MESSAGE);
+			if (input == null)
+				return;
+
+			int line;
+			try {
+				line = Integer.parseInt(input.trim());
+			} catch (NumberFormatException ex) {
+				JOptionPane.showMessageDialog(JNotepadPP.this, provider.getString("invalid_number"),
+						provider.getString("error"), JOptionPane.ERROR_MESSAGE);
+				return;
+			}
+
+			line = Math.max(1, Math.min(line, lineCount));
+			try {
+				file.setCaretPosition(file.getLineStartOffset(line - 1));
+			} catch (BadLocationException ignorable) {
+			}
+			file.requestFocusInWindow();
+		}
+	};
+
+	/**
+	 * Undoes the last edit of the current document. Consecutive typing is
+	 * undone at once.
+	 */
+	private Action undoAction = new LocalizableAction("undo", provider) {
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			if (tabs.getTabCount() == 0)
+				return;
+
+			JScrollPane filePane = (JScrollPane) tabs.getComponentAt(tabs.getSelectedIndex());
+			JFileTab file = (JFileTab) filePane.getViewport().getView();
+			if (file.isEditable() && file.getHistory().canUndo()) {
+				file.getHistory().undo();
+			}
+		}
+	};
+
+	/**
+	 * Redoes the last undone edit of the current document.
+	 */
+	private Action redoAction = new LocalizableAction("redo", provider) {
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			if (tabs.getTabCount() == 0)
+				return;
+
+			JScrollPane filePane = (JScrollPane) tabs.getComponentAt(tabs.getSelectedIndex());
+			JFileTab file = (JFileTab) filePane.getViewport().getView();
+			if (file.isEditable() && file.getHistory().canRedo()) {
+				file.getHistory().redo();
+			}
+		}
+	};
+
+	/**
+	 * Shows the find and replace dialog.
+	 */
+	private Action findAction = new LocalizableAction("find_replace", provider) {
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			if (findDialog == null) {
+				findDialog = new FindDialog(JNotepadPP.this, provider);
+			}
+			findDialog.showDialog();
+		}
+	};
+
+	/**
+	 * Searches all the open documents for a regular expression entered by the
+	 * user. The matches are listed in the {@link JSearchResults} panel.
+	 */
+	private Action findInTabsAction = new LocalizableAction("find_in_tabs", provider) {
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			if (tabs.getTabCount() == 0)
+				return;
+
+			JTextField field = new JTextField(30);
+			JCheckBox matchCase = new JCheckBox(provider.getString("match_case"));
+			JPanel panel = new JPanel(new BorderLayout(5, 5));
+			panel.add(new JLabel(provider.getString("regex")), BorderLayout.NORTH);
+			panel.add(field, BorderLayout.CENTER);
+			panel.add(matchCase, BorderLayout.SOUTH);
+
+			int option = JOptionPane.showConfirmDialog(JNotepadPP.this, panel, provider.getString("find_in_tabs"),
+					JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+			if (option != JOptionPane.OK_OPTION || field.getText().isEmpty())
+				return;
+
+			int flags = Pattern.MULTILINE;
+			if (!matchCase.isSelected()) {
+				flags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+			}
+			try {
+				searchResults.search(Pattern.compile(field.getText(), flags));
+			} catch (PatternSyntaxException ex) {
+				JOptionPane.showMessageDialog(JNotepadPP.this,
+						provider.getString("invalid_regex") + "\n" + ex.getDescription(), provider.getString("error"),
+						JOptionPane.ERROR_MESSAGE);
+			}
+		}
+	};
+
+	/**
+	 * Searches the files of a directory tree for a text entered by the user,
+	 * without opening them. The matches are listed in the
+	 * {@link JSearchResults} panel.
+	 */
+	private Action findInFilesAction = new LocalizableAction("find_in_files", provider) {
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			JTextField text = new JTextField(30);
+			JTextField directory = new JTextField(30);
+			JTextField include = new JTextField();
+			JTextField exclude = new JTextField(".git, .svn, .hg");
+			JCheckBox matchCase = new JCheckBox(provider.getString("match_case"));
+			directory.setText(
+					(searchDirectory != null ? searchDirectory : Paths.get(System.getProperty("user.dir"))).toString());
+
+			JButton browse = new JButton("...");
+			browse.addActionListener(event -> {
+				JFileChooser fc = new JFileChooser(directory.getText());
+				fc.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+				if (fc.showOpenDialog(JNotepadPP.this) == JFileChooser.APPROVE_OPTION) {
+					directory.setText(fc.getSelectedFile().toString());
+				}
+			});
+			JPanel directoryRow = new JPanel(new BorderLayout(5, 0));
+			directoryRow.add(directory, BorderLayout.CENTER);
+			directoryRow.add(browse, BorderLayout.EAST);
+
+			JPanel panel = new JPanel(new GridLayout(0, 1, 0, 2));
+			panel.add(new JLabel(provider.getString("find_what")));
+			panel.add(text);
+			panel.add(new JLabel(provider.getString("directory")));
+			panel.add(directoryRow);
+			panel.add(new JLabel(provider.getString("include_files")));
+			panel.add(include);
+			panel.add(new JLabel(provider.getString("exclude_files")));
+			panel.add(exclude);
+			panel.add(matchCase);
+
+			int option = JOptionPane.showConfirmDialog(JNotepadPP.this, panel, provider.getString("find_in_files"),
+					JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+			if (option != JOptionPane.OK_OPTION || text.getText().isEmpty())
+				return;
+
+			try {
+				Path root = Paths.get(directory.getText().trim()).toAbsolutePath().normalize();
+				FileSearcher searcher = new FileSearcher(text.getText(), matchCase.isSelected(), include.getText(),
+						exclude.getText());
+				searchDirectory = root;
+				searchResults.searchFiles(searcher, root);
+			} catch (IllegalArgumentException ex) {
+				// an invalid path or glob pattern
+				JOptionPane.showMessageDialog(JNotepadPP.this, provider.getString("invalid_search") + "\n" + ex.getMessage(),
+						provider.getString("error"), JOptionPane.ERROR_MESSAGE);
+			}
 		}
 	};
 
@@ -653,7 +1494,6 @@ public class JNotepadPP extends JFrame {
 
 			JScrollPane filePane = (JScrollPane) tabs.getComponentAt(tabs.getSelectedIndex());
 			JFileTab file = (JFileTab) filePane.getViewport().getView();
-			Document doc = file.getDocument();
 
 			int length = Math.abs(file.getCaret().getDot() - file.getCaret().getMark());
 
@@ -662,7 +1502,12 @@ public class JNotepadPP extends JFrame {
 			}
 			int offset = Math.min(file.getCaret().getDot(), file.getCaret().getMark());
 			try {
-				clipboard = doc.getText(offset, length);
+				// a mapped file is closed together with the viewer
+				if (file.isViewer() && length > ClipboardEntry.COPY_LIMIT) {
+					spillSelection(file.snapshot(), offset, length);
+				} else {
+					clipboard.push(ClipboardEntry.of(file.snapshot(), offset, length));
+				}
 			} catch (BadLocationException ignorable) {
 			}
 		}
@@ -682,12 +1527,12 @@ public class JNotepadPP extends JFrame {
 
 			int length = Math.abs(file.getCaret().getDot() - file.getCaret().getMark());
 
-			if (length == 0) {
+			if (length == 0 || !file.isEditable()) {
 				return;
 			}
 			int offset = Math.min(file.getCaret().getDot(), file.getCaret().getMark());
 			try {
-				clipboard = doc.getText(offset, length);
+				clipboard.push(ClipboardEntry.of(file.snapshot(), offset, length));
 				doc.remove(offset, length);
 			} catch (BadLocationException ignorable) {
 			}
@@ -707,30 +1552,161 @@ public class JNotepadPP extends JFrame {
 
 			JScrollPane filePane = (JScrollPane) tabs.getComponentAt(tabs.getSelectedIndex());
 			JFileTab file = (JFileTab) filePane.getViewport().getView();
-			Document doc = file.getDocument();
+			ClipboardEntry entry = clipboard.current();
+
+			if (entry != null) {
+				paste(file, entry);
+			}
+		}
+
+	};
+
+	/**
+	 * Lets the user choose one of the recently copied texts and pastes it. The
+	 * chosen text becomes the newest text of the clipboard.
+	 */
+	private Action clipboardHistoryAction = new LocalizableAction("clipboard_history", provider) {
 
-			if (clipboard == null)
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			if (tabs.getTabCount() == 0)
 				return;
-			int length = clipboard.length();
-			if (length == 0)
+
+			JScrollPane filePane = (JScrollPane) tabs.getComponentAt(tabs.getSelectedIndex());
+			JFileTab file = (JFileTab) filePane.getViewport().getView();
+			if (!file.isEditable())
 				return;
 
-			int offset = Math.min(file.getCaret().getDot(), file.getCaret().getMark());
-			try {
-				doc.insertString(offset, clipboard, null);
-			} catch (BadLocationException ignorable) {
+			clipboard.current();
+			List<ClipboardEntry> entries = clipboard.getEntries();
+			if (entries.isEmpty())
+				return;
+
+			String[] previews = new String[entries.size()];
+			for (int i = 0; i < previews.length; i++) {
+				ClipboardEntry entry = entries.get(i);
+				String preview = entry.preview(CLIPBOARD_PREVIEW);
+				previews[i] = entry.length() > preview.length()
+						? preview + "... (" + entry.length() + " " + provider.getString("chars") + ")"
+						: preview;
 			}
-		}
+			JList<String> list = new JList<>(previews);
+			list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+			list.setSelectedIndex(0);
+			list.setVisibleRowCount(Math.min(previews.length, CLIPBOARD_ENTRIES));
+
+			int option = JOptionPane.showConfirmDialog(JNotepadPP.this, new JScrollPane(list),
+					provider.getString("clipboard_history"), JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+			if (option != JOptionPane.OK_OPTION || list.getSelectedIndex() < 0)
+				return;
 
+			ClipboardEntry entry = entries.get(list.getSelectedIndex());
+			clipboard.select(entry);
+			paste(file, entry);
+		}
 	};
 
+	/**
+	 * Routes the copy, cut and paste key bindings of the given tab to the
+	 * actions of the app, so they use its clipboard.
+	 * 
+	 * @param file
+	 *            the tab
+	 */
+	private void installClipboardActions(JFileTab file) {
+		file.getActionMap().put(DefaultEditorKit.copyAction, copyAction);
+		file.getActionMap().put(DefaultEditorKit.cutAction, cutAction);
+		file.getActionMap().put(DefaultEditorKit.pasteAction, pasteAction);
+	}
+
+	/**
+	 * Replaces the selection of the given tab with the text of the given
+	 * clipboard entry.
+	 * <p>
+	 * The text is inserted in chunks of {@link #PASTE_CHUNK} characters, so it
+	 * never has to be materialized as a whole. The chunks never split a
+	 * surrogate pair, and together with the removed selection they form a
+	 * single compound edit.
+	 * 
+	 * @param file
+	 *            the tab
+	 * @param entry
+	 *            the entry
+	 */
+	private void paste(JFileTab file, ClipboardEntry entry) {
+		if (!file.isEditable())
+			return;
+
+		Document doc = file.getDocument();
+		int dot = file.getCaret().getDot();
+		int mark = file.getCaret().getMark();
+		int offset = Math.min(dot, mark);
+		int length = entry.length();
+
+		EditorDocument editorDoc = doc instanceof EditorDocument ? (EditorDocument) doc : null;
+		if (editorDoc != null) {
+			editorDoc.beginCompoundEdit();
+		}
+		try {
+			if (dot != mark) {
+				doc.remove(offset, Math.abs(dot - mark));
+			}
+			Segment chunk = new Segment();
+			chunk.setPartialReturn(true);
+			for (int done = 0; done < length;) {
+				entry.getText(done, Math.min(PASTE_CHUNK, length - done), chunk);
+				int n = chunk.count;
+				if (done + n < length && n > 1 && Character.isHighSurrogate(chunk.array[chunk.offset + n - 1])) {
+					n--;
+				}
+				doc.insertString(offset + done, new String(chunk.array, chunk.offset, n), null);
+				done += n;
+			}
+		} catch (BadLocationException ignorable) {
+		} finally {
+			if (editorDoc != null) {
+				editorDoc.endCompoundEdit();
+			}
+		}
+	}
+
+	/**
+	 * Copies the given range of the mapped file of a viewer to the clipboard.
+	 * The range is written to a temporary file in the background.
+	 * 
+	 * @param text
+	 *            the mapped file
+	 * @param offset
+	 *            start of the range
+	 * @param length
+	 *            length of the range
+	 */
+	private void spillSelection(TextSource text, int offset, int length) {
+		runWithProgress(provider.getString("clipboard_progress"), null, "clipboard_error",
+				(progress, cancelled) -> ClipboardEntry.spill(text, offset, length, progress, cancelled),
+				clipboard::push);
+	}
+
+	/**
+	 * Gets the system clipboard.
+	 * 
+	 * @return the system clipboard, <code>null</code> if it is not available
+	 */
+	private static Clipboard systemClipboard() {
+		try {
+			return Toolkit.getDefaultToolkit().getSystemClipboard();
+		} catch (HeadlessException | SecurityException ex) {
+			return null;
+		}
+	}
+
 	/**
 	 * Shifts the selected part of text to upper case letters.
 	 */
 	private Action upperCaseAction = new LocalizableAction("to_uppercase", provider) {
 		@Override
 		public void actionPerformed(ActionEvent e) {
-			selectedTextCaseActionPerfomed(s -> s.toUpperCase());
+			selectedTextCaseActionPerfomed(CaseConverter.UPPER_CASE);
 		}
 	};
 
@@ -740,7 +1716,7 @@ public class JNotepadPP extends JFrame {
 	private Action lowerCaseAction = new LocalizableAction("to_lowercase", provider) {
 		@Override
 		public void actionPerformed(ActionEvent e) {
-			selectedTextCaseActionPerfomed(s -> s.toLowerCase());
+			selectedTextCaseActionPerfomed(CaseConverter.LOWER_CASE);
 		}
 	};
 
@@ -748,44 +1724,26 @@ public class JNotepadPP extends JFrame {
 	 * Inverts the casing of the selected part of text. All upper case letters
 	 * will be inverted to lower case and vise versa.
 	 */
-	private Action invertCaseAction = new LocalizableAction("to_lowercase", provider) {
+	private Action invertCaseAction = new LocalizableAction("invert_case", provider) {
 		@Override
 		public void actionPerformed(ActionEvent e) {
-			selectedTextCaseActionPerfomed(s -> invertCase(s));
+			selectedTextCaseActionPerfomed(CaseConverter.INVERT_CASE);
 		}
 	};
 
-	/**
-	 * Inverts the casing in the given string. All upper case letters will be
-	 * inverted to lower case and vise versa.
-	 * 
-	 * @param s
-	 *            string to be inverted
-	 * @return inverted string
-	 */
-	private String invertCase(String s) {
-		char[] chars = s.toCharArray();
-		StringBuilder result = new StringBuilder(chars.length);
-		for (char c : chars) {
-			if (Character.isLowerCase(c)) {
-				result.append(Character.toUpperCase(c));
-			} else if (Character.isUpperCase(c)) {
-				result.append(Character.toLowerCase(c));
-			}else{
-				result.append(c);
-			}
-		}
-		return result.toString();
-	}
-
 	/**
 	 * Performs the action on the selected part of text using the caseAction
 	 * given as an argument.
+	 * <p>
+	 * The selection is converted by a {@link CaseConverter} from a snapshot of
+	 * the document, and only the changed parts of the selection are replaced,
+	 * as a single compound edit.
 	 * 
 	 * @param caseAction
-	 *            action to perform over the selected part of text.
+	 *            action to perform over each code point of the selected part
+	 *            of text.
 	 */
-	private void selectedTextCaseActionPerfomed(UnaryOperator<String> caseAction) {
+	private void selectedTextCaseActionPerfomed(IntUnaryOperator caseAction) {
 		if (caseAction == null)
 			return;
 		if (tabs.getTabCount() == 0)
@@ -795,13 +1753,40 @@ public class JNotepadPP extends JFrame {
 		JFileTab file = (JFileTab) filePane.getViewport().getView();
 		Document doc = file.getDocument();
 
-		int length = Math.abs(file.getCaret().getDot() - file.getCaret().getMark());
-		int offset = Math.min(file.getCaret().getDot(), file.getCaret().getMark());
+		int dot = file.getCaret().getDot();
+		int mark = file.getCaret().getMark();
+		int length = Math.abs(dot - mark);
+		int offset = Math.min(dot, mark);
 
 		try {
-			String selectedText = doc.getText(offset, length);
-			doc.remove(offset, length);
-			doc.insertString(offset, caseAction.apply(selectedText), null);
+			List<CaseConverter.Change> changes = CaseConverter.convert(file.snapshot(), offset, length, caseAction);
+			if (changes.isEmpty())
+				return;
+
+			EditorDocument editorDoc = doc instanceof EditorDocument ? (EditorDocument) doc : null;
+			if (editorDoc != null) {
+				editorDoc.beginCompoundEdit();
+			}
+			try {
+				// the changes are applied from the end, so the offsets of the
+				// remaining ones stay valid
+				for (int i = changes.size() - 1; i >= 0; i--) {
+					CaseConverter.Change change = changes.get(i);
+					((AbstractDocument) doc).replace(change.getOffset(), change.getLength(), change.getText(), null);
+				}
+			} finally {
+				if (editorDoc != null) {
+					editorDoc.endCompoundEdit();
+				}
+			}
+
+			// the replaced parts must not shrink the selection
+			int delta = 0;
+			for (CaseConverter.Change change : changes) {
+				delta += change.getText().length() - change.getLength();
+			}
+			file.getCaret().setDot(mark > dot ? mark + delta : mark);
+			file.getCaret().moveDot(dot > mark ? dot + delta : dot);
 		} catch (BadLocationException e1) {
 		}
 	}
@@ -841,6 +1826,172 @@ public class JNotepadPP extends JFrame {
 		}
 	};
 
+	/**
+	 * Sorts the lines of a file chosen by the user and writes them to another
+	 * chosen file, which may be the same file. The file is sorted on the disk
+	 * by an {@link ExternalSorter}, so it does not have to fit into the memory.
+	 */
+	private Action sortFileAction = new LocalizableAction("sort_file", provider) {
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			Path input = chooseToolInput("sort_file");
+			if (input == null)
+				return;
+
+			String[] orders = { provider.getString("sort_ascending"), provider.getString("sort_descending") };
+			int order = JOptionPane.showOptionDialog(JNotepadPP.this, provider.getString("sort_order"),
+					provider.getString("sort_file"), JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null,
+					orders, orders[0]);
+			if (order < 0)
+				return;
+
+			Path output = chooseSavePath();
+			if (output == null)
+				return;
+
+			long memory = Long.getLong(SORT_MEMORY_PROPERTY, Runtime.getRuntime().maxMemory() >> 22) << 20;
+			Locale locale = Locale.forLanguageTag(currentLanguage);
+			runFileTool("sort_file", input, (progress, cancelled) -> new ExternalSorter(input, output, locale,
+					order == 0, memory, progress, cancelled).sort());
+		}
+	};
+
+	/**
+	 * Removes the duplicate lines of a file chosen by the user and writes the
+	 * kept lines to another chosen file, which may be the same file. The file
+	 * is read as a stream, so it does not have to fit into the memory.
+	 */
+	private Action uniqueFileAction = new LocalizableAction("unique_file", provider) {
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			Path input = chooseToolInput("unique_file");
+			if (input == null)
+				return;
+			Path output = chooseSavePath();
+			if (output == null)
+				return;
+
+			runFileTool("unique_file", input,
+					(progress, cancelled) -> LineUniquer.unique(input, output, progress, cancelled));
+		}
+	};
+
+	/**
+	 * Asks the user for the file processed by a file tool.
+	 * 
+	 * @param key
+	 *            key of the tool
+	 * @return chosen file, <code>null</code> if the user cancelled
+	 */
+	private Path chooseToolInput(String key) {
+		JFileChooser fc = new JFileChooser();
+		fc.setDialogTitle(provider.getString(key));
+		if (fc.showOpenDialog(JNotepadPP.this) != JFileChooser.APPROVE_OPTION)
+			return null;
+		return fc.getSelectedFile().toPath();
+	}
+
+	/**
+	 * Runs a file tool on a background thread, while a progress monitor lets
+	 * the user cancel it. The number of the written lines is shown once the
+	 * tool is done.
+	 * 
+	 * @param key
+	 *            key of the tool
+	 * @param input
+	 *            file processed by the tool
+	 * @param tool
+	 *            the tool
+	 */
+	private void runFileTool(String key, Path input, IProgressTask<Long> tool) {
+		runWithProgress(provider.getString("file_tool_progress"), input.getFileName().toString(), "file_tool_error",
+				tool, lines -> JOptionPane.showMessageDialog(JNotepadPP.this,
+						provider.getString("file_tool_done") + ": " + lines + " " + provider.getString("lines"),
+						provider.getString(key), JOptionPane.INFORMATION_MESSAGE));
+	}
+
+	/**
+	 * Runs a task on a background thread, while a progress monitor shows its
+	 * progress and lets the user cancel it. The result of the task is passed
+	 * on once the task is done, or an error message is shown if it failed.
+	 * Nothing is done if the task was cancelled.
+	 * 
+	 * @param message
+	 *            message of the progress monitor
+	 * @param note
+	 *            note of the progress monitor, can be <code>null</code>
+	 * @param errorKey
+	 *            key of the error message
+	 * @param task
+	 *            the task
+	 * @param done
+	 *            receives the result of the task
+	 * @param <T>
+	 *            type of the result
+	 */
+	private <T> void runWithProgress(String message, String note, String errorKey, IProgressTask<T> task,
+			Consumer<T> done) {
+		ProgressMonitor monitor = new ProgressMonitor(JNotepadPP.this, message, note, 0, 100);
+		SwingWorker<T, Void> worker = new SwingWorker<T, Void>() {
+			@Override
+			protected T doInBackground() throws Exception {
+				return task.run(this::setProgress, this::isCancelled);
+			}
+		};
+		worker.addPropertyChangeListener(new PropertyChangeListener() {
+			@Override
+			public void propertyChange(PropertyChangeEvent evt) {
+				if (monitor.isCanceled()) {
+					worker.cancel(false);
+				}
+				if ("progress".equals(evt.getPropertyName())) {
+					monitor.setProgress(worker.getProgress());
+				}
+				if (worker.getState() != StateValue.DONE || !"state".equals(evt.getPropertyName()))
+					return;
+
+				monitor.close();
+				if (worker.isCancelled())
+					return;
+				T result;
+				try {
+					result = worker.get();
+				} catch (InterruptedException | ExecutionException ex) {
+					JOptionPane.showMessageDialog(JNotepadPP.this, provider.getString(errorKey),
+							provider.getString("error"), JOptionPane.ERROR_MESSAGE);
+					return;
+				}
+				done.accept(result);
+			}
+		});
+		worker.execute();
+	}
+
+	/**
+	 * Task run on a background thread, while a progress monitor shows its
+	 * progress.
+	 * 
+	 * @author Mirna Baksa
+	 *
+	 * @param <T>
+	 *            type of the result
+	 */
+	private interface IProgressTask<T> {
+		/**
+		 * Runs the task.
+		 * 
+		 * @param progress
+		 *            receives the progress, in percent
+		 * @param cancelled
+		 *            checked by the task, which stops once it returns
+		 *            <code>true</code>
+		 * @return result of the task
+		 * @throws Exception
+		 *             if the task fails
+		 */
+		T run(IntConsumer progress, BooleanSupplier cancelled) throws Exception;
+	}
+
 	/**
 	 * Performs a sort menu action - sort ascending, sort descending or remove
 	 * duplicates (unique) action.
@@ -865,35 +2016,22 @@ public class JNotepadPP extends JFrame {
 			int end = file.getLineOfOffset(Math.max(file.getCaret().getDot(), file.getCaret().getMark()));
 
 			int linesStart = file.getLineStartOffset(start);
-			int linesEnd = file.getLineEndOffset(end);
+			// the last line ends with the implied line feed which is not a part of the text
+			int linesEnd = Math.min(file.getLineEndOffset(end), doc.getLength());
 
-			String selectedText = doc.getText(linesStart, linesEnd);
-			doc.remove(linesStart, linesEnd);
-			String applied = sortAction ? getSortedLines(selectedText, factor) : getUniqueLines(selectedText);
-			doc.insertString(linesStart, applied, null);
+			String selectedText = doc.getText(linesStart, linesEnd - linesStart);
+			String applied = sortAction ? getSortedLines(selectedText, factor) : LineUniquer.unique(selectedText);
+			if (selectedText.endsWith("\n")) {
+				applied += "\n";
+			}
+			((AbstractDocument) doc).replace(linesStart, linesEnd - linesStart, applied, null);
 		} catch (BadLocationException ex) {
 		}
 	}
 
 	/**
-	 * Removes duplicate lines from the given string.
-	 * 
-	 * @param selectedText
-	 *            string to remove lines from
-	 * @return string of unique lines generated from the input
-	 */
-	private String getUniqueLines(String selectedText) {
-		Set<String> uniques = new LinkedHashSet<>();
-		Scanner scanner = new Scanner(selectedText);
-		while (scanner.hasNextLine()) {
-			uniques.add(scanner.nextLine());
-		}
-		scanner.close();
-		return String.join(System.lineSeparator(), uniques);
-	}
-
-	/**
-	 * Sorts the lines of the given string.
+	 * Sorts the lines of the given string by the rules of the current
+	 * language.
 	 * <p>
 	 * The sorting order is defined by the factor argument - sorting will be
 	 * ascending if the factor is greated than zero, descending if the factor is
@@ -906,33 +2044,21 @@ public class JNotepadPP extends JFrame {
 	 * @return sorted lines
 	 */
 	private String getSortedLines(String selectedText, int factor) {
-		Locale currentLocale = new Locale(currentLanguage);
-		Collator currentCollator = Collator.getInstance(currentLocale);
-
-		List<String> lines = new ArrayList<>();
-		Scanner scanner = new Scanner(selectedText);
-		while (scanner.hasNextLine()) {
-			lines.add(scanner.nextLine());
-		}
-		scanner.close();
-
-		lines.sort((l1, l2) -> factor * currentCollator.compare(l1, l2));
-		return String.join(System.lineSeparator(), lines);
+		if (factor == 0)
+			return selectedText.endsWith("\n") ? selectedText.substring(0, selectedText.length() - 1)
+					: selectedText;
+		return LineSorter.sort(selectedText, Locale.forLanguageTag(currentLanguage), factor > 0);
 	}
 
 	/**
-	 * Checks if there are any unsaved documents currently in the editor. Asks
-	 * the user if saving is needed for each edited document and enables the
-	 * saving of those documents
-	 * 
-	 * @return <code>true</code> if the app can be closed, <code>false</code>
-	 *         otherwise.
+	 * Exits the app. Checks if there are any unsaved documents currently in the
+	 * editor, asks the user if saving is needed for each edited document and
+	 * starts the saving of those documents. The app is closed once all of the
+	 * documents are saved, and stays open if any of the savings fails.
 	 */
-	private boolean checkAppClose() {
-		boolean canClose = true;
-
+	private void exit() {
 		for (int i = 0, n = tabs.getTabCount(); i < n; i++) {
-			JScrollPane filePane = (JScrollPane) tabs.getComponentAt(tabs.getSelectedIndex());
+			JScrollPane filePane = (JScrollPane) tabs.getComponentAt(i);
 			JFileTab file = (JFileTab) filePane.getViewport().getView();
 			String filePath = file.getFilePath() == null ? provider.getString("new_file")
 					: file.getFilePath().toString();
@@ -942,12 +2068,16 @@ public class JNotepadPP extends JFrame {
 						filePath + " " + provider.getString("file_not_saved"));
 
 				if (option == JOptionPane.CANCEL_OPTION)
-					return false;
-				if (option == JOptionPane.YES_OPTION)
-					saveDocumentAction.actionPerformed(null);
+					return;
+				if (option == JOptionPane.YES_OPTION && !saveFile(file, false, null))
+					return;
 			}
 		}
-		return canClose;
+
+		exitRequested = true;
+		if (runningSaves == 0) {
+			dispose();
+		}
 	}
 
 	/**
@@ -968,6 +2098,33 @@ public class JNotepadPP extends JFrame {
 		return tabs;
 	}
 
+	@Override
+	public void paint(Graphics g) {
+		super.paint(g);
+		if (!painted) {
+			painted = true;
+			StartupProfile.mark(StartupProfile.FIRST_PAINT);
+		}
+	}
+
+	/**
+	 * Gets the scheduler of the app.
+	 * 
+	 * @return scheduler of the delayed and the periodic tasks
+	 */
+	public UIScheduler getScheduler() {
+		return scheduler;
+	}
+
+	/**
+	 * Gets the tab hibernator of the app.
+	 * 
+	 * @return tab hibernator
+	 */
+	public TabHibernator getHibernator() {
+		return hibernator;
+	}
+
 	/**
 	 * Gets the tools menu of the app.
 	 * 
@@ -984,6 +2141,10 @@ public class JNotepadPP extends JFrame {
 	 *            not used
 	 */
 	public static void main(String[] args) {
-		SwingUtilities.invokeLater(() -> new JNotepadPP().setVisible(true));
+		StartupProfile.mark("main");
+		SwingUtilities.invokeLater(() -> {
+			new JNotepadPP().setVisible(true);
+			StartupProfile.mark("visible");
+		});
 	}
 }
@@ -0,0 +1,469 @@
+package hr.fer.zemris.java.hw10jnotepadapp;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.FontMetrics;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import javax.swing.AbstractAction;
+import javax.swing.AbstractListModel;
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTabbedPane;
+import javax.swing.KeyStroke;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingWorker;
+import javax.swing.text.BadLocationException;
+
+import hr.fer.zemris.java.document.TextSource;
+import hr.fer.zemris.java.localization.ILocalizationProvider;
+import hr.fer.zemris.java.localization.LocalizableAction;
+import hr.fer.zemris.java.tools.FileSearcher;
+import hr.fer.zemris.java.tools.RegexSearcher;
+
+/**
+ * Panel of the {@link JNotepadPP} app showing the matches of a regular
+ * expression in all the open documents, or of a text in the files of a
+ * directory tree.
+ * <p>
+ * The snapshot of each document is searched by a {@link RegexSearcher} as a
+ * separate task of a pool with one thread for each processor, so the
+ * documents are searched concurrently. The files are searched by a
+ * {@link FileSearcher} in a fork-join pool of the same size. The matches are
+ * added to the list as they are found, up to {@link #MAX_RESULTS} of them.
+ * Choosing a match selects it in its document. A running search can be
+ * cancelled, and starting a new one cancels it as well.
+ *
+ * @author Mirna Baksa
+ *
+ */
+@SuppressWarnings("serial")
+public class JSearchResults extends JPanel {
+	/** Largest number of listed matches. */
+	private static final int MAX_RESULTS = 100_000;
+	/** Pool walking the directories and searching the files. */
+	private static final ForkJoinPool FILE_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+	/** Pool searching the documents. */
+	private static final ExecutorService POOL = Executors
+			.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+				Thread thread = new Thread(r, "document-search");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	/** Notepad app. */
+	private JNotepadPP app;
+	/** Localization provider. */
+	private ILocalizationProvider provider;
+	/** Matches of the last search. */
+	private ResultModel results = new ResultModel();
+	/** Shows the state of the last search. */
+	private JLabel summary = new JLabel(" ");
+	/** Cancels the running search. */
+	private JButton cancel;
+	/** Running search, <code>null</code> if none. */
+	private SwingWorker<Integer, Result> search;
+
+	/**
+	 * Constructs a new {@link JSearchResults}. The panel is hidden until a
+	 * search is started.
+	 *
+	 * @param provider
+	 *            localization provider
+	 * @param app
+	 *            notepad app
+	 */
+	public JSearchResults(ILocalizationProvider provider, JNotepadPP app) {
+		this.app = app;
+		this.provider = provider;
+		setLayout(new BorderLayout());
+		setPreferredSize(new Dimension(0, 180));
+		setVisible(false);
+		initGUI();
+	}
+
+	/**
+	 * Initializes the GUI of the panel.
+	 */
+	private void initGUI() {
+		cancel = new JButton(new LocalizableAction("cancel", provider) {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				cancelSearch();
+			}
+		});
+		JButton close = new JButton(new LocalizableAction("close", provider) {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				cancelSearch();
+				results.clear();
+				setVisible(false);
+			}
+		});
+
+		JPanel header = new JPanel(new BorderLayout());
+		header.setBorder(BorderFactory.createEmptyBorder(2, 5, 2, 5));
+		header.add(summary, BorderLayout.CENTER);
+		JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 0));
+		buttons.add(cancel);
+		buttons.add(close);
+		header.add(buttons, BorderLayout.EAST);
+		add(header, BorderLayout.NORTH);
+
+		JList<Result> list = new JList<>(results);
+		list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		// the cells are not measured one by one
+		FontMetrics metrics = list.getFontMetrics(list.getFont());
+		list.setFixedCellHeight(metrics.getHeight() + 2);
+		list.setFixedCellWidth(metrics.charWidth('m') * (RegexSearcher.PREVIEW_LENGTH + 40));
+		list.setCellRenderer(new DefaultListCellRenderer() {
+			@Override
+			public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected,
+					boolean cellHasFocus) {
+				Result result = (Result) value;
+				String text = result.name + ":" + (result.line + 1) + ": " + result.preview;
+				return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+			}
+		});
+		list.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				int index = list.locationToIndex(e.getPoint());
+				if (index >= 0) {
+					show(results.getElementAt(index));
+				}
+			}
+		});
+		list.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, 0), "show-match");
+		list.getActionMap().put("show-match", new AbstractAction() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (list.getSelectedValue() != null) {
+					show(list.getSelectedValue());
+				}
+			}
+		});
+		add(new JScrollPane(list), BorderLayout.CENTER);
+	}
+
+	/**
+	 * Searches all the open documents for the given pattern, replacing the
+	 * results of the previous search. Documents which are still being loaded
+	 * are skipped.
+	 *
+	 * @param pattern
+	 *            the pattern
+	 */
+	public void search(Pattern pattern) {
+		List<JFileTab> files = new ArrayList<>();
+		List<String> names = new ArrayList<>();
+		List<TextSource> texts = new ArrayList<>();
+		JTabbedPane tabs = app.getTabs();
+		for (int i = 0, n = tabs.getTabCount(); i < n; i++) {
+			JFileTab file = (JFileTab) ((JScrollPane) tabs.getComponentAt(i)).getViewport().getView();
+			if (file.isLoading())
+				continue;
+			try {
+				texts.add(file.snapshot());
+				files.add(file);
+				names.add(tabs.getTitleAt(i));
+			} catch (BadLocationException ignorable) {
+			}
+		}
+
+		start((results, cancelled) -> {
+			List<Future<?>> tasks = new ArrayList<>();
+			for (int i = 0; i < texts.size(); i++) {
+				JFileTab file = files.get(i);
+				String name = names.get(i);
+				TextSource text = texts.get(i);
+				tasks.add(POOL.submit(() -> {
+					try {
+						return RegexSearcher.search(text, pattern,
+								match -> results.test(new Result(file, null, name, match.getLine(),
+										match.getOffset(), match.getLength(), match.getPreview())),
+								cancelled);
+					} finally {
+						// the shared text of a hibernated tab is released
+						if (text instanceof Closeable) {
+							JFileTab.closeQuietly((Closeable) text);
+						}
+					}
+				}));
+			}
+
+			for (Future<?> task : tasks) {
+				try {
+					task.get();
+				} catch (ExecutionException ex) {
+					if (!(ex.getCause() instanceof CancellationException))
+						throw ex;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Searches the files of the given directory tree, replacing the results
+	 * of the previous search. Choosing a match opens its file, unless it is
+	 * already open.
+	 *
+	 * @param searcher
+	 *            searcher of the files
+	 * @param root
+	 *            root of the tree
+	 */
+	public void searchFiles(FileSearcher searcher, Path root) {
+		start((results, cancelled) -> searcher.search(root, FILE_POOL, hit -> {
+			Path name = root.equals(hit.getFile()) ? hit.getFile().getFileName() : root.relativize(hit.getFile());
+			return results.test(new Result(null, hit.getFile(), name.toString(), hit.getLine(), hit.getColumn(),
+					hit.getLength(), hit.getPreview()));
+		}, cancelled));
+	}
+
+	/**
+	 * Starts the given search, cancelling the running one. The matches are
+	 * added to the list as they are found, and the search is stopped once
+	 * {@link #MAX_RESULTS} of them are found.
+	 *
+	 * @param body
+	 *            the search
+	 */
+	private void start(ISearch body) {
+		cancelSearch();
+		results.clear();
+
+		AtomicInteger found = new AtomicInteger();
+		SwingWorker<Integer, Result> worker = new SwingWorker<Integer, Result>() {
+			@Override
+			protected Integer doInBackground() throws Exception {
+				body.run(result -> {
+					if (found.incrementAndGet() > MAX_RESULTS)
+						return false;
+					publish(result);
+					return true;
+				}, this::isCancelled);
+				return Math.min(found.get(), MAX_RESULTS);
+			}
+
+			@Override
+			protected void process(List<Result> chunks) {
+				if (search != this)
+					return;
+				results.addAll(chunks);
+				summary.setText(provider.getString("matches") + ": " + results.getSize() + "...");
+			}
+
+			@Override
+			protected void done() {
+				if (search != this)
+					return;
+				search = null;
+				cancel.setEnabled(false);
+				if (isCancelled()) {
+					summary.setText(provider.getString("matches") + ": " + results.getSize() + " ("
+							+ provider.getString("search_cancelled") + ")");
+					return;
+				}
+				try {
+					int count = get();
+					String text = provider.getString("matches") + ": " + count;
+					summary.setText(count >= MAX_RESULTS ? text + "+" : text);
+				} catch (InterruptedException | ExecutionException ex) {
+					summary.setText(provider.getString("search_error"));
+				}
+			}
+		};
+
+		search = worker;
+		cancel.setEnabled(true);
+		summary.setText(provider.getString("searching"));
+		setVisible(true);
+		revalidate();
+		worker.execute();
+	}
+
+	/**
+	 * Cancels the running search, if there is one.
+	 */
+	private void cancelSearch() {
+		if (search != null) {
+			search.cancel(false);
+		}
+	}
+
+	/**
+	 * Selects the given match in its document. The match of a file is shown
+	 * through {@link JNotepadPP#showFileLocation(Path, int, int, int)}. The
+	 * offsets of a match of an open document are limited to the current
+	 * length of the document, which may have been edited since the search.
+	 *
+	 * @param result
+	 *            the match
+	 */
+	private void show(Result result) {
+		if (result.path != null) {
+			app.showFileLocation(result.path, result.line, result.offset, result.length);
+			return;
+		}
+
+		int index = result.file.getTabIndex();
+		if (index < 0)
+			return;
+
+		app.getTabs().setSelectedIndex(index);
+		int length = result.file.getDocument().getLength();
+		int start = Math.min(result.offset, length);
+		int end = Math.min(start + result.length, length);
+		result.file.getCaret().setDot(start);
+		result.file.getCaret().moveDot(end);
+		result.file.requestFocusInWindow();
+	}
+
+	/**
+	 * Search run by the background worker of the panel.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private interface ISearch {
+		/**
+		 * Runs the search.
+		 *
+		 * @param results
+		 *            receives the matches, the search stops once it returns
+		 *            <code>false</code>
+		 * @param cancelled
+		 *            checked during the search, which stops once it returns
+		 *            <code>true</code>
+		 * @throws Exception
+		 *             if the search fails
+		 */
+		void run(Predicate<Result> results, BooleanSupplier cancelled) throws Exception;
+	}
+
+	/**
+	 * Match found in an open document or in a file.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private static class Result {
+		/** Tab with the document, <code>null</code> for a match of a file. */
+		private JFileTab file;
+		/** The file, <code>null</code> for a match of an open document. */
+		private Path path;
+		/** Shown name of the document or the file. */
+		private String name;
+		/** Line of the match, starting from zero. */
+		private int line;
+		/** Offset of the match in the document, or its column in the file. */
+		private int offset;
+		/** Length of the match. */
+		private int length;
+		/** Preview of the line of the match. */
+		private String preview;
+
+		/**
+		 * Constructs a new {@link Result}.
+		 *
+		 * @param file
+		 *            tab with the document, <code>null</code> for a match of a
+		 *            file
+		 * @param path
+		 *            the file, <code>null</code> for a match of an open
+		 *            document
+		 * @param name
+		 *            shown name of the document or the file
+		 * @param line
+		 *            line of the match
+		 * @param offset
+		 *            offset of the match in the document, or its column in
+		 *            the file
+		 * @param length
+		 *            length of the match
+		 * @param preview
+		 *            preview of the line of the match
+		 */
+		private Result(JFileTab file, Path path, String name, int line, int offset, int length, String preview) {
+			this.file = file;
+			this.path = path;
+			this.name = name;
+			this.line = line;
+			this.offset = offset;
+			this.length = length;
+			this.preview = preview;
+		}
+	}
+
+	/**
+	 * List model of the matches, which adds a whole batch of matches with a
+	 * single event.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private static class ResultModel extends AbstractListModel<Result> {
+		/** The matches. */
+		private List<Result> results = new ArrayList<>();
+
+		@Override
+		public int getSize() {
+			return results.size();
+		}
+
+		@Override
+		public Result getElementAt(int index) {
+			return results.get(index);
+		}
+
+		/**
+		 * Adds the given matches.
+		 *
+		 * @param added
+		 *            the matches
+		 */
+		private void addAll(List<Result> added) {
+			if (added.isEmpty())
+				return;
+			int first = results.size();
+			results.addAll(added);
+			fireIntervalAdded(this, first, results.size() - 1);
+		}
+
+		/**
+		 * Removes all the matches.
+		 */
+		private void clear() {
+			if (results.isEmpty())
+				return;
+			int last = results.size() - 1;
+			results.clear();
+			fireIntervalRemoved(this, 0, last);
+		}
+	}
+}
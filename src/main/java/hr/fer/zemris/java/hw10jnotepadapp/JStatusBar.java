@@ -1,18 +1,26 @@
 package hr.fer.zemris.java.hw10jnotepadapp;
 
 import java.awt.BorderLayout;
+import java.awt.FlowLayout;
 import java.awt.GridLayout;
+import java.awt.event.ActionEvent;
 
 import javax.swing.BorderFactory;
+import javax.swing.JButton;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTabbedPane;
 import javax.swing.JTextArea;
+import javax.swing.SwingWorker;
 import javax.swing.border.BevelBorder;
 import javax.swing.text.BadLocationException;
 
+import hr.fer.zemris.java.document.DocumentStatistics;
+import hr.fer.zemris.java.document.EditHistory;
 import hr.fer.zemris.java.localization.ILocalizationListener;
 import hr.fer.zemris.java.localization.ILocalizationProvider;
+import hr.fer.zemris.java.localization.LocalizableAction;
 
 /**
  * Models a status bar for the {@link JNotepadPP} app.
@@ -20,12 +28,20 @@ import hr.fer.zemris.java.localization.ILocalizationProvider;
  * The status bar shows basic document information: <br>
  * length of the document currently in the editor, information about the current
  * caret position (line and column), the length of the selected part of text(if
- * any) and current date and time. The document info is left aligned, while the
- * clock is right aligned.
+ * any), the number of words in the document, the memory held by the undo
+ * history of the document, the number of hibernated tabs and current date
+ * and time. The document info is left aligned, while the clock is right
+ * aligned. While the current document is being loaded or saved, the progress
+ * is shown together with a button which cancels the loading or saving.
  * <p>
  * Information will be refreshed when needed - document info can be updated with
- * the call of {@link JStatusBar#updateStatusBar(JFileTab)}. The clock is
- * refreshed periodically. Dynamic language change is supported.
+ * the call of {@link JStatusBar#updateStatusBar(JFileTab)}. The call only
+ * marks the status bar as outdated, and all of the updates requested within
+ * one frame are applied together by a single task of the
+ * {@link UIScheduler}. Only the values which were changed are pushed to the
+ * components. The status bar also enables the tools of the app depending on
+ * the selection in the current document. The clock is refreshed
+ * periodically. Dynamic language change is supported.
  * 
  * @author Mirna Baksa
  *
@@ -33,17 +49,54 @@ import hr.fer.zemris.java.localization.ILocalizationProvider;
 public class JStatusBar extends JPanel {
 	/** Default serialization version. */
 	private static final long serialVersionUID = 1L;
+	/** Delay between an update request and the refresh in milliseconds. */
+	private static final int REFRESH_DELAY = 16;
 	/** Shows length of the document currently in the editor. */
 	private JTextArea length;
 	/** Shows caret information. */
 	private JTextArea caretInfo;
+	/** Shows the number of words in the document. */
+	private JTextArea wordInfo;
+	/** Shows the memory held by the undo history of the document. */
+	private JTextArea historyInfo;
+	/** Shows the number of hibernated tabs. */
+	private JTextArea hibernatedInfo;
 	/** Clock. */
 	private JClock clock;
+	/** Shows the loading or saving progress of the current document. */
+	private JProgressBar progress;
+	/** Contains the progress and the cancel button. */
+	private JPanel loading;
+	/** Document currently shown in the status bar. */
+	private JFileTab editor;
 	/** Localization provider. */
 	private ILocalizationProvider provider;
 	/** Notepad app. */
-	@SuppressWarnings("unused")
 	private JNotepadPP app;
+	/** Updates the status bar when the language changes. */
+	private ILocalizationListener localizationListener;
+	/** Runs the refreshes of the status bar. */
+	private UIScheduler scheduler;
+	/** Refreshes the status bar once the requested updates are collected. */
+	private UIScheduler.Task refreshTask;
+	/** Number of update requests since the last refresh. */
+	private int pendingUpdates;
+	/** Text currently shown as the document length. */
+	private String lengthText;
+	/** Text currently shown as the caret information. */
+	private String caretText;
+	/** Text currently shown as the number of words. */
+	private String wordText;
+	/** Text currently shown as the memory of the undo history. */
+	private String historyText;
+	/** Text currently shown as the number of hibernated tabs. */
+	private String hibernatedText;
+	/** Current state of the tools, <code>null</code> if not yet set. */
+	private Boolean toolsEnabled;
+	/** Number of refreshes which changed the shown values. */
+	private long appliedUpdates;
+	/** Number of update requests which did not change the shown values. */
+	private long skippedUpdates;
 
 	/**
 	 * Constructs a new {@link JStatusBar}.
@@ -53,7 +106,7 @@ public class JStatusBar extends JPanel {
 	public JStatusBar(ILocalizationProvider provider, JNotepadPP app) {
 		this.app = app;
 		this.provider = provider;
-		provider.addLocalizationListener(new ILocalizationListener() {
+		localizationListener = new ILocalizationListener() {
 			@Override
 			public void localizationChanged(){
 				JTabbedPane tabs = app.getTabs();
@@ -62,10 +115,12 @@ public class JStatusBar extends JPanel {
 				JScrollPane filePane = (JScrollPane) tabs.getSelectedComponent();
 				JStatusBar.this.updateStatusBar((JFileTab) filePane.getViewport().getView());
 			}
-		});
+		};
+		provider.addLocalizationListener(localizationListener);
 		setLayout(new BorderLayout());
 		setBorder(BorderFactory.createBevelBorder(BevelBorder.LOWERED));
 
+		scheduler = app.getScheduler();
 		initGUI();
 	}
 
@@ -74,7 +129,7 @@ public class JStatusBar extends JPanel {
 	 */
 	private void initGUI() {
 		JPanel info = new JPanel();
-		info.setLayout(new GridLayout(1,2));
+		info.setLayout(new GridLayout(1,5));
 		
 		length = new JTextArea(provider.getString("length") +  ": 0");
 		length.setOpaque(false);
@@ -84,10 +139,39 @@ public class JStatusBar extends JPanel {
 		caretInfo.setText("Ln:" + 0 + " Col:" + 0 + " Sel:" + 0);
 		caretInfo.setOpaque(false);
 		info.add(caretInfo);
+
+		wordInfo = new JTextArea();
+		wordInfo.setOpaque(false);
+		info.add(wordInfo);
+
+		historyInfo = new JTextArea();
+		historyInfo.setOpaque(false);
+		info.add(historyInfo);
+
+		hibernatedInfo = new JTextArea();
+		hibernatedInfo.setOpaque(false);
+		info.add(hibernatedInfo);
 		
 		this.add(info, BorderLayout.LINE_START);
-		
-		this.clock = new JClock();
+
+		loading = new JPanel(new FlowLayout(FlowLayout.CENTER, 5, 0));
+		loading.setOpaque(false);
+		progress = new JProgressBar(0, 100);
+		loading.add(progress);
+		loading.add(new JButton(new LocalizableAction("cancel", provider) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (editor != null && editor.getTask() != null) {
+					editor.getTask().cancel(true);
+				}
+			}
+		}));
+		loading.setVisible(false);
+		this.add(loading, BorderLayout.CENTER);
+
+		this.clock = new JClock(scheduler);
 		clock.setOpaque(false);
 		this.add(clock, BorderLayout.LINE_END);
 	}
@@ -98,12 +182,32 @@ public class JStatusBar extends JPanel {
 	 * <p>
 	 * The update will refresh the document length info and the caret info - its
 	 * position (line and column) and the length od the selected part of text
-	 * (if any).
+	 * (if any). The update is not applied right away, but together with all of
+	 * the other updates requested within the same frame.
 	 * 
 	 * @param editor
 	 *            currently edited document
 	 */
 	public void updateStatusBar(JFileTab editor) {
+		this.editor = editor;
+		pendingUpdates++;
+		if (refreshTask == null || !refreshTask.isPending()) {
+			refreshTask = scheduler.schedule(this::refresh, REFRESH_DELAY);
+		}
+	}
+
+	/**
+	 * Applies the requested updates, pushing only the changed values to the
+	 * components.
+	 */
+	private void refresh() {
+		int requests = pendingUpdates;
+		pendingUpdates = 0;
+		if (editor == null)
+			return;
+
+		updateProgress(editor);
+
 		int lineNum = 1;
 		int colNum = 1;
 
@@ -116,8 +220,105 @@ public class JStatusBar extends JPanel {
 
 		int selectedLength = Math.abs(editor.getCaret().getDot() - editor.getCaret().getMark());
 		int documentLength = editor.getDocument().getLength();
-		this.length.setText(provider.getString("length") + ": " + String.valueOf(documentLength));
-		caretInfo.setText("Ln:" + (lineNum + 1) + " Col:" + colNum + " Sel:" + selectedLength);
+		boolean tools = selectedLength > 0 && editor.isEditable();
+
+		boolean changed = false;
+		String text = provider.getString("length") + ": " + String.valueOf(documentLength);
+		if (!text.equals(lengthText)) {
+			lengthText = text;
+			length.setText(text);
+			changed = true;
+		}
+		text = "Ln:" + (lineNum + 1) + " Col:" + colNum + " Sel:" + selectedLength;
+		if (!text.equals(caretText)) {
+			caretText = text;
+			caretInfo.setText(text);
+			changed = true;
+		}
+		// a viewed document would have to be read to count its words
+		DocumentStatistics statistics = editor.getStatistics();
+		text = statistics == null ? "" : provider.getString("word_count") + ": " + statistics.getWords();
+		if (!text.equals(wordText)) {
+			wordText = text;
+			wordInfo.setText(text);
+			changed = true;
+		}
+		EditHistory history = editor.getHistory();
+		text = provider.getString("undo_size") + ": " + kilobytes(history.getFootprint()) + " / "
+				+ kilobytes(history.getCapacity()) + " KB";
+		if (!text.equals(historyText)) {
+			historyText = text;
+			historyInfo.setText(text);
+			changed = true;
+		}
+		text = provider.getString("hibernated_tabs") + ": " + app.getHibernator().getHibernatedCount();
+		if (!text.equals(hibernatedText)) {
+			hibernatedText = text;
+			hibernatedInfo.setText(text);
+			changed = true;
+		}
+		if (toolsEnabled == null || toolsEnabled != tools) {
+			toolsEnabled = tools;
+			app.setToolsEnabled(tools);
+			changed = true;
+		}
+
+		if (changed) {
+			appliedUpdates++;
+			requests--;
+		}
+		skippedUpdates += requests;
+	}
+
+	/**
+	 * Converts the given number of bytes to kilobytes, rounded up.
+	 * 
+	 * @param bytes
+	 *            number of bytes
+	 * @return number of kilobytes
+	 */
+	private static long kilobytes(long bytes) {
+		return (bytes + 1023) >> 10;
+	}
+
+	/**
+	 * Gets the number of refreshes which changed any of the shown values. Each
+	 * of them was requested by at least one update.
+	 * 
+	 * @return number of applied updates
+	 */
+	public long getAppliedUpdates() {
+		return appliedUpdates;
+	}
+
+	/**
+	 * Gets the number of requested updates which did not change the shown
+	 * values, because they were merged with other updates of the same frame or
+	 * because nothing was changed since the previous refresh.
+	 * 
+	 * @return number of skipped updates
+	 */
+	public long getSkippedUpdates() {
+		return skippedUpdates;
+	}
+
+	/**
+	 * Updates the loading or saving progress of the given document. The
+	 * progress is shown only if the document is the one currently shown in the
+	 * status bar and if it is still being loaded or saved.
+	 * 
+	 * @param editor
+	 *            document being loaded or saved
+	 */
+	public void updateProgress(JFileTab editor) {
+		if (editor != this.editor)
+			return;
+
+		SwingWorker<?, ?> task = editor.getTask();
+		loading.setVisible(task != null);
+		if (task != null) {
+			progress.setValue(task.getProgress());
+		}
 	}
 
 }
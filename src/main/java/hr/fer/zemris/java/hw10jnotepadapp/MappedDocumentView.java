@@ -0,0 +1,168 @@
+package hr.fer.zemris.java.hw10jnotepadapp;
+
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.Shape;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.text.TabExpander;
+import javax.swing.text.Utilities;
+import javax.swing.text.View;
+import javax.swing.text.ViewFactory;
+
+import hr.fer.zemris.java.document.MappedDocument;
+import hr.fer.zemris.java.document.MappedTextFile;
+
+/**
+ * View of a {@link MappedDocument}. Only the lines intersecting the visible
+ * area are decoded and painted, the size of the view is computed from the
+ * block index of the mapped file without reading the text.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class MappedDocumentView extends View implements TabExpander {
+	/** Number of characters between two tab stops. */
+	private static final int TAB_SIZE = 8;
+
+	/** Mapped file. */
+	private MappedTextFile file;
+	/** Metrics of the font used by the host component. */
+	private FontMetrics metrics;
+	/** Buffer used when reading lines. */
+	private Segment line = new Segment();
+
+	/**
+	 * Constructs a new {@link MappedDocumentView}.
+	 *
+	 * @param elem
+	 *            root element of a {@link MappedDocument}
+	 */
+	public MappedDocumentView(Element elem) {
+		super(elem);
+		this.file = ((MappedDocument) elem.getDocument()).getFile();
+	}
+
+	/**
+	 * Refreshes the font metrics if the font of the host component was
+	 * changed.
+	 */
+	private void updateMetrics() {
+		Component host = getContainer();
+		if (metrics == null || metrics.getFont() != host.getFont()) {
+			metrics = host.getFontMetrics(host.getFont());
+		}
+	}
+
+	/**
+	 * Reads the text of the given line without the line terminator.
+	 *
+	 * @param lineIndex
+	 *            line number
+	 * @return start offset of the line
+	 */
+	private int loadLine(int lineIndex) {
+		Element lineElement = getElement().getElement(lineIndex);
+		int start = lineElement.getStartOffset();
+		int end = lineElement.getEndOffset() - 1;
+		try {
+			getDocument().getText(start, end - start, line);
+		} catch (BadLocationException ex) {
+			line.count = 0;
+		}
+		return start;
+	}
+
+	@Override
+	public float getPreferredSpan(int axis) {
+		updateMetrics();
+		switch (axis) {
+		case View.X_AXIS:
+			return (float) Math.min(Integer.MAX_VALUE / 2, (file.getLongestLine() + 1) * metrics.charWidth('m'));
+		case View.Y_AXIS:
+			return (float) Math.min(Integer.MAX_VALUE / 2, (long) file.getLineCount() * metrics.getHeight());
+		default:
+			throw new IllegalArgumentException("Invalid axis: " + axis);
+		}
+	}
+
+	@Override
+	public void insertUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+		// the mapped file has grown while being indexed
+		preferenceChanged(null, true, true);
+		Container host = getContainer();
+		if (host != null) {
+			host.repaint();
+		}
+	}
+
+	@Override
+	public void paint(Graphics g, Shape a) {
+		updateMetrics();
+		Rectangle alloc = a.getBounds();
+		Rectangle clip = g.getClipBounds();
+		int height = metrics.getHeight();
+
+		int first = Math.max(0, (clip.y - alloc.y) / height);
+		int last = Math.min(file.getLineCount() - 1, (clip.y + clip.height - alloc.y) / height);
+
+		Container host = getContainer();
+		g.setFont(host.getFont());
+		g.setColor(host.isEnabled() ? host.getForeground() : ((JTextComponent) host).getDisabledTextColor());
+
+		int y = alloc.y + first * height + metrics.getAscent();
+		for (int i = first; i <= last; i++, y += height) {
+			int start = loadLine(i);
+			Utilities.drawTabbedText(line, alloc.x, y, g, this, start);
+		}
+	}
+
+	@Override
+	public Shape modelToView(int pos, Shape a, Position.Bias b) throws BadLocationException {
+		if (pos < 0 || pos > getDocument().getLength() + 1)
+			throw new BadLocationException("Invalid position.", pos);
+
+		updateMetrics();
+		Rectangle alloc = a.getBounds();
+		int lineIndex = getElement().getElementIndex(pos);
+		int start = loadLine(lineIndex);
+		line.count = Math.min(line.count, pos - start);
+
+		int x = alloc.x + Utilities.getTabbedTextWidth(line, metrics, alloc.x, this, start);
+		int y = alloc.y + lineIndex * metrics.getHeight();
+		return new Rectangle(x, y, 1, metrics.getHeight());
+	}
+
+	@Override
+	public int viewToModel(float x, float y, Shape a, Position.Bias[] biasReturn) {
+		updateMetrics();
+		biasReturn[0] = Position.Bias.Forward;
+		Rectangle alloc = a.getBounds();
+
+		int lineIndex = (int) ((y - alloc.y) / metrics.getHeight());
+		if (lineIndex < 0)
+			return 0;
+		if (lineIndex >= file.getLineCount())
+			return getDocument().getLength();
+
+		int start = loadLine(lineIndex);
+		return start + Utilities.getTabbedTextOffset(line, metrics, alloc.x, (int) x, this, start);
+	}
+
+	@Override
+	public float nextTabStop(float x, int tabOffset) {
+		int tabWidth = TAB_SIZE * metrics.charWidth('m');
+		if (tabWidth == 0)
+			return x;
+		int alloc = getContainer().getInsets().left;
+		return alloc + ((((int) x - alloc) / tabWidth) + 1) * tabWidth;
+	}
+}
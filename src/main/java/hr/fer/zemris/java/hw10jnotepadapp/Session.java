@@ -0,0 +1,499 @@
+package hr.fer.zemris.java.hw10jnotepadapp;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+import javax.swing.JScrollPane;
+import javax.swing.JTabbedPane;
+import javax.swing.SwingWorker;
+import javax.swing.SwingWorker.StateValue;
+import javax.swing.text.BadLocationException;
+
+import hr.fer.zemris.java.document.CompressedText;
+import hr.fer.zemris.java.document.TextSource;
+
+/**
+ * Saves the open tabs of the {@link JNotepadPP} app to a session file and
+ * restores them when the app is started again.
+ * <p>
+ * The session stores the path, the selection and the edited flag of each
+ * tab, and the text of each unsaved document compressed by a
+ * {@link CompressedText}. The session is saved when the app is closed and
+ * periodically in the background, but only if any of the tabs changed since
+ * the last save. The file is replaced atomically, so a crash while saving
+ * leaves the previous session in place.
+ * <p>
+ * Restoring a session only creates the tabs. An unsaved document is restored
+ * as a hibernated tab, so its text stays compressed until the tab is
+ * selected, and the file of a saved tab is loaded once the tab is first
+ * selected. Afterwards, the files of the other tabs are loaded in the
+ * background one at a time, until their total size reaches a limit.
+ * <p>
+ * The session is configured by the system properties:
+ * <ul>
+ * <li><code>jnotepad.session</code> - path of the session file,
+ * <code>.jnotepad/session.bin</code> in the home directory by default</li>
+ * <li><code>jnotepad.session.interval</code> - seconds between two saves,
+ * 60 by default</li>
+ * <li><code>jnotepad.session.preload</code> - megabytes of the files loaded
+ * in the background, 16 by default</li>
+ * </ul>
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class Session {
+	/** System property with the path of the session file. */
+	private static final String FILE_PROPERTY = "jnotepad.session";
+	/** System property with the seconds between two saves. */
+	private static final String INTERVAL_PROPERTY = "jnotepad.session.interval";
+	/** Default number of seconds between two saves. */
+	private static final int DEFAULT_INTERVAL = 60;
+	/** System property with the megabytes of the files loaded in the background. */
+	private static final String PRELOAD_PROPERTY = "jnotepad.session.preload";
+	/** Default megabytes of the files loaded in the background. */
+	private static final long DEFAULT_PRELOAD = 16;
+	/** First bytes of a session file. */
+	private static final int MAGIC = 0x4A4E5053;
+	/** Version of the format of the session file. */
+	private static final int VERSION = 1;
+	/** Flag of a tab showing a file. */
+	private static final int HAS_PATH = 1;
+	/** Flag of a tab with unsaved changes. */
+	private static final int EDITED = 2;
+	/** Flag of a tab whose text is stored in the session. */
+	private static final int HAS_TEXT = 4;
+
+	/** Notepad app. */
+	private JNotepadPP app;
+	/** Path of the session file. */
+	private Path file;
+	/** Milliseconds between two saves. */
+	private long interval = Integer.getInteger(INTERVAL_PROPERTY, DEFAULT_INTERVAL) * 1000L;
+	/** Saves the session periodically, <code>null</code> until restored. */
+	private UIScheduler.Task saveTask;
+	/** Running background save, <code>null</code> if none. */
+	private SwingWorker<Void, Void> saving;
+	/** State of the tabs when the session was last saved. */
+	private List<Object> savedState;
+	/** Number of the started saves. */
+	private long started;
+	/** Number of the started save whose file was last moved in place. */
+	private long written;
+	/** Bytes of the files which may still be loaded in the background. */
+	private long preloadBudget = Long.getLong(PRELOAD_PROPERTY, DEFAULT_PRELOAD) << 20;
+
+	/**
+	 * Constructs a new {@link Session} of the given app.
+	 *
+	 * @param app
+	 *            notepad app
+	 */
+	public Session(JNotepadPP app) {
+		this.app = app;
+		String path = System.getProperty(FILE_PROPERTY);
+		file = path != null ? Paths.get(path)
+				: Paths.get(System.getProperty("user.home"), ".jnotepad", "session.bin");
+	}
+
+	/**
+	 * Restores the tabs of the saved session, if there is one, and starts
+	 * saving the session periodically. A session which can not be read is
+	 * ignored.
+	 */
+	public void restore() {
+		saveTask = app.getScheduler().repeat(this::saveInBackground, interval, 0);
+		if (!Files.isRegularFile(file))
+			return;
+
+		List<Entry> entries = new ArrayList<>();
+		int selected;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				return;
+			selected = in.readInt();
+			for (int i = 0, n = in.readInt(); i < n; i++) {
+				entries.add(Entry.read(in, app.getHibernator().getOffHeapLimit()));
+			}
+		} catch (IOException | RuntimeException ex) {
+			for (Entry entry : entries) {
+				if (entry.compressed != null) {
+					JFileTab.closeQuietly(entry.compressed);
+				}
+			}
+			return;
+		}
+		if (entries.isEmpty())
+			return;
+
+		// the selected tab is added first, so none of the others is ever selected
+		selected = Math.max(0, Math.min(selected, entries.size() - 1));
+		app.restoreTab(0, entries.get(selected));
+		for (int i = 0; i < entries.size(); i++) {
+			if (i != selected) {
+				app.restoreTab(i, entries.get(i));
+			}
+		}
+		savedState = captureState();
+		preloadNext();
+	}
+
+	/**
+	 * Starts loading the file of the next tab which was not yet selected, if
+	 * the file fits into the remaining limit of the background loading.
+	 */
+	private void preloadNext() {
+		JTabbedPane tabs = app.getTabs();
+		for (int i = 0, n = tabs.getTabCount(); i < n; i++) {
+			JFileTab tab = getTab(i);
+			if (!tab.isDeferred() || i == tabs.getSelectedIndex())
+				continue;
+
+			long size;
+			try {
+				size = Files.size(tab.getFilePath());
+			} catch (IOException ex) {
+				continue;
+			}
+			if (size > preloadBudget || size >= FileLoader.VIEWER_THRESHOLD)
+				continue;
+
+			preloadBudget -= size;
+			FileLoader loader = app.load(tab);
+			loader.addPropertyChangeListener(new PropertyChangeListener() {
+				@Override
+				public void propertyChange(PropertyChangeEvent evt) {
+					if ("state".equals(evt.getPropertyName()) && evt.getNewValue() == StateValue.DONE) {
+						preloadNext();
+					}
+				}
+			});
+			return;
+		}
+	}
+
+	/**
+	 * Saves the session in the background, unless the tabs did not change
+	 * since the last save or the previous save is still running.
+	 */
+	private void saveInBackground() {
+		if (saving != null && !saving.isDone())
+			return;
+		List<Object> state = captureState();
+		if (state.equals(savedState))
+			return;
+
+		List<Entry> entries = captureEntries();
+		int selected = app.getTabs().getSelectedIndex();
+		long generation = ++started;
+		saving = new SwingWorker<Void, Void>() {
+			@Override
+			protected Void doInBackground() throws Exception {
+				write(entries, selected, generation, this::isCancelled);
+				return null;
+			}
+
+			@Override
+			protected void done() {
+				// a failed save is retried with the next one
+				if (!isCancelled()) {
+					try {
+						get();
+						savedState = state;
+					} catch (Exception ignorable) {
+					}
+				}
+			}
+		};
+		saving.execute();
+	}
+
+	/**
+	 * Stops saving the session periodically and saves it one last time.
+	 * Called when the app is closed.
+	 */
+	public void dispose() {
+		if (saveTask != null) {
+			saveTask.cancel();
+		}
+		if (saving != null) {
+			saving.cancel(true);
+		}
+		try {
+			write(captureEntries(), app.getTabs().getSelectedIndex(), ++started, () -> false);
+		} catch (IOException | CancellationException ignorable) {
+		}
+	}
+
+	/**
+	 * Captures what the saved session depends on, so an unchanged session is
+	 * not saved again.
+	 *
+	 * @return state of the tabs
+	 */
+	private List<Object> captureState() {
+		JTabbedPane tabs = app.getTabs();
+		List<Object> state = new ArrayList<>();
+		state.add(tabs.getSelectedIndex());
+		for (int i = 0, n = tabs.getTabCount(); i < n; i++) {
+			JFileTab tab = getTab(i);
+			state.add(Arrays.asList(tab.getFilePath(), tab.isEdited(), tab.getSessionDot(), tab.getSessionMark(),
+					tab.getChangeCount()));
+		}
+		return state;
+	}
+
+	/**
+	 * Captures the entries of the open tabs. The texts of the unsaved
+	 * documents are captured as snapshots, which are compressed while the
+	 * session is written.
+	 *
+	 * @return entries of the tabs
+	 */
+	private List<Entry> captureEntries() {
+		JTabbedPane tabs = app.getTabs();
+		List<Entry> entries = new ArrayList<>();
+		for (int i = 0, n = tabs.getTabCount(); i < n; i++) {
+			JFileTab tab = getTab(i);
+			Entry entry = new Entry(tab.getFilePath(), tab.isEdited(), tab.getSessionDot(), tab.getSessionMark());
+			// a new document is stored even if it was never edited
+			if (tab.isEdited() || tab.getFilePath() == null) {
+				try {
+					if (tab.isHibernated()) {
+						entry.compressed = tab.getHibernatedText();
+					} else if (!tab.isViewer() && !tab.isLoading()) {
+						entry.text = tab.snapshot();
+					}
+				} catch (BadLocationException ignorable) {
+				}
+			}
+			entries.add(entry);
+		}
+		return entries;
+	}
+
+	/**
+	 * Writes the session to a temporary file and moves it in place of the
+	 * session file, unless a later save was already moved in place.
+	 *
+	 * @param entries
+	 *            entries of the tabs
+	 * @param selected
+	 *            index of the selected tab
+	 * @param generation
+	 *            number of the save
+	 * @param cancelled
+	 *            checked while writing, which stops once it returns
+	 *            <code>true</code>
+	 * @throws IOException
+	 *             if the session can not be written
+	 * @throws CancellationException
+	 *             if the writing was cancelled
+	 */
+	private void write(List<Entry> entries, int selected, long generation, BooleanSupplier cancelled)
+			throws IOException {
+		Path directory = file.toAbsolutePath().getParent();
+		Files.createDirectories(directory);
+		Path temporary = Files.createTempFile(directory, "session", ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(selected);
+				out.writeInt(entries.size());
+				for (Entry entry : entries) {
+					entry.write(out, app.getHibernator().getOffHeapLimit(), cancelled);
+				}
+			}
+
+			synchronized (this) {
+				if (generation < written)
+					return;
+				try {
+					Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				} catch (AtomicMoveNotSupportedException ex) {
+					Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+				}
+				written = generation;
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Gets the tab at the given index.
+	 *
+	 * @param index
+	 *            index of the tab
+	 * @return the tab
+	 */
+	private JFileTab getTab(int index) {
+		return (JFileTab) ((JScrollPane) app.getTabs().getComponentAt(index)).getViewport().getView();
+	}
+
+	/**
+	 * Tab stored in a session.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	static final class Entry {
+		/** Path of the file, <code>null</code> for a new document. */
+		private Path path;
+		/** <code>true</code> if the document has unsaved changes. */
+		private boolean edited;
+		/** Caret position. */
+		private int dot;
+		/** Selection mark. */
+		private int mark;
+		/** Text of the unsaved document, if not compressed. */
+		private TextSource text;
+		/** Compressed text of the unsaved document, if any. */
+		private CompressedText compressed;
+
+		/**
+		 * Constructs a new {@link Entry}.
+		 *
+		 * @param path
+		 *            path of the file, <code>null</code> for a new document
+		 * @param edited
+		 *            <code>true</code> if the document has unsaved changes
+		 * @param dot
+		 *            caret position
+		 * @param mark
+		 *            selection mark
+		 */
+		private Entry(Path path, boolean edited, int dot, int mark) {
+			this.path = path;
+			this.edited = edited;
+			this.dot = dot;
+			this.mark = mark;
+		}
+
+		/**
+		 * Reads an entry from a session file.
+		 *
+		 * @param in
+		 *            the session file
+		 * @param offHeapLimit
+		 *            limit of the memory outside of the heap held by the
+		 *            compressed texts
+		 * @return the entry
+		 * @throws IOException
+		 *             if the entry can not be read
+		 */
+		private static Entry read(DataInputStream in, long offHeapLimit) throws IOException {
+			int flags = in.readByte();
+			Path path = (flags & HAS_PATH) != 0 ? Paths.get(in.readUTF()) : null;
+			Entry entry = new Entry(path, (flags & EDITED) != 0, in.readInt(), in.readInt());
+			if ((flags & HAS_TEXT) != 0) {
+				int length = in.readInt();
+				long size = in.readLong();
+				entry.compressed = CompressedText.read(in, length, size, offHeapLimit);
+			}
+			return entry;
+		}
+
+		/**
+		 * Writes the entry to a session file.
+		 *
+		 * @param out
+		 *            the session file
+		 * @param offHeapLimit
+		 *            limit of the memory outside of the heap held by the
+		 *            compressed texts
+		 * @param cancelled
+		 *            checked while compressing, which stops once it returns
+		 *            <code>true</code>
+		 * @throws IOException
+		 *             if the entry can not be written
+		 */
+		private void write(DataOutputStream out, long offHeapLimit, BooleanSupplier cancelled) throws IOException {
+			boolean hasText = text != null || compressed != null;
+			out.writeByte((path != null ? HAS_PATH : 0) | (edited ? EDITED : 0) | (hasText ? HAS_TEXT : 0));
+			if (path != null) {
+				out.writeUTF(path.toString());
+			}
+			out.writeInt(dot);
+			out.writeInt(mark);
+			if (!hasText)
+				return;
+
+			// the compressed text of a hibernated tab belongs to the tab
+			CompressedText written = compressed != null ? compressed
+					: CompressedText.compress(text, offHeapLimit, cancelled);
+			try {
+				out.writeInt(written.length());
+				out.writeLong(written.getCompressedSize());
+				written.writeTo(out);
+			} finally {
+				if (written != compressed) {
+					JFileTab.closeQuietly(written);
+				}
+			}
+		}
+
+		/**
+		 * Gets the path of the file.
+		 *
+		 * @return path of the file, <code>null</code> for a new document
+		 */
+		Path getPath() {
+			return path;
+		}
+
+		/**
+		 * Checks if the document has unsaved changes.
+		 *
+		 * @return <code>true</code> if the document has unsaved changes
+		 */
+		boolean isEdited() {
+			return edited;
+		}
+
+		/**
+		 * Gets the caret position.
+		 *
+		 * @return caret position
+		 */
+		int getDot() {
+			return dot;
+		}
+
+		/**
+		 * Gets the selection mark.
+		 *
+		 * @return selection mark
+		 */
+		int getMark() {
+			return mark;
+		}
+
+		/**
+		 * Gets the compressed text of the unsaved document.
+		 *
+		 * @return compressed text, <code>null</code> if the document was
+		 *         saved
+		 */
+		CompressedText getText() {
+			return compressed;
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package hr.fer.zemris.java.hw10jnotepadapp;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records the times of the phases of the startup of the {@link JNotepadPP}
+ * app, from the start of the main method to the first painted frame.
+ * <p>
+ * Each phase is recorded only the first time it is reached. If the system
+ * property <code>jnotepad.startup.profile</code> is set to
+ * <code>true</code>, the phases are printed once the first frame is painted,
+ * together with the time the virtual machine took to start.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public final class StartupProfile {
+	/** System property which prints the phases. */
+	private static final String PROFILE_PROPERTY = "jnotepad.startup.profile";
+	/** Phase of the first painted frame, which ends the startup. */
+	public static final String FIRST_PAINT = "first_paint";
+
+	/** Time the recording started, in nanoseconds. */
+	private static final long START = System.nanoTime();
+	/** Times of the phases since the start, in nanoseconds. */
+	private static final Map<String, Long> PHASES = new LinkedHashMap<>();
+
+	/**
+	 * Not used.
+	 */
+	private StartupProfile() {
+	}
+
+	/**
+	 * Records the end of a phase, unless it was already recorded. Recording the
+	 * first painted frame ends the startup.
+	 *
+	 * @param phase
+	 *            name of the phase
+	 */
+	public static void mark(String phase) {
+		synchronized (PHASES) {
+			if (PHASES.containsKey(phase))
+				return;
+			PHASES.put(phase, System.nanoTime() - START);
+		}
+		if (FIRST_PAINT.equals(phase) && Boolean.getBoolean(PROFILE_PROPERTY)) {
+			print();
+		}
+	}
+
+	/**
+	 * Gets the recorded phases.
+	 *
+	 * @return times of the phases since the start of the main method in
+	 *         nanoseconds, in the order in which they were reached
+	 */
+	public static Map<String, Long> getPhases() {
+		synchronized (PHASES) {
+			return Collections.unmodifiableMap(new LinkedHashMap<>(PHASES));
+		}
+	}
+
+	/**
+	 * Prints the recorded phases to the standard error.
+	 */
+	private static void print() {
+		// the management beans are loaded only when the profile is printed
+		long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+		long sinceStart = (System.nanoTime() - START) / 1_000_000;
+		System.err.printf("startup: virtual machine %d ms%n", uptime - sinceStart);
+		long previous = 0;
+		for (Map.Entry<String, Long> phase : getPhases().entrySet()) {
+			System.err.printf("startup: %-12s %6.1f ms (+%.1f ms)%n", phase.getKey(), phase.getValue() / 1e6,
+					(phase.getValue() - previous) / 1e6);
+			previous = phase.getValue();
+		}
+	}
+}
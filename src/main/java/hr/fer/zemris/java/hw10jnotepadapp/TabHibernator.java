@@ -0,0 +1,361 @@
+package hr.fer.zemris.java.hw10jnotepadapp;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.swing.JOptionPane;
+import javax.swing.JScrollPane;
+import javax.swing.JTabbedPane;
+import javax.swing.SwingWorker;
+import javax.swing.SwingWorker.StateValue;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+import hr.fer.zemris.java.document.CompressedText;
+import hr.fer.zemris.java.document.EditorDocument;
+import hr.fer.zemris.java.document.TextSource;
+import hr.fer.zemris.java.localization.ILocalizationProvider;
+
+/**
+ * Hibernates the tabs of the {@link JNotepadPP} app which were not used for a
+ * while, edited or not.
+ * <p>
+ * The tabs are kept in the order in which they were last selected. A few of
+ * the most recently used tabs are never hibernated, and each of the others is
+ * hibernated once it was not selected for long enough, or right away while
+ * the heap is almost full. The snapshot of the document of a tab is
+ * compressed into a {@link CompressedText} in the background, and the tab is
+ * hibernated only if its document was not edited in the meantime. Selecting
+ * a hibernated tab wakes it up.
+ * <p>
+ * The limits are read from the system properties:
+ * <ul>
+ * <li><code>jnotepad.hibernate.idle</code> - seconds a tab must be unused
+ * before it is hibernated, 300 by default</li>
+ * <li><code>jnotepad.hibernate.active</code> - number of the most recently
+ * used tabs which are never hibernated, 8 by default</li>
+ * <li><code>jnotepad.hibernate.heap</code> - percentage of the heap above
+ * which the tabs are hibernated without waiting, 75 by default</li>
+ * <li><code>jnotepad.hibernate.offheap</code> - megabytes the compressed
+ * documents may hold outside of the heap before they are written to
+ * temporary files, 64 by default</li>
+ * <li><code>jnotepad.hibernate.minimum</code> - length of the shortest
+ * hibernated document, 16384 characters by default</li>
+ * </ul>
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class TabHibernator implements ChangeListener {
+	/** System property with the seconds a tab must be unused. */
+	private static final String IDLE_PROPERTY = "jnotepad.hibernate.idle";
+	/** Default number of seconds a tab must be unused. */
+	private static final long DEFAULT_IDLE = 300;
+	/** System property with the number of the tabs never hibernated. */
+	private static final String ACTIVE_PROPERTY = "jnotepad.hibernate.active";
+	/** Default number of the most recently used tabs never hibernated. */
+	private static final int DEFAULT_ACTIVE = 8;
+	/** System property with the percentage of the heap. */
+	private static final String HEAP_PROPERTY = "jnotepad.hibernate.heap";
+	/** Default percentage of the heap above which the tabs are hibernated. */
+	private static final int DEFAULT_HEAP = 75;
+	/** System property with the memory outside of the heap, in megabytes. */
+	private static final String OFF_HEAP_PROPERTY = "jnotepad.hibernate.offheap";
+	/** Default memory of the compressed documents outside of the heap. */
+	private static final long DEFAULT_OFF_HEAP = 64;
+	/** System property with the length of the shortest document. */
+	private static final String MINIMUM_PROPERTY = "jnotepad.hibernate.minimum";
+	/** Default length of the shortest hibernated document. */
+	private static final int DEFAULT_MINIMUM = 1 << 14;
+	/** Delay between two checks of the tabs in milliseconds. */
+	private static final int CHECK_DELAY = 30_000;
+
+	/** Notepad app. */
+	private JNotepadPP app;
+	/** Localization provider. */
+	private ILocalizationProvider provider;
+	/** Milliseconds a tab must be unused before it is hibernated. */
+	private long idle = Long.getLong(IDLE_PROPERTY, DEFAULT_IDLE) * 1000;
+	/** Number of the most recently used tabs never hibernated. */
+	private int active = Integer.getInteger(ACTIVE_PROPERTY, DEFAULT_ACTIVE);
+	/** Percentage of the heap above which the tabs are hibernated. */
+	private int heap = Integer.getInteger(HEAP_PROPERTY, DEFAULT_HEAP);
+	/** Bytes the compressed documents may hold outside of the heap. */
+	private long offHeap = Long.getLong(OFF_HEAP_PROPERTY, DEFAULT_OFF_HEAP) << 20;
+	/** Length of the shortest hibernated document. */
+	private int minimum = Integer.getInteger(MINIMUM_PROPERTY, DEFAULT_MINIMUM);
+	/** Times the tabs were last used, from the least recently used tab. */
+	private Map<JFileTab, Long> lastUsed = new LinkedHashMap<>(16, 0.75f, true);
+	/** Running compressions by their tabs. */
+	private Map<JFileTab, Compression> running = new HashMap<>();
+	/** Checks the tabs periodically. */
+	private UIScheduler.Task checkTask;
+
+	/**
+	 * Constructs a new {@link TabHibernator} and starts checking the tabs of
+	 * the app.
+	 *
+	 * @param provider
+	 *            localization provider
+	 * @param app
+	 *            notepad app
+	 */
+	public TabHibernator(ILocalizationProvider provider, JNotepadPP app) {
+		this.provider = provider;
+		this.app = app;
+		// hibernating while the window is minimized still frees the memory
+		checkTask = app.getScheduler().repeat(this::check, CHECK_DELAY, 0);
+	}
+
+	/**
+	 * Wakes up the selected tab and hibernates the tabs which were not used
+	 * for long enough.
+	 */
+	@Override
+	public void stateChanged(ChangeEvent e) {
+		JFileTab selected = getSelectedTab();
+		if (selected != null) {
+			Compression compression = running.remove(selected);
+			if (compression != null) {
+				compression.cancel(true);
+			}
+			if (selected.isHibernated()) {
+				wake(selected);
+			}
+		}
+		check();
+	}
+
+	/**
+	 * Wakes up a hibernated tab. The user is informed if the tab can not be
+	 * woken up.
+	 *
+	 * @param tab
+	 *            the tab
+	 */
+	private void wake(JFileTab tab) {
+		try {
+			tab.wake();
+		} catch (IOException ex) {
+			JOptionPane.showMessageDialog(app, provider.getString("hibernation_error"), provider.getString("error"),
+					JOptionPane.ERROR_MESSAGE);
+		}
+		app.getStatusBar().updateStatusBar(tab);
+	}
+
+	/**
+	 * Starts hibernating the tabs which were not used for long enough, or all
+	 * but the most recently used tabs if the heap is almost full.
+	 */
+	public void check() {
+		long now = System.currentTimeMillis();
+		JTabbedPane tabs = app.getTabs();
+		for (int i = 0, n = tabs.getTabCount(); i < n; i++) {
+			JFileTab tab = (JFileTab) ((JScrollPane) tabs.getComponentAt(i)).getViewport().getView();
+			// checking the key does not change the order of the tabs
+			if (!lastUsed.containsKey(tab)) {
+				lastUsed.put(tab, now);
+			}
+		}
+		JFileTab selected = getSelectedTab();
+		if (selected != null) {
+			lastUsed.put(selected, now);
+		}
+
+		Runtime runtime = Runtime.getRuntime();
+		long used = runtime.totalMemory() - runtime.freeMemory();
+		boolean pressure = used * 100 > runtime.maxMemory() * heap;
+
+		int candidates = lastUsed.size() - active;
+		for (Iterator<Map.Entry<JFileTab, Long>> it = lastUsed.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<JFileTab, Long> entry = it.next();
+			JFileTab tab = entry.getKey();
+			if (tab.getTabIndex() < 0) {
+				it.remove();
+				candidates--;
+				continue;
+			}
+			if (candidates-- <= 0)
+				break;
+			if ((pressure || now - entry.getValue() >= idle) && canHibernate(tab)) {
+				start(tab);
+			}
+		}
+	}
+
+	/**
+	 * Checks if the given tab can be hibernated.
+	 *
+	 * @param tab
+	 *            the tab
+	 * @return <code>true</code> if the tab shows an edited document which is
+	 *         long enough and not being loaded, saved, compressed or
+	 *         followed,
+	 *         <code>false</code> otherwise
+	 */
+	private boolean canHibernate(JFileTab tab) {
+		return !tab.isHibernated() && !tab.isFollowing() && !running.containsKey(tab) && tab.getTask() == null
+				&& tab.getDocument() instanceof EditorDocument && tab.getDocument().getLength() >= minimum;
+	}
+
+	/**
+	 * Starts compressing the document of the given tab.
+	 *
+	 * @param tab
+	 *            the tab
+	 */
+	private void start(JFileTab tab) {
+		Compression compression = new Compression(tab);
+		running.put(tab, compression);
+		compression.addPropertyChangeListener(new PropertyChangeListener() {
+			@Override
+			public void propertyChange(PropertyChangeEvent evt) {
+				if ("state".equals(evt.getPropertyName()) && evt.getNewValue() == StateValue.DONE) {
+					finish(compression);
+				}
+			}
+		});
+		compression.execute();
+	}
+
+	/**
+	 * Hibernates the tab of a finished compression, unless the compression
+	 * was cancelled or the tab was closed or selected in the meantime.
+	 *
+	 * @param compression
+	 *            finished compression
+	 */
+	private void finish(Compression compression) {
+		JFileTab tab = compression.tab;
+		compression.document.removeDocumentListener(compression);
+		if (running.get(tab) == compression) {
+			running.remove(tab);
+		}
+
+		// the result of a cancelled compression is never returned
+		CompressedText text = compression.result;
+		if (text == null)
+			return;
+		if (compression.isCancelled() || tab.getDocument() != compression.document || tab.getTabIndex() < 0
+				|| tab == getSelectedTab()) {
+			JFileTab.closeQuietly(text);
+			return;
+		}
+
+		tab.hibernate(text);
+		JFileTab selected = getSelectedTab();
+		if (selected != null) {
+			app.getStatusBar().updateStatusBar(selected);
+		}
+	}
+
+	/**
+	 * Gets the number of bytes the compressed documents may hold outside of
+	 * the heap.
+	 *
+	 * @return number of bytes
+	 */
+	public long getOffHeapLimit() {
+		return offHeap;
+	}
+
+	/**
+	 * Gets the number of the hibernated tabs.
+	 *
+	 * @return number of the hibernated tabs
+	 */
+	public int getHibernatedCount() {
+		int count = 0;
+		JTabbedPane tabs = app.getTabs();
+		for (int i = 0, n = tabs.getTabCount(); i < n; i++) {
+			JFileTab tab = (JFileTab) ((JScrollPane) tabs.getComponentAt(i)).getViewport().getView();
+			if (tab.isHibernated()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Stops checking the tabs and cancels the running compressions. Called
+	 * when the app is closed.
+	 */
+	public void dispose() {
+		checkTask.cancel();
+		for (Compression compression : running.values()) {
+			compression.cancel(true);
+		}
+		running.clear();
+	}
+
+	/**
+	 * Gets the currently selected tab.
+	 *
+	 * @return selected tab, <code>null</code> if there are no tabs
+	 */
+	private JFileTab getSelectedTab() {
+		JTabbedPane tabs = app.getTabs();
+		if (tabs.getSelectedIndex() < 0)
+			return null;
+		return (JFileTab) ((JScrollPane) tabs.getSelectedComponent()).getViewport().getView();
+	}
+
+	/**
+	 * Compresses the snapshot of the document of a tab in the background. The
+	 * compression is cancelled once the document is edited.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private class Compression extends SwingWorker<CompressedText, Void> implements DocumentListener {
+		/** The tab. */
+		private JFileTab tab;
+		/** Document of the tab. */
+		private EditorDocument document;
+		/** Snapshot of the document. */
+		private TextSource text;
+		/** Compressed text, set even if the compression was cancelled. */
+		private volatile CompressedText result;
+
+		/**
+		 * Constructs a new {@link Compression}.
+		 *
+		 * @param tab
+		 *            the tab
+		 */
+		private Compression(JFileTab tab) {
+			this.tab = tab;
+			this.document = (EditorDocument) tab.getDocument();
+			this.text = document.snapshot();
+			document.addDocumentListener(this);
+		}
+
+		@Override
+		protected CompressedText doInBackground() throws Exception {
+			result = CompressedText.compress(text, offHeap, this::isCancelled);
+			return result;
+		}
+
+		@Override
+		public void insertUpdate(DocumentEvent e) {
+			cancel(true);
+		}
+
+		@Override
+		public void removeUpdate(DocumentEvent e) {
+			cancel(true);
+		}
+
+		@Override
+		public void changedUpdate(DocumentEvent e) {
+			cancel(true);
+		}
+	}
+}
@@ -0,0 +1,263 @@
+package hr.fer.zemris.java.hw10jnotepadapp;
+
+import java.awt.Frame;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Runs the delayed and the periodic tasks of the {@link JNotepadPP} app, such
+ * as the clock, the periodic checks and saves and the refreshes of the
+ * status bar.
+ * <p>
+ * All of the tasks are timed by a single daemon thread, which never keeps
+ * the virtual machine alive, and are run on the event dispatch thread. A
+ * periodic task is scheduled again only after it was run, so a slow task is
+ * never run twice at the same time, and it can be aligned to the wall clock,
+ * so a clock changes right at the start of each second. The tasks which only
+ * update what is shown can be paused while the window is minimized. They are
+ * run once right after the window is restored.
+ * <p>
+ * The scheduler must be used from the event dispatch thread.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class UIScheduler {
+	/** Flag of a task which is paused while the window is minimized. */
+	public static final int PAUSE_WHILE_MINIMIZED = 1;
+	/** Flag of a task run at the multiples of its period of the wall clock. */
+	public static final int ALIGN_TO_CLOCK = 2;
+
+	/** Times the tasks. */
+	private ScheduledExecutorService executor;
+	/** Periodic tasks which are paused while the window is minimized. */
+	private List<Task> pausable = new ArrayList<>();
+	/** Whether the window is minimized. */
+	private boolean paused;
+
+	/**
+	 * Constructs a new {@link UIScheduler} which pauses the tasks while the
+	 * given window is minimized.
+	 *
+	 * @param window
+	 *            window of the app
+	 */
+	public UIScheduler(Frame window) {
+		executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "jnotepad-scheduler");
+			thread.setDaemon(true);
+			return thread;
+		});
+		window.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowIconified(WindowEvent e) {
+				pause();
+			}
+
+			@Override
+			public void windowDeiconified(WindowEvent e) {
+				resume();
+			}
+		});
+	}
+
+	/**
+	 * Runs the task once after the given delay.
+	 *
+	 * @param task
+	 *            the task
+	 * @param delay
+	 *            delay in milliseconds
+	 * @return the scheduled task
+	 */
+	public Task schedule(Runnable task, long delay) {
+		Task scheduled = new Task(task, 0, 0);
+		scheduled.schedule(delay);
+		return scheduled;
+	}
+
+	/**
+	 * Runs the task periodically, until it is cancelled.
+	 *
+	 * @param task
+	 *            the task
+	 * @param period
+	 *            milliseconds between the end of a run and the start of the
+	 *            next one, or between two multiples of the period of the wall
+	 *            clock if the task is aligned to it
+	 * @param flags
+	 *            {@link #PAUSE_WHILE_MINIMIZED} and {@link #ALIGN_TO_CLOCK}
+	 * @return the scheduled task
+	 */
+	public Task repeat(Runnable task, long period, int flags) {
+		if (period <= 0)
+			throw new IllegalArgumentException("Period must be positive, was " + period + ".");
+
+		Task scheduled = new Task(task, period, flags);
+		if ((flags & PAUSE_WHILE_MINIMIZED) != 0) {
+			pausable.add(scheduled);
+		}
+		if (!scheduled.isPaused()) {
+			scheduled.schedule(scheduled.nextDelay());
+		}
+		return scheduled;
+	}
+
+	/**
+	 * Checks whether the pausable tasks are paused.
+	 *
+	 * @return <code>true</code> if the window is minimized
+	 */
+	public boolean isPaused() {
+		return paused;
+	}
+
+	/**
+	 * Pauses the pausable tasks.
+	 */
+	private void pause() {
+		paused = true;
+		for (Task task : pausable) {
+			task.unschedule();
+		}
+	}
+
+	/**
+	 * Runs each of the pausable tasks once and resumes them.
+	 */
+	private void resume() {
+		paused = false;
+		for (Task task : new ArrayList<>(pausable)) {
+			task.schedule(0);
+		}
+	}
+
+	/**
+	 * Cancels all of the tasks and stops the thread timing them. Called when
+	 * the app is closed.
+	 */
+	public void dispose() {
+		executor.shutdownNow();
+		pausable.clear();
+	}
+
+	/**
+	 * Task run by the scheduler.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	public final class Task {
+		/** The task. */
+		private Runnable task;
+		/** Period in milliseconds, zero if the task is run only once. */
+		private long period;
+		/** Flags of the task. */
+		private int flags;
+		/** Next run, <code>null</code> if none is scheduled. */
+		private ScheduledFuture<?> next;
+		/** Whether the task was cancelled. */
+		private boolean cancelled;
+
+		/**
+		 * Constructs a new {@link Task}.
+		 *
+		 * @param task
+		 *            the task
+		 * @param period
+		 *            period in milliseconds, zero if the task is run once
+		 * @param flags
+		 *            flags of the task
+		 */
+		private Task(Runnable task, long period, int flags) {
+			this.task = task;
+			this.period = period;
+			this.flags = flags;
+		}
+
+		/**
+		 * Schedules the next run of the task.
+		 *
+		 * @param delay
+		 *            delay in milliseconds
+		 */
+		private void schedule(long delay) {
+			unschedule();
+			if (cancelled || executor.isShutdown())
+				return;
+			next = executor.schedule(() -> SwingUtilities.invokeLater(this::run), delay, TimeUnit.MILLISECONDS);
+		}
+
+		/**
+		 * Cancels the scheduled run of the task, if any.
+		 */
+		private void unschedule() {
+			if (next != null) {
+				next.cancel(false);
+				next = null;
+			}
+		}
+
+		/**
+		 * Runs the task and schedules its next run if it is periodic.
+		 */
+		private void run() {
+			// a run may have been posted just before the task was cancelled
+			if (cancelled || isPaused())
+				return;
+			next = null;
+			task.run();
+			if (period > 0 && !cancelled) {
+				schedule(nextDelay());
+			}
+		}
+
+		/**
+		 * Gets the delay until the next run of the periodic task.
+		 *
+		 * @return delay in milliseconds
+		 */
+		private long nextDelay() {
+			if ((flags & ALIGN_TO_CLOCK) == 0)
+				return period;
+			return period - System.currentTimeMillis() % period;
+		}
+
+		/**
+		 * Checks whether the task is paused.
+		 *
+		 * @return <code>true</code> if the task is paused while the window is
+		 *         minimized and it is minimized
+		 */
+		private boolean isPaused() {
+			return paused && (flags & PAUSE_WHILE_MINIMIZED) != 0;
+		}
+
+		/**
+		 * Checks whether the task is scheduled to run.
+		 *
+		 * @return <code>true</code> if a run is scheduled but was not yet
+		 *         started
+		 */
+		public boolean isPending() {
+			return next != null;
+		}
+
+		/**
+		 * Cancels the task. It is not run anymore.
+		 */
+		public void cancel() {
+			cancelled = true;
+			unschedule();
+			pausable.remove(this);
+		}
+	}
+}
@@ -1,25 +1,40 @@
 package hr.fer.zemris.java.localization;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import javax.swing.SwingUtilities;
 
 /**
  * Implementor of the {@link ILocalizationProvider}. Enables the registration of
  * localization listeners - implementors of the {@link ILocalizationListener}
  * interface. Notifies the listeners about localization changes.
+ * <p>
+ * The listeners are referenced weakly, so a listener is notified only while
+ * its owner, such as an action or a component, keeps it in a field, and is
+ * forgotten together with its owner. Adding and removing a listener takes
+ * constant time. The listeners are notified from a list which is built once
+ * after the listeners change, and all of them are notified in a single pass
+ * on the event dispatch thread.
  * 
  * @author Mirna Baksa
  *
  */
 public abstract class AbstractLocalizationProvider implements ILocalizationProvider {
 	/** Localization change listeners. */
-	private List<ILocalizationListener> listeners;
+	private Set<ILocalizationListener> listeners;
+	/** Listeners notified by the next change, <code>null</code> if outdated. */
+	private List<WeakReference<ILocalizationListener>> snapshot;
 
 	/**
 	 * Constructs a new {@link AbstractLocalizationProvider}.
 	 */
 	public AbstractLocalizationProvider() {
-		listeners = new ArrayList<>();
+		listeners = Collections.newSetFromMap(new WeakHashMap<>());
 	}
 
 	@Override
@@ -27,8 +42,9 @@ public abstract class AbstractLocalizationProvider implements ILocalizationProvi
 		if (l == null) {
 			throw new IllegalArgumentException("The listener can not be null.");
 		}
-		if (!listeners.contains(l))
-			listeners.add(l);
+		if (listeners.add(l)) {
+			snapshot = null;
+		}
 	}
 
 	@Override
@@ -36,16 +52,33 @@ public abstract class AbstractLocalizationProvider implements ILocalizationProvi
 		if (l == null) {
 			throw new IllegalArgumentException("The listener can not be null.");
 		}
-		listeners.remove(l);
+		if (listeners.remove(l)) {
+			snapshot = null;
+		}
 	}
 
 	/**
-	 * Notifies listeners about localization changes.
+	 * Notifies listeners about localization changes. The listeners are
+	 * notified on the event dispatch thread.
 	 */
 	public void fire() {
-		List<ILocalizationListener> tempListeners = new ArrayList<>(this.listeners);
-		for (ILocalizationListener l : tempListeners) {
-			l.localizationChanged();
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(this::fire);
+			return;
+		}
+
+		// listeners added or removed while notifying do not change the list
+		if (snapshot == null) {
+			snapshot = new ArrayList<>(listeners.size());
+			for (ILocalizationListener l : listeners) {
+				snapshot.add(new WeakReference<>(l));
+			}
+		}
+		for (WeakReference<ILocalizationListener> reference : snapshot) {
+			ILocalizationListener l = reference.get();
+			if (l != null) {
+				l.localizationChanged();
+			}
 		}
 	}
 
@@ -4,14 +4,19 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 
 import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
 
 /**
- * Enables the localization on a frame.
+ * Enables the localization on a frame. The components of the frame are
+ * relabeled in a single pass, after which the frame is laid out and painted
+ * once.
  * 
  * @author Mirna Baksa
  *
  */
 public class FormLocalizationProvider extends LocalizationProviderBridge {
+	/** The localized frame. */
+	private JFrame frame;
 
 	/**
 	 * Constructs a new {@link FormLocalizationProvider}.
@@ -23,6 +28,7 @@ public class FormLocalizationProvider extends LocalizationProviderBridge {
 	 */
 	public FormLocalizationProvider(ILocalizationProvider provider, JFrame frame) {
 		super(provider);
+		this.frame = frame;
 		frame.addWindowListener(new WindowAdapter() {
 			@Override
 			public void windowOpened(WindowEvent e) {
@@ -35,4 +41,18 @@ public class FormLocalizationProvider extends LocalizationProviderBridge {
 			}
 		});
 	}
+
+	@Override
+	public void fire() {
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(this::fire);
+			return;
+		}
+
+		super.fire();
+		// the relabeled components only queued their layouts, which are done
+		// together with the layout of the whole frame
+		frame.getRootPane().revalidate();
+		frame.repaint();
+	}
 }
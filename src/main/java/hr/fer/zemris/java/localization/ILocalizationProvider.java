@@ -9,7 +9,8 @@ package hr.fer.zemris.java.localization;
  */
 public interface ILocalizationProvider {
 	/**
-	 * Adds a {@link ILocalizationListener} to the list of listeners.
+	 * Adds a {@link ILocalizationListener} to the list of listeners. The
+	 * listener may be referenced weakly, so its owner must keep it.
 	 * @param l listener to add
 	 */
 	public void addLocalizationListener(ILocalizationListener l);
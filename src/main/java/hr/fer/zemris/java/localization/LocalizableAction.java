@@ -18,6 +18,8 @@ public class LocalizableAction extends AbstractAction {
 	private ILocalizationProvider lp;
 	/** Action key. */
 	private String key;
+	/** Translates the action, kept as long as the action. */
+	private ILocalizationListener listener;
 
 	/**
 	 * Constructs a new {@link LocalizableAction}.
@@ -32,12 +34,13 @@ public class LocalizableAction extends AbstractAction {
 		this.key = key;
 		setTranslation();
 
-		lp.addLocalizationListener(new ILocalizationListener() {
+		listener = new ILocalizationListener() {
 			@Override
 			public void localizationChanged() {
 				setTranslation();
 			}
-		});
+		};
+		lp.addLocalizationListener(listener);
 	}
 
 	/**
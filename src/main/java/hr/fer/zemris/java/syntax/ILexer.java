@@ -0,0 +1,40 @@
+package hr.fer.zemris.java.syntax;
+
+import javax.swing.text.Segment;
+
+/**
+ * Splits the lines of a text into tokens.
+ * <p>
+ * A lexer reads one line at a time and carries everything it needs to know
+ * about the previous lines in an integer state, such as being inside of a
+ * block comment. The state at the start of the first line is
+ * {@link #INITIAL_STATE}, and the state at the start of each other line is
+ * the state returned for the line before it. Since the state is the only
+ * thing passed between the lines, a line lexed from the same state always
+ * yields the same tokens, which lets a changed text be lexed again only from
+ * the changed line until the states of the following lines stop changing.
+ * <p>
+ * A lexer keeps no state of its own, so the same lexer can be shared by any
+ * number of texts.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public interface ILexer {
+	/** State at the start of a text. */
+	public static final int INITIAL_STATE = 0;
+
+	/**
+	 * Lexes a line of a text.
+	 *
+	 * @param line
+	 *            text of the line, without the line feed
+	 * @param state
+	 *            state at the start of the line
+	 * @param tokens
+	 *            receives the tokens of the line, the text outside of the
+	 *            tokens is not styled
+	 * @return state at the start of the next line
+	 */
+	public int lex(Segment line, int state, ITokenListener tokens);
+}
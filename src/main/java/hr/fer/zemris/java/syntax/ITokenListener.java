@@ -0,0 +1,22 @@
+package hr.fer.zemris.java.syntax;
+
+/**
+ * Receives the tokens of a line found by an {@link ILexer}.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public interface ITokenListener {
+	/**
+	 * Called for each token of a line, in the order of the tokens. The tokens
+	 * do not overlap.
+	 *
+	 * @param start
+	 *            start of the token, relative to the start of the line
+	 * @param length
+	 *            length of the token
+	 * @param type
+	 *            type of the token
+	 */
+	public void tokenFound(int start, int length, TokenType type);
+}
@@ -0,0 +1,175 @@
+package hr.fer.zemris.java.syntax;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.swing.text.Segment;
+
+/**
+ * Lexer of the Java source code. Finds the keywords, literals, comments and
+ * annotations. The only state carried between the lines is whether a line
+ * starts inside of a block comment.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class JavaLexer implements ILexer {
+	/** State of a line starting inside of a block comment. */
+	private static final int IN_COMMENT = 1;
+
+	/** Reserved words and literals. */
+	private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList("abstract", "assert", "boolean",
+			"break", "byte", "case", "catch", "char", "class", "const", "continue", "default", "do", "double", "else",
+			"enum", "extends", "final", "finally", "float", "for", "goto", "if", "implements", "import",
+			"instanceof", "int", "interface", "long", "native", "new", "package", "private", "protected", "public",
+			"return", "short", "static", "strictfp", "super", "switch", "synchronized", "this", "throw", "throws",
+			"transient", "try", "void", "volatile", "while", "var", "true", "false", "null"));
+
+	@Override
+	public int lex(Segment line, int state, ITokenListener tokens) {
+		char[] text = line.array;
+		int start = line.offset;
+		int end = start + line.count;
+		int i = start;
+
+		while (i < end) {
+			if (state == IN_COMMENT) {
+				int from = i;
+				i = commentEnd(text, i, end);
+				if (i < 0) {
+					tokens.tokenFound(from - start, end - from, TokenType.COMMENT);
+					return IN_COMMENT;
+				}
+				tokens.tokenFound(from - start, i - from, TokenType.COMMENT);
+				state = INITIAL_STATE;
+				continue;
+			}
+
+			char c = text[i];
+			char next = i + 1 < end ? text[i + 1] : 0;
+			int from = i;
+			if (c == '/' && next == '/') {
+				tokens.tokenFound(i - start, end - i, TokenType.COMMENT);
+				return INITIAL_STATE;
+			} else if (c == '/' && next == '*') {
+				i = commentEnd(text, i + 2, end);
+				if (i < 0) {
+					tokens.tokenFound(from - start, end - from, TokenType.COMMENT);
+					return IN_COMMENT;
+				}
+				tokens.tokenFound(from - start, i - from, TokenType.COMMENT);
+			} else if (c == '"' || c == '\'') {
+				i = quoteEnd(text, i + 1, end, c);
+				tokens.tokenFound(from - start, i - from, TokenType.STRING);
+			} else if (Character.isDigit(c) || c == '.' && Character.isDigit(next)) {
+				i = numberEnd(text, i, end);
+				tokens.tokenFound(from - start, i - from, TokenType.NUMBER);
+			} else if (Character.isJavaIdentifierStart(c)) {
+				i = identifierEnd(text, i, end);
+				if (KEYWORDS.contains(new String(text, from, i - from))) {
+					tokens.tokenFound(from - start, i - from, TokenType.KEYWORD);
+				}
+			} else if (c == '@' && Character.isJavaIdentifierStart(next)) {
+				i = identifierEnd(text, i + 1, end);
+				// the declaration of an annotation type
+				boolean keyword = i - from == 10 && new String(text, from + 1, 9).equals("interface");
+				tokens.tokenFound(from - start, i - from, keyword ? TokenType.KEYWORD : TokenType.ANNOTATION);
+			} else {
+				i++;
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * Finds the end of a block comment.
+	 *
+	 * @param text
+	 *            the text
+	 * @param i
+	 *            index inside of the comment
+	 * @param end
+	 *            end of the line
+	 * @return index after the end of the comment, <code>-1</code> if the
+	 *         comment does not end in the line
+	 */
+	private static int commentEnd(char[] text, int i, int end) {
+		for (; i + 1 < end; i++) {
+			if (text[i] == '*' && text[i + 1] == '/')
+				return i + 2;
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the end of a string or a character literal. A literal which is
+	 * not closed ends with the line.
+	 *
+	 * @param text
+	 *            the text
+	 * @param i
+	 *            index after the opening quote
+	 * @param end
+	 *            end of the line
+	 * @param quote
+	 *            the quote
+	 * @return index after the end of the literal
+	 */
+	private static int quoteEnd(char[] text, int i, int end, char quote) {
+		for (; i < end; i++) {
+			if (text[i] == '\\') {
+				i++;
+			} else if (text[i] == quote) {
+				return i + 1;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * Finds the end of a number, including its digits, separators, radix
+	 * prefix, suffix and exponent.
+	 *
+	 * @param text
+	 *            the text
+	 * @param i
+	 *            start of the number
+	 * @param end
+	 *            end of the line
+	 * @return index after the end of the number
+	 */
+	private static int numberEnd(char[] text, int i, int end) {
+		boolean hex = i + 1 < end && text[i] == '0' && (text[i + 1] == 'x' || text[i + 1] == 'X');
+		for (i++; i < end; i++) {
+			char c = text[i];
+			if (Character.isLetterOrDigit(c) || c == '_' || c == '.')
+				continue;
+			// the sign of an exponent
+			char previous = Character.toLowerCase(text[i - 1]);
+			if ((c == '+' || c == '-') && (hex ? previous == 'p' : previous == 'e'))
+				continue;
+			break;
+		}
+		return i;
+	}
+
+	/**
+	 * Finds the end of an identifier.
+	 *
+	 * @param text
+	 *            the text
+	 * @param i
+	 *            start of the identifier
+	 * @param end
+	 *            end of the line
+	 * @return index after the end of the identifier
+	 */
+	private static int identifierEnd(char[] text, int i, int end) {
+		i++;
+		while (i < end && Character.isJavaIdentifierPart(text[i])) {
+			i++;
+		}
+		return i;
+	}
+}
@@ -0,0 +1,63 @@
+package hr.fer.zemris.java.syntax;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Registry of the lexers, chosen by the extensions of the file names. The
+ * lexers of the properties files, the Java source code and the log files are
+ * registered by default.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class Lexers {
+	/** Lexers by the extensions of the file names, in lower case. */
+	private static final Map<String, ILexer> LEXERS = new HashMap<>();
+
+	static {
+		register("properties", new PropertiesLexer());
+		register("java", new JavaLexer());
+		ILexer log = new LogLexer();
+		register("log", log);
+		register("out", log);
+	}
+
+	/**
+	 * Not used.
+	 */
+	private Lexers() {
+	}
+
+	/**
+	 * Registers the lexer of the files with the given extension, replacing
+	 * the lexer registered before.
+	 *
+	 * @param extension
+	 *            extension of the file names, without the dot
+	 * @param lexer
+	 *            the lexer
+	 */
+	public static synchronized void register(String extension, ILexer lexer) {
+		LEXERS.put(extension.toLowerCase(Locale.ROOT), Objects.requireNonNull(lexer));
+	}
+
+	/**
+	 * Gets the lexer of the given file.
+	 *
+	 * @param file
+	 *            path of the file, may be <code>null</code>
+	 * @return the lexer, <code>null</code> if no lexer is registered for the
+	 *         extension of the file
+	 */
+	public static synchronized ILexer forFile(Path file) {
+		if (file == null || file.getFileName() == null)
+			return null;
+		String name = file.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		return dot < 0 ? null : LEXERS.get(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+	}
+}
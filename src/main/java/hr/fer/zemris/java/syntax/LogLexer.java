@@ -0,0 +1,197 @@
+package hr.fer.zemris.java.syntax;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.swing.text.Segment;
+
+/**
+ * Lexer of the common log formats. An entry starts with a line which may hold
+ * a time stamp and a level, such as <code>ERROR</code> or <code>INFO</code>.
+ * The time stamps are recognized in the ISO, syslog and bracketed forms, and
+ * the quoted strings and numbers of the message are found as well.
+ * <p>
+ * A line starting with white space, such as a line of a stack trace,
+ * continues the previous entry. The level of the current entry is carried
+ * between the lines as the state, so the continuing lines of an error or a
+ * warning are painted like the entry itself.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class LogLexer implements ILexer {
+	/** Shortest time stamp. */
+	private static final int MIN_TIMESTAMP = 8;
+	/** Abbreviated names of the months, which start a syslog time stamp. */
+	private static final String MONTHS = "JanFebMarAprMayJunJulAugSepOctNovDec";
+
+	/** Levels of the entries, by their names. */
+	private static final Map<String, TokenType> LEVELS = new HashMap<>();
+	/** Levels by their states, the initial state has none. */
+	private static final TokenType[] STATES = { null, TokenType.ERROR, TokenType.WARNING, TokenType.INFO,
+			TokenType.DEBUG };
+
+	static {
+		for (String level : new String[] { "FATAL", "SEVERE", "CRITICAL", "ERROR", "ERR" }) {
+			LEVELS.put(level, TokenType.ERROR);
+		}
+		for (String level : new String[] { "WARNING", "WARN" }) {
+			LEVELS.put(level, TokenType.WARNING);
+		}
+		for (String level : new String[] { "INFO", "NOTICE" }) {
+			LEVELS.put(level, TokenType.INFO);
+		}
+		for (String level : new String[] { "DEBUG", "TRACE", "CONFIG", "FINE", "FINER", "FINEST" }) {
+			LEVELS.put(level, TokenType.DEBUG);
+		}
+	}
+
+	@Override
+	public int lex(Segment line, int state, ITokenListener tokens) {
+		char[] text = line.array;
+		int start = line.offset;
+		int end = start + line.count;
+		if (start == end)
+			return state;
+
+		if (isContinuation(text, start, end)) {
+			TokenType level = STATES[state];
+			if (level == TokenType.ERROR || level == TokenType.WARNING) {
+				tokens.tokenFound(0, end - start, level);
+			}
+			return state;
+		}
+
+		TokenType level = null;
+		int i = timestampEnd(text, start, end);
+		if (i > start) {
+			tokens.tokenFound(0, i - start, TokenType.TIMESTAMP);
+		}
+		while (i < end) {
+			char c = text[i];
+			int from = i;
+			if (c == '"') {
+				for (i++; i < end && text[i] != '"'; i++) {
+					if (text[i] == '\\') {
+						i++;
+					}
+				}
+				i = Math.min(i + 1, end);
+				tokens.tokenFound(from - start, i - from, TokenType.STRING);
+			} else if (Character.isLetterOrDigit(c)) {
+				boolean number = true;
+				for (; i < end && (Character.isLetterOrDigit(text[i]) || text[i] == '.' || text[i] == '_'); i++) {
+					number &= !Character.isLetter(text[i]);
+				}
+				TokenType type = number ? TokenType.NUMBER : LEVELS.get(new String(text, from, i - from));
+				if (type != null && type != TokenType.NUMBER && level == null) {
+					level = type;
+				}
+				if (type != null) {
+					tokens.tokenFound(from - start, i - from, type);
+				}
+			} else {
+				i++;
+			}
+		}
+
+		for (int s = 1; s < STATES.length; s++) {
+			if (STATES[s] == level)
+				return s;
+		}
+		return INITIAL_STATE;
+	}
+
+	/**
+	 * Checks if a line continues the previous entry.
+	 *
+	 * @param text
+	 *            the text
+	 * @param start
+	 *            start of the line
+	 * @param end
+	 *            end of the line
+	 * @return <code>true</code> if the line starts with white space or the
+	 *         cause of an exception, <code>false</code> otherwise
+	 */
+	private static boolean isContinuation(char[] text, int start, int end) {
+		return Character.isWhitespace(text[start]) || startsWith(text, start, end, "Caused by:");
+	}
+
+	/**
+	 * Finds the end of the time stamp at the start of a line. The time stamp
+	 * may be enclosed in brackets.
+	 *
+	 * @param text
+	 *            the text
+	 * @param start
+	 *            start of the line
+	 * @param end
+	 *            end of the line
+	 * @return index after the end of the time stamp, the start of the line if
+	 *         the line does not start with a time stamp
+	 */
+	private static int timestampEnd(char[] text, int start, int end) {
+		int i = start;
+		boolean bracket = text[i] == '[';
+		if (bracket) {
+			i++;
+		}
+		if (i + 3 < end && text[i + 3] == ' ' && MONTHS.indexOf(new String(text, i, 3)) % 3 == 0) {
+			i += 3;
+		}
+		// the day of a syslog time stamp may be padded
+		while (i < end && text[i] == ' ') {
+			i++;
+		}
+
+		int from = i;
+		boolean separated = false;
+		for (; i < end; i++) {
+			char c = text[i];
+			if (Character.isDigit(c))
+				continue;
+			if (c == '-' || c == ':' || c == '.' || c == ',' || c == '/' || c == 'T' || c == 'Z' || c == '+') {
+				separated = true;
+				continue;
+			}
+			// the date and the time separated by a space
+			if (c == ' ' && i + 1 < end && Character.isDigit(text[i + 1]) && i > from
+					&& Character.isDigit(text[i - 1]))
+				continue;
+			break;
+		}
+		if (!separated || i - start < MIN_TIMESTAMP || !Character.isDigit(text[from]))
+			return start;
+		if (bracket) {
+			if (i >= end || text[i] != ']')
+				return start;
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Checks if a line starts with the given prefix.
+	 *
+	 * @param text
+	 *            the text
+	 * @param start
+	 *            start of the line
+	 * @param end
+	 *            end of the line
+	 * @param prefix
+	 *            the prefix
+	 * @return <code>true</code> if the line starts with the prefix,
+	 *         <code>false</code> otherwise
+	 */
+	private static boolean startsWith(char[] text, int start, int end, String prefix) {
+		if (end - start < prefix.length())
+			return false;
+		for (int i = 0; i < prefix.length(); i++) {
+			if (text[start + i] != prefix.charAt(i))
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,143 @@
+package hr.fer.zemris.java.syntax;
+
+import javax.swing.text.Segment;
+
+/**
+ * Lexer of the properties files, read by {@link java.util.Properties}. Finds
+ * the comments, keys, separators, values and escape sequences. A line ending
+ * with an odd number of backslashes continues its key or value in the next
+ * line, which is carried between the lines as the state.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class PropertiesLexer implements ILexer {
+	/** State of a line continuing a value. */
+	private static final int IN_VALUE = 1;
+	/** State of a line continuing a key. */
+	private static final int IN_KEY = 2;
+	/** Number of hexadecimal digits of a unicode escape. */
+	private static final int UNICODE_DIGITS = 4;
+
+	@Override
+	public int lex(Segment line, int state, ITokenListener tokens) {
+		char[] text = line.array;
+		int start = line.offset;
+		int end = start + line.count;
+		// the leading white space of a continued line is ignored as well
+		int i = skipWhitespace(text, start, end);
+
+		if (state == IN_VALUE)
+			return escaped(text, start, i, end, TokenType.STRING, tokens) ? IN_VALUE : INITIAL_STATE;
+		if (state != IN_KEY) {
+			if (i == end)
+				return INITIAL_STATE;
+			if (text[i] == '#' || text[i] == '!') {
+				tokens.tokenFound(i - start, end - i, TokenType.COMMENT);
+				return INITIAL_STATE;
+			}
+		}
+
+		int from = i;
+		while (i < end) {
+			char c = text[i];
+			if (c == '\\') {
+				i += 2;
+				continue;
+			}
+			if (c == '=' || c == ':' || isWhitespace(c))
+				break;
+			i++;
+		}
+		if (escaped(text, start, from, Math.min(i, end), TokenType.KEY, tokens))
+			return IN_KEY;
+
+		i = skipWhitespace(text, i, end);
+		if (i < end && (text[i] == '=' || text[i] == ':')) {
+			tokens.tokenFound(i - start, 1, TokenType.OPERATOR);
+			i = skipWhitespace(text, i + 1, end);
+		}
+		return escaped(text, start, i, end, TokenType.STRING, tokens) ? IN_VALUE : INITIAL_STATE;
+	}
+
+	/**
+	 * Reports a part of a key or a value, split around its escape sequences.
+	 *
+	 * @param text
+	 *            the text
+	 * @param start
+	 *            start of the line
+	 * @param from
+	 *            start of the part
+	 * @param to
+	 *            end of the part
+	 * @param type
+	 *            type of the text outside of the escape sequences
+	 * @param tokens
+	 *            receives the tokens
+	 * @return <code>true</code> if the part ends with a single backslash,
+	 *         which continues it in the next line, <code>false</code> otherwise
+	 */
+	private static boolean escaped(char[] text, int start, int from, int to, TokenType type,
+			ITokenListener tokens) {
+		int run = from;
+		int i = from;
+		while (i < to) {
+			if (text[i] != '\\') {
+				i++;
+				continue;
+			}
+			if (i > run) {
+				tokens.tokenFound(run - start, i - run, type);
+			}
+			if (i + 1 == to) {
+				tokens.tokenFound(i - start, 1, TokenType.ESCAPE);
+				return true;
+			}
+
+			int escape = i;
+			i += 2;
+			if (text[i - 1] == 'u') {
+				for (int digits = 0; digits < UNICODE_DIGITS && i < to && Character.digit(text[i], 16) >= 0; digits++) {
+					i++;
+				}
+			}
+			tokens.tokenFound(escape - start, i - escape, TokenType.ESCAPE);
+			run = i;
+		}
+		if (to > run) {
+			tokens.tokenFound(run - start, to - run, type);
+		}
+		return false;
+	}
+
+	/**
+	 * Skips the white space of a line.
+	 *
+	 * @param text
+	 *            the text
+	 * @param i
+	 *            index from which to skip
+	 * @param end
+	 *            end of the line
+	 * @return index of the first other character, or the end of the line
+	 */
+	private static int skipWhitespace(char[] text, int i, int end) {
+		while (i < end && isWhitespace(text[i])) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Checks if a character is white space in a properties file.
+	 *
+	 * @param c
+	 *            the character
+	 * @return <code>true</code> for a space, tab or form feed,
+	 *         <code>false</code> otherwise
+	 */
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\f';
+	}
+}
@@ -0,0 +1,171 @@
+package hr.fer.zemris.java.syntax;
+
+import java.util.Arrays;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.Segment;
+
+/**
+ * Keeps the lexer states at the line starts of a document, so the tokens of
+ * any line can be found by lexing only that line.
+ * <p>
+ * The states are known for the lines up to a frontier, which moves forward
+ * only when a line after it is requested, so a document is lexed only as far
+ * as it was shown. After an edit, the states of the inserted or removed lines
+ * are shifted and the lines are lexed again from the edited line until a line
+ * ends in the state already stored for the next line, since the following
+ * lines can not change from there on. When the states keep changing for more
+ * than {@link #MAX_RELEX} lines, such as after opening a block comment, the
+ * frontier is moved back instead and the rest is lexed when it is shown.
+ * <p>
+ * The highlighter must be used under the same rules as the document, usually
+ * on the event dispatch thread.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class SyntaxHighlighter {
+	/** Largest number of lines lexed again after an edit. */
+	public static final int MAX_RELEX = 2000;
+	/** Initial capacity of the states. */
+	private static final int INITIAL_CAPACITY = 64;
+	/** Ignores the tokens of the lines lexed only for their states. */
+	private static final ITokenListener IGNORED = (start, length, type) -> {
+	};
+
+	/** The document. */
+	private Document document;
+	/** Lexer of the document. */
+	private ILexer lexer;
+	/** States at the line starts, known up to the frontier. */
+	private int[] states = new int[INITIAL_CAPACITY];
+	/** Number of lines with a known state. */
+	private int known = 1;
+	/** Number of lines of the document after the last update. */
+	private int lines;
+	/** Buffer used when reading lines. */
+	private Segment line = new Segment();
+
+	/**
+	 * Constructs a new {@link SyntaxHighlighter}.
+	 *
+	 * @param document
+	 *            the document
+	 * @param lexer
+	 *            lexer of the document
+	 */
+	public SyntaxHighlighter(Document document, ILexer lexer) {
+		this.document = document;
+		this.lexer = lexer;
+		this.lines = document.getDefaultRootElement().getElementCount();
+		states[0] = ILexer.INITIAL_STATE;
+	}
+
+	/**
+	 * Updates the states after an edit of the document.
+	 *
+	 * @param e
+	 *            event of the edit
+	 * @return last line whose tokens may have changed, at least the edited
+	 *         line
+	 */
+	public int update(DocumentEvent e) {
+		Element root = document.getDefaultRootElement();
+		int count = root.getElementCount();
+		int delta = count - lines;
+		lines = count;
+		int edited = root.getElementIndex(e.getOffset());
+		if (delta == 0 && e.getType() == DocumentEvent.EventType.CHANGE)
+			return edited;
+
+		// the states of the inserted lines are not known yet
+		int inserted = Math.max(delta, 0);
+		if (delta > 0 && known > edited + 1) {
+			ensureCapacity(known + delta);
+			System.arraycopy(states, edited + 1, states, edited + 1 + delta, known - edited - 1);
+			known += delta;
+		} else if (delta < 0) {
+			int removed = -delta;
+			if (known > edited + 1 + removed) {
+				System.arraycopy(states, edited + 1 + removed, states, edited + 1, known - edited - 1 - removed);
+				known -= removed;
+			} else {
+				known = Math.min(known, edited + 1);
+			}
+		}
+
+		int i = edited;
+		int relexed = 0;
+		while (i + 1 < known) {
+			int state = lex(i, states[i], IGNORED);
+			// the lines after the inserted ones keep their tokens from here on
+			if (i >= edited + inserted && state == states[i + 1])
+				break;
+			states[++i] = state;
+			if (++relexed == MAX_RELEX) {
+				known = i + 1;
+				break;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * Finds the tokens of a line.
+	 *
+	 * @param index
+	 *            index of the line
+	 * @param tokens
+	 *            receives the tokens, with the offsets relative to the start
+	 *            of the line
+	 */
+	public void tokens(int index, ITokenListener tokens) {
+		for (; known <= index; known++) {
+			ensureCapacity(known + 1);
+			states[known] = lex(known - 1, states[known - 1], IGNORED);
+		}
+		lex(index, states[index], tokens);
+	}
+
+	/**
+	 * Lexes a line of the document.
+	 *
+	 * @param index
+	 *            index of the line
+	 * @param state
+	 *            state at the start of the line
+	 * @param tokens
+	 *            receives the tokens of the line
+	 * @return state at the start of the next line
+	 */
+	private int lex(int index, int state, ITokenListener tokens) {
+		Element element = document.getDefaultRootElement().getElement(index);
+		int start = element.getStartOffset();
+		int end = Math.min(element.getEndOffset(), document.getLength() + 1) - 1;
+		try {
+			document.getText(start, end - start, line);
+		} catch (BadLocationException ex) {
+			throw new IllegalStateException(ex);
+		}
+		// the carriage return of a Windows line ending is not a part of the line
+		if (line.count > 0 && line.array[line.offset + line.count - 1] == '\r') {
+			line.count--;
+		}
+		return lexer.lex(line, state, tokens);
+	}
+
+	/**
+	 * Makes sure the states can hold the given number of lines.
+	 *
+	 * @param capacity
+	 *            number of lines
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity > states.length) {
+			states = Arrays.copyOf(states, Math.max(capacity, states.length * 2));
+		}
+	}
+}
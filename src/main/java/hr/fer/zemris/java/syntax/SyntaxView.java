@@ -0,0 +1,183 @@
+package hr.fer.zemris.java.syntax;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Shape;
+import java.util.Arrays;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.PlainView;
+import javax.swing.text.Segment;
+import javax.swing.text.Utilities;
+import javax.swing.text.ViewFactory;
+
+/**
+ * View of a plain document which paints the tokens found by an
+ * {@link ILexer} in the colors of their types.
+ * <p>
+ * The {@link PlainView} paints only the lines intersecting the visible area,
+ * and only those lines are lexed, using the states kept by a
+ * {@link SyntaxHighlighter}. An edit repaints the lines whose tokens changed
+ * besides the edited ones. The tokens change only the color of the text, so
+ * the layout of the view is the same as the layout of a plain view.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class SyntaxView extends PlainView {
+	/** States of the lexer at the line starts. */
+	private SyntaxHighlighter highlighter;
+	/** Tokens of the last painted line. */
+	private LineTokens tokens = new LineTokens();
+	/** Buffer used when reading the painted text. */
+	private Segment text = new Segment();
+
+	/**
+	 * Constructs a new {@link SyntaxView}.
+	 *
+	 * @param elem
+	 *            root element of the document
+	 * @param lexer
+	 *            lexer of the document
+	 */
+	public SyntaxView(Element elem, ILexer lexer) {
+		super(elem);
+		highlighter = new SyntaxHighlighter(elem.getDocument(), lexer);
+	}
+
+	@Override
+	public void insertUpdate(DocumentEvent changes, Shape a, ViewFactory f) {
+		update(changes, a);
+		super.insertUpdate(changes, a, f);
+	}
+
+	@Override
+	public void removeUpdate(DocumentEvent changes, Shape a, ViewFactory f) {
+		update(changes, a);
+		super.removeUpdate(changes, a, f);
+	}
+
+	@Override
+	public void changedUpdate(DocumentEvent changes, Shape a, ViewFactory f) {
+		update(changes, a);
+		super.changedUpdate(changes, a, f);
+	}
+
+	/**
+	 * Updates the lexer states after an edit and repaints the lines after the
+	 * edited one whose tokens changed.
+	 *
+	 * @param changes
+	 *            the edit
+	 * @param a
+	 *            allocated area of the view
+	 */
+	private void update(DocumentEvent changes, Shape a) {
+		tokens.line = -1;
+		int last = highlighter.update(changes);
+		int edited = getElement().getElementIndex(changes.getOffset());
+		if (last > edited && a != null) {
+			damageLineRange(edited, last, a, getContainer());
+		}
+	}
+
+	@Override
+	protected int drawUnselectedText(Graphics g, int x, int y, int p0, int p1) throws BadLocationException {
+		Component host = getContainer();
+		if (!host.isEnabled())
+			return drawText(g, x, y, p0, p1, ((JTextComponent) host).getDisabledTextColor());
+		Color foreground = host.getForeground();
+
+		Element root = getElement();
+		int line = root.getElementIndex(p0);
+		int lineStart = root.getElement(line).getStartOffset();
+		if (tokens.line != line) {
+			tokens.count = 0;
+			highlighter.tokens(line, tokens);
+			tokens.line = line;
+		}
+
+		int pos = p0;
+		for (int i = 0; i < tokens.count && pos < p1; i++) {
+			int start = lineStart + tokens.starts[i];
+			int end = Math.min(start + tokens.lengths[i], p1);
+			if (end <= pos)
+				continue;
+			if (start > pos) {
+				x = drawText(g, x, y, pos, Math.min(start, p1), foreground);
+				pos = Math.min(start, p1);
+				if (pos == p1)
+					break;
+			}
+			x = drawText(g, x, y, pos, end, tokens.types[i].getColor());
+			pos = end;
+		}
+		if (pos < p1) {
+			x = drawText(g, x, y, pos, p1, foreground);
+		}
+		return x;
+	}
+
+	/**
+	 * Draws a range of the text in the given color.
+	 *
+	 * @param g
+	 *            graphics context
+	 * @param x
+	 *            starting x coordinate
+	 * @param y
+	 *            starting y coordinate
+	 * @param p0
+	 *            start of the range
+	 * @param p1
+	 *            end of the range
+	 * @param color
+	 *            color of the text
+	 * @return x coordinate after the end of the range
+	 * @throws BadLocationException
+	 *             if the range is not in the document
+	 */
+	private int drawText(Graphics g, int x, int y, int p0, int p1, Color color) throws BadLocationException {
+		getDocument().getText(p0, p1 - p0, text);
+		g.setColor(color);
+		return Utilities.drawTabbedText(text, x, y, g, this, p0);
+	}
+
+	/**
+	 * Tokens of a line.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private static class LineTokens implements ITokenListener {
+		/** Index of the line, <code>-1</code> if the tokens are not valid. */
+		private int line = -1;
+		/** Starts of the tokens, relative to the start of the line. */
+		private int[] starts = new int[16];
+		/** Lengths of the tokens. */
+		private int[] lengths = new int[16];
+		/** Types of the tokens. */
+		private TokenType[] types = new TokenType[16];
+		/** Number of the tokens. */
+		private int count;
+
+		@Override
+		public void tokenFound(int start, int length, TokenType type) {
+			if (length <= 0)
+				return;
+			if (count == starts.length) {
+				starts = Arrays.copyOf(starts, count * 2);
+				lengths = Arrays.copyOf(lengths, count * 2);
+				types = Arrays.copyOf(types, count * 2);
+			}
+			starts[count] = start;
+			lengths[count] = length;
+			types[count] = type;
+			count++;
+		}
+	}
+}
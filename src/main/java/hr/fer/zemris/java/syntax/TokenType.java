@@ -0,0 +1,62 @@
+package hr.fer.zemris.java.syntax;
+
+import java.awt.Color;
+
+/**
+ * Type of a token found by an {@link ILexer}. Each type is painted in its own
+ * color, the text which is not a part of any token is painted in the
+ * foreground color of the text component.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public enum TokenType {
+	/** Reserved word or literal of a language. */
+	KEYWORD(new Color(0x7F0055)),
+	/** String or character literal, or a value of a property. */
+	STRING(new Color(0x2A00FF)),
+	/** Comment. */
+	COMMENT(new Color(0x3F7F5F)),
+	/** Number. */
+	NUMBER(new Color(0x09737A)),
+	/** Annotation. */
+	ANNOTATION(new Color(0x646464)),
+	/** Key of a property. */
+	KEY(new Color(0x000080)),
+	/** Separator between a key and a value. */
+	OPERATOR(new Color(0x808080)),
+	/** Escape sequence. */
+	ESCAPE(new Color(0xA0522D)),
+	/** Time stamp of a log entry. */
+	TIMESTAMP(new Color(0x008080)),
+	/** Log entry with the error level. */
+	ERROR(new Color(0xCC0000)),
+	/** Log entry with the warning level. */
+	WARNING(new Color(0xB36B00)),
+	/** Log entry with the information level. */
+	INFO(new Color(0x2E7D32)),
+	/** Log entry with the debugging level. */
+	DEBUG(new Color(0x808080));
+
+	/** Color in which the tokens are painted. */
+	private Color color;
+
+	/**
+	 * Constructs a new {@link TokenType}.
+	 *
+	 * @param color
+	 *            color in which the tokens are painted
+	 */
+	private TokenType(Color color) {
+		this.color = color;
+	}
+
+	/**
+	 * Gets the color in which the tokens of the type are painted.
+	 *
+	 * @return the color
+	 */
+	public Color getColor() {
+		return color;
+	}
+}
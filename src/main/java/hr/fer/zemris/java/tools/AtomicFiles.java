@@ -0,0 +1,142 @@
+package hr.fer.zemris.java.tools;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Replaces files atomically. The new contents are written to a temporary
+ * file in the directory of the replaced file, which is then moved over it,
+ * so the file either keeps its old contents or gets the new contents as a
+ * whole.
+ * <p>
+ * The temporary file gets the permissions, the owner and the group of the
+ * replaced file, as far as they can be changed, or the default permissions
+ * of a new file if there is no file to replace yet.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public final class AtomicFiles {
+
+	/**
+	 * Not used.
+	 */
+	private AtomicFiles() {
+	}
+
+	/**
+	 * Gets the file which is actually replaced when writing to the given path.
+	 * A link is resolved to the file it points to, so the link is kept.
+	 *
+	 * @param file
+	 *            path of the written file
+	 * @return absolute path of the replaced file
+	 * @throws IOException
+	 *             if the link can not be resolved
+	 */
+	public static Path target(Path file) throws IOException {
+		return Files.exists(file) ? file.toRealPath() : file.toAbsolutePath();
+	}
+
+	/**
+	 * Creates a new empty temporary file next to the given target file, with
+	 * the attributes of the target file if it exists.
+	 *
+	 * @param target
+	 *            absolute path of the file which will be replaced
+	 * @return path of the temporary file
+	 * @throws IOException
+	 *             if the file can not be created
+	 */
+	public static Path createTempFile(Path target) throws IOException {
+		Path temp;
+		while (true) {
+			String name = "." + target.getFileName() + Long.toUnsignedString(ThreadLocalRandom.current().nextLong())
+					+ ".tmp";
+			try {
+				// unlike Files.createTempFile, the umask decides the permissions
+				temp = Files.createFile(target.resolveSibling(name));
+				break;
+			} catch (FileAlreadyExistsException ex) {
+				continue;
+			}
+		}
+
+		try {
+			copyAttributes(target, temp);
+		} catch (IOException ex) {
+			Files.deleteIfExists(temp);
+			throw ex;
+		}
+		return temp;
+	}
+
+	/**
+	 * Moves the temporary file over the target file and forces the change of
+	 * the directory to the disk.
+	 *
+	 * @param temp
+	 *            the temporary file, whose contents should already be written
+	 * @param target
+	 *            the target file
+	 * @throws IOException
+	 *             if the file can not be moved
+	 */
+	public static void replace(Path temp, Path target) throws IOException {
+		try {
+			Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException ex) {
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		// the new name of the file is durable only once its directory is
+		try (FileChannel directory = FileChannel.open(target.getParent(), StandardOpenOption.READ)) {
+			directory.force(true);
+		} catch (IOException ignorable) {
+			// directories can not be opened on some systems
+		}
+	}
+
+	/**
+	 * Copies the permissions, the owner and the group of the target file to
+	 * the temporary file. The owner and the group are kept only if the user
+	 * may change them.
+	 *
+	 * @param target
+	 *            the target file
+	 * @param temp
+	 *            the temporary file
+	 * @throws IOException
+	 *             if the permissions can not be copied
+	 */
+	private static void copyAttributes(Path target, Path temp) throws IOException {
+		PosixFileAttributeView view = Files.getFileAttributeView(temp, PosixFileAttributeView.class);
+		if (view == null || !Files.exists(target))
+			return;
+
+		PosixFileAttributes attributes = Files.readAttributes(target, PosixFileAttributes.class);
+		PosixFileAttributes current = view.readAttributes();
+		if (!attributes.group().equals(current.group())) {
+			try {
+				view.setGroup(attributes.group());
+			} catch (IOException ignorable) {
+			}
+		}
+		if (!attributes.owner().equals(current.owner())) {
+			try {
+				view.setOwner(attributes.owner());
+			} catch (IOException ignorable) {
+			}
+		}
+		view.setPermissions(attributes.permissions());
+	}
+}
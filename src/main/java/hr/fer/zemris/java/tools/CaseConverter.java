@@ -0,0 +1,190 @@
+package hr.fer.zemris.java.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.swing.text.Segment;
+
+import hr.fer.zemris.java.document.TextSource;
+
+/**
+ * Changes the case of a range of a text.
+ * <p>
+ * The range is split into chunks of {@link #CHUNK_SIZE} characters, which
+ * never split a surrogate pair. Each chunk is read through a {@link Segment}
+ * and converted one code point at a time, and only the part of the chunk from
+ * its first to its last changed character is returned as a {@link Change}.
+ * The chunks of a large range are converted in parallel, so the text must be
+ * an immutable snapshot.
+ * <p>
+ * The conversions use the simple case mappings of {@link Character}, which
+ * map each code point to a single code point.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class CaseConverter {
+	/** Number of characters converted at once. */
+	public static final int CHUNK_SIZE = 1 << 14;
+	/** Length of the range from which the chunks are converted in parallel. */
+	private static final int PARALLEL_THRESHOLD = 1 << 18;
+
+	/** Converts code points to upper case. */
+	public static final IntUnaryOperator UPPER_CASE = Character::toUpperCase;
+	/** Converts code points to lower case. */
+	public static final IntUnaryOperator LOWER_CASE = Character::toLowerCase;
+	/** Converts upper case code points to lower case and vice versa. */
+	public static final IntUnaryOperator INVERT_CASE = c -> Character.isLowerCase(c) ? Character.toUpperCase(c)
+			: Character.isUpperCase(c) ? Character.toLowerCase(c) : c;
+
+	/**
+	 * Not used.
+	 */
+	private CaseConverter() {
+	}
+
+	/**
+	 * Converts the given range of the text.
+	 *
+	 * @param text
+	 *            the text, must not change during the conversion
+	 * @param offset
+	 *            start of the range
+	 * @param length
+	 *            length of the range
+	 * @param conversion
+	 *            conversion of a code point
+	 * @return changes of the text, in the order of their offsets
+	 */
+	public static List<Change> convert(TextSource text, int offset, int length, IntUnaryOperator conversion) {
+		List<Integer> bounds = new ArrayList<>();
+		int end = offset + length;
+		for (int pos = offset; pos < end; pos += CHUNK_SIZE) {
+			bounds.add(pos);
+		}
+		bounds.add(end);
+
+		// a chunk starting between the surrogates of a pair starts after them
+		char[] pair = new char[2];
+		for (int i = 1; i < bounds.size() - 1; i++) {
+			int bound = bounds.get(i);
+			text.getChars(bound - 1, 2, pair, 0);
+			if (Character.isSurrogatePair(pair[0], pair[1])) {
+				bounds.set(i, bound + 1);
+			}
+		}
+
+		IntStream chunks = IntStream.range(0, bounds.size() - 1);
+		if (length >= PARALLEL_THRESHOLD) {
+			chunks = chunks.parallel();
+		}
+		return chunks.mapToObj(i -> convertChunk(text, bounds.get(i), bounds.get(i + 1), conversion))
+				.filter(Objects::nonNull).collect(Collectors.toList());
+	}
+
+	/**
+	 * Converts a chunk of the text.
+	 *
+	 * @param text
+	 *            the text
+	 * @param start
+	 *            start of the chunk
+	 * @param end
+	 *            end of the chunk
+	 * @param conversion
+	 *            conversion of a code point
+	 * @return change of the chunk, <code>null</code> if the chunk does not
+	 *         change
+	 */
+	private static Change convertChunk(TextSource text, int start, int end, IntUnaryOperator conversion) {
+		char[] chars = new char[end - start];
+		text.getChars(start, end - start, chars, 0);
+
+		int first = -1;
+		int last = -1;
+		for (int i = 0; i < chars.length;) {
+			int c = Character.codePointAt(chars, i);
+			int n = Character.charCount(c);
+			if (conversion.applyAsInt(c) != c) {
+				if (first < 0) {
+					first = i;
+				}
+				last = i + n;
+			}
+			i += n;
+		}
+		if (first < 0)
+			return null;
+
+		// the part from the first to the last changed code point
+		StringBuilder converted = new StringBuilder(last - first);
+		for (int i = first; i < last;) {
+			int c = Character.codePointAt(chars, i);
+			converted.appendCodePoint(conversion.applyAsInt(c));
+			i += Character.charCount(c);
+		}
+		return new Change(start + first, last - first, converted.toString());
+	}
+
+	/**
+	 * Replacement of a range of the text.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	public static final class Change {
+		/** Start of the replaced range. */
+		private int offset;
+		/** Length of the replaced range. */
+		private int length;
+		/** Replacement of the range. */
+		private String text;
+
+		/**
+		 * Constructs a new {@link Change}.
+		 *
+		 * @param offset
+		 *            start of the replaced range
+		 * @param length
+		 *            length of the replaced range
+		 * @param text
+		 *            replacement of the range
+		 */
+		private Change(int offset, int length, String text) {
+			this.offset = offset;
+			this.length = length;
+			this.text = text;
+		}
+
+		/**
+		 * Gets the start of the replaced range.
+		 *
+		 * @return start of the range
+		 */
+		public int getOffset() {
+			return offset;
+		}
+
+		/**
+		 * Gets the length of the replaced range.
+		 *
+		 * @return length of the range
+		 */
+		public int getLength() {
+			return length;
+		}
+
+		/**
+		 * Gets the replacement of the range.
+		 *
+		 * @return the replacement
+		 */
+		public String getText() {
+			return text;
+		}
+	}
+}
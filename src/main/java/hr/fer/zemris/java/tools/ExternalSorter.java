@@ -0,0 +1,585 @@
+package hr.fer.zemris.java.tools;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+/**
+ * Sorts the lines of a file which does not have to fit into the memory.
+ * <p>
+ * The file is read in runs of lines which fit into the given memory budget.
+ * Each run is sorted by {@link LineSorter} and written to a temporary file.
+ * The runs are then merged - the first lines of the runs are kept in a heap
+ * ordered by their collation keys, and the smallest of them is written out
+ * and replaced by the next line of its run. If there are more runs than can
+ * be read at once, the runs are merged in several passes. A file fitting into
+ * a single run is written out directly.
+ * <p>
+ * The file is read and written in UTF-8, and a file which is not valid UTF-8
+ * is not sorted. Each line keeps its own terminator - <code>"\n"</code>,
+ * <code>"\r\n"</code> or <code>"\r"</code> - which is not compared. A last
+ * line without a terminator gets the terminator of the first line, and the
+ * sorted file ends with a terminator only if the input file did. The sorted
+ * file is written next to the output file and moved over it by
+ * {@link AtomicFiles} once it is complete, so the output file may be the
+ * input file and keeps its permissions.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class ExternalSorter {
+	/** Largest number of runs merged at once. */
+	private static final int MAX_FAN_IN = 64;
+	/** Size of the buffer of each reader and writer, in characters. */
+	private static final int BUFFER_SIZE = 1 << 16;
+	/** Estimated memory used by a line besides its characters, in bytes. */
+	private static final int LINE_OVERHEAD = 120;
+	/** Number of lines between two checks for the cancellation. */
+	private static final int CHECK_INTERVAL = 1 << 12;
+
+	/** Sorted file. */
+	private Path input;
+	/** File receiving the sorted lines. */
+	private Path output;
+	/** Language whose rules order the lines. */
+	private Locale locale;
+	/** <code>true</code> for ascending order. */
+	private boolean ascending;
+	/** Memory available to a run, in bytes. */
+	private long memoryBudget;
+	/** Receives the progress of the sorting, in percent. */
+	private IntConsumer progress;
+	/** Checks if the sorting was cancelled. */
+	private BooleanSupplier cancelled;
+
+	/** Directory of the temporary files. */
+	private Path workDirectory;
+	/** Number of the created temporary files. */
+	private int tempFiles;
+	/** Size of the input file, in bytes. */
+	private long inputSize;
+	/** Number of lines in the input file. */
+	private long totalLines;
+	/** Number of lines written by the merging passes so far. */
+	private long mergedLines;
+	/** Number of lines the merging passes write in total. */
+	private long mergeWork;
+	/** Terminator of the first line of the input file. */
+	private String firstTerminator;
+	/** <code>true</code> if the last line of the input file is terminated. */
+	private boolean terminated = true;
+
+	/**
+	 * Constructs a new {@link ExternalSorter}.
+	 *
+	 * @param input
+	 *            sorted file
+	 * @param output
+	 *            file receiving the sorted lines
+	 * @param locale
+	 *            language whose rules order the lines
+	 * @param ascending
+	 *            <code>true</code> to sort the lines in ascending order,
+	 *            <code>false</code> for descending order
+	 * @param memoryBudget
+	 *            memory available to a run of lines, in bytes
+	 * @param progress
+	 *            receives the progress of the sorting, in percent
+	 * @param cancelled
+	 *            checked while sorting, which stops once it returns
+	 *            <code>true</code>
+	 */
+	public ExternalSorter(Path input, Path output, Locale locale, boolean ascending, long memoryBudget,
+			IntConsumer progress, BooleanSupplier cancelled) {
+		this.input = input;
+		this.output = output;
+		this.locale = locale;
+		this.ascending = ascending;
+		this.memoryBudget = Math.max(1 << 20, memoryBudget);
+		this.progress = progress;
+		this.cancelled = cancelled;
+	}
+
+	/**
+	 * Sorts the file. The temporary files are deleted when the sorting ends,
+	 * even if it fails.
+	 *
+	 * @return number of the sorted lines
+	 * @throws IOException
+	 *             if the file can not be read or written
+	 * @throws CancellationException
+	 *             if the sorting was cancelled
+	 */
+	public long sort() throws IOException {
+		inputSize = Math.max(1, Files.size(input));
+		Path target = AtomicFiles.target(output);
+		Path sorted = AtomicFiles.createTempFile(target);
+		workDirectory = Files.createTempDirectory("jnotepad-sort");
+		try {
+			List<Path> runs = new ArrayList<>();
+			Line[] single = split(runs);
+
+			if (single != null) {
+				try (BufferedWriter writer = newWriter(sorted)) {
+					for (int i = 0; i < single.length; i++) {
+						write(writer, single[i], i == single.length - 1 && !terminated);
+					}
+				}
+			} else {
+				// each pass writes all of the lines once
+				int passes = 0;
+				for (long n = runs.size(); n > 1; n = (n + MAX_FAN_IN - 1) / MAX_FAN_IN) {
+					passes++;
+				}
+				mergeWork = Math.max(1, passes * totalLines);
+
+				while (runs.size() > MAX_FAN_IN) {
+					List<Path> merged = new ArrayList<>();
+					for (int i = 0; i < runs.size(); i += MAX_FAN_IN) {
+						List<Path> group = runs.subList(i, Math.min(runs.size(), i + MAX_FAN_IN));
+						Path run = newTempFile();
+						merge(group, run, true);
+						merged.add(run);
+					}
+					runs = merged;
+				}
+				merge(runs, sorted, terminated);
+			}
+
+			AtomicFiles.replace(sorted, target);
+			progress.accept(100);
+			return totalLines;
+		} finally {
+			Files.deleteIfExists(sorted);
+			deleteWorkDirectory();
+		}
+	}
+
+	/**
+	 * Reads the input file in runs fitting into the memory budget, sorts them
+	 * and writes them to temporary files. If the whole file fits into a single
+	 * run, the run is returned instead of being written.
+	 *
+	 * @param runs
+	 *            receives the paths of the written runs
+	 * @return sorted lines of the file if they fit into a single run,
+	 *         otherwise <code>null</code>
+	 * @throws IOException
+	 *             if the runs can not be read or written, or the file is not
+	 *             valid UTF-8
+	 */
+	private Line[] split(List<Path> runs) throws IOException {
+		Line[] lines = new Line[1024];
+		int count = 0;
+		long used = 0;
+		long readBytes = 0;
+
+		try (LineReader reader = new LineReader(input)) {
+			Line line;
+			while ((line = reader.readLine()) != null) {
+				if (firstTerminator == null) {
+					firstTerminator = line.terminator.isEmpty() ? "\n" : line.terminator;
+				}
+				if (line.terminator.isEmpty()) {
+					// only the last line can be unterminated
+					terminated = false;
+					line = new Line(line.text, firstTerminator);
+				}
+
+				if (count == lines.length) {
+					lines = Arrays.copyOf(lines, count * 2);
+				}
+				lines[count++] = line;
+				totalLines++;
+				// the characters of the line and of its collation key
+				long size = 6L * line.text.length() + LINE_OVERHEAD;
+				used += size;
+				readBytes += line.text.length() + line.terminator.length();
+
+				if (count % CHECK_INTERVAL == 0) {
+					checkCancelled();
+					reportSplit(readBytes);
+				}
+				if (used >= memoryBudget) {
+					runs.add(writeRun(lines, count));
+					Arrays.fill(lines, 0, count, null);
+					count = 0;
+					used = 0;
+				}
+			}
+		}
+
+		checkCancelled();
+		if (runs.isEmpty()) {
+			LineSorter.sort(lines, count, Line::getText, locale, ascending);
+			return Arrays.copyOf(lines, count);
+		}
+		if (count > 0) {
+			runs.add(writeRun(lines, count));
+		}
+		return null;
+	}
+
+	/**
+	 * Sorts a run of lines and writes it to a temporary file.
+	 *
+	 * @param lines
+	 *            lines of the run
+	 * @param count
+	 *            number of lines in the run
+	 * @return path of the written run
+	 * @throws IOException
+	 *             if the run can not be written
+	 */
+	private Path writeRun(Line[] lines, int count) throws IOException {
+		LineSorter.sort(lines, count, Line::getText, locale, ascending);
+		checkCancelled();
+
+		Path run = newTempFile();
+		try (BufferedWriter writer = newWriter(run)) {
+			for (int i = 0; i < count; i++) {
+				write(writer, lines[i], false);
+			}
+		}
+		return run;
+	}
+
+	/**
+	 * Writes a line with its terminator.
+	 *
+	 * @param writer
+	 *            the writer
+	 * @param line
+	 *            the line
+	 * @param last
+	 *            <code>true</code> if the line is the last line of an input
+	 *            file which does not end with a terminator, so the line is
+	 *            written without it
+	 * @throws IOException
+	 *             if the line can not be written
+	 */
+	private static void write(BufferedWriter writer, Line line, boolean last) throws IOException {
+		writer.write(line.text);
+		if (!last) {
+			writer.write(line.terminator);
+		}
+	}
+
+	/**
+	 * Merges the given sorted runs into the given file and deletes the runs.
+	 *
+	 * @param runs
+	 *            runs to merge
+	 * @param merged
+	 *            file receiving the merged lines
+	 * @param terminated
+	 *            <code>false</code> if the last merged line is written without
+	 *            its terminator
+	 * @throws IOException
+	 *             if the runs can not be read or the file written
+	 */
+	private void merge(List<Path> runs, Path merged, boolean terminated) throws IOException {
+		// the shared collator is not used, as it may be used by other threads
+		Collator collator = (Collator) LineSorter.getCollator(locale).clone();
+		int sign = ascending ? 1 : -1;
+		PriorityQueue<RunReader> heap = new PriorityQueue<>(runs.size(), (r1, r2) -> {
+			int c = sign * r1.key.compareTo(r2.key);
+			// equal lines keep the order of their runs
+			return c != 0 ? c : Integer.compare(r1.index, r2.index);
+		});
+
+		List<RunReader> readers = new ArrayList<>();
+		try (BufferedWriter writer = newWriter(merged)) {
+			for (int i = 0; i < runs.size(); i++) {
+				RunReader reader = new RunReader(runs.get(i), i, collator);
+				readers.add(reader);
+				if (reader.advance()) {
+					heap.add(reader);
+				}
+			}
+
+			while (!heap.isEmpty()) {
+				RunReader smallest = heap.poll();
+				Line line = smallest.line;
+				if (smallest.advance()) {
+					heap.add(smallest);
+				}
+				write(writer, line, heap.isEmpty() && !terminated);
+
+				if (++mergedLines % CHECK_INTERVAL == 0) {
+					checkCancelled();
+					progress.accept(50 + (int) (mergedLines * 50 / mergeWork));
+				}
+			}
+		} finally {
+			for (RunReader reader : readers) {
+				reader.close();
+			}
+		}
+
+		for (Path run : runs) {
+			Files.deleteIfExists(run);
+		}
+	}
+
+	/**
+	 * Reports the progress of reading the input file.
+	 *
+	 * @param readBytes
+	 *            estimated number of bytes read
+	 */
+	private void reportSplit(long readBytes) {
+		progress.accept((int) (Math.min(readBytes, inputSize) * 50 / inputSize));
+	}
+
+	/**
+	 * Throws an exception if the sorting was cancelled.
+	 *
+	 * @throws CancellationException
+	 *             if the sorting was cancelled
+	 */
+	private void checkCancelled() {
+		if (cancelled.getAsBoolean())
+			throw new CancellationException();
+	}
+
+	/**
+	 * Creates a new temporary file for a run.
+	 *
+	 * @return path of the file
+	 */
+	private Path newTempFile() {
+		return workDirectory.resolve("run" + (tempFiles++));
+	}
+
+	/**
+	 * Opens a writer of the given file.
+	 *
+	 * @param file
+	 *            the file
+	 * @return writer of the file
+	 * @throws IOException
+	 *             if the file can not be opened
+	 */
+	private static BufferedWriter newWriter(Path file) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8),
+				BUFFER_SIZE);
+	}
+
+	/**
+	 * Deletes the directory of the temporary files with all of the remaining
+	 * runs.
+	 */
+	private void deleteWorkDirectory() {
+		for (int i = 0; i < tempFiles; i++) {
+			try {
+				Files.deleteIfExists(workDirectory.resolve("run" + i));
+			} catch (IOException ignorable) {
+			}
+		}
+		try {
+			Files.deleteIfExists(workDirectory);
+		} catch (IOException ignorable) {
+		}
+	}
+
+	/**
+	 * Reader of a sorted run, holding the collation key of its current line.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private static class RunReader {
+		/** Reader of the run. */
+		private LineReader reader;
+		/** Index of the run. */
+		private int index;
+		/** Collator creating the keys. */
+		private Collator collator;
+		/** Current line. */
+		private Line line;
+		/** Key of the current line. */
+		private CollationKey key;
+
+		/**
+		 * Constructs a new {@link RunReader}.
+		 *
+		 * @param run
+		 *            path of the run
+		 * @param index
+		 *            index of the run
+		 * @param collator
+		 *            collator creating the keys
+		 * @throws IOException
+		 *             if the run can not be opened
+		 */
+		private RunReader(Path run, int index, Collator collator) throws IOException {
+			this.reader = new LineReader(run);
+			this.index = index;
+			this.collator = collator;
+		}
+
+		/**
+		 * Reads the next line of the run.
+		 *
+		 * @return <code>true</code> if a line was read, <code>false</code> at
+		 *         the end of the run
+		 * @throws IOException
+		 *             if the run can not be read
+		 */
+		private boolean advance() throws IOException {
+			line = reader.readLine();
+			key = line == null ? null : collator.getCollationKey(line.text);
+			return line != null;
+		}
+
+		/**
+		 * Closes the run.
+		 */
+		private void close() {
+			try {
+				reader.close();
+			} catch (IOException ignorable) {
+			}
+		}
+	}
+
+	/**
+	 * Line of text with its terminator.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private static class Line {
+		/** Text of the line. */
+		private final String text;
+		/** Terminator of the line, empty if the line is not terminated. */
+		private final String terminator;
+
+		/**
+		 * Constructs a new {@link Line}.
+		 *
+		 * @param text
+		 *            text of the line
+		 * @param terminator
+		 *            terminator of the line
+		 */
+		private Line(String text, String terminator) {
+			this.text = text;
+			this.terminator = terminator;
+		}
+
+		/**
+		 * Gets the text of the line, without the terminator.
+		 *
+		 * @return text of the line
+		 */
+		private String getText() {
+			return text;
+		}
+	}
+
+	/**
+	 * Reads the lines of an UTF-8 encoded file together with their
+	 * terminators. Malformed input fails the reading instead of being
+	 * replaced, so a file is never changed by decoding it.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private static class LineReader implements Closeable {
+		/** Reader of the file. */
+		private Reader reader;
+		/** Buffer of the read characters. */
+		private char[] buffer = new char[BUFFER_SIZE];
+		/** Position of the next character in the buffer. */
+		private int position;
+		/** Number of characters in the buffer. */
+		private int limit;
+
+		/**
+		 * Constructs a new {@link LineReader}.
+		 *
+		 * @param file
+		 *            the file
+		 * @throws IOException
+		 *             if the file can not be opened
+		 */
+		private LineReader(Path file) throws IOException {
+			CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+			reader = new InputStreamReader(Files.newInputStream(file), decoder);
+		}
+
+		/**
+		 * Reads the next line.
+		 *
+		 * @return the line, <code>null</code> at the end of the file
+		 * @throws IOException
+		 *             if the file can not be read or is not valid UTF-8
+		 */
+		private Line readLine() throws IOException {
+			StringBuilder text = new StringBuilder();
+			while (fill()) {
+				int start = position;
+				while (position < limit) {
+					char c = buffer[position];
+					if (c == '\n' || c == '\r')
+						break;
+					position++;
+				}
+				text.append(buffer, start, position - start);
+				if (position == limit)
+					continue;
+
+				if (buffer[position++] == '\n')
+					return new Line(text.toString(), "\n");
+				if (fill() && buffer[position] == '\n') {
+					position++;
+					return new Line(text.toString(), "\r\n");
+				}
+				return new Line(text.toString(), "\r");
+			}
+			return text.length() == 0 ? null : new Line(text.toString(), "");
+		}
+
+		/**
+		 * Reads more characters into the buffer if all of them were used.
+		 *
+		 * @return <code>true</code> if there are characters in the buffer,
+		 *         <code>false</code> at the end of the file
+		 * @throws IOException
+		 *             if the file can not be read or is not valid UTF-8
+		 */
+		private boolean fill() throws IOException {
+			if (position < limit)
+				return true;
+			position = 0;
+			limit = Math.max(0, reader.read(buffer));
+			return limit > 0;
+		}
+
+		@Override
+		public void close() throws IOException {
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,603 @@
+package hr.fer.zemris.java.tools;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Searches the files of a directory tree for a literal text, without decoding
+ * them.
+ * <p>
+ * The text is encoded in UTF-8 and searched for in the bytes of the files
+ * with the Boyer-Moore-Horspool algorithm. A valid UTF-8 pattern starts with a
+ * leading byte, so it can never match from the middle of a multi-byte
+ * sequence. A case insensitive search folds only the ASCII letters, the other
+ * characters are matched exactly. Only the line of a match is decoded, when
+ * the match is reported.
+ * <p>
+ * The tree is walked by a fork-join task for each directory, while each file
+ * is searched by a task of its own. Larger files are memory-mapped in windows
+ * of {@link #MAP_WINDOW} bytes, while smaller ones are read into a buffer,
+ * which is cheaper than mapping them. Files with a zero byte among their
+ * first {@link #SNIFF_SIZE} bytes are treated as binary and skipped. Symbolic
+ * links are not followed, and files which can not be read are skipped.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class FileSearcher {
+	/** Number of bytes checked for a zero byte of a binary file. */
+	public static final int SNIFF_SIZE = 1 << 13;
+	/** Size of the smallest memory-mapped file. */
+	public static final int MAP_THRESHOLD = 1 << 16;
+	/** Size of a memory-mapped window. */
+	public static final long MAP_WINDOW = 1L << 30;
+	/** Largest number of bytes in the preview of a match. */
+	private static final int PREVIEW_BYTES = 160;
+
+	/** Encoded pattern, folded if the search is case insensitive. */
+	private byte[] pattern;
+	/** Number of characters of the pattern. */
+	private int patternChars;
+	/** <code>true</code> if the case of the letters matters. */
+	private boolean matchCase;
+	/** Shift of the window for each value of its last byte. */
+	private int[] shifts = new int[256];
+	/** Filters of the searched file names, all files if empty. */
+	private List<PathMatcher> includes;
+	/** Filters of the skipped file and directory names. */
+	private List<PathMatcher> excludes;
+
+	/**
+	 * Constructs a new {@link FileSearcher}. The filters are glob patterns
+	 * separated by commas or semicolons, matched against the names of the
+	 * files and directories.
+	 *
+	 * @param pattern
+	 *            the searched text, must not be empty
+	 * @param matchCase
+	 *            <code>true</code> if the case of the letters matters
+	 * @param includes
+	 *            filters of the searched file names, all files are searched
+	 *            if blank
+	 * @param excludes
+	 *            filters of the skipped file and directory names
+	 * @throws IllegalArgumentException
+	 *             if the text is empty or a filter is invalid
+	 */
+	public FileSearcher(String pattern, boolean matchCase, String includes, String excludes) {
+		if (pattern.isEmpty())
+			throw new IllegalArgumentException("The pattern must not be empty.");
+		this.matchCase = matchCase;
+		this.patternChars = pattern.length();
+		this.pattern = pattern.getBytes(StandardCharsets.UTF_8);
+		for (int i = 0; i < this.pattern.length; i++) {
+			this.pattern[i] = fold(this.pattern[i]);
+		}
+
+		int m = this.pattern.length;
+		for (int i = 0; i < shifts.length; i++) {
+			shifts[i] = m;
+		}
+		for (int i = 0; i < m - 1; i++) {
+			shifts[this.pattern[i] & 0xFF] = m - 1 - i;
+		}
+
+		this.includes = globs(includes);
+		this.excludes = globs(excludes);
+	}
+
+	/**
+	 * Parses the given list of glob patterns.
+	 *
+	 * @param list
+	 *            patterns separated by commas or semicolons
+	 * @return matchers of the patterns
+	 */
+	private static List<PathMatcher> globs(String list) {
+		List<PathMatcher> matchers = new ArrayList<>();
+		if (list == null)
+			return matchers;
+		for (String glob : list.split("[,;]")) {
+			glob = glob.trim();
+			if (!glob.isEmpty()) {
+				matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+			}
+		}
+		return matchers;
+	}
+
+	/**
+	 * Searches the files of the given directory tree.
+	 *
+	 * @param root
+	 *            root of the tree
+	 * @param pool
+	 *            pool walking the tree and searching the files
+	 * @param hits
+	 *            receives the matches, the search stops once it returns
+	 *            <code>false</code>; called from several threads, but never
+	 *            from two at once for the same file
+	 * @param cancelled
+	 *            checked before each directory, file and window, the search
+	 *            stops once it returns <code>true</code>
+	 */
+	public void search(Path root, ForkJoinPool pool, Predicate<Hit> hits, BooleanSupplier cancelled) {
+		AtomicBoolean stopped = new AtomicBoolean();
+		BooleanSupplier stop = () -> stopped.get() || cancelled.getAsBoolean();
+		Predicate<Hit> sink = hit -> {
+			if (stopped.get() || hits.test(hit))
+				return !stopped.get();
+			stopped.set(true);
+			return false;
+		};
+
+		if (Files.isDirectory(root)) {
+			pool.invoke(new DirectoryTask(root, sink, stop));
+		} else if (Files.isRegularFile(root)) {
+			pool.invoke(new FileTask(root, sink, stop));
+		}
+	}
+
+	/**
+	 * Checks whether the given name passes the given filters.
+	 *
+	 * @param name
+	 *            name of a file or a directory
+	 * @param matchers
+	 *            the filters
+	 * @return <code>true</code> if any of the filters matches the name
+	 */
+	private static boolean matches(Path name, List<PathMatcher> matchers) {
+		for (PathMatcher matcher : matchers) {
+			if (matcher.matches(name))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Searches a single file.
+	 *
+	 * @param file
+	 *            the file
+	 * @param hits
+	 *            receives the matches, the search stops once it returns
+	 *            <code>false</code>
+	 * @param cancelled
+	 *            checked before each window, the search stops once it
+	 *            returns <code>true</code>
+	 * @throws IOException
+	 *             if the file can not be read
+	 */
+	public void searchFile(Path file, Predicate<Hit> hits, BooleanSupplier cancelled) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < pattern.length)
+				return;
+
+			Scan scan = new Scan(file, channel, hits);
+			if (size < MAP_THRESHOLD) {
+				ByteBuffer buffer = ByteBuffer.allocate((int) size);
+				while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+				}
+				buffer.flip();
+				if (!isBinary(buffer)) {
+					scan.window(buffer, 0, buffer.limit());
+				}
+				return;
+			}
+
+			for (long start = 0; start < size; start += MAP_WINDOW) {
+				if (cancelled.getAsBoolean())
+					return;
+				// windows overlap by the pattern, matches start in their own
+				long length = Math.min(MAP_WINDOW + pattern.length - 1, size - start);
+				ByteBuffer window = channel.map(MapMode.READ_ONLY, start, length);
+				if (start == 0 && isBinary(window))
+					return;
+				if (!scan.window(window, start, (int) Math.min(MAP_WINDOW, length)))
+					return;
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the given buffer starts like a binary file.
+	 *
+	 * @param buffer
+	 *            start of the file
+	 * @return <code>true</code> if there is a zero byte among the first
+	 *         {@link #SNIFF_SIZE} bytes
+	 */
+	private static boolean isBinary(ByteBuffer buffer) {
+		for (int i = 0, n = Math.min(SNIFF_SIZE, buffer.limit()); i < n; i++) {
+			if (buffer.get(i) == 0)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Folds the case of the given byte, unless the case matters.
+	 *
+	 * @param b
+	 *            the byte
+	 * @return folded byte
+	 */
+	private byte fold(byte b) {
+		return !matchCase && b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+	}
+
+	/**
+	 * Scan of a file, which counts the lines up to each match.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private class Scan {
+		/** The file. */
+		private Path file;
+		/** Channel of the file. */
+		private FileChannel channel;
+		/** Receives the matches. */
+		private Predicate<Hit> hits;
+		/** Position up to which the lines are counted. */
+		private long counted;
+		/** Number of line feeds before the counted position. */
+		private int line;
+		/** Position of the start of the last counted line. */
+		private long lineStart;
+
+		/**
+		 * Constructs a new {@link Scan}.
+		 *
+		 * @param file
+		 *            the file
+		 * @param channel
+		 *            channel of the file
+		 * @param hits
+		 *            receives the matches
+		 */
+		private Scan(Path file, FileChannel channel, Predicate<Hit> hits) {
+			this.file = file;
+			this.channel = channel;
+			this.hits = hits;
+		}
+
+		/**
+		 * Scans a window of the file.
+		 *
+		 * @param window
+		 *            bytes of the window
+		 * @param start
+		 *            position of the window in the file
+		 * @param starts
+		 *            number of positions of the window where a match may
+		 *            start
+		 * @return <code>false</code> if the search was stopped
+		 * @throws IOException
+		 *             if the file can not be read
+		 */
+		private boolean window(ByteBuffer window, long start, int starts) throws IOException {
+			int m = pattern.length;
+			int n = window.limit();
+			int i = 0;
+			while (i < starts && i <= n - m) {
+				int j = m - 1;
+				while (j >= 0 && fold(window.get(i + j)) == pattern[j]) {
+					j--;
+				}
+				if (j < 0) {
+					if (!hits.test(hit(window, start, i)))
+						return false;
+					i += m;
+					continue;
+				}
+				i += shifts[fold(window.get(i + m - 1)) & 0xFF];
+			}
+			return true;
+		}
+
+		/**
+		 * Creates the hit of the match at the given position of the window.
+		 *
+		 * @param window
+		 *            bytes of the window
+		 * @param start
+		 *            position of the window in the file
+		 * @param i
+		 *            position of the match in the window
+		 * @return the hit
+		 * @throws IOException
+		 *             if the file can not be read
+		 */
+		private Hit hit(ByteBuffer window, long start, int i) throws IOException {
+			if (counted < start) {
+				countBefore(start);
+			}
+			for (int k = (int) (counted - start); k < i; k++) {
+				if (window.get(k) == '\n') {
+					line++;
+					lineStart = start + k + 1;
+				}
+			}
+			counted = start + i;
+
+			// the column counts the characters, a four byte sequence is two
+			int column = 0;
+			int from = (int) Math.max(0, lineStart - start);
+			for (int k = from; k < i; k++) {
+				int b = window.get(k) & 0xFF;
+				if ((b & 0xC0) != 0x80) {
+					column += (b & 0xF8) == 0xF0 ? 2 : 1;
+				}
+			}
+			return new Hit(file, line, column, patternChars, preview(window, from, i));
+		}
+
+		/**
+		 * Counts the lines between the counted position and the given
+		 * position, which precedes the current window.
+		 *
+		 * @param position
+		 *            start of the current window
+		 * @throws IOException
+		 *             if the file can not be read
+		 */
+		private void countBefore(long position) throws IOException {
+			while (counted < position) {
+				long length = Math.min(MAP_WINDOW, position - counted);
+				ByteBuffer gap = channel.map(MapMode.READ_ONLY, counted, length);
+				for (int k = 0; k < length; k++) {
+					if (gap.get(k) == '\n') {
+						line++;
+						lineStart = counted + k + 1;
+					}
+				}
+				counted += length;
+			}
+		}
+
+		/**
+		 * Decodes the preview of the line of a match.
+		 *
+		 * @param window
+		 *            bytes of the window
+		 * @param lineFrom
+		 *            start of the line in the window
+		 * @param i
+		 *            position of the match in the window
+		 * @return preview of the line
+		 */
+		private String preview(ByteBuffer window, int lineFrom, int i) {
+			int from = Math.max(lineFrom, i - PREVIEW_BYTES / 4);
+			while (from < i && (window.get(from) & 0xC0) == 0x80) {
+				from++;
+			}
+			int to = from;
+			int limit = Math.min(window.limit(), from + PREVIEW_BYTES);
+			while (to < limit && window.get(to) != '\n' && window.get(to) != '\r') {
+				to++;
+			}
+			if (to == limit) {
+				while (to > i && (window.get(to - 1) & 0xC0) == 0x80) {
+					to--;
+				}
+			}
+
+			byte[] bytes = new byte[to - from];
+			for (int k = 0; k < bytes.length; k++) {
+				bytes[k] = window.get(from + k);
+			}
+			return new String(bytes, StandardCharsets.UTF_8).replace('\t', ' ');
+		}
+	}
+
+	/**
+	 * Task walking a directory, forking a task for each of its entries.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private class DirectoryTask extends RecursiveAction {
+		/** Default serialization version. */
+		private static final long serialVersionUID = 1L;
+
+		/** The directory. */
+		private Path directory;
+		/** Receives the matches. */
+		private Predicate<Hit> hits;
+		/** Checked before the walk. */
+		private BooleanSupplier stop;
+
+		/**
+		 * Constructs a new {@link DirectoryTask}.
+		 *
+		 * @param directory
+		 *            the directory
+		 * @param hits
+		 *            receives the matches
+		 * @param stop
+		 *            checked before the walk
+		 */
+		private DirectoryTask(Path directory, Predicate<Hit> hits, BooleanSupplier stop) {
+			this.directory = directory;
+			this.hits = hits;
+			this.stop = stop;
+		}
+
+		@Override
+		protected void compute() {
+			if (stop.getAsBoolean())
+				return;
+
+			List<RecursiveAction> tasks = new ArrayList<>();
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+				for (Path entry : entries) {
+					Path name = entry.getFileName();
+					if (matches(name, excludes))
+						continue;
+					BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class,
+							LinkOption.NOFOLLOW_LINKS);
+					if (attributes.isDirectory()) {
+						tasks.add(new DirectoryTask(entry, hits, stop));
+					} else if (attributes.isRegularFile() && (includes.isEmpty() || matches(name, includes))) {
+						tasks.add(new FileTask(entry, hits, stop));
+					}
+				}
+			} catch (IOException ignorable) {
+				// the readable entries are still searched
+			}
+			invokeAll(tasks);
+		}
+	}
+
+	/**
+	 * Task searching a single file.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private class FileTask extends RecursiveAction {
+		/** Default serialization version. */
+		private static final long serialVersionUID = 1L;
+
+		/** The file. */
+		private Path file;
+		/** Receives the matches. */
+		private Predicate<Hit> hits;
+		/** Checked before the search. */
+		private BooleanSupplier stop;
+
+		/**
+		 * Constructs a new {@link FileTask}.
+		 *
+		 * @param file
+		 *            the file
+		 * @param hits
+		 *            receives the matches
+		 * @param stop
+		 *            checked before the search
+		 */
+		private FileTask(Path file, Predicate<Hit> hits, BooleanSupplier stop) {
+			this.file = file;
+			this.hits = hits;
+			this.stop = stop;
+		}
+
+		@Override
+		protected void compute() {
+			if (stop.getAsBoolean())
+				return;
+			try {
+				searchFile(file, hits, stop);
+			} catch (IOException ignorable) {
+				// a file which can not be read is skipped
+			}
+		}
+	}
+
+	/**
+	 * Match found in a file.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	public static final class Hit {
+		/** The file. */
+		private Path file;
+		/** Line of the match, starting from zero. */
+		private int line;
+		/** Column of the match in characters, starting from zero. */
+		private int column;
+		/** Length of the match in characters. */
+		private int length;
+		/** Preview of the line of the match. */
+		private String preview;
+
+		/**
+		 * Constructs a new {@link Hit}.
+		 *
+		 * @param file
+		 *            the file
+		 * @param line
+		 *            line of the match
+		 * @param column
+		 *            column of the match
+		 * @param length
+		 *            length of the match
+		 * @param preview
+		 *            preview of the line of the match
+		 */
+		private Hit(Path file, int line, int column, int length, String preview) {
+			this.file = file;
+			this.line = line;
+			this.column = column;
+			this.length = length;
+			this.preview = preview;
+		}
+
+		/**
+		 * Gets the file of the match.
+		 *
+		 * @return the file
+		 */
+		public Path getFile() {
+			return file;
+		}
+
+		/**
+		 * Gets the line of the match.
+		 *
+		 * @return line of the match, starting from zero
+		 */
+		public int getLine() {
+			return line;
+		}
+
+		/**
+		 * Gets the column of the match.
+		 *
+		 * @return column of the match in characters, starting from zero
+		 */
+		public int getColumn() {
+			return column;
+		}
+
+		/**
+		 * Gets the length of the match.
+		 *
+		 * @return length of the match in characters
+		 */
+		public int getLength() {
+			return length;
+		}
+
+		/**
+		 * Gets the preview of the line of the match.
+		 *
+		 * @return preview of the line
+		 */
+		public String getPreview() {
+			return preview;
+		}
+	}
+}
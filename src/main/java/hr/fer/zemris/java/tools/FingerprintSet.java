@@ -0,0 +1,110 @@
+package hr.fer.zemris.java.tools;
+
+import java.util.function.LongPredicate;
+
+/**
+ * Set of lines identified by their 64-bit fingerprints.
+ * <p>
+ * The set does not keep the lines themselves - each entry is a fingerprint
+ * and a reference to the first occurrence of the line, usually its offset in
+ * the source text. The entries are kept in two primitive arrays with open
+ * addressing and linear probing. Two lines are compared only if their
+ * fingerprints are equal, so a line is compared with the source text only
+ * when it is a duplicate or, very rarely, when two fingerprints collide.
+ *
+ * @author Mirna Baksa
+ *
+ */
+final class FingerprintSet {
+	/** Initial number of slots, a power of two. */
+	private static final int INITIAL_CAPACITY = 1 << 10;
+	/** Offset basis of the FNV-1a hash. */
+	static final long FNV_BASIS = 0xcbf29ce484222325L;
+	/** Prime of the FNV-1a hash. */
+	static final long FNV_PRIME = 0x100000001b3L;
+
+	/** Fingerprints of the entries. */
+	private long[] fingerprints = new long[INITIAL_CAPACITY];
+	/** References of the entries increased by one, <code>0</code> if empty. */
+	private long[] references = new long[INITIAL_CAPACITY];
+	/** Number of the entries. */
+	private int size;
+
+	/**
+	 * Adds a line to the set, unless the same line is already in it.
+	 *
+	 * @param fingerprint
+	 *            fingerprint of the line, see {@link #finish(long)}
+	 * @param reference
+	 *            non-negative reference to the line
+	 * @param sameLine
+	 *            checks if the line is equal to the line with the given
+	 *            reference
+	 * @return <code>true</code> if the line was added, <code>false</code> if
+	 *         it is a duplicate
+	 */
+	boolean add(long fingerprint, long reference, LongPredicate sameLine) {
+		int mask = fingerprints.length - 1;
+		int slot = (int) fingerprint & mask;
+		for (; references[slot] != 0; slot = (slot + 1) & mask) {
+			if (fingerprints[slot] == fingerprint && sameLine.test(references[slot] - 1))
+				return false;
+		}
+
+		fingerprints[slot] = fingerprint;
+		references[slot] = reference + 1;
+		// the load factor is kept at most one half
+		if (++size * 2 > fingerprints.length) {
+			grow();
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the number of lines in the set.
+	 *
+	 * @return number of lines
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Mixes the bits of a FNV-1a hash, so that its lower bits can be used to
+	 * choose the slot of the entry.
+	 *
+	 * @param hash
+	 *            FNV-1a hash of a line
+	 * @return fingerprint of the line
+	 */
+	static long finish(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	/**
+	 * Doubles the number of slots and moves the entries into them.
+	 */
+	private void grow() {
+		long[] oldFingerprints = fingerprints;
+		long[] oldReferences = references;
+		fingerprints = new long[oldFingerprints.length * 2];
+		references = new long[oldReferences.length * 2];
+
+		int mask = fingerprints.length - 1;
+		for (int i = 0; i < oldFingerprints.length; i++) {
+			if (oldReferences[i] == 0)
+				continue;
+			int slot = (int) oldFingerprints[i] & mask;
+			while (references[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			fingerprints[slot] = oldFingerprints[i];
+			references[slot] = oldReferences[i];
+		}
+	}
+}
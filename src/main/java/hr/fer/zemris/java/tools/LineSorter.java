@@ -0,0 +1,208 @@
+package hr.fer.zemris.java.tools;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Sorts lines of text by the rules of a language.
+ * <p>
+ * Comparing two strings with a {@link Collator} decomposes both of them, so
+ * the lines are not compared directly. Each line is converted to a
+ * {@link CollationKey} once, and the keys, which compare as plain sequences,
+ * are sorted instead. A large number of lines is converted and sorted in
+ * parallel. One collator is kept for each language.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class LineSorter {
+	/** Number of lines from which the lines are sorted in parallel. */
+	private static final int PARALLEL_THRESHOLD = 1 << 13;
+	/** Number of lines converted to keys by one parallel task. */
+	private static final int KEY_CHUNK = 1 << 12;
+
+	/** Collators of the used languages. */
+	private static final Map<Locale, Collator> COLLATORS = new ConcurrentHashMap<>();
+
+	/**
+	 * Not used.
+	 */
+	private LineSorter() {
+	}
+
+	/**
+	 * Gets the collator of the given language. The returned collator is
+	 * shared, so it must be cloned before it is used by more than one thread.
+	 *
+	 * @param locale
+	 *            the language
+	 * @return collator of the language
+	 */
+	public static Collator getCollator(Locale locale) {
+		return COLLATORS.computeIfAbsent(locale, Collator::getInstance);
+	}
+
+	/**
+	 * Sorts the lines of the given text. The lines are separated by line
+	 * feeds, and a line feed ending the text does not start a new line. Equal
+	 * lines keep their order.
+	 *
+	 * @param text
+	 *            lines to sort
+	 * @param locale
+	 *            language whose rules order the lines
+	 * @param ascending
+	 *            <code>true</code> to sort the lines in ascending order,
+	 *            <code>false</code> for descending order
+	 * @return sorted lines separated by line feeds, without a line feed at the
+	 *         end
+	 */
+	public static String sort(String text, Locale locale, boolean ascending) {
+		String[] lines = text.split("\n", -1);
+		int count = text.endsWith("\n") ? lines.length - 1 : lines.length;
+		sort(lines, count, locale, ascending);
+
+		StringBuilder sb = new StringBuilder(text.length());
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				sb.append('\n');
+			}
+			sb.append(lines[i]);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Sorts the first lines of the given array in place. Equal lines keep
+	 * their order.
+	 *
+	 * @param lines
+	 *            lines to sort
+	 * @param count
+	 *            number of lines to sort, from the start of the array
+	 * @param locale
+	 *            language whose rules order the lines
+	 * @param ascending
+	 *            <code>true</code> to sort the lines in ascending order,
+	 *            <code>false</code> for descending order
+	 */
+	public static void sort(String[] lines, int count, Locale locale, boolean ascending) {
+		CollationKey[] keys = keys(count, i -> lines[i], locale);
+
+		Comparator<CollationKey> order = ascending ? Comparator.naturalOrder() : Comparator.reverseOrder();
+		if (count < PARALLEL_THRESHOLD) {
+			Arrays.sort(keys, order);
+		} else {
+			Arrays.parallelSort(keys, order);
+		}
+
+		for (int i = 0; i < count; i++) {
+			lines[i] = keys[i].getSourceString();
+		}
+	}
+
+	/**
+	 * Sorts the first items of the given array in place by their texts.
+	 * Items with equal texts keep their order.
+	 *
+	 * @param items
+	 *            items to sort
+	 * @param count
+	 *            number of items to sort, from the start of the array
+	 * @param text
+	 *            gets the text of an item
+	 * @param locale
+	 *            language whose rules order the texts
+	 * @param ascending
+	 *            <code>true</code> to sort the items in ascending order,
+	 *            <code>false</code> for descending order
+	 * @param <T>
+	 *            type of the items
+	 */
+	public static <T> void sort(T[] items, int count, Function<? super T, String> text, Locale locale,
+			boolean ascending) {
+		CollationKey[] keys = keys(count, i -> text.apply(items[i]), locale);
+		Keyed[] keyed = new Keyed[count];
+		for (int i = 0; i < count; i++) {
+			keyed[i] = new Keyed(keys[i], i);
+		}
+
+		Comparator<Keyed> order = (k1, k2) -> ascending ? k1.key.compareTo(k2.key) : k2.key.compareTo(k1.key);
+		if (count < PARALLEL_THRESHOLD) {
+			Arrays.sort(keyed, order);
+		} else {
+			Arrays.parallelSort(keyed, order);
+		}
+
+		T[] unsorted = Arrays.copyOf(items, count);
+		for (int i = 0; i < count; i++) {
+			items[i] = unsorted[keyed[i].index];
+		}
+	}
+
+	/**
+	 * Converts the given texts to collation keys. A large number of texts is
+	 * converted in parallel.
+	 *
+	 * @param count
+	 *            number of texts
+	 * @param text
+	 *            gets the text with the given index
+	 * @param locale
+	 *            language whose rules order the texts
+	 * @return keys of the texts
+	 */
+	private static CollationKey[] keys(int count, IntFunction<String> text, Locale locale) {
+		CollationKey[] keys = new CollationKey[count];
+		Collator collator = getCollator(locale);
+
+		if (count < PARALLEL_THRESHOLD) {
+			for (int i = 0; i < count; i++) {
+				keys[i] = collator.getCollationKey(text.apply(i));
+			}
+		} else {
+			// a collator creates one key at a time, so each task uses a copy
+			IntStream.range(0, (count + KEY_CHUNK - 1) / KEY_CHUNK).parallel().forEach(chunk -> {
+				Collator copy = (Collator) collator.clone();
+				for (int i = chunk * KEY_CHUNK, end = Math.min(count, i + KEY_CHUNK); i < end; i++) {
+					keys[i] = copy.getCollationKey(text.apply(i));
+				}
+			});
+		}
+		return keys;
+	}
+
+	/**
+	 * Collation key of the item with the given index.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private static class Keyed {
+		/** Key of the text of the item. */
+		private final CollationKey key;
+		/** Index of the item. */
+		private final int index;
+
+		/**
+		 * Constructs a new {@link Keyed}.
+		 *
+		 * @param key
+		 *            key of the text of the item
+		 * @param index
+		 *            index of the item
+		 */
+		private Keyed(CollationKey key, int index) {
+			this.key = key;
+			this.index = index;
+		}
+	}
+}
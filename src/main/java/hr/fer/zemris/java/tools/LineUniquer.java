@@ -0,0 +1,236 @@
+package hr.fer.zemris.java.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+/**
+ * Removes duplicate lines, keeping the first occurrence of each line.
+ * <p>
+ * The lines are not stored - the first occurrences are remembered in a
+ * {@link FingerprintSet} by their fingerprints and offsets, and compared with
+ * a line only when their fingerprints are equal. A text is deduplicated in a
+ * single pass into a buffer of its own length, while a file is read and
+ * written as a stream of bytes, so its size is not limited by the memory.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class LineUniquer {
+	/** Size of the buffers used when reading and writing a file. */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Not used.
+	 */
+	private LineUniquer() {
+	}
+
+	/**
+	 * Removes the duplicate lines of the given text. The lines are separated
+	 * by line feeds, and a line feed ending the text does not start a new
+	 * line.
+	 *
+	 * @param text
+	 *            lines to deduplicate
+	 * @return first occurrences of the lines separated by line feeds, without
+	 *         a line feed at the end
+	 */
+	public static String unique(CharSequence text) {
+		FingerprintSet seen = new FingerprintSet();
+		StringBuilder sb = new StringBuilder(text.length());
+		int length = text.length();
+
+		for (int start = 0; start < length || start == 0;) {
+			long hash = FingerprintSet.FNV_BASIS;
+			int end = start;
+			for (char c; end < length && (c = text.charAt(end)) != '\n'; end++) {
+				hash = (hash ^ c) * FingerprintSet.FNV_PRIME;
+			}
+
+			int lineStart = start;
+			int lineLength = end - start;
+			boolean added = seen.add(FingerprintSet.finish(hash), start, other -> {
+				int otherEnd = (int) other + lineLength;
+				if (otherEnd > length || (otherEnd < length && text.charAt(otherEnd) != '\n'))
+					return false;
+				for (int i = 0; i < lineLength; i++) {
+					if (text.charAt((int) other + i) != text.charAt(lineStart + i))
+						return false;
+				}
+				return true;
+			});
+			if (added) {
+				if (sb.length() > 0 || seen.size() > 1) {
+					sb.append('\n');
+				}
+				sb.append(text, start, end);
+			}
+			start = end + 1;
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Removes the duplicate lines of the given file. The lines are compared
+	 * as bytes, so the encoding of the file does not matter, and each kept
+	 * line is written with its original line ending. The deduplicated file
+	 * is written next to the output file and moved over it by
+	 * {@link AtomicFiles} once it is complete, so the output file may be the
+	 * input file and keeps its permissions.
+	 *
+	 * @param input
+	 *            file to deduplicate
+	 * @param output
+	 *            file receiving the kept lines
+	 * @param progress
+	 *            receives the progress, in percent
+	 * @param cancelled
+	 *            checked while reading, which stops once it returns
+	 *            <code>true</code>
+	 * @return number of the kept lines
+	 * @throws IOException
+	 *             if the file can not be read or written
+	 * @throws CancellationException
+	 *             if the deduplication was cancelled
+	 */
+	public static long unique(Path input, Path output, IntConsumer progress, BooleanSupplier cancelled)
+			throws IOException {
+		Path target = AtomicFiles.target(output);
+		Path unique = AtomicFiles.createTempFile(target);
+		try {
+			long kept = write(input, unique, progress, cancelled);
+			AtomicFiles.replace(unique, target);
+			return kept;
+		} finally {
+			Files.deleteIfExists(unique);
+		}
+	}
+
+	/**
+	 * Writes the first occurrences of the lines of the given file to the
+	 * given output file.
+	 *
+	 * @param input
+	 *            file to deduplicate
+	 * @param output
+	 *            file receiving the kept lines
+	 * @param progress
+	 *            receives the progress, in percent
+	 * @param cancelled
+	 *            checked while reading, which stops once it returns
+	 *            <code>true</code>
+	 * @return number of the kept lines
+	 * @throws IOException
+	 *             if the file can not be read or written
+	 */
+	private static long write(Path input, Path output, IntConsumer progress, BooleanSupplier cancelled)
+			throws IOException {
+		try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ);
+				InputStream in = Files.newInputStream(input);
+				OutputStream out = new BufferedOutputStream(Files.newOutputStream(output), BUFFER_SIZE)) {
+			long size = Math.max(1, channel.size());
+			FingerprintSet seen = new FingerprintSet();
+			ByteBuffer stored = ByteBuffer.allocate(BUFFER_SIZE);
+			byte[] buffer = new byte[BUFFER_SIZE];
+			byte[] line = new byte[256];
+			int lineLength = 0;
+			long lineStart = 0;
+			long position = 0;
+
+			for (int read; (read = in.read(buffer)) >= 0;) {
+				if (cancelled.getAsBoolean())
+					throw new CancellationException();
+
+				for (int i = 0; i < read; i++) {
+					byte b = buffer[i];
+					if (b != '\n') {
+						if (lineLength == line.length) {
+							line = Arrays.copyOf(line, lineLength * 2);
+						}
+						line[lineLength++] = b;
+						continue;
+					}
+
+					if (add(seen, channel, stored, line, lineLength, lineStart)) {
+						out.write(line, 0, lineLength);
+						out.write('\n');
+					}
+					lineStart = position + i + 1;
+					lineLength = 0;
+				}
+				position += read;
+				progress.accept((int) (Math.min(position, size) * 100 / size));
+			}
+
+			// the last line does not end with a line feed
+			if (lineLength > 0 && add(seen, channel, stored, line, lineLength, lineStart)) {
+				out.write(line, 0, lineLength);
+			}
+			return seen.size();
+		} catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		}
+	}
+
+	/**
+	 * Adds a line of a file to the set of the seen lines. The earlier lines
+	 * with the same fingerprint are read from the file to compare them with
+	 * the line.
+	 *
+	 * @param seen
+	 *            set of the seen lines
+	 * @param channel
+	 *            channel of the file
+	 * @param stored
+	 *            buffer used when reading the earlier lines
+	 * @param line
+	 *            bytes of the line, without the line feed
+	 * @param length
+	 *            number of bytes of the line
+	 * @param start
+	 *            offset of the line in the file
+	 * @return <code>true</code> if the line was not seen before
+	 */
+	private static boolean add(FingerprintSet seen, FileChannel channel, ByteBuffer stored, byte[] line, int length,
+			long start) {
+		long hash = FingerprintSet.FNV_BASIS;
+		for (int i = 0; i < length; i++) {
+			hash = (hash ^ (line[i] & 0xff)) * FingerprintSet.FNV_PRIME;
+		}
+
+		return seen.add(FingerprintSet.finish(hash), start, other -> {
+			try {
+				// the line and the byte following it
+				for (int done = 0; done <= length;) {
+					stored.clear();
+					stored.limit(Math.min(stored.capacity(), length + 1 - done));
+					int read = channel.read(stored, other + done);
+					if (read < 0)
+						return done == length;
+					for (int i = 0; i < read; i++, done++) {
+						byte b = stored.get(i);
+						if (done == length)
+							return b == '\n';
+						if (b != line[done])
+							return false;
+					}
+				}
+				return false;
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		});
+	}
+}
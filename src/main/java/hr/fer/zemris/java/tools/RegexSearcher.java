@@ -0,0 +1,175 @@
+package hr.fer.zemris.java.tools;
+
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import hr.fer.zemris.java.document.TextSequence;
+import hr.fer.zemris.java.document.TextSource;
+
+/**
+ * Searches a text for the matches of a regular expression.
+ * <p>
+ * The text is matched through a {@link TextSequence}, so it is never copied,
+ * and the search can be cancelled even in the middle of a single match. The
+ * line of each match is counted while moving from the previous match through
+ * a second sequence, which leaves the window of the matching in place. Each
+ * match is reported with a short preview of its line.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class RegexSearcher {
+	/** Largest number of characters in the preview of a match. */
+	public static final int PREVIEW_LENGTH = 120;
+
+	/**
+	 * Not used.
+	 */
+	private RegexSearcher() {
+	}
+
+	/**
+	 * Finds the matches of the pattern in the text. Empty matches are skipped.
+	 *
+	 * @param text
+	 *            the text, must not change during the search
+	 * @param pattern
+	 *            the pattern
+	 * @param matches
+	 *            receives the matches in the order of their offsets, the
+	 *            search stops once it returns <code>false</code>
+	 * @param cancelled
+	 *            checked while matching, the search stops once it returns
+	 *            <code>true</code>
+	 * @return number of the found matches
+	 * @throws CancellationException
+	 *             if the search was cancelled
+	 */
+	public static int search(TextSource text, Pattern pattern, Predicate<Match> matches, BooleanSupplier cancelled) {
+		Matcher matcher = pattern.matcher(new TextSequence(text, cancelled));
+		// the lines are counted through another window than the matching
+		TextSequence lines = new TextSequence(text, cancelled);
+		int count = 0;
+		int line = 0;
+		int lineStart = 0;
+		int counted = 0;
+
+		while (matcher.find()) {
+			int start = matcher.start();
+			int end = matcher.end();
+			if (start == end)
+				continue;
+
+			for (; counted < start; counted++) {
+				if (lines.charAt(counted) == '\n') {
+					line++;
+					lineStart = counted + 1;
+				}
+			}
+			count++;
+			if (!matches.test(new Match(start, end - start, line, preview(lines, lineStart, start))))
+				break;
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the preview of the line containing a match.
+	 *
+	 * @param sequence
+	 *            the text
+	 * @param lineStart
+	 *            start of the line
+	 * @param start
+	 *            start of the match
+	 * @return preview of the line
+	 */
+	private static String preview(TextSequence sequence, int lineStart, int start) {
+		// a long line is previewed from a bit before the match
+		int from = Math.max(lineStart, start - PREVIEW_LENGTH / 4);
+		int to = Math.min(sequence.length(), from + PREVIEW_LENGTH);
+		StringBuilder sb = new StringBuilder(to - from);
+		for (int i = from; i < to; i++) {
+			char c = sequence.charAt(i);
+			if (c == '\n' || c == '\r')
+				break;
+			sb.append(c == '\t' ? ' ' : c);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Match of a regular expression.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	public static final class Match {
+		/** Offset of the match. */
+		private int offset;
+		/** Length of the match. */
+		private int length;
+		/** Line of the match, starting from zero. */
+		private int line;
+		/** Preview of the line of the match. */
+		private String preview;
+
+		/**
+		 * Constructs a new {@link Match}.
+		 *
+		 * @param offset
+		 *            offset of the match
+		 * @param length
+		 *            length of the match
+		 * @param line
+		 *            line of the match
+		 * @param preview
+		 *            preview of the line of the match
+		 */
+		private Match(int offset, int length, int line, String preview) {
+			this.offset = offset;
+			this.length = length;
+			this.line = line;
+			this.preview = preview;
+		}
+
+		/**
+		 * Gets the offset of the match.
+		 *
+		 * @return offset of the match
+		 */
+		public int getOffset() {
+			return offset;
+		}
+
+		/**
+		 * Gets the length of the match.
+		 *
+		 * @return length of the match
+		 */
+		public int getLength() {
+			return length;
+		}
+
+		/**
+		 * Gets the line of the match.
+		 *
+		 * @return line of the match, starting from zero
+		 */
+		public int getLine() {
+			return line;
+		}
+
+		/**
+		 * Gets the preview of the line of the match.
+		 *
+		 * @return preview of the line
+		 */
+		public String getPreview() {
+			return preview;
+		}
+	}
+}
@@ -0,0 +1,410 @@
+package hr.fer.zemris.java.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Finds the changes which turn one text into another.
+ * <p>
+ * The common beginning and end of the texts are skipped first, so a text
+ * which was only appended to or changed in one place is compared in linear
+ * time. The lines of the rest are compared by the algorithm of Myers, which
+ * finds the fewest lines to remove and insert, and each of the changed
+ * regions is then narrowed to the characters which actually differ. If the
+ * texts differ in too many lines, the rest is reported as a single change.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class TextDiff {
+	/** Largest number of removed and inserted lines compared line by line. */
+	private static final int MAX_EDITS = 1000;
+	/** Largest number of steps of the comparison of the lines. */
+	private static final long MAX_WORK = 1L << 26;
+	/** Number of steps between two checks of the cancellation, minus one. */
+	private static final int CHECK_INTERVAL = (1 << 16) - 1;
+
+	/**
+	 * Not used.
+	 */
+	private TextDiff() {
+	}
+
+	/**
+	 * Finds the changes which turn the old text into the new one.
+	 *
+	 * @param old
+	 *            the old text
+	 * @param changed
+	 *            the new text
+	 * @param cancelled
+	 *            checked while comparing, the comparison stops once it
+	 *            returns <code>true</code>
+	 * @return changes in the order of their offsets, which do not overlap
+	 * @throws CancellationException
+	 *             if the comparison was cancelled
+	 */
+	public static List<Change> diff(char[] old, char[] changed, BooleanSupplier cancelled) {
+		int prefix = commonPrefix(old, 0, old.length, changed, 0, changed.length);
+		int suffix = commonSuffix(old, prefix, old.length, changed, prefix, changed.length);
+
+		List<Change> changes = new ArrayList<>();
+		if (prefix + suffix == old.length && prefix + suffix == changed.length)
+			return changes;
+
+		Lines oldLines = new Lines(old, prefix, old.length - suffix);
+		Lines newLines = new Lines(changed, prefix, changed.length - suffix);
+		boolean[] removed = new boolean[oldLines.count()];
+		boolean[] inserted = new boolean[newLines.count()];
+		if (!compareLines(oldLines, newLines, removed, inserted, cancelled)) {
+			addChange(changes, old, prefix, old.length - suffix, changed, prefix, changed.length - suffix);
+			return changes;
+		}
+
+		// the lines which were neither removed nor inserted are the common ones
+		int i = 0;
+		int j = 0;
+		while (i < removed.length || j < inserted.length) {
+			if (i < removed.length && j < inserted.length && !removed[i] && !inserted[j]) {
+				i++;
+				j++;
+				continue;
+			}
+			int oldStart = i;
+			int newStart = j;
+			while ((i < removed.length && removed[i]) || (j < inserted.length && inserted[j])) {
+				for (; i < removed.length && removed[i]; i++)
+					;
+				for (; j < inserted.length && inserted[j]; j++)
+					;
+			}
+			addChange(changes, old, oldLines.start(oldStart), oldLines.start(i), changed, newLines.start(newStart),
+					newLines.start(j));
+		}
+		return changes;
+	}
+
+	/**
+	 * Adds the change of the given ranges, narrowed to the characters which
+	 * differ.
+	 *
+	 * @param changes
+	 *            receives the change
+	 * @param old
+	 *            the old text
+	 * @param oldStart
+	 *            start of the old range
+	 * @param oldEnd
+	 *            end of the old range
+	 * @param changed
+	 *            the new text
+	 * @param newStart
+	 *            start of the new range
+	 * @param newEnd
+	 *            end of the new range
+	 */
+	private static void addChange(List<Change> changes, char[] old, int oldStart, int oldEnd, char[] changed,
+			int newStart, int newEnd) {
+		int prefix = commonPrefix(old, oldStart, oldEnd, changed, newStart, newEnd);
+		oldStart += prefix;
+		newStart += prefix;
+		int suffix = commonSuffix(old, oldStart, oldEnd, changed, newStart, newEnd);
+		oldEnd -= suffix;
+		newEnd -= suffix;
+		if (oldStart < oldEnd || newStart < newEnd) {
+			changes.add(new Change(oldStart, oldEnd - oldStart, new String(changed, newStart, newEnd - newStart)));
+		}
+	}
+
+	/**
+	 * Compares the lines by the algorithm of Myers and marks the removed and
+	 * the inserted ones.
+	 *
+	 * @param old
+	 *            lines of the old text
+	 * @param changed
+	 *            lines of the new text
+	 * @param removed
+	 *            receives the removed lines of the old text
+	 * @param inserted
+	 *            receives the inserted lines of the new text
+	 * @param cancelled
+	 *            checked while comparing
+	 * @return <code>true</code> if the lines were compared,
+	 *         <code>false</code> if they differ too much
+	 * @throws CancellationException
+	 *             if the comparison was cancelled
+	 */
+	private static boolean compareLines(Lines old, Lines changed, boolean[] removed, boolean[] inserted,
+			BooleanSupplier cancelled) {
+		int n = old.count();
+		int m = changed.count();
+		int max = Math.min(n + m, MAX_EDITS);
+		// furthest reaching x on each diagonal k = x - y, stored at k + max
+		int[] v = new int[2 * max + 2];
+		List<int[]> trace = new ArrayList<>();
+		long work = 0;
+
+		for (int d = 0; d <= max; d++) {
+			trace.add(Arrays.copyOfRange(v, max - d, max + d + 2));
+			for (int k = -d; k <= d; k += 2) {
+				int x = k == -d || (k != d && v[max + k - 1] < v[max + k + 1]) ? v[max + k + 1] : v[max + k - 1] + 1;
+				int y = x - k;
+				while (x < n && y < m && old.equals(x, changed, y)) {
+					x++;
+					y++;
+					work++;
+				}
+				v[max + k] = x;
+				if (x >= n && y >= m) {
+					backtrack(trace, n, m, removed, inserted);
+					return true;
+				}
+				if ((++work & CHECK_INTERVAL) == 0 && cancelled.getAsBoolean())
+					throw new CancellationException();
+			}
+			if (work > MAX_WORK)
+				return false;
+		}
+		return false;
+	}
+
+	/**
+	 * Follows the recorded steps of the comparison back from the ends of both
+	 * texts and marks the removed and the inserted lines.
+	 *
+	 * @param trace
+	 *            furthest reaching x on the diagonals before each step
+	 * @param n
+	 *            number of the old lines
+	 * @param m
+	 *            number of the new lines
+	 * @param removed
+	 *            receives the removed lines of the old text
+	 * @param inserted
+	 *            receives the inserted lines of the new text
+	 */
+	private static void backtrack(List<int[]> trace, int n, int m, boolean[] removed, boolean[] inserted) {
+		int x = n;
+		int y = m;
+		for (int d = trace.size() - 1; d > 0; d--) {
+			// the values before step d cover the diagonals -d to d
+			int[] v = trace.get(d);
+			int k = x - y;
+			boolean down = k == -d || (k != d && v[k - 1 + d] < v[k + 1 + d]);
+			int previousK = down ? k + 1 : k - 1;
+			int previousX = v[previousK + d];
+			int previousY = previousX - previousK;
+			if (down) {
+				inserted[previousY] = true;
+			} else {
+				removed[previousX] = true;
+			}
+			x = previousX;
+			y = previousY;
+		}
+	}
+
+	/**
+	 * Gets the length of the common beginning of the given ranges.
+	 *
+	 * @param a
+	 *            the first text
+	 * @param aStart
+	 *            start of the first range
+	 * @param aEnd
+	 *            end of the first range
+	 * @param b
+	 *            the second text
+	 * @param bStart
+	 *            start of the second range
+	 * @param bEnd
+	 *            end of the second range
+	 * @return number of the common characters
+	 */
+	private static int commonPrefix(char[] a, int aStart, int aEnd, char[] b, int bStart, int bEnd) {
+		int length = Math.min(aEnd - aStart, bEnd - bStart);
+		int i = 0;
+		while (i < length && a[aStart + i] == b[bStart + i]) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Gets the length of the common end of the given ranges.
+	 *
+	 * @param a
+	 *            the first text
+	 * @param aStart
+	 *            start of the first range
+	 * @param aEnd
+	 *            end of the first range
+	 * @param b
+	 *            the second text
+	 * @param bStart
+	 *            start of the second range
+	 * @param bEnd
+	 *            end of the second range
+	 * @return number of the common characters
+	 */
+	private static int commonSuffix(char[] a, int aStart, int aEnd, char[] b, int bStart, int bEnd) {
+		int length = Math.min(aEnd - aStart, bEnd - bStart);
+		int i = 0;
+		while (i < length && a[aEnd - 1 - i] == b[bEnd - 1 - i]) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Lines of a range of a text, each ending with its line feed, if it has
+	 * one. The lines are compared by their fingerprints first.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private static final class Lines {
+		/** The text. */
+		private char[] text;
+		/** Starts of the lines, followed by the end of the range. */
+		private int[] starts;
+		/** Fingerprints of the lines. */
+		private long[] fingerprints;
+
+		/**
+		 * Splits the given range of a text into lines.
+		 *
+		 * @param text
+		 *            the text
+		 * @param start
+		 *            start of the range
+		 * @param end
+		 *            end of the range
+		 */
+		private Lines(char[] text, int start, int end) {
+			this.text = text;
+			int count = 0;
+			for (int i = start; i < end; i++) {
+				if (text[i] == '\n' || i == end - 1) {
+					count++;
+				}
+			}
+			starts = new int[count + 1];
+			fingerprints = new long[count];
+
+			int line = 0;
+			long hash = FingerprintSet.FNV_BASIS;
+			starts[0] = start;
+			for (int i = start; i < end; i++) {
+				hash = (hash ^ text[i]) * FingerprintSet.FNV_PRIME;
+				if (text[i] == '\n' || i == end - 1) {
+					fingerprints[line] = hash;
+					starts[++line] = i + 1;
+					hash = FingerprintSet.FNV_BASIS;
+				}
+			}
+		}
+
+		/**
+		 * Gets the number of the lines.
+		 *
+		 * @return number of the lines
+		 */
+		private int count() {
+			return fingerprints.length;
+		}
+
+		/**
+		 * Gets the start of a line.
+		 *
+		 * @param line
+		 *            the line, the number of the lines for the end of the
+		 *            range
+		 * @return offset of the start of the line in the text
+		 */
+		private int start(int line) {
+			return starts[line];
+		}
+
+		/**
+		 * Checks whether a line is equal to a line of other lines.
+		 *
+		 * @param line
+		 *            the line
+		 * @param other
+		 *            the other lines
+		 * @param otherLine
+		 *            line of the other lines
+		 * @return <code>true</code> if the lines are equal
+		 */
+		private boolean equals(int line, Lines other, int otherLine) {
+			if (fingerprints[line] != other.fingerprints[otherLine])
+				return false;
+			int length = starts[line + 1] - starts[line];
+			return length == other.starts[otherLine + 1] - other.starts[otherLine] && commonPrefix(text,
+					starts[line], starts[line + 1], other.text, other.starts[otherLine], other.starts[otherLine + 1]) == length;
+		}
+	}
+
+	/**
+	 * Change of a range of the old text.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	public static final class Change {
+		/** Offset of the range in the old text. */
+		private int offset;
+		/** Length of the range in the old text. */
+		private int length;
+		/** Text replacing the range. */
+		private String text;
+
+		/**
+		 * Constructs a new {@link Change}.
+		 *
+		 * @param offset
+		 *            offset of the range in the old text
+		 * @param length
+		 *            length of the range in the old text
+		 * @param text
+		 *            text replacing the range
+		 */
+		private Change(int offset, int length, String text) {
+			this.offset = offset;
+			this.length = length;
+			this.text = text;
+		}
+
+		/**
+		 * Gets the offset of the changed range in the old text.
+		 *
+		 * @return offset of the range
+		 */
+		public int getOffset() {
+			return offset;
+		}
+
+		/**
+		 * Gets the length of the changed range in the old text.
+		 *
+		 * @return length of the range, zero for an insertion
+		 */
+		public int getLength() {
+			return length;
+		}
+
+		/**
+		 * Gets the text replacing the changed range.
+		 *
+		 * @return the new text, empty for a removal
+		 */
+		public String getText() {
+			return text;
+		}
+	}
+}
@@ -0,0 +1,261 @@
+package hr.fer.zemris.java.tools;
+
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntPredicate;
+
+import hr.fer.zemris.java.document.TextSource;
+
+/**
+ * Searches a text for a literal pattern with the Boyer-Moore-Horspool
+ * algorithm.
+ * <p>
+ * The text is never copied as a whole - it is scanned through a window of
+ * {@link #CHUNK_SIZE} characters, and consecutive windows overlap by the
+ * length of the pattern, so no match is missed. The bad character shifts are
+ * kept in a table indexed by the low byte of a character, which holds the
+ * smallest shift of all the pattern characters sharing that byte.
+ * <p>
+ * A case insensitive search compares the characters folded to lower case
+ * after being folded to upper case, one character at a time. A whole word
+ * search accepts only the matches which are not preceded or followed by a
+ * letter, a digit or an underscore.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class TextSearcher {
+	/** Number of characters scanned in a single window. */
+	public static final int CHUNK_SIZE = 1 << 16;
+	/** Size of the bad character table. */
+	private static final int TABLE_SIZE = 256;
+
+	/** Pattern, folded if the search is case insensitive. */
+	private char[] pattern;
+	/** <code>true</code> if the case of the characters matters. */
+	private boolean matchCase;
+	/** <code>true</code> if only whole words are matched. */
+	private boolean wholeWord;
+	/** Shift of the window for each low byte of its last character. */
+	private int[] shifts = new int[TABLE_SIZE];
+
+	/**
+	 * Constructs a new {@link TextSearcher}.
+	 *
+	 * @param pattern
+	 *            the pattern, must not be empty
+	 * @param matchCase
+	 *            <code>true</code> if the case of the characters matters
+	 * @param wholeWord
+	 *            <code>true</code> if only whole words are matched
+	 */
+	public TextSearcher(String pattern, boolean matchCase, boolean wholeWord) {
+		if (pattern.isEmpty())
+			throw new IllegalArgumentException("The pattern must not be empty.");
+		this.matchCase = matchCase;
+		this.wholeWord = wholeWord;
+		this.pattern = new char[pattern.length()];
+		for (int i = 0; i < this.pattern.length; i++) {
+			this.pattern[i] = fold(pattern.charAt(i));
+		}
+
+		int m = this.pattern.length;
+		for (int i = 0; i < TABLE_SIZE; i++) {
+			shifts[i] = m;
+		}
+		// later characters have smaller shifts, which keeps the smallest one
+		for (int i = 0; i < m - 1; i++) {
+			shifts[this.pattern[i] & (TABLE_SIZE - 1)] = m - 1 - i;
+		}
+	}
+
+	/**
+	 * Gets the length of the pattern, which is also the length of a match.
+	 *
+	 * @return length of the pattern
+	 */
+	public int getPatternLength() {
+		return pattern.length;
+	}
+
+	/**
+	 * Finds the first match inside of the given range of the text.
+	 *
+	 * @param text
+	 *            the text
+	 * @param from
+	 *            start of the range
+	 * @param to
+	 *            end of the range
+	 * @return offset of the match, -1 if there is none
+	 */
+	public int find(TextSource text, int from, int to) {
+		int[] found = { -1 };
+		scan(text, from, to, offset -> {
+			found[0] = offset;
+			return false;
+		}, () -> false);
+		return found[0];
+	}
+
+	/**
+	 * Finds all the matches inside of the given range of the text. The
+	 * matches do not overlap.
+	 *
+	 * @param text
+	 *            the text, must not change during the search
+	 * @param from
+	 *            start of the range
+	 * @param to
+	 *            end of the range
+	 * @param matches
+	 *            receives the offset of each match, the search stops once it
+	 *            returns <code>false</code>
+	 * @param cancelled
+	 *            checked before each window, the search stops once it returns
+	 *            <code>true</code>
+	 * @return number of the found matches
+	 * @throws CancellationException
+	 *             if the search was cancelled
+	 */
+	public int findAll(TextSource text, int from, int to, IntPredicate matches, BooleanSupplier cancelled) {
+		int[] count = { 0 };
+		scan(text, from, to, offset -> {
+			count[0]++;
+			return matches.test(offset);
+		}, cancelled);
+		return count[0];
+	}
+
+	/**
+	 * Checks whether the given range of the text is a match.
+	 *
+	 * @param text
+	 *            the text
+	 * @param offset
+	 *            start of the range
+	 * @param length
+	 *            length of the range
+	 * @return <code>true</code> if the range is a match
+	 */
+	public boolean matchesAt(TextSource text, int offset, int length) {
+		return length == pattern.length && offset >= 0 && offset + length <= text.length()
+				&& find(text, offset, offset + length) == offset;
+	}
+
+	/**
+	 * Scans the given range of the text for the matches.
+	 *
+	 * @param text
+	 *            the text
+	 * @param from
+	 *            start of the range
+	 * @param to
+	 *            end of the range
+	 * @param matches
+	 *            receives the offset of each match, the scan stops once it
+	 *            returns <code>false</code>
+	 * @param cancelled
+	 *            checked before each window
+	 * @throws CancellationException
+	 *             if the scan was cancelled
+	 */
+	private void scan(TextSource text, int from, int to, IntPredicate matches, BooleanSupplier cancelled) {
+		int m = pattern.length;
+		from = Math.max(0, from);
+		to = Math.min(to, text.length());
+		char[] window = new char[Math.min(CHUNK_SIZE + m - 1, Math.max(0, to - from))];
+
+		for (int start = from; to - start >= m;) {
+			if (cancelled.getAsBoolean())
+				throw new CancellationException();
+
+			int n = Math.min(window.length, to - start);
+			text.getChars(start, n, window, 0);
+
+			int i = 0;
+			while (i <= n - m) {
+				int j = m - 1;
+				while (j >= 0 && fold(window[i + j]) == pattern[j]) {
+					j--;
+				}
+				if (j < 0 && (!wholeWord || isWord(text, window, start, n, i))) {
+					if (!matches.test(start + i))
+						return;
+					i += m;
+					continue;
+				}
+				i += shifts[fold(window[i + m - 1]) & (TABLE_SIZE - 1)];
+			}
+			// the next window starts at the first position not yet checked
+			start += i;
+		}
+	}
+
+	/**
+	 * Checks whether the match at the given position of the window is a whole
+	 * word.
+	 *
+	 * @param text
+	 *            the text
+	 * @param window
+	 *            the window
+	 * @param start
+	 *            offset of the window in the text
+	 * @param n
+	 *            number of characters in the window
+	 * @param i
+	 *            position of the match in the window
+	 * @return <code>true</code> if the match is a whole word
+	 */
+	private boolean isWord(TextSource text, char[] window, int start, int n, int i) {
+		int before = start + i - 1;
+		int after = start + i + pattern.length;
+		if (before >= 0 && isWordChar(i > 0 ? window[i - 1] : charAt(text, before)))
+			return false;
+		return after >= text.length()
+				|| !isWordChar(i + pattern.length < n ? window[i + pattern.length] : charAt(text, after));
+	}
+
+	/**
+	 * Reads a single character of the text.
+	 *
+	 * @param text
+	 *            the text
+	 * @param offset
+	 *            offset of the character
+	 * @return the character
+	 */
+	private static char charAt(TextSource text, int offset) {
+		char[] c = new char[1];
+		text.getChars(offset, 1, c, 0);
+		return c[0];
+	}
+
+	/**
+	 * Checks whether the given character is a part of a word.
+	 *
+	 * @param c
+	 *            the character
+	 * @return <code>true</code> if the character is a letter, a digit or an
+	 *         underscore
+	 */
+	private static boolean isWordChar(char c) {
+		return c == '_' || Character.isLetterOrDigit(c);
+	}
+
+	/**
+	 * Folds the case of the given character, unless the case matters.
+	 *
+	 * @param c
+	 *            the character
+	 * @return folded character
+	 */
+	private char fold(char c) {
+		if (matchCase)
+			return c;
+		if (c < 0x80)
+			return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+}
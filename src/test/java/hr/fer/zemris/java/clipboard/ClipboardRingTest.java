@@ -0,0 +1,95 @@
+package hr.fer.zemris.java.clipboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.awt.EventQueue;
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.ClipboardOwner;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.StringSelection;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Tests of the {@link ClipboardRing}.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class ClipboardRingTest {
+
+	@Test
+	public void importsTextOfAnotherOwner() throws Exception {
+		Clipboard clipboard = new ProxyClipboard();
+		ClipboardRing ring = new ClipboardRing(4, clipboard);
+
+		ring.push(ClipboardEntry.of("copied in the app"));
+		assertEquals("copied in the app", clipboard.getData(DataFlavor.stringFlavor));
+
+		StringSelection other = new StringSelection("copied elsewhere");
+		clipboard.setContents(other, other);
+		// the lost ownership is reported on the event dispatch thread
+		EventQueue.invokeAndWait(() -> {
+		});
+
+		ClipboardEntry current = ring.current();
+		assertNotNull(current);
+		assertEquals("copied elsewhere", current.toString());
+		assertEquals(2, ring.getEntries().size());
+	}
+
+	@Test
+	public void keepsOwnershipWhenExportingAgain() throws Exception {
+		Clipboard clipboard = new ProxyClipboard();
+		ClipboardRing ring = new ClipboardRing(4, clipboard);
+
+		ring.push(ClipboardEntry.of("first"));
+		ring.push(ClipboardEntry.of("second"));
+		EventQueue.invokeAndWait(() -> {
+		});
+
+		assertEquals("second", ring.current().toString());
+		assertEquals(2, ring.getEntries().size());
+	}
+
+	/**
+	 * Clipboard which wraps the contents set to it, as the system clipboard
+	 * does, so the owner losing it is passed the wrapper.
+	 *
+	 * @author Mirna Baksa
+	 *
+	 */
+	private static class ProxyClipboard extends Clipboard {
+
+		/**
+		 * Constructs a new {@link ProxyClipboard}.
+		 */
+		private ProxyClipboard() {
+			super("test");
+		}
+
+		@Override
+		public synchronized void setContents(Transferable contents, ClipboardOwner owner) {
+			super.setContents(new Transferable() {
+				@Override
+				public DataFlavor[] getTransferDataFlavors() {
+					return contents.getTransferDataFlavors();
+				}
+
+				@Override
+				public boolean isDataFlavorSupported(DataFlavor flavor) {
+					return contents.isDataFlavorSupported(flavor);
+				}
+
+				@Override
+				public Object getTransferData(DataFlavor flavor) throws UnsupportedFlavorException, IOException {
+					return contents.getTransferData(flavor);
+				}
+			}, owner);
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package hr.fer.zemris.java.document;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+/**
+ * Tests of the line index of a {@link MappedTextFile}.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class MappedTextFileTest {
+
+	/**
+	 * Maps a temporary file with the given text.
+	 *
+	 * @param text
+	 *            contents of the file
+	 * @return mapped file
+	 * @throws IOException
+	 *             if the file can not be written
+	 */
+	private static MappedTextFile map(String text) throws IOException {
+		Path file = Files.createTempFile("mapped", ".txt");
+		file.toFile().deleteOnExit();
+		Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+		return MappedTextFile.open(file);
+	}
+
+	@Test
+	public void findsLineStartAfterOffsetInsideLine() throws IOException {
+		try (MappedTextFile file = map("first line\nsecond line\nthird line\n")) {
+			assertEquals(1, file.getLineOfOffset(20));
+			assertEquals(11, file.getLineStartOffset(1));
+			assertEquals(2, file.getLineOfOffset(30));
+			assertEquals(23, file.getLineStartOffset(2));
+		}
+	}
+
+	@Test
+	public void showsIndexedTextOnlyAfterUpdate() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; text.length() < 3 << 20; i++) {
+			text.append("line ").append(i).append(i % 3 == 0 ? "\r\n" : "\n");
+		}
+		String expected = text.toString().replace("\r\n", "\n");
+		int lines = expected.split("\n", -1).length;
+
+		try (MappedTextFile file = map(text.toString())) {
+			assertTrue(file.length() < expected.length());
+			assertTrue(file.getLineCount() < lines);
+			int before = file.length();
+			while (!file.indexNext()) {
+			}
+			assertEquals(before, file.length());
+
+			assertTrue(file.update());
+			assertEquals(expected.length(), file.length());
+			assertEquals(lines, file.getLineCount());
+			assertEquals(expected.lastIndexOf("line 1000\n"), file.getLineStartOffset(1000));
+
+			char[] chars = new char[file.length()];
+			file.getChars(0, chars.length, chars, 0);
+			assertEquals(expected, new String(chars));
+		}
+	}
+
+	@Test
+	public void countsLineTerminatorsAndPairsAsDocumentCharacters() throws IOException {
+		try (MappedTextFile file = map("a\r\nb😀c\nd")) {
+			assertEquals(8, file.length());
+			assertEquals(3, file.getLineCount());
+			assertEquals(1, file.getLineOfOffset(5));
+			assertEquals(2, file.getLineStartOffset(1));
+			assertEquals(7, file.getLineStartOffset(2));
+
+			char[] text = new char[file.length()];
+			file.getChars(0, text.length, text, 0);
+			assertEquals("a\nb😀c\nd", new String(text));
+		}
+	}
+}
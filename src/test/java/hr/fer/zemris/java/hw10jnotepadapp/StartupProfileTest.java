@@ -0,0 +1,96 @@
+package hr.fer.zemris.java.hw10jnotepadapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.EventQueue;
+import java.awt.Frame;
+import java.awt.GraphicsEnvironment;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Tests of the {@link StartupProfile}. The startup of the app is measured
+ * only if there is a display. The budget of the time to the first painted
+ * frame in milliseconds can be set by the system property
+ * <code>jnotepad.startup.budget</code>.
+ *
+ * @author Mirna Baksa
+ *
+ */
+public class StartupProfileTest {
+	/** Phases of the startup, in the order in which they are reached. */
+	private static final List<String> STARTUP = Arrays.asList("main", "icons", "gui", "session",
+			StartupProfile.FIRST_PAINT);
+
+	@Test
+	public void recordsEachPhaseOnce() {
+		StartupProfile.mark("test_first");
+		long first = StartupProfile.getPhases().get("test_first");
+		StartupProfile.mark("test_second");
+		StartupProfile.mark("test_first");
+
+		Map<String, Long> phases = StartupProfile.getPhases();
+		assertEquals(first, (long) phases.get("test_first"));
+		assertTrue(phases.get("test_second") >= first);
+		List<String> names = new ArrayList<>(phases.keySet());
+		assertTrue(names.indexOf("test_first") < names.indexOf("test_second"));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void phasesCanNotBeChanged() {
+		StartupProfile.getPhases().put("test_changed", 0L);
+	}
+
+	@Test
+	public void recordsStartupThroughFirstPaint() throws Exception {
+		Assume.assumeFalse(GraphicsEnvironment.isHeadless());
+		long budget = Long.getLong("jnotepad.startup.budget", 5000);
+		Path directory = Files.createTempDirectory("jnotepad-startup");
+		Path session = directory.resolve("session.bin");
+		System.setProperty("jnotepad.session", session.toString());
+
+		try {
+			JNotepadPP.main(new String[0]);
+			long deadline = System.currentTimeMillis() + Math.max(budget, 30000);
+			while (!StartupProfile.getPhases().containsKey(StartupProfile.FIRST_PAINT)
+					&& System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+
+			Map<String, Long> phases = StartupProfile.getPhases();
+			List<String> reached = new ArrayList<>(phases.keySet());
+			reached.retainAll(STARTUP);
+			assertEquals(STARTUP, reached);
+
+			long previous = 0;
+			for (String phase : STARTUP) {
+				assertTrue(phase, phases.get(phase) >= previous);
+				previous = phases.get(phase);
+			}
+			long firstPaint = phases.get(StartupProfile.FIRST_PAINT) / 1_000_000;
+			assertTrue("first paint after " + firstPaint + " ms", firstPaint <= budget);
+		} finally {
+			EventQueue.invokeAndWait(() -> {
+				for (Frame frame : Frame.getFrames()) {
+					frame.dispose();
+				}
+			});
+			System.clearProperty("jnotepad.session");
+			try {
+				Files.deleteIfExists(session);
+				Files.deleteIfExists(directory);
+			} catch (IOException ignorable) {
+				// the session may still be saved in the background
+			}
+		}
+	}
+}